@@ -46,6 +46,34 @@ public class GlobalExceptionHandler {
         return ResponseEntity.badRequest().body(ApiError.of("BAD_REQUEST", ex.getMessage()));
     }
 
+    // Hết hàng khi đặt đơn: trả về chi tiết từng món bị thiếu
+    @ExceptionHandler(OutOfStockException.class)
+    public ResponseEntity<ApiError> handleOutOfStock(OutOfStockException ex) {
+        return ResponseEntity.status(HttpStatus.CONFLICT)
+                .body(new ApiError("OUT_OF_STOCK", ex.getMessage(), ex.getDetails()));
+    }
+
+    // Khuyến mãi vừa hết lượt lúc đặt đơn: báo giá lại giỏ sẽ không còn khuyến mãi này
+    @ExceptionHandler(PromotionUnavailableException.class)
+    public ResponseEntity<ApiError> handlePromotionUnavailable(PromotionUnavailableException ex) {
+        return ResponseEntity.status(HttpStatus.CONFLICT)
+                .body(ApiError.of("PROMOTION_UNAVAILABLE", ex.getMessage()));
+    }
+
+    // Request trùng Idempotency-Key vẫn đang xử lý
+    @ExceptionHandler(IdempotencyConflictException.class)
+    public ResponseEntity<ApiError> handleIdempotencyConflict(IdempotencyConflictException ex) {
+        return ResponseEntity.status(HttpStatus.CONFLICT)
+                .body(ApiError.of("IDEMPOTENCY_CONFLICT", ex.getMessage()));
+    }
+
+    // Dùng lại Idempotency-Key cho 1 request khác nội dung
+    @ExceptionHandler(IdempotencyMismatchException.class)
+    public ResponseEntity<ApiError> handleIdempotencyMismatch(IdempotencyMismatchException ex) {
+        return ResponseEntity.status(HttpStatus.UNPROCESSABLE_ENTITY)
+                .body(ApiError.of("IDEMPOTENCY_KEY_REUSED", ex.getMessage()));
+    }
+
     @ExceptionHandler(RuntimeException.class)
     public ResponseEntity<ApiError> handleRuntime(RuntimeException ex) {
         // Với lỗi logic thông thường, trả về 400 và message chi tiết
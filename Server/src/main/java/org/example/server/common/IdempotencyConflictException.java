@@ -0,0 +1,7 @@
+package org.example.server.common;
+
+public class IdempotencyConflictException extends RuntimeException {
+    public IdempotencyConflictException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,7 @@
+package org.example.server.common;
+
+public class IdempotencyMismatchException extends RuntimeException {
+    public IdempotencyMismatchException(String message) {
+        super(message);
+    }
+}
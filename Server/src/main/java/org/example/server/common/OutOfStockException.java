@@ -0,0 +1,17 @@
+package org.example.server.common;
+
+import java.util.List;
+
+public class OutOfStockException extends RuntimeException {
+
+    private final List<String> details;
+
+    public OutOfStockException(List<String> details) {
+        super("Một số món trong đơn không đủ hàng");
+        this.details = List.copyOf(details);
+    }
+
+    public List<String> getDetails() {
+        return details;
+    }
+}
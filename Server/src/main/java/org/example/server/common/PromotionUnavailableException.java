@@ -0,0 +1,15 @@
+package org.example.server.common;
+
+public class PromotionUnavailableException extends RuntimeException {
+
+    private final Long promotionId;
+
+    public PromotionUnavailableException(Long promotionId, String message) {
+        super(message);
+        this.promotionId = promotionId;
+    }
+
+    public Long getPromotionId() {
+        return promotionId;
+    }
+}
@@ -0,0 +1,85 @@
+package org.example.server.config;
+
+import lombok.RequiredArgsConstructor;
+import org.example.server.entity.IdSequences;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Migration cho việc chuyển id từ AUTO_INCREMENT sang id_sequences: trước khi có request đầu tiên,
+ * đẩy next_val của mỗi bảng lên trên MAX(id) hiện có để id cấp mới không trùng dữ liệu cũ.
+ * Chạy lại mỗi lần khởi động cũng an toàn (chỉ tăng, không bao giờ giảm next_val).
+ * Câu BUMP_SQL (ON DUPLICATE KEY UPDATE ... GREATEST) chỉ dành cho MySQL.
+ * <p>
+ * Rolling deploy: instance bản cũ vẫn INSERT bằng AUTO_INCREMENT trong lúc instance mới cấp id từ id_sequences.
+ * Vì vậy AUTO_INCREMENT của bảng được đẩy lên next_val + app.ids.rollout-reserve: bản cũ ghi phía trên khoảng
+ * để dành, bản mới cấp id bên trong khoảng đó. Chỉ an toàn nếu mọi instance mới cấp chưa hết khoảng để dành
+ * trước khi instance cũ cuối cùng dừng. Lần khởi động sau, MAX(id) đã gồm các dòng của bản cũ nên next_val nhảy qua.
+ * Không chắc điều đó (hoặc rollout-reserve=0) thì phải deploy stop-the-world: dừng hết instance cũ rồi mới chạy bản mới.
+ */
+@Component
+@DependsOn("entityManagerFactory") // ddl-auto phải tạo xong bảng trước
+@RequiredArgsConstructor
+public class IdSequenceInitializer implements InitializingBean {
+
+    private static final Logger log = LoggerFactory.getLogger(IdSequenceInitializer.class);
+
+    private static final String CREATE_SQL =
+            "CREATE TABLE IF NOT EXISTS " + IdSequences.TABLE + " (" +
+            IdSequences.NAME_COLUMN + " VARCHAR(255) NOT NULL PRIMARY KEY, " +
+            IdSequences.VALUE_COLUMN + " BIGINT)";
+    private static final String BUMP_SQL =
+            "INSERT INTO " + IdSequences.TABLE + " (" + IdSequences.NAME_COLUMN + ", " + IdSequences.VALUE_COLUMN + ") " +
+            "VALUES (?, ?) ON DUPLICATE KEY UPDATE " +
+            IdSequences.VALUE_COLUMN + " = GREATEST(COALESCE(" + IdSequences.VALUE_COLUMN + ", 0), VALUES(" + IdSequences.VALUE_COLUMN + "))";
+    private static final String NEXT_SQL =
+            "SELECT " + IdSequences.VALUE_COLUMN + " FROM " + IdSequences.TABLE + " WHERE " + IdSequences.NAME_COLUMN + " = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Value("${app.ids.rollout-reserve:100000}")
+    private long rolloutReserve;
+
+    @Override
+    public void afterPropertiesSet() {
+        jdbcTemplate.execute(CREATE_SQL);
+        // Thứ tự cố định để các instance khởi động cùng lúc không khoá chéo nhau
+        for (Map.Entry<String, String> e : new TreeMap<>(IdSequences.TABLES).entrySet()) {
+            Long max = jdbcTemplate.queryForObject("SELECT COALESCE(MAX(id), 0) FROM " + e.getValue(), Long.class);
+            // Dư 1 khối: dù optimizer đọc next_val là đầu hay cuối khối, id cấp ra vẫn > MAX(id)
+            long floor = (max == null ? 0 : max) + IdSequences.ALLOCATION + 1;
+            jdbcTemplate.update(BUMP_SQL, e.getKey(), floor);
+            log.debug("Id sequence {} >= {}", e.getKey(), floor);
+            if (rolloutReserve > 0 && isAutoIncrement(e.getValue())) {
+                // Đọc lại: instance khác có thể đã đẩy next_val cao hơn floor
+                Long next = jdbcTemplate.queryForObject(NEXT_SQL, Long.class, e.getKey());
+                long start = (next == null ? floor : next) + rolloutReserve;
+                jdbcTemplate.execute("ALTER TABLE " + e.getValue() + " AUTO_INCREMENT = " + start);
+                log.debug("AUTO_INCREMENT {} = {}", e.getValue(), start);
+            }
+        }
+    }
+
+    // Bảng do ddl-auto tạo sau khi chuyển sang id_sequences không còn AUTO_INCREMENT -> không có bản cũ nào ghi vào
+    private boolean isAutoIncrement(String table) {
+        return Boolean.TRUE.equals(jdbcTemplate.execute((ConnectionCallback<Boolean>) c -> {
+            DatabaseMetaData meta = c.getMetaData();
+            boolean upper = meta.storesUpperCaseIdentifiers();
+            try (ResultSet rs = meta.getColumns(c.getCatalog(), null,
+                    upper ? table.toUpperCase() : table, upper ? "ID" : "id")) {
+                return rs.next() && "YES".equals(rs.getString("IS_AUTOINCREMENT"));
+            }
+        }));
+    }
+}
@@ -61,6 +61,7 @@ public class SecurityConfig {
                         .requestMatchers("/api/admin/stats/**").hasRole("ADMIN")
                         .requestMatchers("/api/files/upload").hasRole("ADMIN")
                         .requestMatchers("/api/promotions/preview").authenticated()
+                        .requestMatchers("/api/promotions/*/coupons/**").hasRole("ADMIN")
                         .requestMatchers("/api/admin/users/**").hasRole("ADMIN")
                         .requestMatchers("/ws/**").permitAll()
                         .requestMatchers("/topic/**", "/queue/**").permitAll()
@@ -110,8 +111,8 @@ public class SecurityConfig {
                 "https://www.foodappsv.id.vn"
         ));
         cfg.setAllowedMethods(List.of("GET", "POST", "PUT", "PATCH", "DELETE", "OPTIONS"));
-        cfg.setAllowedHeaders(List.of("Authorization", "Content-Type", "Accept", "X-Requested-With", "ngrok-skip-browser-warning"));
-        cfg.setExposedHeaders(List.of("Authorization"));
+        cfg.setAllowedHeaders(List.of("Authorization", "Content-Type", "Accept", "X-Requested-With", "ngrok-skip-browser-warning", "Idempotency-Key"));
+        cfg.setExposedHeaders(List.of("Authorization", "Idempotent-Replayed"));
         cfg.setAllowCredentials(true);
 
         UrlBasedCorsConfigurationSource source = new UrlBasedCorsConfigurationSource();
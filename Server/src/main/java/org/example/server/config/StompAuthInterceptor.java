@@ -1,6 +1,7 @@
 package org.example.server.config;
 
 import org.example.server.security.JwtService;
+import org.example.server.security.VerifiedToken;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -37,8 +38,9 @@ public class StompAuthInterceptor implements ChannelInterceptor {
             if (authHeader != null && authHeader.startsWith("Bearer ")) {
                 String token = authHeader.substring(7).trim();
                 try {
-                    String username = jwtService.extractUsername(token);
-                    if (username != null && jwtService.isValid(token, username)) {
+                    VerifiedToken verified = jwtService.verify(token).orElse(null);
+                    if (verified != null) {
+                        String username = verified.username();
                         UserDetails userDetails = userDetailsService.loadUserByUsername(username);
 
                         UsernamePasswordAuthenticationToken authentication =
@@ -1,9 +1,11 @@
 package org.example.server.controller;
 
 import lombok.RequiredArgsConstructor;
+import org.example.server.dto.PricingDtos;
 import org.example.server.entity.Cart;
 import org.example.server.entity.CartItem;
 import org.example.server.service.CartService;
+import org.example.server.service.PricingService;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
@@ -13,12 +15,19 @@ import org.springframework.web.bind.annotation.*;
 @RequiredArgsConstructor
 public class CartController {
     private final CartService cartService;
+    private final PricingService pricingService;
 
     @GetMapping
     public ResponseEntity<Cart> getMyCart(Authentication auth) {
         return ResponseEntity.ok(cartService.getCart(auth));
     }
 
+    // Báo giá giỏ hiện tại: mã nhập (nếu có) + khuyến mãi tự động + hạng thành viên, như lúc đặt đơn
+    @GetMapping("/pricing")
+    public ResponseEntity<PricingDtos.Quote> pricing(Authentication auth, @RequestParam(required = false) String code) {
+        return ResponseEntity.ok(pricingService.quoteCart(auth.getName(), code));
+    }
+
     @PostMapping("/items")
     public ResponseEntity<CartItem> addItem(Authentication auth, @RequestParam Long productId, @RequestParam(defaultValue = "1") int quantity) {
         return ResponseEntity.ok(cartService.addItem(auth, productId, Math.max(quantity, 1)));
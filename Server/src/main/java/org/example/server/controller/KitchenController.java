@@ -1,31 +1,41 @@
 package org.example.server.controller;
 
 import lombok.RequiredArgsConstructor;
-import org.example.server.entity.Order;
-import org.example.server.repository.OrderRepository;
+import org.example.server.dto.KitchenDtos.AggregateRow;
+import org.example.server.dto.KitchenDtos.BoardSnapshot;
+import org.example.server.dto.KitchenDtos.OrderView;
+import org.example.server.service.KitchenBoardService;
+import org.example.server.service.KitchenDispatcher;
 import org.example.server.service.OrderService;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
-import java.util.Map;
+import java.util.Set;
 
 @RestController
 @RequestMapping("/api/kitchen")
 @RequiredArgsConstructor
 public class KitchenController {
     private final OrderService  orderService;
-    private final OrderRepository orderRepository;
+    private final KitchenBoardService kitchenBoardService;
+    private final KitchenDispatcher kitchenDispatcher;
 
     @GetMapping("/orders")
-    public ResponseEntity<List<Order>> getKitchenOrders() {
-        return ResponseEntity.ok(orderService.getKitchenOrders());
+    public ResponseEntity<List<OrderView>> getKitchenOrders() {
+        return ResponseEntity.ok(kitchenBoardService.orders());
+    }
+
+    // Snapshot kèm seq: client dùng khi mới vào hoặc khi thấy hụt delta trên /topic/kitchen/board
+    @GetMapping("/board")
+    public ResponseEntity<BoardSnapshot> getBoard() {
+        return ResponseEntity.ok(kitchenBoardService.snapshot());
     }
 
     @GetMapping("/aggregated")
-    public ResponseEntity<List<Map<String, Object>>> getAggregatedItems() {
-        return ResponseEntity.ok(orderRepository.getKitchenAggregatedItems());
+    public ResponseEntity<List<AggregateRow>> getAggregatedItems() {
+        return ResponseEntity.ok(kitchenBoardService.aggregated());
     }
     @PutMapping("/items/{itemId}/status")
     public ResponseEntity<?> updateItemStatus(@PathVariable Long itemId, @RequestParam String status, Authentication auth) {
@@ -41,4 +51,18 @@ public class KitchenController {
         orderService.finishOrder(id, auth.getName());
         return ResponseEntity.ok().build();
     }
+
+    // Vào/ra ca: đầu bếp trong ca được chia món tự động, món giao riêng đẩy qua /topic/kitchen/chef/{username}
+    @PostMapping("/shift/join")
+    public ResponseEntity<Set<String>> joinShift(Authentication auth) {
+        return ResponseEntity.ok(kitchenDispatcher.join(auth.getName()));
+    }
+    @PostMapping("/shift/leave")
+    public ResponseEntity<Set<String>> leaveShift(Authentication auth) {
+        return ResponseEntity.ok(kitchenDispatcher.leave(auth.getName()));
+    }
+    @GetMapping("/shift")
+    public ResponseEntity<Set<String>> onDuty() {
+        return ResponseEntity.ok(kitchenDispatcher.onDuty());
+    }
 }
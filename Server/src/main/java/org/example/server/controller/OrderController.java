@@ -1,13 +1,19 @@
 package org.example.server.controller;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import lombok.RequiredArgsConstructor;
+import org.example.server.dto.OrderDtos;
 import org.example.server.entity.*;
+import org.example.server.service.AdminOrderQueryService;
+import org.example.server.service.IdempotencyService;
 import org.example.server.service.OrderService;
 import org.springframework.data.domain.Page;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
 
+import java.time.LocalDate;
 import java.util.List;
 import java.util.Map;
 
@@ -16,6 +22,8 @@ import java.util.Map;
 @RequiredArgsConstructor
 public class OrderController {
     private final OrderService orderService;
+    private final IdempotencyService idempotencyService;
+    private final AdminOrderQueryService adminOrderQueryService;
 
     public record PlaceOrderRequest(
             List<OrderItem> items,
@@ -24,18 +32,28 @@ public class OrderController {
             String promoCode
             ){}
 
+    // Client gửi kèm Idempotency-Key: retry trong TTL sẽ nhận lại đúng đơn đã tạo
     @PostMapping
-    public ResponseEntity<Order> placeOrder(Authentication auth, @RequestBody PlaceOrderRequest request) throws Exception {
-        return ResponseEntity.ok(orderService.placeOrder(auth.getName(),
-                request.items(),
-                request.promoCode(),
-                request.shippingInfo(),
-                request.paymentMethod()));
+    public ResponseEntity<JsonNode> placeOrder(Authentication auth,
+                                               @RequestHeader(value = IdempotencyService.HEADER, required = false) String idempotencyKey,
+                                               @RequestBody PlaceOrderRequest request) throws Exception {
+        var res = idempotencyService.execute("orders", auth.getName(), idempotencyKey, request,
+                () -> orderService.placeOrder(auth.getName(),
+                        request.items(),
+                        request.promoCode(),
+                        request.shippingInfo(),
+                        request.paymentMethod()));
+        return ResponseEntity.ok()
+                .header(IdempotencyService.REPLAYED_HEADER, String.valueOf(res.replayed()))
+                .body(res.body());
     }
 
+    // Lịch sử đơn theo cursor: gửi lại nextCursor để lấy trang tiếp theo
     @GetMapping("/my")
-    public ResponseEntity<List<Order>> getMyOrders(Authentication auth) {
-        return ResponseEntity.ok(orderService.getUserOrders(auth.getName()));
+    public ResponseEntity<OrderDtos.OrderPage> getMyOrders(Authentication auth,
+                                                           @RequestParam(required = false) String cursor,
+                                                           @RequestParam(defaultValue = "20") int limit) {
+        return ResponseEntity.ok(orderService.getUserOrders(auth.getName(), cursor, limit));
     }
 
     @GetMapping("/{id}")
@@ -43,11 +61,17 @@ public class OrderController {
         return ResponseEntity.ok(orderService.getOne(auth, id));
     }
 
+    // Admin: lọc theo trạng thái, khoảng ngày (yyyy-MM-dd, tính cả ngày "to") và phương thức thanh toán
     @GetMapping
     public ResponseEntity<Page<Order>> getAllOrders(
             @RequestParam(defaultValue = "0") int page,
-            @RequestParam(defaultValue = "10") int size) {
-        return ResponseEntity.ok(orderService.getAllOrders(page, size));
+            @RequestParam(defaultValue = "10") int size,
+            @RequestParam(required = false) String status,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(required = false) String paymentMethod) {
+        var filter = new AdminOrderQueryService.Filter(status, from, to, paymentMethod);
+        return ResponseEntity.ok(adminOrderQueryService.findOrders(filter, page, size));
     }
 
     @PutMapping("/{id}/status")
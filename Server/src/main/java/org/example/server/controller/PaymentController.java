@@ -1,29 +1,44 @@
 package org.example.server.controller;
 
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.example.server.service.IdempotencyService;
 import org.example.server.service.PaymentService;
+import org.example.server.service.PaymentWebhookWorker;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
 
 @RestController
 @RequestMapping("/api/payments")
 public class PaymentController {
     private final PaymentService paymentService;
+    private final IdempotencyService idempotencyService;
+    private final PaymentWebhookWorker webhookWorker;
 
-    public PaymentController(PaymentService paymentService) {
+    public PaymentController(PaymentService paymentService, IdempotencyService idempotencyService,
+                             PaymentWebhookWorker webhookWorker) {
         this.paymentService = paymentService;
+        this.idempotencyService = idempotencyService;
+        this.webhookWorker = webhookWorker;
     }
 
+    // Retry with the same Idempotency-Key returns the stored checkout URL instead of calling PayOS again
     @PostMapping("/create/{orderId}")
-    public ResponseEntity<String> createPayment(@PathVariable Long orderId) throws Exception {
-        String paymentUrl = paymentService.createPaymentLink(orderId);
-        return ResponseEntity.ok(paymentUrl);
+    public ResponseEntity<String> createPayment(Authentication auth,
+                                                @RequestHeader(value = IdempotencyService.HEADER, required = false) String idempotencyKey,
+                                                @PathVariable Long orderId) throws Exception {
+        var res = idempotencyService.execute("payments:" + orderId, auth != null ? auth.getName() : null, idempotencyKey, orderId,
+                () -> paymentService.createPaymentLink(orderId));
+        return ResponseEntity.ok()
+                .header(IdempotencyService.REPLAYED_HEADER, String.valueOf(res.replayed()))
+                .body(res.body().asText());
     }
 
     // S?a l?i: Nh?n ObjectNode d? trnh l?i "cannot find symbol class Webhook"
     @PostMapping("/webhook")
+    // Stored and acknowledged here; PaymentWebhookWorker applies it off the request thread
     public ResponseEntity<String> handleWebhook(@RequestBody ObjectNode webhookBody) throws Exception {
-        paymentService.handleWebhook(webhookBody);
+        webhookWorker.submit(paymentService.receiveWebhook(webhookBody));
         return ResponseEntity.ok("Webhook received");
     }
 }
\ No newline at end of file
@@ -1,15 +1,28 @@
 package org.example.server.controller;
 
 import lombok.RequiredArgsConstructor;
+import org.example.server.dto.ProductView;
 import org.example.server.entity.Product;
+import org.example.server.search.FacetIndex;
+import org.example.server.search.SalesRanking;
+import org.example.server.search.SuggestIndex;
+import org.example.server.service.CatalogSnapshotService;
+import org.example.server.service.CoPurchaseService;
+import org.example.server.service.ProductSearchService;
 import org.example.server.service.ProductService;
 import org.springframework.data.domain.Page;
+import org.springframework.http.CacheControl;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
+import java.time.Duration;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 @RestController
 @RequestMapping("/api/products")
@@ -17,6 +30,9 @@ import java.util.Map;
 @Transactional(readOnly = true)
 public class ProductController {
     private final ProductService productService;
+    private final CatalogSnapshotService catalogSnapshotService;
+    private final ProductSearchService productSearchService;
+    private final CoPurchaseService coPurchaseService;
 
     // Admin lấy tất cả
     @GetMapping
@@ -25,14 +41,25 @@ public class ProductController {
     }
 
     // API Mới: Khách lấy list (chỉ Active)
+    // Trả JSON dựng sẵn + ETag; client gửi If-None-Match trùng thì nhận 304, không serialize lại
+    // Không giữ connection: cache hit không cần DB, cache miss tự mở transaction riêng khi dựng
     @GetMapping("/public")
-    public ResponseEntity<List<Product>> getPublicProducts() {
-        return ResponseEntity.ok(productService.getPublicProducts());
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public ResponseEntity<byte[]> getPublicProducts(WebRequest request) {
+        CatalogSnapshotService.CatalogSnapshot snapshot = catalogSnapshotService.current();
+        if (request.checkNotModified(snapshot.etag())) {
+            return null;
+        }
+        return ResponseEntity.ok()
+                .eTag(snapshot.etag())
+                .cacheControl(CacheControl.noCache())
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(snapshot.json());
     }
 
     @GetMapping("/{id}")
-    public ResponseEntity<Product> getProductById(@PathVariable Long id) {
-        return ResponseEntity.ok(productService.getProductById(id));
+    public ResponseEntity<ProductView> getProductById(@PathVariable Long id) {
+        return ResponseEntity.ok(productService.getProductView(id));
     }
 
     @PostMapping
@@ -70,14 +97,65 @@ public class ProductController {
             @RequestParam(defaultValue = "20") int limit,
             @RequestParam(defaultValue = "false") boolean isAdmin // Thêm cờ isAdmin
     ) {
-        Page<Product> pg = productService.search(categoryId, q, page, limit, isAdmin);
+        Page<ProductView> pg = productSearchService.search(categoryId, q, page, limit, isAdmin);
         return ResponseEntity.ok(Map.of(
                 "items", pg.getContent(),
                 "total", pg.getTotalElements()
         ));
     }
+
+    // Duyệt món kèm số đếm facet (danh mục, khoảng giá, calo, protein) trong 1 lần gọi.
+    // price/calories/protein là chỉ số khoảng lấy từ chính phần facets trả về; được chọn nhiều giá trị.
+    @GetMapping("/browse")
+    public ResponseEntity<Map<String, Object>> browse(
+            @RequestParam(required = false) String q,
+            @RequestParam(required = false) Set<Long> categoryId,
+            @RequestParam(required = false) Set<Integer> price,
+            @RequestParam(required = false) Set<Integer> calories,
+            @RequestParam(required = false) Set<Integer> protein,
+            @RequestParam(defaultValue = "1") int page,
+            @RequestParam(defaultValue = "20") int limit
+    ) {
+        FacetIndex.Filter filter = new FacetIndex.Filter(orEmpty(categoryId), orEmpty(price), orEmpty(calories), orEmpty(protein));
+        ProductSearchService.BrowseResult result = productSearchService.browse(q, filter, page, limit);
+        return ResponseEntity.ok(Map.of(
+                "items", result.page().getContent(),
+                "total", result.page().getTotalElements(),
+                "facets", result.facets()
+        ));
+    }
+
+    private static <T> Set<T> orEmpty(Set<T> values) {
+        return values == null ? Set.of() : values;
+    }
+
+    // Gợi ý khi đang gõ: đọc trie trong bộ nhớ, không mở transaction / connection
+    @GetMapping("/suggest")
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public ResponseEntity<List<SuggestIndex.Suggestion>> suggest(
+            @RequestParam(defaultValue = "") String q,
+            @RequestParam(defaultValue = "8") int limit
+    ) {
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.maxAge(Duration.ofSeconds(30)).cachePublic())
+                .body(productSearchService.suggest(q, limit));
+    }
+
+    // "Khách gọi món này cũng hay gọi" (chỉ món đang bán)
+    @GetMapping("/{id}/also-ordered")
+    public ResponseEntity<List<ProductView>> alsoOrdered(@PathVariable Long id,
+                                                     @RequestParam(defaultValue = "6") int limit) {
+        List<Long> ids = coPurchaseService.alsoOrdered(id, Math.min(Math.max(limit, 0), 20) * 2);
+        List<ProductView> products = productSearchService.findAllInOrder(ids).stream()
+                .filter(p -> Boolean.TRUE.equals(p.active()))
+                .limit(Math.max(limit, 0))
+                .toList();
+        return ResponseEntity.ok(products);
+    }
+
     @GetMapping("/top")
-    public ResponseEntity<List<Product>> getTopProducts(@RequestParam(defaultValue = "8") int limit) {
-        return ResponseEntity.ok(productService.getTopSellingProducts(limit));
+    public ResponseEntity<List<ProductView>> getTopProducts(@RequestParam(defaultValue = "8") int limit,
+                                                       @RequestParam(defaultValue = "all") String window) {
+        return ResponseEntity.ok(productService.getTopSellingProducts(limit, SalesRanking.Window.parse(window)));
     }
 }
\ No newline at end of file
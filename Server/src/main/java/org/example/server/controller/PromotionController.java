@@ -1,13 +1,23 @@
 package org.example.server.controller;
 
 import lombok.RequiredArgsConstructor;
-import org.example.server.entity.OrderItem;
-import org.example.server.entity.Product;
+import org.example.server.dto.CouponDtos;
 import org.example.server.entity.Promotion;
+import org.example.server.search.PromotionRules;
+import org.example.server.service.CouponService;
+import org.example.server.service.ProductSearchService;
 import org.example.server.service.PromotionService;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.BufferedWriter;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 
 import java.util.*;
 
@@ -17,13 +27,16 @@ import java.util.*;
 public class PromotionController {
 
     private final PromotionService promotionService;
+    private final ProductSearchService productSearchService;
+    private final CouponService couponService;
 
     @PostMapping("/preview")
     public ResponseEntity<?> preview(@RequestBody Map<String, Object> body) {
         String code = String.valueOf(body.getOrDefault("code", ""));
         List<Map<String,Object>> itemsMap = (List<Map<String,Object>>) body.getOrDefault("items", List.of());
 
-        List<OrderItem> list = new ArrayList<>();
+        // Giá / danh mục lấy từ catalog trong bộ nhớ: xem trước không query DB
+        List<PromotionRules.Line> list = new ArrayList<>();
         for (Map<String,Object> m : itemsMap) {
             Object pidObj = m.get("productId");
             // Bỏ qua nếu không có productId
@@ -32,9 +45,8 @@ public class PromotionController {
             Long pid = Long.valueOf(String.valueOf(pidObj));
             Integer q  = Integer.valueOf(String.valueOf(m.getOrDefault("quantity", 1)));
 
-            Product p  = new Product(); p.setId(pid);
-            OrderItem oi = OrderItem.builder().product(p).quantity(q).build();
-            list.add(oi);
+            productSearchService.price(pid).ifPresent(p ->
+                    list.add(new PromotionRules.Line(p.id(), p.categoryId(), p.price(), q)));
         }
 
         var res = promotionService.preview(code, list);
@@ -44,7 +56,7 @@ public class PromotionController {
         Map<String, Object> response = new HashMap<>();
         response.put("discount", res.discount());
         response.put("message", res.message());
-        response.put("code", res.promotion() != null ? res.promotion().getCode() : null);
+        response.put("code", res.rule() != null ? res.rule().code() : null);
 
         return ResponseEntity.ok(response);
     }
@@ -70,4 +82,27 @@ public class PromotionController {
         promotionService.delete(id);
         return ResponseEntity.noContent().build();
     }
-}
\ No newline at end of file
+
+    // Sinh thêm count mã dùng 1 lần cho lô coupon (khuyến mãi có couponBatch = true)
+    @PostMapping("/{id}/coupons")
+    public ResponseEntity<CouponDtos.BatchResult> generateCoupons(@PathVariable Long id,
+                                                                  @RequestParam int count,
+                                                                  @RequestParam(required = false) String prefix) {
+        return ResponseEntity.ok(couponService.generate(id, count, prefix));
+    }
+
+    // CSV ghi thẳng ra response theo từng trang, không dựng cả lô trong bộ nhớ
+    @GetMapping(value = "/{id}/coupons/export", produces = "text/csv")
+    public ResponseEntity<StreamingResponseBody> exportCoupons(@PathVariable Long id) {
+        couponService.requireBatch(id);
+        StreamingResponseBody body = out -> {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 64 * 1024);
+            couponService.export(id, writer);
+            writer.flush();
+        };
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"coupons-" + id + ".csv\"")
+                .contentType(new MediaType("text", "csv", StandardCharsets.UTF_8))
+                .body(body);
+    }
+}
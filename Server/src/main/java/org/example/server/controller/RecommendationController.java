@@ -1,14 +1,19 @@
 package org.example.server.controller;
 
 import lombok.RequiredArgsConstructor;
-import org.example.server.entity.Product;
+import org.example.server.dto.MealPlanDtos.MealPlanResponse;
+import org.example.server.dto.ProductView;
+import org.example.server.service.MealPlanService;
 import org.example.server.service.RecommendationService;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.math.BigDecimal;
 import java.util.List;
 
 @RestController
@@ -17,12 +22,23 @@ import java.util.List;
 public class RecommendationController {
 
     private final RecommendationService recommendationService;
+    private final MealPlanService mealPlanService;
 
     @GetMapping
-    public ResponseEntity<List<Product>> getRecommendations(Authentication auth) {
+    public ResponseEntity<List<ProductView>> getRecommendations(Authentication auth) {
         if (auth == null) {
             return ResponseEntity.ok(List.of());
         }
         return ResponseEntity.ok(recommendationService.getRecommendedProducts(auth));
     }
-}
\ No newline at end of file
+
+    // Thực đơn cả ngày theo hồ sơ dinh dưỡng; budget (VND) tuỳ chọn
+    @GetMapping("/meal-plan")
+    public ResponseEntity<MealPlanResponse> getMealPlan(Authentication auth,
+                                                        @RequestParam(required = false) BigDecimal budget) {
+        if (auth == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        return ResponseEntity.ok(mealPlanService.plan(auth, budget));
+    }
+}
@@ -0,0 +1,6 @@
+package org.example.server.dto;
+
+public class CouponDtos {
+    // generated có thể < requested nếu bị dừng giữa chừng; totalCodes = tổng số mã hiện có của lô
+    public record BatchResult(Long promotionId, int requested, int generated, long totalCodes, long tookMs) {}
+}
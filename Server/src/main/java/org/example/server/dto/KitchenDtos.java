@@ -0,0 +1,29 @@
+package org.example.server.dto;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+public class KitchenDtos {
+    public record UserRef(Long id, String username) {}
+    public record ProductRef(Long id, String name, String imageUrl) {}
+
+    // Giữ cấu trúc JSON giống Order entity cũ (user.username, items[].product.name, items[].chef.username)
+    public record ItemView(Long id, int quantity, String status, UserRef chef, ProductRef product) {}
+    public record OrderView(Long id, String status, LocalDateTime createdAt, UserRef user, List<ItemView> items) {}
+
+    public record BoardSnapshot(long seq, List<OrderView> orders) {}
+
+    // type: ORDER_ADDED, ORDER_REMOVED, ORDER_STATUS, ITEM_UPDATED
+    public record BoardDelta(long seq, String type, Long orderId, String orderStatus,
+                             Long itemId, String itemStatus, UserRef chef, OrderView order) {}
+
+    // Số phần cần nấu theo món (cùng key JSON với query GROUP BY cũ)
+    public record AggregateRow(Long productId, String productName, long totalQuantity) {}
+
+    // Chỉ các món có số lượng thay đổi; totalQuantity = 0 nghĩa là bỏ món khỏi danh sách
+    public record AggregateUpdate(long seq, List<AggregateRow> changed) {}
+
+    // Mẻ được giao cho 1 đầu bếp (đẩy qua /topic/kitchen/chef/{username})
+    public record ChefAssignment(Long productId, String productName, int portions, int minutes,
+                                 List<Long> itemIds, List<Long> orderIds) {}
+}
@@ -0,0 +1,15 @@
+package org.example.server.dto;
+
+
+import java.math.BigDecimal;
+import java.util.List;
+
+public class MealPlanDtos {
+    public record Macros(double calories, double protein, double carbs, double fat) {}
+
+    public record PlanItem(ProductView product, int quantity) {}
+
+    // optimal = bộ giải đã duyệt hết trong thời gian cho phép; false là lời giải tốt nhất tìm được tới lúc dừng
+    public record MealPlanResponse(Macros target, Macros total, BigDecimal totalPrice, BigDecimal budget,
+                                   List<PlanItem> items, boolean optimal) {}
+}
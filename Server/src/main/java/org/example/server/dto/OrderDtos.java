@@ -0,0 +1,10 @@
+package org.example.server.dto;
+
+import org.example.server.entity.Order;
+
+import java.util.List;
+
+public class OrderDtos {
+    // Trang lịch sử đơn theo cursor: nextCursor = null khi đã hết
+    public record OrderPage(List<Order> items, String nextCursor) {}
+}
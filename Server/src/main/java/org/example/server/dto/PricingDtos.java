@@ -0,0 +1,13 @@
+package org.example.server.dto;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+public class PricingDtos {
+    // kind: CODE (mã khách nhập), COUPON (mã dùng 1 lần của lô coupon), AUTO (khuyến mãi tự động), MEMBER (hạng thành viên)
+    public record AppliedDiscount(String kind, Long promotionId, String code, String name, BigDecimal amount) {}
+
+    // Cùng 1 kết quả cho giỏ hàng và lúc đặt đơn; codeMessage = kết quả của mã nhập (null nếu không nhập)
+    public record Quote(BigDecimal subtotal, List<AppliedDiscount> discounts, BigDecimal discount, BigDecimal total,
+                        String memberTier, String codeMessage) {}
+}
@@ -0,0 +1,38 @@
+package org.example.server.dto;
+
+import org.example.server.entity.Category;
+import org.example.server.entity.Product;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * Món cho các API đọc công khai: chỉ các cột cần hiển thị, lấy thẳng bằng constructor expression trong JPQL
+ * (không dựng entity, không proxy, không lazy load cartItems/orderItems).
+ * Giữ đủ và đúng thứ tự các key JSON của Product cũ (kể cả category.description, createdAt, updatedAt)
+ * để client không phải đổi.
+ */
+public record ProductView(Long id, String name, String description, BigDecimal price, Integer stock, Boolean active,
+                          CategoryRef category, String imageUrl, Integer calories, Double protein, Double carbs,
+                          Double fat, Integer prepTimeMinutes, LocalDateTime createdAt, LocalDateTime updatedAt) {
+
+    public record CategoryRef(Long id, String name, String description) {}
+
+    // Dùng trong JPQL: SELECT new ...ProductView(p.id, ..., c.id, c.name, c.description, ...)
+    public ProductView(Long id, String name, String description, BigDecimal price, Integer stock, Boolean active,
+                       Long categoryId, String categoryName, String categoryDescription, String imageUrl,
+                       Integer calories, Double protein, Double carbs, Double fat, Integer prepTimeMinutes,
+                       LocalDateTime createdAt, LocalDateTime updatedAt) {
+        this(id, name, description, price, stock, active,
+                categoryId == null ? null : new CategoryRef(categoryId, categoryName, categoryDescription),
+                imageUrl, calories, protein, carbs, fat, prepTimeMinutes, createdAt, updatedAt);
+    }
+
+    public static ProductView of(Product p) {
+        Category c = p.getCategory();
+        return new ProductView(p.getId(), p.getName(), p.getDescription(), p.getPrice(), p.getStock(), p.getActive(),
+                c == null ? null : new CategoryRef(c.getId(), c.getName(), c.getDescription()),
+                p.getImageUrl(), p.getCalories(), p.getProtein(), p.getCarbs(), p.getFat(), p.getPrepTimeMinutes(),
+                p.getCreatedAt(), p.getUpdatedAt());
+    }
+}
@@ -0,0 +1,36 @@
+package org.example.server.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * 1 mã dùng 1 lần của lô coupon (khuyến mãi cha có couponBatch = true).
+ * Khoá chính là băm 64-bit của mã đã chuẩn hoá: tra mã = 1 lần tìm trên khoá BIGINT, không so chuỗi theo collation.
+ */
+@Entity
+@Table(name = "coupon_codes", indexes = {
+        @Index(name = "idx_coupon_promotion", columnList = "promotion_id"),
+        @Index(name = "idx_coupon_order", columnList = "redeemed_order_id")
+})
+@Getter @Setter
+@NoArgsConstructor @AllArgsConstructor @Builder
+public class CouponCode {
+    @Id
+    @Column(name = "code_hash")
+    private Long codeHash;
+
+    @Column(name = "promotion_id", nullable = false)
+    private Long promotionId;
+
+    @Column(nullable = false, length = 20)
+    private String code;
+
+    // null = chưa dùng
+    @Column(name = "redeemed_order_id")
+    private Long redeemedOrderId;
+
+    @Column(name = "redeemed_at")
+    private LocalDateTime redeemedAt;
+}
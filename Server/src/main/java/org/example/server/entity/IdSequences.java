@@ -0,0 +1,35 @@
+package org.example.server.entity;
+
+import java.util.Map;
+
+/**
+ * Id cấp theo khối từ bảng id_sequences (TableGenerator + optimizer pooled) thay cho AUTO_INCREMENT:
+ * Hibernate biết id trước khi INSERT nên gom được INSERT vào batch JDBC (IDENTITY buộc INSERT ngay từng dòng).
+ * Mỗi instance giữ 1 khối ALLOCATION id trong bộ nhớ, chỉ chạm bảng id_sequences 1 lần mỗi khối.
+ */
+public final class IdSequences {
+
+    public static final String TABLE = "id_sequences";
+    public static final String NAME_COLUMN = "seq_name";
+    public static final String VALUE_COLUMN = "next_val";
+    public static final int ALLOCATION = 50;
+
+    public static final String ORDERS = "orders";
+    public static final String ORDER_ITEMS = "order_items";
+    public static final String SHIPPING_INFO = "shipping_info";
+    public static final String NOTIFICATIONS = "notifications";
+    public static final String MESSAGES = "messages";
+    public static final String PAYMENTS = "payments";
+
+    /** Tên dòng trong id_sequences -> bảng dữ liệu dùng dòng đó (để đồng bộ với MAX(id) đã có). */
+    public static final Map<String, String> TABLES = Map.of(
+            ORDERS, "orders",
+            ORDER_ITEMS, "order_items",
+            SHIPPING_INFO, "shipping_info",
+            NOTIFICATIONS, "notifications",
+            MESSAGES, "messages",
+            PAYMENTS, "payments");
+
+    private IdSequences() {
+    }
+}
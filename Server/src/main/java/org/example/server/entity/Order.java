@@ -1,5 +1,6 @@
 package org.example.server.entity;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonManagedReference;
 import jakarta.persistence.*;
@@ -12,12 +13,19 @@ import java.util.ArrayList;
 import java.util.List;
 
 @Entity
-@Table(name = "orders")
+@Table(name = "orders", indexes = {
+        @Index(name = "idx_orders_user_created", columnList = "user_id, created_at, id"),
+        @Index(name = "idx_orders_created", columnList = "created_at, id"),
+        @Index(name = "idx_orders_status_created", columnList = "status, created_at")
+})
 @Getter @Setter
 @NoArgsConstructor @AllArgsConstructor @Builder
 public class Order {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "orders_id")
+    @TableGenerator(name = "orders_id", table = IdSequences.TABLE,
+            pkColumnName = IdSequences.NAME_COLUMN, valueColumnName = IdSequences.VALUE_COLUMN,
+            pkColumnValue = IdSequences.ORDERS, allocationSize = IdSequences.ALLOCATION)
     private Long id;
 
     private BigDecimal total;
@@ -31,6 +39,19 @@ public class Order {
 
     private String promotionCode;
 
+    // Đã cộng vào ma trận "hay gọi cùng" chưa (mỗi đơn DONE chỉ được đếm 1 lần)
+    @Column(name = "co_purchase_counted")
+    private Boolean coPurchaseCounted;
+
+    // Đã cộng vào bảng xếp hạng bán chạy (product_sales) chưa
+    @Column(name = "sales_counted")
+    private Boolean salesCounted;
+
+    // Đã gửi mail xác nhận chưa: ghi trước khi gửi để outbox retry không gửi lần 2
+    @Column(name = "confirmation_email_sent_at")
+    @JsonIgnore
+    private LocalDateTime confirmationEmailSentAt;
+
     private LocalDateTime createdAt;
     private LocalDateTime updatedAt;
 
@@ -41,7 +62,7 @@ public class Order {
 
     @OneToMany(mappedBy = "order", cascade = CascadeType.ALL, orphanRemoval = true)
     @JsonManagedReference("order-item")
-    @BatchSize(size = 20)
+    @BatchSize(size = 50)
     private List<OrderItem> items = new ArrayList<>();
 
     @OneToOne(cascade = CascadeType.ALL, orphanRemoval = true)
@@ -12,7 +12,10 @@ import java.math.BigDecimal;
 @NoArgsConstructor @AllArgsConstructor @Builder
 public class OrderItem {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "order_items_id")
+    @TableGenerator(name = "order_items_id", table = IdSequences.TABLE,
+            pkColumnName = IdSequences.NAME_COLUMN, valueColumnName = IdSequences.VALUE_COLUMN,
+            pkColumnValue = IdSequences.ORDER_ITEMS, allocationSize = IdSequences.ALLOCATION)
     private Long id;
 
     private int quantity;
@@ -0,0 +1,50 @@
+package org.example.server.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "outbox_events", indexes = {
+        @Index(name = "idx_outbox_status_id", columnList = "status, id")
+})
+@Getter @Setter
+@NoArgsConstructor @AllArgsConstructor @Builder
+public class OutboxEvent {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    // NEW_ORDER_NOTIFY, ORDER_CONFIRMATION_EMAIL, PROMOTION_USAGE, CART_CLEAR
+    @Column(nullable = false, length = 50)
+    private String type;
+
+    // Id đơn hàng -> các event cùng đơn được xử lý đúng thứ tự
+    private Long aggregateId;
+
+    @Column(columnDefinition = "TEXT")
+    private String payload;
+
+    @Builder.Default
+    @Column(nullable = false, length = 20)
+    private String status = "PENDING"; // PENDING, DONE, FAILED
+
+    @Builder.Default
+    private Integer attempts = 0;
+
+    private LocalDateTime nextAttemptAt;
+
+    @Column(length = 1000)
+    private String lastError;
+
+    private LocalDateTime createdAt;
+    private LocalDateTime processedAt;
+
+    @PrePersist
+    void prePersist() {
+        createdAt = LocalDateTime.now();
+        if (status == null) status = "PENDING";
+        if (attempts == null) attempts = 0;
+    }
+}
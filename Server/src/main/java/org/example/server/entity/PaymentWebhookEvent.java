@@ -0,0 +1,49 @@
+package org.example.server.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * Webhook PayOS đã kiểm chữ ký, lưu nguyên văn trước khi xử lý.
+ * Khoá duy nhất (order_code, code): PayOS gửi lại cùng 1 event thì chỉ có 1 dòng, không áp 2 lần.
+ */
+@Entity
+@Table(name = "payment_webhook_events",
+        uniqueConstraints = @UniqueConstraint(name = "uk_webhook_order_code", columnNames = {"order_code", "code"}),
+        indexes = @Index(name = "idx_webhook_status_order", columnList = "status, order_code"))
+@Getter @Setter
+@NoArgsConstructor @AllArgsConstructor @Builder
+public class PaymentWebhookEvent {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "order_code", nullable = false)
+    private Long orderCode;
+
+    // Mã kết quả của PayOS: "00" = thành công
+    @Column(nullable = false, length = 10)
+    private String code;
+
+    private String description;
+
+    @Column(columnDefinition = "TEXT")
+    private String payload;
+
+    @Builder.Default
+    @Column(nullable = false, length = 20)
+    private String status = "PENDING"; // PENDING, DONE, FAILED
+
+    @Builder.Default
+    private Integer attempts = 0;
+
+    private LocalDateTime nextAttemptAt;
+
+    @Column(length = 1000)
+    private String lastError;
+
+    private LocalDateTime receivedAt;
+    private LocalDateTime processedAt;
+}
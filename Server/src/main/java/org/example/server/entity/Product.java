@@ -4,6 +4,7 @@ import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import jakarta.persistence.*;
 import lombok.*;
+import org.hibernate.annotations.BatchSize;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
@@ -18,6 +19,7 @@ import java.util.List;
 @AllArgsConstructor
 @Builder
 @JsonIgnoreProperties({"hibernateLazyInitializer","handler"})
+@BatchSize(size = 50)
 public class Product {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -58,6 +60,10 @@ public class Product {
     @Column(name = "fat")
     private Double fat;
 
+    // Thời gian chế biến 1 phần (phút), dùng để chia việc cho bếp
+    @Column(name = "prep_time_minutes")
+    private Integer prepTimeMinutes;
+
     @OneToMany(mappedBy = "product")
     @JsonIgnore
     private List<CartItem> cartItems = new ArrayList<>();
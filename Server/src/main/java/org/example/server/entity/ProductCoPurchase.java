@@ -0,0 +1,29 @@
+package org.example.server.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+/**
+ * Số đơn DONE chứa cả 2 món (productId <= otherId). Dòng productId == otherId là số đơn chứa món đó.
+ * Dùng để nạp lại ma trận gợi ý "hay gọi cùng" khi khởi động mà không phải quét lại lịch sử đơn.
+ */
+@Entity
+@Table(name = "product_co_purchases", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_co_purchase_pair", columnNames = {"product_id", "other_id"})
+})
+@Getter @Setter
+@NoArgsConstructor @AllArgsConstructor @Builder
+public class ProductCoPurchase {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "product_id", nullable = false)
+    private Long productId;
+
+    @Column(name = "other_id", nullable = false)
+    private Long otherId;
+
+    @Column(name = "co_count", nullable = false)
+    private Long coCount;
+}
@@ -0,0 +1,26 @@
+package org.example.server.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * Tổng số phần đã bán (đơn DONE) của 1 món, cộng dần khi đơn hoàn thành thay vì SUM lại order_items.
+ * Tách khỏi bảng products để việc lưu món (admin sửa giá, tồn kho) không ghi đè số đếm.
+ */
+@Entity
+@Table(name = "product_sales")
+@Getter @Setter
+@NoArgsConstructor @AllArgsConstructor @Builder
+public class ProductSales {
+    @Id
+    @Column(name = "product_id")
+    private Long productId;
+
+    @Column(name = "sold_total", nullable = false)
+    private Long soldTotal;
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+}
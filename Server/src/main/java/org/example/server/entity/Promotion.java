@@ -46,6 +46,12 @@ public class Promotion {
 
     private Boolean active = true;
 
+    // Cộng dồn được với khuyến mãi khác và hạng thành viên; false = độc quyền (chỉ áp riêng nó). null coi như true
+    private Boolean stackable;
+
+    // true = lô mã dùng 1 lần (bảng coupon_codes); khách nhập mã con, không dùng code của khuyến mãi cha
+    private Boolean couponBatch;
+
     private LocalDateTime startAt;  // có thể null
     private LocalDateTime endAt;    // có thể null
 
@@ -0,0 +1,36 @@
+package org.example.server.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+/** Lượt dùng khuyến mãi đã giữ cho 1 đơn và shard đã trừ, để trả đúng chỗ khi huỷ đơn / thanh toán thất bại. */
+@Entity
+@Table(name = "promotion_redemptions")
+@IdClass(PromotionRedemption.Key.class)
+@Getter @Setter
+@NoArgsConstructor @AllArgsConstructor @Builder
+public class PromotionRedemption {
+    @Id
+    @Column(name = "order_id")
+    private Long orderId;
+
+    @Id
+    @Column(name = "promotion_id")
+    private Long promotionId;
+
+    @Column(nullable = false)
+    private Integer shard;
+
+    @Column(name = "created_at")
+    private LocalDateTime createdAt;
+
+    @Data
+    @NoArgsConstructor @AllArgsConstructor
+    public static class Key implements Serializable {
+        private Long orderId;
+        private Long promotionId;
+    }
+}
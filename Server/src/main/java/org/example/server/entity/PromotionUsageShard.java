@@ -0,0 +1,39 @@
+package org.example.server.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.io.Serializable;
+
+/**
+ * 1 phần của bộ đếm lượt dùng khuyến mãi. maxUses được chia cho các shard (tổng capacity = maxUses),
+ * mỗi lượt dùng là 1 câu UPDATE có điều kiện used_count < capacity trên 1 shard,
+ * nên các đơn cùng mã khoá các dòng khác nhau thay vì xếp hàng trên 1 dòng promotions.
+ */
+@Entity
+@Table(name = "promotion_usage_shards")
+@IdClass(PromotionUsageShard.Key.class)
+@Getter @Setter
+@NoArgsConstructor @AllArgsConstructor @Builder
+public class PromotionUsageShard {
+    @Id
+    @Column(name = "promotion_id")
+    private Long promotionId;
+
+    @Id
+    private Integer shard;
+
+    @Column(name = "used_count", nullable = false)
+    private Integer usedCount;
+
+    // Integer.MAX_VALUE = không giới hạn (maxUses null)
+    @Column(nullable = false)
+    private Integer capacity;
+
+    @Data
+    @NoArgsConstructor @AllArgsConstructor
+    public static class Key implements Serializable {
+        private Long promotionId;
+        private Integer shard;
+    }
+}
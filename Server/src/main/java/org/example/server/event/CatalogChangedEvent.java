@@ -0,0 +1,17 @@
+package org.example.server.event;
+
+/**
+ * Phát ra khi món hoặc danh mục thay đổi (tạo, sửa, ẩn/hiện, xoá).
+ * Các listener (snapshot catalog, chỉ mục tìm kiếm...) xử lý sau khi transaction commit.
+ * Chỉ 1 trong 2 id có giá trị.
+ */
+public record CatalogChangedEvent(Long productId, Long categoryId) {
+
+    public static CatalogChangedEvent product(Long productId) {
+        return new CatalogChangedEvent(productId, null);
+    }
+
+    public static CatalogChangedEvent category(Long categoryId) {
+        return new CatalogChangedEvent(null, categoryId);
+    }
+}
@@ -0,0 +1,8 @@
+package org.example.server.event;
+
+/**
+ * Phát ra khi trạng thái đơn hoặc món trong đơn thay đổi.
+ * Các listener (bảng bếp, thống kê...) nhận sau khi transaction commit.
+ */
+public record OrderChangedEvent(Long orderId) {
+}
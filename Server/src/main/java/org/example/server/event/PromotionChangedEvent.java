@@ -0,0 +1,8 @@
+package org.example.server.event;
+
+/**
+ * Phát ra khi khuyến mãi được tạo, sửa, xoá hoặc tăng lượt dùng.
+ * Bộ luật khuyến mãi trong bộ nhớ nạp lại đúng khuyến mãi đó sau khi transaction commit.
+ */
+public record PromotionChangedEvent(Long promotionId) {
+}
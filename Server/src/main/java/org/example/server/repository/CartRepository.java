@@ -3,8 +3,11 @@ package org.example.server.repository;
 import org.example.server.entity.Cart;
 import org.example.server.entity.User;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.util.Collection;
 import java.util.Optional;
 
 public interface CartRepository extends JpaRepository<Cart, Long> {
@@ -18,4 +21,10 @@ public interface CartRepository extends JpaRepository<Cart, Long> {
     Optional<Cart> findByUsernameWithItemsAndProduct(String username);
 
     Optional<Cart> findByUser(User user);
+
+    // Bỏ khỏi giỏ đúng các sản phẩm vừa đặt (1 câu DELETE, chạy trong transaction đặt đơn)
+    @Modifying
+    @Query("delete from CartItem i where i.cart.id in (select c.id from Cart c where c.user = :user) " +
+            "and i.product.id in :productIds")
+    int deleteItemsByUserAndProductIdIn(@Param("user") User user, @Param("productIds") Collection<Long> productIds);
 }
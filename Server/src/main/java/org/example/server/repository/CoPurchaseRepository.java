@@ -0,0 +1,58 @@
+package org.example.server.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.example.server.search.CoPurchaseGraph.Pair;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SortedMap;
+
+@Repository
+@RequiredArgsConstructor
+public class CoPurchaseRepository {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private static final String UNCOUNTED_SQL =
+            "SELECT id FROM orders WHERE status = 'DONE' AND (co_purchase_counted IS NULL OR co_purchase_counted = FALSE) " +
+            "ORDER BY id LIMIT ?";
+    private static final String MARK_SQL =
+            "UPDATE orders SET co_purchase_counted = TRUE " +
+            "WHERE id = ? AND status = 'DONE' AND (co_purchase_counted IS NULL OR co_purchase_counted = FALSE)";
+    private static final String ORDER_PRODUCTS_SQL =
+            "SELECT DISTINCT product_id FROM order_items WHERE order_id = ? AND product_id IS NOT NULL";
+    private static final String UPSERT_SQL =
+            "INSERT INTO product_co_purchases (product_id, other_id, co_count) VALUES (?, ?, ?) " +
+            "ON DUPLICATE KEY UPDATE co_count = co_count + VALUES(co_count)";
+    private static final String LOAD_SQL =
+            "SELECT product_id, other_id, co_count FROM product_co_purchases";
+
+    /** Đơn DONE chưa được đếm, cũ trước. */
+    public List<Long> findUncountedDoneOrders(int limit) {
+        return jdbcTemplate.queryForList(UNCOUNTED_SQL, Long.class, limit);
+    }
+
+    /** Đánh dấu đơn đã đếm; false nếu đơn không DONE hoặc đã được đếm (instance khác / lần trước). */
+    public boolean markCounted(Long orderId) {
+        return jdbcTemplate.update(MARK_SQL, orderId) == 1;
+    }
+
+    public List<Long> findProductIdsOfOrder(Long orderId) {
+        return jdbcTemplate.queryForList(ORDER_PRODUCTS_SQL, Long.class, orderId);
+    }
+
+    /** Cộng dồn các cặp trong 1 lần batch; ghi theo thứ tự khoá để các instance không khoá chéo nhau. */
+    public void increment(SortedMap<Pair, Long> counts) {
+        if (counts.isEmpty()) return;
+        List<Object[]> args = new ArrayList<>(counts.size());
+        counts.forEach((p, n) -> args.add(new Object[]{p.a(), p.b(), n}));
+        jdbcTemplate.batchUpdate(UPSERT_SQL, args);
+    }
+
+    public void forEach(RowCallbackHandler handler) {
+        jdbcTemplate.query(LOAD_SQL, handler);
+    }
+}
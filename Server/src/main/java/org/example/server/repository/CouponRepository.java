@@ -0,0 +1,97 @@
+package org.example.server.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+@RequiredArgsConstructor
+public class CouponRepository {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public record Coupon(long codeHash, Long promotionId, String code, Long redeemedOrderId, LocalDateTime redeemedAt) {
+        public boolean redeemed() {
+            return redeemedOrderId != null;
+        }
+    }
+
+    private static final String INSERT_PREFIX =
+            "INSERT IGNORE INTO coupon_codes (code_hash, promotion_id, code) VALUES ";
+    private static final String FIND_SQL =
+            "SELECT code_hash, promotion_id, code, redeemed_order_id, redeemed_at FROM coupon_codes " +
+            "WHERE code_hash = ? AND code = ?";
+    // Điều kiện "chưa dùng" nằm trong câu UPDATE: 2 đơn cùng mã thì chỉ 1 đơn đổi được dòng
+    private static final String REDEEM_SQL =
+            "UPDATE coupon_codes SET redeemed_order_id = ?, redeemed_at = NOW() " +
+            "WHERE code_hash = ? AND code = ? AND redeemed_order_id IS NULL";
+    private static final String RELEASE_SQL =
+            "UPDATE coupon_codes SET redeemed_order_id = NULL, redeemed_at = NULL WHERE redeemed_order_id = ?";
+    private static final String COUNT_SQL =
+            "SELECT COUNT(*) FROM coupon_codes WHERE promotion_id = ?";
+    // Keyset theo khoá chính: mỗi trang là 1 lần quét ngắn trên idx_coupon_promotion (đã kèm code_hash)
+    private static final String PAGE_SQL =
+            "SELECT code_hash, promotion_id, code, redeemed_order_id, redeemed_at FROM coupon_codes " +
+            "WHERE promotion_id = ? AND code_hash > ? ORDER BY code_hash LIMIT ?";
+    private static final String DELETE_SQL =
+            "DELETE FROM coupon_codes WHERE promotion_id = ?";
+
+    /**
+     * Thêm 1 lô mã trong 1 câu INSERT nhiều dòng; mã trùng (khoá băm đã có) bị bỏ qua.
+     * Trả về số dòng thực sự được thêm.
+     */
+    public int insertIgnore(Long promotionId, List<String> codes, long[] hashes) {
+        if (codes.isEmpty()) return 0;
+        StringBuilder sql = new StringBuilder(INSERT_PREFIX.length() + codes.size() * 10).append(INSERT_PREFIX);
+        List<Object> args = new ArrayList<>(codes.size() * 3);
+        for (int i = 0; i < codes.size(); i++) {
+            sql.append(i == 0 ? "(?, ?, ?)" : ", (?, ?, ?)");
+            args.add(hashes[i]);
+            args.add(promotionId);
+            args.add(codes.get(i));
+        }
+        return jdbcTemplate.update(sql.toString(), args.toArray());
+    }
+
+    public Optional<Coupon> find(long codeHash, String code) {
+        return jdbcTemplate.query(FIND_SQL, (rs, i) -> map(rs), codeHash, code).stream().findFirst();
+    }
+
+    /** false nếu mã đã được đơn khác dùng. */
+    public boolean redeem(long codeHash, String code, Long orderId) {
+        return jdbcTemplate.update(REDEEM_SQL, orderId, codeHash, code) == 1;
+    }
+
+    public int release(Long orderId) {
+        return jdbcTemplate.update(RELEASE_SQL, orderId);
+    }
+
+    public long count(Long promotionId) {
+        Long n = jdbcTemplate.queryForObject(COUNT_SQL, Long.class, promotionId);
+        return n == null ? 0 : n;
+    }
+
+    public List<Coupon> page(Long promotionId, long afterHash, int limit) {
+        return jdbcTemplate.query(PAGE_SQL, (rs, i) -> map(rs), promotionId, afterHash, limit);
+    }
+
+    public void deleteByPromotion(Long promotionId) {
+        jdbcTemplate.update(DELETE_SQL, promotionId);
+    }
+
+    private static Coupon map(ResultSet rs) throws SQLException {
+        long order = rs.getLong("redeemed_order_id");
+        Long redeemedOrderId = rs.wasNull() ? null : order;
+        Timestamp at = rs.getTimestamp("redeemed_at");
+        return new Coupon(rs.getLong("code_hash"), rs.getLong("promotion_id"), rs.getString("code"),
+                redeemedOrderId, at == null ? null : at.toLocalDateTime());
+    }
+}
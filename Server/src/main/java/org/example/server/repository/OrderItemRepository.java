@@ -1,10 +1,37 @@
 package org.example.server.repository;
 
 import org.example.server.entity.OrderItem;
+import org.example.server.entity.User;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.util.Collection;
 import java.util.List;
 
 public interface OrderItemRepository extends JpaRepository<OrderItem, Long> {
 
+    // Chỉ giao món còn PENDING và chưa ai nhận (tránh đè lên người đã bấm nhận tay)
+    @Modifying
+    @Query("UPDATE OrderItem i SET i.chef = :chef WHERE i.id IN :ids AND i.status = 'PENDING' AND i.chef IS NULL")
+    int assignChef(@Param("chef") User chef, @Param("ids") Collection<Long> ids);
+
+    // Sau assignChef: các món trong ids mà người này thực sự giữ (món còn lại đã có người nhận trước)
+    @Query("SELECT i.id FROM OrderItem i WHERE i.id IN :ids AND i.chef = :chef AND i.status = 'PENDING' ORDER BY i.id")
+    List<Long> findPendingIdsOfChef(@Param("chef") User chef, @Param("ids") Collection<Long> ids);
+
+    @Modifying
+    @Query("UPDATE OrderItem i SET i.chef = NULL WHERE i.chef = :chef AND i.status = 'PENDING'")
+    int unassignPending(@Param("chef") User chef);
+
+    // Các món khách đã gọi (đơn DONE), gọi gần đây nhất trước
+    @Query("""
+            SELECT oi.product.id FROM OrderItem oi
+            WHERE oi.order.user.id = :userId AND oi.order.status = 'DONE'
+            GROUP BY oi.product.id
+            ORDER BY MAX(oi.order.createdAt) DESC
+            """)
+    List<Long> findRecentlyOrderedProductIds(@Param("userId") Long userId, Pageable pageable);
 }
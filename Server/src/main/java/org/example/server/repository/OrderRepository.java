@@ -6,28 +6,73 @@ import org.example.server.entity.User;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
-import java.util.Map;
 import java.util.Optional;
 
 public interface OrderRepository extends JpaRepository<Order,Long> {
     List<Order> findByUser(User user);
+    // Lịch sử đơn theo keyset (createdAt, id): chỉ lấy id, dùng index (user_id, created_at, id)
+    @Query("SELECT o.id FROM Order o " +
+            "WHERE o.user.id = :userId " +
+            "ORDER BY o.createdAt DESC, o.id DESC")
+    List<Long> findUserOrderIds(@Param("userId") Long userId, Pageable pageable);
+
+    @Query("SELECT o.id FROM Order o " +
+            "WHERE o.user.id = :userId " +
+            "AND (o.createdAt < :createdAt OR (o.createdAt = :createdAt AND o.id < :id)) " +
+            "ORDER BY o.createdAt DESC, o.id DESC")
+    List<Long> findUserOrderIdsAfter(@Param("userId") Long userId,
+                                     @Param("createdAt") LocalDateTime createdAt,
+                                     @Param("id") Long id,
+                                     Pageable pageable);
+
+    // Nạp đơn của 1 trang (items được nạp theo batch, không fetch-join)
     @Query("SELECT o FROM Order o " +
-            "LEFT JOIN FETCH o.items i " +
-            "LEFT JOIN FETCH i.product p " +
             "LEFT JOIN FETCH o.shipping s " +
-            "WHERE o.user = :user " +
-            "ORDER BY o.createdAt DESC")
-    List<Order> findByUserWithItems(@Param("user") User user);
-    @Query(value = "SELECT DISTINCT o FROM Order o " +
+            "WHERE o.id IN :ids")
+    List<Order> findWithShippingByIdIn(@Param("ids") Collection<Long> ids);
+    // Admin: bước 1 chỉ phân trang id (sort theo index), bước 2 mới nạp chi tiết theo id
+    @Query(value = "SELECT o.id FROM Order o " +
+            "WHERE (:status IS NULL OR o.status = :status) " +
+            "AND (:from IS NULL OR o.createdAt >= :from) " +
+            "AND (:to IS NULL OR o.createdAt < :to) " +
+            "AND (:paymentMethod IS NULL OR o.paymentMethod = :paymentMethod)",
+            countQuery = "SELECT COUNT(o) FROM Order o " +
+                    "WHERE (:status IS NULL OR o.status = :status) " +
+                    "AND (:from IS NULL OR o.createdAt >= :from) " +
+                    "AND (:to IS NULL OR o.createdAt < :to) " +
+                    "AND (:paymentMethod IS NULL OR o.paymentMethod = :paymentMethod)")
+    Page<Long> findAdminOrderIds(@Param("status") String status,
+                                 @Param("from") LocalDateTime from,
+                                 @Param("to") LocalDateTime to,
+                                 @Param("paymentMethod") String paymentMethod,
+                                 Pageable pageable);
+
+    @Query("SELECT o FROM Order o " +
             "LEFT JOIN FETCH o.user u " +
-            "LEFT JOIN FETCH o.shipping s ",
-            countQuery = "SELECT COUNT(o) FROM Order o") // Cần countQuery riêng khi dùng FETCH với Pageable
-    Page<Order> findAllWithUserDetails(Pageable pageable);
+            "LEFT JOIN FETCH u.profile " +
+            "LEFT JOIN FETCH o.shipping s " +
+            "WHERE o.id IN :ids")
+    List<Order> findWithUserAndShippingByIdIn(@Param("ids") Collection<Long> ids);
+
+    // Chạy sau query trên, cùng persistence context -> o.items được khởi tạo luôn.
+    // Chỉ fetch quan hệ 1-1 (không nhân dòng); roles của user/bếp nạp theo @BatchSize
+    @Query("SELECT o FROM Order o " +
+            "LEFT JOIN FETCH o.items i " +
+            "LEFT JOIN FETCH i.product p " +
+            "LEFT JOIN FETCH p.category " +
+            "LEFT JOIN FETCH i.chef c " +
+            "LEFT JOIN FETCH c.profile " +
+            "WHERE o.id IN :ids")
+    List<Order> findWithItemsByIdIn(@Param("ids") Collection<Long> ids);
 
     @Query("SELECT o FROM Order o " +
             "LEFT JOIN FETCH o.items i " +
@@ -58,16 +103,11 @@ public interface OrderRepository extends JpaRepository<Order,Long> {
 
     List<Order> findByStatusAndCreatedAtBefore(String status, LocalDateTime time);
 
-    @Query("""
-        SELECT new map(
-            oi.product.id as productId, 
-            oi.product.name as productName, 
-            SUM(oi.quantity) as totalQuantity
-        )
-        FROM OrderItem oi
-        JOIN oi.order o
-        WHERE o.status IN ('CONFIRMED', 'PREPARING')
-        GROUP BY oi.product.id, oi.product.name
-    """)
-    List<Map<String, Object>> getKitchenAggregatedItems();
+    // Commit riêng, trước khi gửi mail: 0 = mail đã được gửi (hoặc đang gửi) ở lượt trước
+    @Modifying
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    @Query("UPDATE Order o SET o.confirmationEmailSentAt = :now " +
+            "WHERE o.id = :id AND o.confirmationEmailSentAt IS NULL")
+    int markConfirmationEmailSent(@Param("id") Long id, @Param("now") LocalDateTime now);
+
 }
@@ -0,0 +1,24 @@
+package org.example.server.repository;
+
+import jakarta.persistence.LockModeType;
+import org.example.server.entity.OutboxEvent;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.List;
+import java.util.Optional;
+
+public interface OutboxEventRepository extends JpaRepository<OutboxEvent, Long> {
+
+    // Keyset theo id trên idx_outbox_status_id: trang sau bắt đầu sau id cuối của trang trước
+    @Query("SELECT e FROM OutboxEvent e WHERE e.status = 'PENDING' AND e.id > :afterId ORDER BY e.id ASC")
+    List<OutboxEvent> findPendingAfter(@Param("afterId") long afterId, Pageable pageable);
+
+    // Khoá dòng khi xử lý để nhiều instance không gửi trùng
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT e FROM OutboxEvent e WHERE e.id = :id")
+    Optional<OutboxEvent> lockById(@Param("id") Long id);
+}
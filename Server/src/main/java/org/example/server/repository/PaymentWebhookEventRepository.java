@@ -0,0 +1,43 @@
+package org.example.server.repository;
+
+import jakarta.persistence.LockModeType;
+import org.example.server.entity.PaymentWebhookEvent;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+public interface PaymentWebhookEventRepository extends JpaRepository<PaymentWebhookEvent, Long> {
+
+    // Trùng (order_code, code) thì bỏ qua: trả về 0 thay vì ném lỗi khoá duy nhất
+    @Modifying
+    @Transactional
+    @Query(value = "INSERT IGNORE INTO payment_webhook_events " +
+            "(order_code, code, description, payload, status, attempts, received_at) " +
+            "VALUES (:orderCode, :code, :description, :payload, 'PENDING', 0, NOW())", nativeQuery = true)
+    int insertIgnore(@Param("orderCode") Long orderCode,
+                     @Param("code") String code,
+                     @Param("description") String description,
+                     @Param("payload") String payload);
+
+    @Query("SELECT e.id FROM PaymentWebhookEvent e WHERE e.orderCode = :orderCode AND e.status = 'PENDING' ORDER BY e.id ASC")
+    List<Long> findPendingIds(@Param("orderCode") Long orderCode);
+
+    @Query("SELECT DISTINCT e.orderCode FROM PaymentWebhookEvent e WHERE e.status = 'PENDING' " +
+            "AND (e.nextAttemptAt IS NULL OR e.nextAttemptAt <= :now)")
+    List<Long> findDueOrderCodes(@Param("now") LocalDateTime now, Pageable pageable);
+
+    long countByStatus(String status);
+
+    // Khoá dòng khi áp để nhiều instance không xử lý trùng
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT e FROM PaymentWebhookEvent e WHERE e.id = :id")
+    Optional<PaymentWebhookEvent> lockById(@Param("id") Long id);
+}
@@ -1,47 +1,44 @@
 package org.example.server.repository;
 
+import org.example.server.dto.ProductView;
 import org.example.server.entity.Product;
-import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 public interface ProductRepository extends JpaRepository<Product, Long> {
-    // Chỉ lấy sản phẩm đang hiện (cho trang chủ)
-    List<Product> findByActiveTrue();
-    // Tìm các món có calo thấp hơn mức cho phép và đang Active
-    List<Product> findByActiveTrueAndCaloriesLessThanEqual(Integer maxCalories);
-    // (Optional) Tìm các món trong khoảng calo (ví dụ +/- 100 calo so với mục tiêu)
-    List<Product> findByActiveTrueAndCaloriesBetween(Integer min, Integer max);
-    // Search cho KHÁCH (chỉ tìm active = true)
-    @Query("""
-    SELECT p FROM Product p
-    WHERE (:categoryId IS NULL OR p.category.id = :categoryId)
-      AND (:q IS NULL OR LOWER(p.name) LIKE LOWER(CONCAT('%', :q, '%')))
-      AND p.active = true
-    """)
-    Page<Product> searchPublic(@Param("categoryId") Long categoryId,
-                               @Param("q") String q,
-                               Pageable pageable);
+    String VIEW_SELECT =
+            "SELECT new org.example.server.dto.ProductView(p.id, p.name, p.description, p.price, p.stock, p.active, " +
+            "c.id, c.name, c.description, p.imageUrl, p.calories, p.protein, p.carbs, p.fat, p.prepTimeMinutes, " +
+            "p.createdAt, p.updatedAt) " +
+            "FROM Product p LEFT JOIN p.category c ";
 
-    // Search cho ADMIN (tìm tất cả, kể cả ẩn)
+    List<Product> findByCategoryId(Long categoryId);
+
+    // Số phần đã bán (đơn DONE) theo món: [productId, SUM(quantity)]
     @Query("""
-    SELECT p FROM Product p
-    WHERE (:categoryId IS NULL OR p.category.id = :categoryId)
-      AND (:q IS NULL OR LOWER(p.name) LIKE LOWER(CONCAT('%', :q, '%')))
+    SELECT oi.product.id, SUM(oi.quantity) FROM OrderItem oi
+    WHERE oi.order.status = 'DONE'
+    GROUP BY oi.product.id
     """)
-    Page<Product> searchAdmin(@Param("categoryId") Long categoryId,
-                              @Param("q") String q,
-                              Pageable pageable);
-
-    @Query("SELECT p FROM Product p " +
-            "JOIN p.orderItems oi " +
-            "JOIN oi.order o " +
-            "WHERE p.active = true AND o.status = 'DONE' " +
-            "GROUP BY p " +
-            "ORDER BY SUM(oi.quantity) DESC")
-    List<Product> findTopSelling(Pageable pageable);
+    List<Object[]> sumSoldQuantityByProduct();
+
+    // --- Projection cho API đọc: chỉ SELECT các cột cần hiển thị, không dựng entity ---
+    @Query(VIEW_SELECT + "WHERE p.id = :id")
+    Optional<ProductView> findViewById(@Param("id") Long id);
+
+    @Query(VIEW_SELECT + "WHERE p.id IN :ids")
+    List<ProductView> findViewsByIdIn(@Param("ids") Collection<Long> ids);
+
+    // Thứ tự id cố định -> JSON (và ETag) của catalog ổn định giữa các instance
+    @Query(VIEW_SELECT + "WHERE p.active = true ORDER BY p.id")
+    List<ProductView> findActiveViews();
+
+    @Query(VIEW_SELECT + "WHERE p.active = true ORDER BY p.id DESC")
+    List<ProductView> findNewestActiveViews(Pageable pageable);
 }
@@ -2,16 +2,25 @@ package org.example.server.repository;
 
 import org.example.server.entity.Promotion;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
+import java.util.List;
 import java.util.Optional;
 
 public interface PromotionRepository extends JpaRepository<Promotion, Long> {
     Optional<Promotion> findByCodeIgnoreCase(String code);
-    @Query("SELECT p FROM Promotion p " +
-            "LEFT JOIN FETCH p.category " +
-            "LEFT JOIN FETCH p.products " +
-            "WHERE lower(p.code) = lower(:code)")
-    Optional<Promotion> findByCodeWithDetails(@Param("code") String code);
-}
\ No newline at end of file
+
+    // Cặp [promotionId, productId] của mọi khuyến mãi theo món, để biên dịch luật mà không dựng entity Product
+    @Query("SELECT p.id, pr.id FROM Promotion p JOIN p.products pr")
+    List<Object[]> findAllProductIdPairs();
+
+    @Query("SELECT pr.id FROM Promotion p JOIN p.products pr WHERE p.id = :id")
+    List<Long> findProductIds(@Param("id") Long promotionId);
+
+    // Chép số lượt từ sổ lượt dùng sang cột hiển thị cho trang admin; không ghi nếu không đổi
+    @Modifying
+    @Query("UPDATE Promotion p SET p.usedCount = :used WHERE p.id = :id AND (p.usedCount IS NULL OR p.usedCount <> :used)")
+    int updateUsedCount(@Param("id") Long id, @Param("used") int used);
+}
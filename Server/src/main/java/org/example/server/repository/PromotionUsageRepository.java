@@ -0,0 +1,103 @@
+package org.example.server.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+@Repository
+@RequiredArgsConstructor
+public class PromotionUsageRepository {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public record Redemption(Long promotionId, int shard) {}
+
+    private static final String LOCK_SHARDS_SQL =
+            "SELECT used_count FROM promotion_usage_shards WHERE promotion_id = ? ORDER BY shard FOR UPDATE";
+    private static final String INSERT_SHARD_SQL =
+            "INSERT IGNORE INTO promotion_usage_shards (promotion_id, shard, used_count, capacity) VALUES (?, ?, ?, ?)";
+    private static final String SET_CAPACITY_SQL =
+            "UPDATE promotion_usage_shards SET capacity = ? WHERE promotion_id = ? AND shard = ?";
+    private static final String COUNT_SHARDS_SQL =
+            "SELECT COUNT(*) FROM promotion_usage_shards WHERE promotion_id = ?";
+    // Điều kiện nằm trong chính câu UPDATE: 2 đơn cùng shard thì đơn sau chờ khoá dòng rồi đọc lại giá trị mới
+    private static final String TAKE_SQL =
+            "UPDATE promotion_usage_shards SET used_count = used_count + 1 " +
+            "WHERE promotion_id = ? AND shard = ? AND used_count < capacity";
+    private static final String GIVE_BACK_SQL =
+            "UPDATE promotion_usage_shards SET used_count = used_count - 1 " +
+            "WHERE promotion_id = ? AND shard = ? AND used_count > 0";
+    private static final String INSERT_REDEMPTION_SQL =
+            "INSERT INTO promotion_redemptions (order_id, promotion_id, shard, created_at) VALUES (?, ?, ?, NOW())";
+    private static final String LOCK_REDEMPTIONS_SQL =
+            "SELECT promotion_id, shard FROM promotion_redemptions WHERE order_id = ? ORDER BY promotion_id FOR UPDATE";
+    private static final String DELETE_REDEMPTION_SQL =
+            "DELETE FROM promotion_redemptions WHERE order_id = ? AND promotion_id = ?";
+    private static final String USED_SQL =
+            "SELECT promotion_id, SUM(used_count) FROM promotion_usage_shards GROUP BY promotion_id";
+    private static final String DELETE_SHARDS_SQL =
+            "DELETE FROM promotion_usage_shards WHERE promotion_id = ?";
+    private static final String DELETE_PROMOTION_REDEMPTIONS_SQL =
+            "DELETE FROM promotion_redemptions WHERE promotion_id = ?";
+
+    /** Số đã dùng theo shard (khoá các dòng tới hết transaction); rỗng nếu chưa có shard. */
+    public int[] lockShards(Long promotionId) {
+        return jdbcTemplate.queryForList(LOCK_SHARDS_SQL, Integer.class, promotionId).stream()
+                .mapToInt(Integer::intValue).toArray();
+    }
+
+    public void insertShards(Long promotionId, int[] used, int[] capacities) {
+        List<Object[]> args = new ArrayList<>(used.length);
+        for (int i = 0; i < used.length; i++) args.add(new Object[]{promotionId, i, used[i], capacities[i]});
+        jdbcTemplate.batchUpdate(INSERT_SHARD_SQL, args);
+    }
+
+    public void setCapacities(Long promotionId, int[] capacities) {
+        List<Object[]> args = new ArrayList<>(capacities.length);
+        for (int i = 0; i < capacities.length; i++) args.add(new Object[]{capacities[i], promotionId, i});
+        jdbcTemplate.batchUpdate(SET_CAPACITY_SQL, args);
+    }
+
+    public int countShards(Long promotionId) {
+        Integer n = jdbcTemplate.queryForObject(COUNT_SHARDS_SQL, Integer.class, promotionId);
+        return n == null ? 0 : n;
+    }
+
+    /** Lấy 1 lượt trên shard; false nếu shard đã đầy. */
+    public boolean take(Long promotionId, int shard) {
+        return jdbcTemplate.update(TAKE_SQL, promotionId, shard) == 1;
+    }
+
+    public void insertRedemption(Long orderId, Long promotionId, int shard) {
+        jdbcTemplate.update(INSERT_REDEMPTION_SQL, orderId, promotionId, shard);
+    }
+
+    public List<Redemption> lockRedemptions(Long orderId) {
+        return jdbcTemplate.query(LOCK_REDEMPTIONS_SQL,
+                (rs, i) -> new Redemption(rs.getLong(1), rs.getInt(2)), orderId);
+    }
+
+    /** Xoá bản ghi giữ lượt rồi trả lượt về đúng shard; false nếu đã trả trước đó. */
+    public boolean giveBack(Long orderId, Redemption r) {
+        if (jdbcTemplate.update(DELETE_REDEMPTION_SQL, orderId, r.promotionId()) != 1) return false;
+        jdbcTemplate.update(GIVE_BACK_SQL, r.promotionId(), r.shard());
+        return true;
+    }
+
+    public Map<Long, Integer> usedCounts() {
+        Map<Long, Integer> out = new HashMap<>();
+        jdbcTemplate.query(USED_SQL, (RowCallbackHandler) rs -> out.put(rs.getLong(1), rs.getInt(2)));
+        return out;
+    }
+
+    public void deleteAll(Long promotionId) {
+        jdbcTemplate.update(DELETE_SHARDS_SQL, promotionId);
+        jdbcTemplate.update(DELETE_PROMOTION_REDEMPTIONS_SQL, promotionId);
+    }
+}
@@ -0,0 +1,96 @@
+package org.example.server.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SortedMap;
+
+@Repository
+@RequiredArgsConstructor
+public class SalesRankingRepository {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private static final String UNCOUNTED_SQL =
+            "SELECT id FROM orders WHERE status = 'DONE' AND (sales_counted IS NULL OR sales_counted = FALSE) " +
+            "ORDER BY id LIMIT ?";
+    private static final String MARK_SQL =
+            "UPDATE orders SET sales_counted = TRUE " +
+            "WHERE id = ? AND status = 'DONE' AND (sales_counted IS NULL OR sales_counted = FALSE)";
+    private static final String ORDER_QUANTITIES_SQL =
+            "SELECT oi.product_id, SUM(oi.quantity) AS qty, " +
+            "UNIX_TIMESTAMP(COALESCE(o.updated_at, o.created_at)) * 1000 AS done_at " +
+            "FROM order_items oi JOIN orders o ON o.id = oi.order_id " +
+            "WHERE oi.order_id = ? AND oi.product_id IS NOT NULL GROUP BY oi.product_id, o.updated_at, o.created_at";
+    private static final String UPSERT_SQL =
+            "INSERT INTO product_sales (product_id, sold_total, updated_at) VALUES (?, ?, NOW()) " +
+            "ON DUPLICATE KEY UPDATE sold_total = sold_total + VALUES(sold_total), updated_at = NOW()";
+    private static final String LOAD_SQL =
+            "SELECT product_id, sold_total FROM product_sales";
+    // Lịch sử gần đây gộp theo giờ, đủ để dựng lại điểm "đang hot" khi khởi động
+    private static final String RECENT_SQL =
+            "SELECT oi.product_id, FLOOR(UNIX_TIMESTAMP(COALESCE(o.updated_at, o.created_at)) / 3600) AS hour_bucket, " +
+            "SUM(oi.quantity) AS qty " +
+            "FROM order_items oi JOIN orders o ON o.id = oi.order_id " +
+            "WHERE o.status = 'DONE' AND o.sales_counted = TRUE AND oi.product_id IS NOT NULL " +
+            "AND COALESCE(o.updated_at, o.created_at) >= NOW() - INTERVAL ? DAY " +
+            "GROUP BY oi.product_id, hour_bucket";
+    // Đối soát: tính lại tổng từ chính các đơn đã được đếm và ghi luôn trong cùng câu lệnh.
+    // INSERT ... SELECT khoá các dòng đọc được (InnoDB, REPEATABLE READ) nên instance khác đang đánh dấu
+    // 1 đơn là đã đếm phải chờ -> không có lượt cộng nào lọt giữa lúc đếm và lúc ghi
+    private static final String RECOUNT_SQL =
+            "INSERT INTO product_sales (product_id, sold_total, updated_at) " +
+            "SELECT oi.product_id, SUM(oi.quantity), NOW() " +
+            "FROM order_items oi JOIN orders o ON o.id = oi.order_id " +
+            "WHERE o.status = 'DONE' AND o.sales_counted = TRUE AND oi.product_id IS NOT NULL " +
+            "GROUP BY oi.product_id " +
+            "ON DUPLICATE KEY UPDATE sold_total = VALUES(sold_total), updated_at = NOW()";
+    // Món không còn đơn đã đếm nào (đơn bị sửa tay...) -> về 0
+    private static final String ZERO_ORPHANS_SQL =
+            "UPDATE product_sales ps SET sold_total = 0, updated_at = NOW() " +
+            "WHERE ps.sold_total <> 0 AND NOT EXISTS (" +
+            "SELECT 1 FROM order_items oi JOIN orders o ON o.id = oi.order_id " +
+            "WHERE oi.product_id = ps.product_id AND o.status = 'DONE' AND o.sales_counted = TRUE)";
+
+    /** Đơn DONE chưa được cộng vào bảng xếp hạng, cũ trước. */
+    public List<Long> findUncountedDoneOrders(int limit) {
+        return jdbcTemplate.queryForList(UNCOUNTED_SQL, Long.class, limit);
+    }
+
+    /** Đánh dấu đơn đã cộng; false nếu đơn không DONE hoặc instance khác đã cộng. */
+    public boolean markCounted(Long orderId) {
+        return jdbcTemplate.update(MARK_SQL, orderId) == 1;
+    }
+
+    /** Số phần theo món của 1 đơn: product_id, qty, done_at (epoch millis). */
+    public void forEachItemOfOrder(Long orderId, RowCallbackHandler handler) {
+        jdbcTemplate.query(ORDER_QUANTITIES_SQL, handler, orderId);
+    }
+
+    /** Cộng dồn theo thứ tự khoá để các instance không khoá chéo nhau. */
+    public void increment(SortedMap<Long, Long> quantities) {
+        if (quantities.isEmpty()) return;
+        List<Object[]> args = new ArrayList<>(quantities.size());
+        quantities.forEach((id, n) -> args.add(new Object[]{id, n}));
+        jdbcTemplate.batchUpdate(UPSERT_SQL, args);
+    }
+
+    public void forEachTotal(RowCallbackHandler handler) {
+        jdbcTemplate.query(LOAD_SQL, handler);
+    }
+
+    /** product_id, hour_bucket (giờ kể từ epoch), qty của các đơn đã đếm trong days ngày gần nhất. */
+    public void forEachRecentHour(int days, RowCallbackHandler handler) {
+        jdbcTemplate.query(RECENT_SQL, handler, days);
+    }
+
+    /** Đối soát: ghi lại product_sales từ các đơn đã đếm. Gọi trong 1 giao dịch. */
+    public void recountTotals() {
+        jdbcTemplate.update(RECOUNT_SQL);
+        jdbcTemplate.update(ZERO_ORPHANS_SQL);
+    }
+}
@@ -0,0 +1,85 @@
+package org.example.server.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+@Repository
+@RequiredArgsConstructor
+public class StockRepository {
+
+    private static final Logger log = LoggerFactory.getLogger(StockRepository.class);
+
+    private final JdbcTemplate jdbcTemplate;
+
+    // Driver trả SUCCESS_NO_INFO cho batch (vd. MariaDB bulk): không biết dòng nào trừ được -> trừ từng dòng
+    private volatile boolean batchCountsUnknown;
+
+    private static final String DECREMENT_SQL =
+            "UPDATE products SET stock = stock - ? WHERE id = ? AND stock >= ?";
+    private static final String INCREMENT_SQL =
+            "UPDATE products SET stock = stock + ? WHERE id = ?";
+
+    /**
+     * Trừ kho có điều kiện cho nhiều sản phẩm trong một lần batch, trong transaction của đơn.
+     * Trả về danh sách productId không đủ hàng (dòng update khác 1).
+     * Batch không báo số dòng thì quay về savepoint và trừ lại từng dòng (các lần sau trừ từng dòng luôn).
+     */
+    public List<Long> decrementAll(Map<Long, Integer> quantities) {
+        List<Long> ids = new ArrayList<>(quantities.keySet());
+        List<Object[]> args = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            int qty = quantities.get(id);
+            args.add(new Object[]{qty, id, qty});
+        }
+
+        List<Long> failed = new ArrayList<>();
+        if (!batchCountsUnknown) {
+            Savepoint savepoint = jdbcTemplate.execute((ConnectionCallback<Savepoint>) con -> con.setSavepoint());
+            int[] counts = jdbcTemplate.batchUpdate(DECREMENT_SQL, args);
+            if (allKnown(counts)) {
+                jdbcTemplate.execute((ConnectionCallback<Void>) con -> {
+                    con.releaseSavepoint(savepoint);
+                    return null;
+                });
+                for (int i = 0; i < counts.length; i++) {
+                    if (counts[i] != 1) failed.add(ids.get(i));
+                }
+                return failed;
+            }
+            jdbcTemplate.execute((ConnectionCallback<Void>) con -> {
+                con.rollback(savepoint);
+                return null;
+            });
+            batchCountsUnknown = true;
+            log.warn("JDBC driver does not report batch update counts; stock is now decremented row by row");
+        }
+
+        for (Object[] row : args) {
+            if (jdbcTemplate.update(DECREMENT_SQL, row) != 1) failed.add((Long) row[1]);
+        }
+        return failed;
+    }
+
+    private static boolean allKnown(int[] counts) {
+        for (int c : counts) {
+            if (c < 0) return false;
+        }
+        return true;
+    }
+
+    /** Cộng lại kho (huỷ đơn / thanh toán thất bại) trong một lần batch. */
+    public void incrementAll(Map<Long, Integer> quantities) {
+        List<Object[]> args = new ArrayList<>(quantities.size());
+        quantities.forEach((id, qty) -> args.add(new Object[]{qty, id}));
+        jdbcTemplate.batchUpdate(INCREMENT_SQL, args);
+    }
+}
@@ -0,0 +1,120 @@
+package org.example.server.search;
+
+import java.util.*;
+
+/**
+ * Ma trận "hay được gọi cùng nhau" giữa các món, đếm trên các đơn đã hoàn thành.
+ * - Đếm thô: số đơn chứa cả a và b (thưa, chỉ có cặp từng xuất hiện) + số đơn chứa từng món.
+ * - Điểm: cosine = cùng(a, b) / sqrt(đơn(a) * đơn(b)), để món bán chạy không lấn át mọi danh sách.
+ * - Mỗi món chỉ giữ K hàng xóm điểm cao nhất (có tối thiểu minSupport đơn chung),
+ *   dựng lại thành snapshot bất biến sau mỗi đợt cập nhật; đọc không khoá.
+ */
+public class CoPurchaseGraph {
+
+    public record Neighbour(Long productId, double score, long together) {}
+
+    /** 1 ô của ma trận đếm, luôn a <= b. */
+    public record Pair(long a, long b) implements Comparable<Pair> {
+        @Override
+        public int compareTo(Pair o) {
+            int c = Long.compare(a, o.a);
+            return c != 0 ? c : Long.compare(b, o.b);
+        }
+    }
+
+    private final int k;
+    private final int minSupport;
+
+    private final Map<Long, Long> orders = new HashMap<>();
+    private final Map<Long, Map<Long, Long>> together = new HashMap<>();
+
+    private volatile Map<Long, List<Neighbour>> topK = Map.of();
+
+    /**
+     * @param k          số hàng xóm giữ lại cho mỗi món
+     * @param minSupport số đơn chung tối thiểu để 1 cặp được tính
+     */
+    public CoPurchaseGraph(int k, int minSupport) {
+        this.k = Math.max(1, k);
+        this.minSupport = Math.max(1, minSupport);
+    }
+
+    /** Các cặp (a <= b) cần cộng 1 cho 1 đơn; cặp (a, a) là số đơn chứa a. */
+    public static List<Pair> pairs(Collection<Long> productIds) {
+        long[] ids = productIds.stream().filter(Objects::nonNull).mapToLong(Long::longValue).distinct().sorted().toArray();
+        List<Pair> out = new ArrayList<>(ids.length * (ids.length + 1) / 2);
+        for (int i = 0; i < ids.length; i++) {
+            for (int j = i; j < ids.length; j++) out.add(new Pair(ids[i], ids[j]));
+        }
+        return out;
+    }
+
+    /** Cộng 1 đơn (danh sách món của đơn, trùng lặp không sao). */
+    public synchronized void addOrder(Collection<Long> productIds) {
+        for (Pair p : pairs(productIds)) addCount(p.a(), p.b(), 1);
+    }
+
+    /** Nạp 1 dòng đếm đã lưu (a <= b; a == b là số đơn chứa a). */
+    public synchronized void addCount(long a, long b, long count) {
+        if (count <= 0) return;
+        if (a == b) {
+            orders.merge(a, count, Long::sum);
+        } else {
+            together.computeIfAbsent(a, x -> new HashMap<>()).merge(b, count, Long::sum);
+            together.computeIfAbsent(b, x -> new HashMap<>()).merge(a, count, Long::sum);
+        }
+    }
+
+    /** Tính lại top-K của mọi món từ số đếm hiện tại rồi tráo snapshot. */
+    public synchronized void rebuild() {
+        Map<Long, List<Neighbour>> next = new HashMap<>(together.size() * 2);
+        Comparator<Neighbour> worstFirst = Comparator.comparingDouble(Neighbour::score)
+                .thenComparing(Neighbour::productId, Comparator.reverseOrder());
+        for (Map.Entry<Long, Map<Long, Long>> e : together.entrySet()) {
+            long na = orders.getOrDefault(e.getKey(), 0L);
+            if (na <= 0) continue;
+            PriorityQueue<Neighbour> heap = new PriorityQueue<>(k + 1, worstFirst);
+            for (Map.Entry<Long, Long> n : e.getValue().entrySet()) {
+                long co = n.getValue();
+                long nb = orders.getOrDefault(n.getKey(), 0L);
+                if (co < minSupport || nb <= 0) continue;
+                heap.add(new Neighbour(n.getKey(), co / Math.sqrt((double) na * nb), co));
+                if (heap.size() > k) heap.poll();
+            }
+            if (heap.isEmpty()) continue;
+            List<Neighbour> list = new ArrayList<>(heap);
+            list.sort(worstFirst.reversed());
+            next.put(e.getKey(), List.copyOf(list));
+        }
+        topK = next;
+    }
+
+    /** Hàng xóm của món, điểm giảm dần (tối đa K). */
+    public List<Neighbour> neighbours(Long productId) {
+        return topK.getOrDefault(productId, List.of());
+    }
+
+    /**
+     * Gộp hàng xóm của nhiều món (vd các món khách vừa gọi): cộng điểm, bỏ chính các món đầu vào.
+     * Trả về id theo điểm giảm dần.
+     */
+    public List<Long> blend(Collection<Long> seeds, int limit) {
+        Map<Long, List<Neighbour>> snapshot = topK;
+        Map<Long, Double> scores = new HashMap<>();
+        for (Long seed : seeds) {
+            for (Neighbour n : snapshot.getOrDefault(seed, List.of())) {
+                if (!seeds.contains(n.productId())) scores.merge(n.productId(), n.score(), Double::sum);
+            }
+        }
+        return scores.entrySet().stream()
+                .sorted(Map.Entry.<Long, Double>comparingByValue().reversed()
+                        .thenComparing(Map.Entry.comparingByKey()))
+                .limit(Math.max(0, limit))
+                .map(Map.Entry::getKey)
+                .toList();
+    }
+
+    public synchronized int productCount() {
+        return orders.size();
+    }
+}
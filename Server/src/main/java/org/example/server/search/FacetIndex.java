@@ -0,0 +1,271 @@
+package org.example.server.search;
+
+import java.math.BigDecimal;
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Bảng món trong bộ nhớ + 1 BitSet cho mỗi giá trị facet (danh mục, khoảng giá, calo, protein).
+ * Lọc và đếm facet chỉ là AND / cardinality trên bitset, không query DB.
+ * Đếm theo kiểu multi-select: số đếm của 1 facet áp mọi bộ lọc trừ chính facet đó,
+ * để khách vẫn thấy các lựa chọn khác trong cùng nhóm còn bao nhiêu món.
+ */
+public class FacetIndex {
+
+    public static final String CATEGORY = "category";
+    public static final String PRICE = "price";
+    public static final String CALORIES = "calories";
+    public static final String PROTEIN = "protein";
+
+    public record Row(Long id, Long categoryId, String categoryName, BigDecimal price,
+                      Integer calories, Double protein, boolean active) {}
+
+    /** Giá trị được chọn của từng facet; rỗng = không lọc. Bucket là chỉ số trong danh sách khoảng. */
+    public record Filter(Set<Long> categoryIds, Set<Integer> priceBuckets,
+                         Set<Integer> calorieBuckets, Set<Integer> proteinBuckets) {
+        public static final Filter NONE = new Filter(Set.of(), Set.of(), Set.of(), Set.of());
+    }
+
+    public record FacetCount(String key, String label, int count) {}
+
+    /** hits = id các món khớp theo thứ tự hiển thị (chưa phân trang). */
+    public record Result(List<Long> hits, Map<String, List<FacetCount>> facets) {}
+
+    private final double[] priceBounds;
+    private final double[] calorieBounds;
+    private final double[] proteinBounds;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Long, Integer> slotOf = new HashMap<>();
+    private final List<Long> idOfSlot = new ArrayList<>();
+    private final Deque<Integer> freeSlots = new ArrayDeque<>();
+    private final Map<Integer, Row> rows = new HashMap<>();
+
+    private final BitSet active = new BitSet();
+    private final Map<Long, BitSet> byCategory = new HashMap<>();
+    private final Map<Long, String> categoryNames = new HashMap<>();
+    private final BitSet[] byPrice;
+    private final BitSet[] byCalories;
+    private final BitSet[] byProtein;
+
+    /**
+     * @param priceBounds   ranh giới khoảng giá tăng dần, vd [30000, 50000] -> 3 khoảng: <30k, 30k-50k, >=50k
+     * @param calorieBounds tương tự cho calo
+     * @param proteinBounds tương tự cho protein (g)
+     */
+    public FacetIndex(double[] priceBounds, double[] calorieBounds, double[] proteinBounds) {
+        this.priceBounds = priceBounds.clone();
+        this.calorieBounds = calorieBounds.clone();
+        this.proteinBounds = proteinBounds.clone();
+        this.byPrice = newBuckets(priceBounds);
+        this.byCalories = newBuckets(calorieBounds);
+        this.byProtein = newBuckets(proteinBounds);
+    }
+
+    public void upsert(Row row) {
+        lock.writeLock().lock();
+        try {
+            Integer slot = slotOf.get(row.id());
+            if (slot != null) {
+                clear(slot);
+            } else {
+                slot = freeSlots.isEmpty() ? idOfSlot.size() : freeSlots.pop();
+                if (slot == idOfSlot.size()) idOfSlot.add(row.id());
+                else idOfSlot.set(slot, row.id());
+                slotOf.put(row.id(), slot);
+            }
+            rows.put(slot, row);
+            if (row.active()) active.set(slot);
+            if (row.categoryId() != null) {
+                byCategory.computeIfAbsent(row.categoryId(), k -> new BitSet()).set(slot);
+                if (row.categoryName() != null) categoryNames.put(row.categoryId(), row.categoryName());
+            }
+            set(byPrice, priceBounds, row.price() == null ? null : row.price().doubleValue(), slot);
+            set(byCalories, calorieBounds, row.calories() == null ? null : row.calories().doubleValue(), slot);
+            set(byProtein, proteinBounds, row.protein(), slot);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(Long id) {
+        lock.writeLock().lock();
+        try {
+            Integer slot = slotOf.remove(id);
+            if (slot == null) return;
+            clear(slot);
+            idOfSlot.set(slot, null);
+            freeSlots.push(slot);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void replaceAll(Collection<Row> all) {
+        lock.writeLock().lock();
+        try {
+            slotOf.clear();
+            idOfSlot.clear();
+            freeSlots.clear();
+            rows.clear();
+            active.clear();
+            byCategory.clear();
+            categoryNames.clear();
+            for (BitSet[] buckets : List.of(byPrice, byCalories, byProtein)) {
+                for (BitSet b : buckets) b.clear();
+            }
+            for (Row r : all) upsert(r); // write lock re-entrant
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @param candidates id khớp từ khoá theo thứ tự xếp hạng, hoặc null nếu không có từ khoá
+     *                   (khi đó kết quả xếp theo id giảm dần: món mới trước)
+     */
+    public Result browse(List<Long> candidates, Filter filter) {
+        lock.readLock().lock();
+        try {
+            BitSet base = (BitSet) active.clone();
+            if (candidates != null) base.and(toBits(candidates));
+
+            BitSet category = union(filter.categoryIds().stream().map(byCategory::get).toList());
+            BitSet price = union(pick(byPrice, filter.priceBuckets()));
+            BitSet calories = union(pick(byCalories, filter.calorieBuckets()));
+            BitSet protein = union(pick(byProtein, filter.proteinBuckets()));
+
+            BitSet hits = and(base, category, price, calories, protein);
+
+            Map<String, List<FacetCount>> facets = new LinkedHashMap<>();
+            facets.put(CATEGORY, categoryCounts(and(base, price, calories, protein)));
+            facets.put(PRICE, bucketCounts(byPrice, priceBounds, and(base, category, calories, protein)));
+            facets.put(CALORIES, bucketCounts(byCalories, calorieBounds, and(base, category, price, protein)));
+            facets.put(PROTEIN, bucketCounts(byProtein, proteinBounds, and(base, category, price, calories)));
+
+            return new Result(order(hits, candidates), facets);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private List<Long> order(BitSet hits, List<Long> candidates) {
+        if (candidates != null) {
+            List<Long> out = new ArrayList<>(hits.cardinality());
+            for (Long id : candidates) {
+                Integer slot = slotOf.get(id);
+                if (slot != null && hits.get(slot)) out.add(id);
+            }
+            return out;
+        }
+        List<Long> out = new ArrayList<>(hits.cardinality());
+        for (int s = hits.nextSetBit(0); s >= 0; s = hits.nextSetBit(s + 1)) out.add(idOfSlot.get(s));
+        out.sort(Comparator.reverseOrder());
+        return out;
+    }
+
+    private List<FacetCount> categoryCounts(BitSet scope) {
+        List<FacetCount> out = new ArrayList<>();
+        for (Map.Entry<Long, BitSet> e : byCategory.entrySet()) {
+            int count = intersectionCount(e.getValue(), scope);
+            if (count == 0) continue;
+            out.add(new FacetCount(String.valueOf(e.getKey()), categoryNames.get(e.getKey()), count));
+        }
+        out.sort(Comparator.comparingInt(FacetCount::count).reversed().thenComparing(FacetCount::key));
+        return out;
+    }
+
+    // Giữ đủ mọi khoảng (kể cả 0) để giao diện hiển thị cố định
+    private static List<FacetCount> bucketCounts(BitSet[] buckets, double[] bounds, BitSet scope) {
+        List<FacetCount> out = new ArrayList<>(buckets.length);
+        for (int i = 0; i < buckets.length; i++) {
+            out.add(new FacetCount(String.valueOf(i), label(bounds, i), intersectionCount(buckets[i], scope)));
+        }
+        return out;
+    }
+
+    static String label(double[] bounds, int bucket) {
+        if (bounds.length == 0) return "all";
+        if (bucket == 0) return "<" + fmt(bounds[0]);
+        if (bucket == bounds.length) return ">=" + fmt(bounds[bounds.length - 1]);
+        return fmt(bounds[bucket - 1]) + "-" + fmt(bounds[bucket]);
+    }
+
+    private static String fmt(double v) {
+        return v == Math.rint(v) ? String.valueOf((long) v) : String.valueOf(v);
+    }
+
+    static int bucketOf(double[] bounds, double value) {
+        int i = Arrays.binarySearch(bounds, value);
+        return i >= 0 ? i + 1 : -i - 1;
+    }
+
+    private static int intersectionCount(BitSet a, BitSet b) {
+        BitSet x = (BitSet) a.clone();
+        x.and(b);
+        return x.cardinality();
+    }
+
+    private BitSet toBits(List<Long> ids) {
+        BitSet bits = new BitSet(idOfSlot.size());
+        for (Long id : ids) {
+            Integer slot = slotOf.get(id);
+            if (slot != null) bits.set(slot);
+        }
+        return bits;
+    }
+
+    // null = facet không được lọc
+    private static BitSet union(List<BitSet> sets) {
+        if (sets.isEmpty()) return null;
+        BitSet out = new BitSet();
+        for (BitSet s : sets) {
+            if (s != null) out.or(s);
+        }
+        return out;
+    }
+
+    private static List<BitSet> pick(BitSet[] buckets, Set<Integer> selected) {
+        List<BitSet> out = new ArrayList<>(selected.size());
+        for (Integer i : selected) out.add(i != null && i >= 0 && i < buckets.length ? buckets[i] : null);
+        return out;
+    }
+
+    private static BitSet and(BitSet base, BitSet... filters) {
+        BitSet out = (BitSet) base.clone();
+        for (BitSet f : filters) {
+            if (f != null) out.and(f);
+        }
+        return out;
+    }
+
+    private void clear(int slot) {
+        Row old = rows.remove(slot);
+        active.clear(slot);
+        if (old != null && old.categoryId() != null) {
+            BitSet c = byCategory.get(old.categoryId());
+            if (c != null) {
+                c.clear(slot);
+                if (c.isEmpty()) {
+                    byCategory.remove(old.categoryId());
+                    categoryNames.remove(old.categoryId());
+                }
+            }
+        }
+        for (BitSet[] buckets : List.of(byPrice, byCalories, byProtein)) {
+            for (BitSet b : buckets) b.clear(slot);
+        }
+    }
+
+    private static void set(BitSet[] buckets, double[] bounds, Double value, int slot) {
+        if (value == null) return; // chưa có dữ liệu dinh dưỡng -> không thuộc khoảng nào
+        buckets[bucketOf(bounds, value)].set(slot);
+    }
+
+    private static BitSet[] newBuckets(double[] bounds) {
+        BitSet[] out = new BitSet[bounds.length + 1];
+        for (int i = 0; i < out.length; i++) out[i] = new BitSet();
+        return out;
+    }
+}
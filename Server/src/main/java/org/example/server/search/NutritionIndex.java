@@ -0,0 +1,257 @@
+package org.example.server.search;
+
+import java.util.*;
+import java.util.random.RandomGenerator;
+
+/**
+ * Món đang bán sắp theo từng chỉ số dinh dưỡng (calo, protein, carbs, fat) trong mảng đã sort.
+ * Lọc 1 khoảng = 2 lần tìm nhị phân; lấy ngẫu nhiên k món trong khoảng = O(k), không cần xáo cả danh sách.
+ * Lọc nhiều chỉ số: duyệt khoảng hẹp nhất rồi lấy mẫu reservoir trên các món thoả các điều kiện còn lại.
+ * Snapshot bất biến, thay đổi thì dựng lại rồi tráo tham chiếu (đọc không khoá).
+ */
+public class NutritionIndex {
+
+    public enum Macro { CALORIES, PROTEIN, CARBS, FAT }
+
+    /** Khoảng đóng [min, max]; dùng ±Infinity cho cận mở. */
+    public record Range(Macro macro, double min, double max) {
+        public static Range atMost(Macro macro, double max) {
+            return new Range(macro, Double.NEGATIVE_INFINITY, max);
+        }
+
+        public static Range atLeast(Macro macro, double min) {
+            return new Range(macro, min, Double.POSITIVE_INFINITY);
+        }
+
+        boolean contains(double v) {
+            return !Double.isNaN(v) && v >= min && v <= max;
+        }
+    }
+
+    public record Row(Long id, Integer calories, Double protein, Double carbs, Double fat, Double price, boolean active) {
+
+        /** Có đủ 4 chỉ số dinh dưỡng. */
+        public boolean complete() {
+            return calories != null && protein != null && carbs != null && fat != null;
+        }
+    }
+
+    private static final int MACROS = Macro.values().length;
+
+    private final Map<Long, Row> rows = new HashMap<>();
+    private volatile Snapshot snapshot = Snapshot.EMPTY;
+    // Tăng mỗi lần dữ liệu đổi; dùng làm khoá cache cho kết quả tính trên chỉ mục
+    private volatile long version = 0;
+
+    public synchronized void upsert(Row row) {
+        rows.put(row.id(), row);
+        swap();
+    }
+
+    public synchronized void remove(Long id) {
+        if (rows.remove(id) != null) swap();
+    }
+
+    public synchronized void replaceAll(Collection<Row> all) {
+        rows.clear();
+        for (Row r : all) rows.put(r.id(), r);
+        swap();
+    }
+
+    private void swap() {
+        snapshot = Snapshot.build(rows.values());
+        version++;
+    }
+
+    public long version() {
+        return version;
+    }
+
+    /** Món đang bán có đủ 4 chỉ số dinh dưỡng, theo id tăng dần. */
+    public List<Row> completeRows() {
+        return snapshot.complete;
+    }
+
+    /** Số món đang bán thoả mọi khoảng. */
+    public int count(List<Range> ranges) {
+        Snapshot s = snapshot;
+        if (ranges.isEmpty()) return s.all.length;
+        Span span = s.narrowest(ranges);
+        if (ranges.size() == 1) return span.size();
+        int n = 0;
+        for (int i = span.from; i < span.to; i++) {
+            if (s.matchesAll(span.macro, i, ranges)) n++;
+        }
+        return n;
+    }
+
+    /** Món đang bán và thoả mọi khoảng. */
+    public boolean matches(Long id, List<Range> ranges) {
+        double[] v = snapshot.vectors.get(id);
+        if (v == null) return false;
+        for (Range r : ranges) {
+            if (!r.contains(v[r.macro().ordinal()])) return false;
+        }
+        return true;
+    }
+
+    /** k món ngẫu nhiên (không trùng) thoả mọi khoảng; ranges rỗng = mọi món đang bán. */
+    public List<Long> sample(List<Range> ranges, int k, RandomGenerator random) {
+        if (k <= 0) return List.of();
+        Snapshot s = snapshot;
+        if (ranges.isEmpty()) return pick(s.all, 0, s.all.length, k, random);
+
+        Span span = s.narrowest(ranges);
+        if (ranges.size() == 1) return pick(s.ids[span.macro], span.from, span.to, k, random);
+
+        // Reservoir (Algorithm R) trên khoảng hẹp nhất, chỉ tính món thoả các khoảng còn lại
+        long[] ids = s.ids[span.macro];
+        long[] reservoir = new long[k];
+        int seen = 0;
+        for (int i = span.from; i < span.to; i++) {
+            if (!s.matchesAll(span.macro, i, ranges)) continue;
+            if (seen < k) {
+                reservoir[seen] = ids[i];
+            } else {
+                int j = random.nextInt(seen + 1);
+                if (j < k) reservoir[j] = ids[i];
+            }
+            seen++;
+        }
+        List<Long> out = new ArrayList<>(Math.min(seen, k));
+        for (int i = 0; i < Math.min(seen, k); i++) out.add(reservoir[i]);
+        Collections.shuffle(out, asRandom(random));
+        return out;
+    }
+
+    // Floyd: chọn k vị trí khác nhau trong [from, to) với đúng k lần gọi random
+    private static List<Long> pick(long[] ids, int from, int to, int k, RandomGenerator random) {
+        int n = to - from;
+        if (n <= 0) return List.of();
+        if (k >= n) {
+            List<Long> out = new ArrayList<>(n);
+            for (int i = from; i < to; i++) out.add(ids[i]);
+            Collections.shuffle(out, asRandom(random));
+            return out;
+        }
+        Set<Integer> chosen = new LinkedHashSet<>(k * 2);
+        for (int j = n - k; j < n; j++) {
+            int t = random.nextInt(j + 1);
+            if (!chosen.add(t)) chosen.add(j);
+        }
+        List<Long> out = new ArrayList<>(k);
+        for (int i : chosen) out.add(ids[from + i]);
+        Collections.shuffle(out, asRandom(random));
+        return out;
+    }
+
+    private static Random asRandom(RandomGenerator random) {
+        return random instanceof Random r ? r : new Random(random.nextLong());
+    }
+
+    private record Span(int macro, int from, int to) {
+        int size() {
+            return to - from;
+        }
+    }
+
+    private static final class Snapshot {
+
+        static final Snapshot EMPTY = build(List.of());
+
+        final long[] all;
+        final Map<Long, double[]> vectors;
+        final List<Row> complete;
+        // values[m] tăng dần, ids[m][i] là món có giá trị values[m][i]; món thiếu chỉ số m không có mặt
+        final double[][] values = new double[MACROS][];
+        final long[][] ids = new long[MACROS][];
+        // Chỉ số của món theo vị trí trong mảng của từng macro, để lọc thêm điều kiện khác
+        final double[][][] macrosAt = new double[MACROS][][];
+
+        private Snapshot(long[] all, Map<Long, double[]> vectors, List<Row> complete) {
+            this.all = all;
+            this.vectors = vectors;
+            this.complete = complete;
+        }
+
+        static Snapshot build(Collection<Row> rows) {
+            List<Row> active = rows.stream().filter(Row::active).sorted(Comparator.comparing(Row::id)).toList();
+            Map<Long, double[]> vectors = new HashMap<>();
+            for (Row r : active) {
+                double[] v = new double[MACROS];
+                for (Macro m : Macro.values()) v[m.ordinal()] = value(r, m);
+                vectors.put(r.id(), v);
+            }
+            Snapshot s = new Snapshot(active.stream().mapToLong(Row::id).toArray(), vectors,
+                    active.stream().filter(Row::complete).toList());
+            for (Macro m : Macro.values()) {
+                int mi = m.ordinal();
+                List<Row> withValue = active.stream()
+                        .filter(r -> !Double.isNaN(value(r, m)))
+                        .sorted(Comparator.comparingDouble(r -> value(r, m)))
+                        .toList();
+                s.values[mi] = new double[withValue.size()];
+                s.ids[mi] = new long[withValue.size()];
+                s.macrosAt[mi] = new double[withValue.size()][];
+                for (int i = 0; i < withValue.size(); i++) {
+                    Row r = withValue.get(i);
+                    s.values[mi][i] = value(r, m);
+                    s.ids[mi][i] = r.id();
+                    s.macrosAt[mi][i] = vectors.get(r.id());
+                }
+            }
+            return s;
+        }
+
+        Span narrowest(List<Range> ranges) {
+            Span best = null;
+            for (Range r : ranges) {
+                int mi = r.macro().ordinal();
+                Span span = new Span(mi, lowerBound(values[mi], r.min()), upperBound(values[mi], r.max()));
+                if (span.to < span.from) span = new Span(mi, span.from, span.from);
+                if (best == null || span.size() < best.size()) best = span;
+            }
+            return best;
+        }
+
+        boolean matchesAll(int macro, int i, List<Range> ranges) {
+            double[] v = macrosAt[macro][i];
+            for (Range r : ranges) {
+                if (!r.contains(v[r.macro().ordinal()])) return false;
+            }
+            return true;
+        }
+
+        // vị trí đầu tiên có giá trị >= x
+        private static int lowerBound(double[] a, double x) {
+            int lo = 0, hi = a.length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (a[mid] < x) lo = mid + 1;
+                else hi = mid;
+            }
+            return lo;
+        }
+
+        // vị trí đầu tiên có giá trị > x
+        private static int upperBound(double[] a, double x) {
+            int lo = 0, hi = a.length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (a[mid] <= x) lo = mid + 1;
+                else hi = mid;
+            }
+            return lo;
+        }
+
+        private static double value(Row r, Macro m) {
+            Number n = switch (m) {
+                case CALORIES -> r.calories();
+                case PROTEIN -> r.protein();
+                case CARBS -> r.carbs();
+                case FAT -> r.fat();
+            };
+            return n == null ? Double.NaN : n.doubleValue();
+        }
+    }
+}
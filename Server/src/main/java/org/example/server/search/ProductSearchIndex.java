@@ -0,0 +1,294 @@
+package org.example.server.search;
+
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Inverted index cho tên / mô tả / danh mục món, giữ trong bộ nhớ.
+ * - Bỏ dấu tiếng Việt khi index và khi tìm ("pho" khớp "Phở").
+ * - Khớp tiền tố (gõ dở "ph" vẫn ra) và sai 1 ký tự (thiếu/thừa/sai/đảo chỗ) với từ >= 4 ký tự.
+ * - Xếp hạng BM25 theo trường (tên nặng nhất), nhân thêm hệ số độ phổ biến (số phần đã bán).
+ * Cập nhật từng món (upsert/remove); đọc nhiều ghi ít nên dùng ReadWriteLock.
+ */
+public class ProductSearchIndex {
+
+    /** Dữ liệu cần index của 1 món. */
+    public record Doc(Long id, String name, String description, Long categoryId, String categoryName, boolean active) {}
+
+    public record Result(List<Long> ids, int total) {}
+
+    private static final double NAME_WEIGHT = 3.0;
+    private static final double CATEGORY_WEIGHT = 1.5;
+    private static final double DESCRIPTION_WEIGHT = 1.0;
+
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+
+    private static final double PREFIX_FACTOR = 0.8;
+    private static final double TYPO_FACTOR = 0.6;
+    private static final int MAX_EXPANSIONS = 50;
+    private static final int MIN_TYPO_LENGTH = 4;
+    private static final double POPULARITY_WEIGHT = 0.5;
+
+    private record Entry(Long id, Long categoryId, boolean active, double length, Map<String, Double> terms) {}
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Long, Entry> docs = new HashMap<>();
+    private final Map<String, Map<Long, Double>> postings = new HashMap<>();
+    private final NavigableSet<String> dictionary = new TreeSet<>();
+    // Biến thể xoá 1 ký tự -> các từ gốc (tra từ gần đúng kiểu SymSpell)
+    private final Map<String, Set<String>> deletes = new HashMap<>();
+    private final Map<Long, Long> popularity = new HashMap<>();
+    private double totalLength = 0;
+    private long maxPopularity = 0;
+
+    public void upsert(Doc doc) {
+        Map<String, Double> terms = new HashMap<>();
+        double length = addField(terms, doc.name(), NAME_WEIGHT)
+                + addField(terms, doc.categoryName(), CATEGORY_WEIGHT)
+                + addField(terms, doc.description(), DESCRIPTION_WEIGHT);
+
+        lock.writeLock().lock();
+        try {
+            removeLocked(doc.id());
+            Entry entry = new Entry(doc.id(), doc.categoryId(), doc.active(), length, terms);
+            docs.put(doc.id(), entry);
+            totalLength += length;
+            terms.forEach((term, tf) -> {
+                Map<Long, Double> posting = postings.computeIfAbsent(term, t -> {
+                    dictionary.add(t);
+                    if (t.length() >= MIN_TYPO_LENGTH - 1) {
+                        for (String d : deletions(t)) deletes.computeIfAbsent(d, k -> new HashSet<>()).add(t);
+                        deletes.computeIfAbsent(t, k -> new HashSet<>()).add(t);
+                    }
+                    return new HashMap<>();
+                });
+                posting.put(doc.id(), tf);
+            });
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(Long id) {
+        lock.writeLock().lock();
+        try {
+            removeLocked(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void replaceAll(Collection<Doc> all) {
+        lock.writeLock().lock();
+        try {
+            docs.clear();
+            postings.clear();
+            dictionary.clear();
+            deletes.clear();
+            totalLength = 0;
+            for (Doc d : all) upsert(d); // write lock re-entrant
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** Số phần đã bán theo món, dùng làm tín hiệu phổ biến. */
+    public void setPopularity(Map<Long, Long> sold) {
+        lock.writeLock().lock();
+        try {
+            popularity.clear();
+            popularity.putAll(sold);
+            maxPopularity = sold.values().stream().mapToLong(Long::longValue).max().orElse(0);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return docs.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public Result search(String query, Long categoryId, boolean includeInactive, int offset, int limit) {
+        List<String> tokens = VietnameseText.tokenize(query);
+
+        lock.readLock().lock();
+        try {
+            List<Long> ranked;
+            if (tokens.isEmpty()) {
+                // Không có từ khoá: giống query cũ, món mới nhất trước
+                ranked = docs.values().stream()
+                        .filter(e -> matchesFilter(e, categoryId, includeInactive))
+                        .map(Entry::id)
+                        .sorted(Comparator.reverseOrder())
+                        .toList();
+            } else {
+                ranked = rank(tokens, categoryId, includeInactive);
+            }
+            int from = Math.min(Math.max(offset, 0), ranked.size());
+            int to = Math.min(from + Math.max(limit, 0), ranked.size());
+            return new Result(List.copyOf(ranked.subList(from, to)), ranked.size());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private List<Long> rank(List<String> tokens, Long categoryId, boolean includeInactive) {
+        double avgLength = docs.isEmpty() ? 1 : Math.max(1e-9, totalLength / docs.size());
+
+        // Mọi từ trong query đều phải khớp (giống LIKE cũ), điểm cộng dồn
+        Map<Long, Double> scores = null;
+        for (int k = 0; k < tokens.size(); k++) {
+            Map<Long, Double> tokenScores = new HashMap<>();
+            // Từ cuối có thể đang gõ dở nên luôn mở rộng tiền tố, kể cả 1 ký tự
+            boolean last = k == tokens.size() - 1;
+            for (Map.Entry<String, Double> exp : expand(tokens.get(k), last).entrySet()) {
+                Map<Long, Double> posting = postings.get(exp.getKey());
+                double idf = idf(posting.size());
+                for (Map.Entry<Long, Double> p : posting.entrySet()) {
+                    Entry e = docs.get(p.getKey());
+                    if (!matchesFilter(e, categoryId, includeInactive)) continue;
+                    double tf = p.getValue();
+                    double s = exp.getValue() * idf * (tf * (K1 + 1)) / (tf + K1 * (1 - B + B * e.length() / avgLength));
+                    tokenScores.merge(e.id(), s, Math::max);
+                }
+            }
+            if (scores == null) {
+                scores = tokenScores;
+            } else {
+                Map<Long, Double> next = new HashMap<>();
+                for (Map.Entry<Long, Double> s : scores.entrySet()) {
+                    Double add = tokenScores.get(s.getKey());
+                    if (add != null) next.put(s.getKey(), s.getValue() + add);
+                }
+                scores = next;
+            }
+            if (scores.isEmpty()) return List.of();
+        }
+
+        double popNorm = Math.log1p(maxPopularity);
+        List<Map.Entry<Long, Double>> list = new ArrayList<>(scores.size());
+        for (Map.Entry<Long, Double> s : scores.entrySet()) {
+            double boost = popNorm > 0
+                    ? 1 + POPULARITY_WEIGHT * Math.log1p(popularity.getOrDefault(s.getKey(), 0L)) / popNorm
+                    : 1;
+            list.add(Map.entry(s.getKey(), s.getValue() * boost));
+        }
+        list.sort(Map.Entry.<Long, Double>comparingByValue().reversed()
+                .thenComparing(Map.Entry.comparingByKey(Comparator.reverseOrder())));
+        return list.stream().map(Map.Entry::getKey).toList();
+    }
+
+    // term trong index -> hệ số (1 = khớp đúng, nhỏ hơn = khớp tiền tố / gần đúng)
+    private Map<String, Double> expand(String token, boolean last) {
+        Map<String, Double> out = new LinkedHashMap<>();
+        if (postings.containsKey(token)) out.put(token, 1.0);
+
+        if (last || token.length() >= 2) {
+            for (String term : dictionary.subSet(token, false, token + Character.MAX_VALUE, false)) {
+                if (out.size() >= MAX_EXPANSIONS) break;
+                out.putIfAbsent(term, PREFIX_FACTOR);
+            }
+        }
+
+        if (token.length() >= MIN_TYPO_LENGTH) {
+            Set<String> candidates = new HashSet<>(deletes.getOrDefault(token, Set.of()));
+            for (String d : deletions(token)) candidates.addAll(deletes.getOrDefault(d, Set.of()));
+            for (String c : candidates) {
+                if (out.size() >= MAX_EXPANSIONS * 2) break;
+                if (!out.containsKey(c) && withinOneEdit(token, c)) out.put(c, TYPO_FACTOR);
+            }
+        }
+        return out;
+    }
+
+    private double idf(int df) {
+        int n = docs.size();
+        return Math.log(1 + (n - df + 0.5) / (df + 0.5));
+    }
+
+    private static boolean matchesFilter(Entry e, Long categoryId, boolean includeInactive) {
+        if (e == null) return false;
+        if (!includeInactive && !e.active()) return false;
+        return categoryId == null || categoryId.equals(e.categoryId());
+    }
+
+    private void removeLocked(Long id) {
+        Entry old = docs.remove(id);
+        if (old == null) return;
+        totalLength -= old.length();
+        for (String term : old.terms().keySet()) {
+            Map<Long, Double> posting = postings.get(term);
+            if (posting == null) continue;
+            posting.remove(id);
+            if (posting.isEmpty()) {
+                postings.remove(term);
+                dictionary.remove(term);
+                for (String d : deletions(term)) removeDelete(d, term);
+                removeDelete(term, term);
+            }
+        }
+    }
+
+    private void removeDelete(String key, String term) {
+        Set<String> set = deletes.get(key);
+        if (set == null) return;
+        set.remove(term);
+        if (set.isEmpty()) deletes.remove(key);
+    }
+
+    private static double addField(Map<String, Double> terms, String text, double weight) {
+        List<String> tokens = VietnameseText.tokenize(text);
+        for (String t : tokens) terms.merge(t, weight, Double::sum);
+        return tokens.size() * weight;
+    }
+
+    private static List<String> deletions(String term) {
+        List<String> out = new ArrayList<>(term.length());
+        for (int i = 0; i < term.length(); i++) {
+            out.add(term.substring(0, i) + term.substring(i + 1));
+        }
+        return out;
+    }
+
+    // Damerau-Levenshtein <= 1 (thêm, bớt, thay hoặc đảo 2 ký tự liền nhau)
+    static boolean withinOneEdit(String a, String b) {
+        int la = a.length(), lb = b.length();
+        if (Math.abs(la - lb) > 1) return false;
+        if (la == lb) {
+            int first = -1, diffs = 0;
+            for (int i = 0; i < la; i++) {
+                if (a.charAt(i) != b.charAt(i)) {
+                    if (++diffs > 2) return false;
+                    if (first < 0) first = i;
+                }
+            }
+            if (diffs <= 1) return true;
+            // đúng 2 chỗ khác nhau: chỉ chấp nhận nếu là đảo chỗ liền kề
+            return first + 1 < la
+                    && a.charAt(first) == b.charAt(first + 1)
+                    && a.charAt(first + 1) == b.charAt(first)
+                    && a.substring(first + 2).equals(b.substring(first + 2));
+        }
+        String s = la < lb ? a : b, l = la < lb ? b : a;
+        int i = 0, j = 0;
+        boolean skipped = false;
+        while (i < s.length() && j < l.length()) {
+            if (s.charAt(i) == l.charAt(j)) {
+                i++;
+                j++;
+            } else {
+                if (skipped) return false;
+                skipped = true;
+                j++;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,256 @@
+package org.example.server.search;
+
+import org.example.server.entity.Promotion;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.function.ToIntFunction;
+
+/**
+ * Khuyến mãi đã "biên dịch" thành luật bất biến trong bộ nhớ, để xem trước / áp mã cho giỏ hàng không chạm DB.
+ * Chỉ mục: theo code (không phân biệt hoa thường); khuyến mãi tự động (không code) thì theo phạm vi:
+ * toàn shop, theo danh mục (BitSet các luật) và theo món (mảng vị trí luật đã sort, thưa hơn BitSet);
+ * mỗi luật PRODUCT giữ BitSet id món để kiểm tra 1 dòng trong O(1) thay vì duyệt danh sách món.
+ * best(): chọn tổ hợp giảm giá có lợi nhất cho khách giữa mã nhập, khuyến mãi tự động và hạng thành viên.
+ * Đổi khuyến mãi thì dựng snapshot mới rồi tráo tham chiếu, luồng đang đọc vẫn dùng bản cũ trọn vẹn.
+ */
+public final class PromotionRules {
+
+    /** 1 dòng giỏ hàng với giá hiện tại của món. */
+    public record Line(Long productId, Long categoryId, BigDecimal unitPrice, int quantity) {
+        BigDecimal total() {
+            return unitPrice.multiply(BigDecimal.valueOf(quantity));
+        }
+    }
+
+    public record Rule(Long id, String code, String name, Promotion.PromoType type, BigDecimal value,
+                       BigDecimal minOrderTotal, Promotion.PromoScope scope, Long categoryId, BitSet productIds,
+                       LocalDateTime startAt, LocalDateTime endAt, Integer maxUses, boolean active,
+                       boolean stackable, boolean couponBatch) {
+
+        public static Rule compile(Promotion p, Collection<Long> productIds) {
+            BitSet ids = new BitSet();
+            for (Long id : productIds) {
+                if (id != null && id >= 0 && id <= Integer.MAX_VALUE) ids.set(id.intValue());
+            }
+            return new Rule(p.getId(), p.getCode(), p.getName(), p.getType(), p.getValue(), p.getMinOrderTotal(),
+                    p.getScope(), p.getCategory() == null ? null : p.getCategory().getId(), ids,
+                    p.getStartAt(), p.getEndAt(), p.getMaxUses(), !Boolean.FALSE.equals(p.getActive()),
+                    !Boolean.FALSE.equals(p.getStackable()), Boolean.TRUE.equals(p.getCouponBatch()));
+        }
+
+        public boolean automatic() {
+            return !couponBatch && (code == null || code.isBlank());
+        }
+
+        /** null = dùng được; khác null là lý do không dùng được (giữ nguyên thông báo của API cũ). */
+        String validate(LocalDateTime now, int used) {
+            if (!active) return "Code is inactive";
+            if (startAt != null && now.isBefore(startAt)) return "Code not yet active";
+            if (endAt != null && now.isAfter(endAt)) return "Code expired";
+            if (maxUses != null && used >= maxUses) return "Code usage limit reached";
+            return null;
+        }
+
+        boolean eligible(Line line) {
+            if (scope == Promotion.PromoScope.ALL) return true;
+            if (scope == Promotion.PromoScope.CATEGORY) {
+                return categoryId != null && categoryId.equals(line.categoryId());
+            }
+            if (scope == Promotion.PromoScope.PRODUCT) {
+                Long id = line.productId();
+                return id != null && id >= 0 && id <= Integer.MAX_VALUE && productIds.get(id.intValue());
+            }
+            return false;
+        }
+
+        BigDecimal discount(BigDecimal eligibleTotal) {
+            if (type == Promotion.PromoType.FIXED) return value;
+            return eligibleTotal.multiply(value).divide(BigDecimal.valueOf(100));
+        }
+    }
+
+    public record Result(BigDecimal discount, Rule rule, String message) {}
+
+    /** 1 khoản giảm được chọn; rule null = giảm theo hạng thành viên. */
+    public record Applied(Rule rule, BigDecimal discount) {}
+
+    /**
+     * Tổ hợp giảm giá tốt nhất cho giỏ.
+     * @param codeMessage kết quả của mã khách nhập (null nếu không nhập mã)
+     * @param codeApplied mã nhập có nằm trong tổ hợp được chọn không
+     */
+    public record Offer(BigDecimal subtotal, List<Applied> applied, BigDecimal discount, BigDecimal total,
+                        String codeMessage, boolean codeApplied) {}
+
+    static final String BETTER_OFFER = "A better offer was applied instead";
+
+    public static final PromotionRules EMPTY = new PromotionRules(List.of());
+
+    private final Rule[] rules;
+    private final Map<String, Integer> byCode = new HashMap<>();
+    private final BitSet allScope = new BitSet();
+    private final Map<Long, BitSet> byCategory = new HashMap<>();
+    private final Map<Long, int[]> byProduct = new HashMap<>();
+
+    public PromotionRules(Collection<Rule> compiled) {
+        this.rules = compiled.stream().sorted(Comparator.comparing(Rule::id)).toArray(Rule[]::new);
+        Map<Long, List<Integer>> productSlots = new HashMap<>();
+        for (int slot = 0; slot < rules.length; slot++) {
+            Rule r = rules[slot];
+            if (r.couponBatch()) continue; // chỉ tới được qua mã trong coupon_codes
+            if (!r.automatic()) {
+                byCode.put(normalize(r.code()), slot);
+                continue; // mã chỉ tra theo code, không đưa vào chỉ mục phạm vi
+            }
+            if (r.scope() == Promotion.PromoScope.ALL) {
+                allScope.set(slot);
+            } else if (r.scope() == Promotion.PromoScope.CATEGORY && r.categoryId() != null) {
+                byCategory.computeIfAbsent(r.categoryId(), k -> new BitSet(rules.length)).set(slot);
+            } else if (r.scope() == Promotion.PromoScope.PRODUCT) {
+                BitSet ids = r.productIds();
+                for (int id = ids.nextSetBit(0); id >= 0; id = ids.nextSetBit(id + 1)) {
+                    productSlots.computeIfAbsent((long) id, k -> new ArrayList<>(4)).add(slot);
+                }
+            }
+        }
+        // slot tăng dần theo vòng lặp nên mỗi mảng đã sort sẵn
+        productSlots.forEach((id, slots) -> byProduct.put(id, slots.stream().mapToInt(Integer::intValue).toArray()));
+    }
+
+    public int size() {
+        return rules.length;
+    }
+
+    public Optional<Rule> byCode(String code) {
+        if (code == null) return Optional.empty();
+        Integer slot = byCode.get(normalize(code));
+        return slot == null ? Optional.empty() : Optional.of(rules[slot]);
+    }
+
+    public Optional<Rule> byId(Long id) {
+        if (id == null) return Optional.empty();
+        int lo = 0, hi = rules.length - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int c = rules[mid].id().compareTo(id);
+            if (c == 0) return Optional.of(rules[mid]);
+            if (c < 0) lo = mid + 1;
+            else hi = mid - 1;
+        }
+        return Optional.empty();
+    }
+
+    /** Khuyến mãi tự động có ít nhất 1 dòng của giỏ thuộc phạm vi (chưa xét hạn dùng / tổng tối thiểu), id tăng dần. */
+    public List<Rule> automatic(List<Line> lines) {
+        BitSet slots = (BitSet) allScope.clone();
+        for (Line l : lines) {
+            BitSet c = l.categoryId() == null ? null : byCategory.get(l.categoryId());
+            if (c != null) slots.or(c);
+            int[] p = l.productId() == null ? null : byProduct.get(l.productId());
+            if (p != null) {
+                for (int slot : p) slots.set(slot);
+            }
+        }
+        List<Rule> out = new ArrayList<>(slots.cardinality());
+        for (int s = slots.nextSetBit(0); s >= 0; s = slots.nextSetBit(s + 1)) out.add(rules[s]);
+        return out;
+    }
+
+    /**
+     * Xem trước / áp mã cho giỏ.
+     * @param used số lượt đã dùng của luật (theo id), để kiểm tra maxUses
+     */
+    public Result apply(String code, List<Line> lines, LocalDateTime now, ToIntFunction<Long> used) {
+        if (code == null || code.trim().isEmpty()) return new Result(BigDecimal.ZERO, null, "Code required");
+        Rule rule = byCode(code.trim()).orElse(null);
+        if (rule == null) return new Result(BigDecimal.ZERO, null, "Invalid code");
+        return apply(rule, lines, now, used.applyAsInt(rule.id()));
+    }
+
+    public static Result apply(Rule rule, List<Line> lines, LocalDateTime now, int used) {
+        String error = rule.validate(now, used);
+        if (error != null) return new Result(BigDecimal.ZERO, null, error);
+
+        BigDecimal subtotal = BigDecimal.ZERO;
+        BigDecimal eligibleTotal = BigDecimal.ZERO;
+        for (Line line : lines) {
+            BigDecimal lineTotal = line.total();
+            subtotal = subtotal.add(lineTotal);
+            if (rule.eligible(line)) eligibleTotal = eligibleTotal.add(lineTotal);
+        }
+
+        if (rule.minOrderTotal() != null && subtotal.compareTo(rule.minOrderTotal()) < 0) {
+            return new Result(BigDecimal.ZERO, null, "Min order total not met");
+        }
+        if (eligibleTotal.compareTo(BigDecimal.ZERO) == 0) {
+            return new Result(BigDecimal.ZERO, null, "Code not applicable to these items");
+        }
+
+        BigDecimal discount = rule.discount(eligibleTotal);
+        if (discount.compareTo(subtotal) > 0) discount = subtotal;
+        return new Result(discount, rule, "Applied successfully");
+    }
+
+    /**
+     * Chọn tổ hợp có lợi nhất giữa: (mọi khuyến mãi cộng dồn được + hạng thành viên) và từng khuyến mãi độc quyền.
+     * Mỗi khoản tính trên giá gốc nên thứ tự không ảnh hưởng, và khi cộng dồn thì lấy hết các khoản hợp lệ là tốt nhất;
+     * tổng giảm không vượt tổng giỏ. Bằng nhau thì ưu tiên nhóm cộng dồn.
+     * @param memberRate tỉ lệ giảm theo hạng thành viên (0 nếu không có)
+     */
+    public Offer best(String code, List<Line> lines, BigDecimal memberRate, LocalDateTime now, ToIntFunction<Long> used) {
+        Result typed = code == null || code.isBlank() ? null : apply(code, lines, now, used);
+        return bestWith(typed, lines, memberRate, now, used);
+    }
+
+    /** Như trên, với kết quả mã nhập đã tính sẵn (vd mã con của lô coupon); typed null = không nhập mã. */
+    public Offer bestWith(Result typed, List<Line> lines, BigDecimal memberRate, LocalDateTime now, ToIntFunction<Long> used) {
+        BigDecimal subtotal = BigDecimal.ZERO;
+        for (Line line : lines) subtotal = subtotal.add(line.total());
+
+        List<Applied> stack = new ArrayList<>();
+        BigDecimal stackTotal = BigDecimal.ZERO;
+        Applied exclusive = null;
+
+        List<Result> candidates = new ArrayList<>();
+        if (typed != null && typed.rule() != null) candidates.add(typed);
+        for (Rule r : automatic(lines)) {
+            Result res = apply(r, lines, now, used.applyAsInt(r.id()));
+            if (res.rule() != null) candidates.add(res);
+        }
+        for (Result res : candidates) {
+            Applied a = new Applied(res.rule(), res.discount());
+            if (res.rule().stackable()) {
+                stack.add(a);
+                stackTotal = stackTotal.add(res.discount());
+            } else if (exclusive == null || res.discount().compareTo(exclusive.discount()) > 0) {
+                exclusive = a;
+            }
+        }
+        if (memberRate != null && memberRate.signum() > 0 && subtotal.signum() > 0) {
+            BigDecimal member = subtotal.multiply(memberRate);
+            stack.add(new Applied(null, member));
+            stackTotal = stackTotal.add(member);
+        }
+
+        List<Applied> chosen = stack;
+        BigDecimal discount = stackTotal;
+        if (exclusive != null && exclusive.discount().compareTo(stackTotal) > 0) {
+            chosen = List.of(exclusive);
+            discount = exclusive.discount();
+        }
+        if (discount.compareTo(subtotal) > 0) discount = subtotal;
+
+        boolean codeApplied = typed != null && typed.rule() != null
+                && chosen.stream().anyMatch(a -> a.rule() == typed.rule());
+        String codeMessage = typed == null ? null
+                : typed.rule() == null ? typed.message()
+                : codeApplied ? typed.message() : BETTER_OFFER;
+        return new Offer(subtotal, List.copyOf(chosen), discount, subtotal.subtract(discount), codeMessage, codeApplied);
+    }
+
+    private static String normalize(String code) {
+        return code.trim().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,128 @@
+package org.example.server.search;
+
+import java.util.*;
+
+/**
+ * Bộ đếm số phần đã bán theo món, giữ trong bộ nhớ:
+ * - TOTAL: tổng từ trước tới nay.
+ * - H1 / H24 / D7: điểm "đang hot" suy giảm theo hàm mũ với hằng số thời gian 1 giờ / 24 giờ / 7 ngày
+ *   (1 phần bán cách đây đúng 1 hằng số thời gian chỉ còn nặng 1/e).
+ * Top-N của từng loại được dựng bằng heap rồi đóng băng thành snapshot; đọc không khoá.
+ */
+public class SalesRanking {
+
+    public enum Window {
+        TOTAL(0), H1(3_600_000L), H24(86_400_000L), D7(604_800_000L);
+
+        final long tauMillis;
+
+        Window(long tauMillis) {
+            this.tauMillis = tauMillis;
+        }
+
+        /** all | 1h | 24h | 7d */
+        public static Window parse(String value) {
+            return switch (value == null ? "all" : value.trim().toLowerCase()) {
+                case "", "all" -> TOTAL;
+                case "1h" -> H1;
+                case "24h", "1d" -> H24;
+                case "7d" -> D7;
+                default -> throw new IllegalArgumentException("Unknown window: " + value);
+            };
+        }
+    }
+
+    public record Entry(Long productId, double score) {}
+
+    private static final Window[] DECAYED = {Window.H1, Window.H24, Window.D7};
+
+    private static final class Counter {
+        long total;
+        final double[] scores = new double[DECAYED.length];
+        long decayedAt;
+    }
+
+    private final int topN;
+    private final Map<Long, Counter> counters = new HashMap<>();
+    private volatile Map<Window, List<Entry>> snapshot = Map.of();
+
+    public SalesRanking(int topN) {
+        this.topN = Math.max(1, topN);
+    }
+
+    /** Cộng quantity phần bán lúc atMillis (có thể là quá khứ, vd khi nạp lại lịch sử). */
+    public synchronized void record(Long productId, long quantity, long atMillis, boolean countTotal) {
+        if (quantity <= 0) return;
+        Counter c = counters.computeIfAbsent(productId, k -> new Counter());
+        if (countTotal) c.total += quantity;
+        if (atMillis > c.decayedAt) decay(c, atMillis);
+        for (int w = 0; w < DECAYED.length; w++) {
+            c.scores[w] += quantity * Math.exp(-(double) (c.decayedAt - atMillis) / DECAYED[w].tauMillis);
+        }
+    }
+
+    /** Ghi đè tổng đã bán (nạp lúc khởi động / đối soát). Món không có trong map về 0. */
+    public synchronized void setTotals(Map<Long, Long> totals) {
+        counters.values().forEach(c -> c.total = 0);
+        totals.forEach((id, n) -> counters.computeIfAbsent(id, k -> new Counter()).total = n);
+    }
+
+    /** Xoá toàn bộ điểm "đang hot" (trước khi nạp lại từ lịch sử gần đây), giữ nguyên tổng. */
+    public synchronized void clearTrending() {
+        for (Counter c : counters.values()) {
+            Arrays.fill(c.scores, 0);
+            c.decayedAt = 0;
+        }
+    }
+
+    public synchronized Map<Long, Long> totals() {
+        Map<Long, Long> out = new HashMap<>();
+        counters.forEach((id, c) -> {
+            if (c.total > 0) out.put(id, c.total);
+        });
+        return out;
+    }
+
+    /** Dựng lại top-N của mọi loại tại thời điểm nowMillis rồi tráo snapshot. */
+    public synchronized void rebuild(long nowMillis) {
+        Map<Window, List<Entry>> next = new EnumMap<>(Window.class);
+        Map<Window, PriorityQueue<Entry>> heaps = new EnumMap<>(Window.class);
+        Comparator<Entry> worstFirst = Comparator.comparingDouble(Entry::score)
+                .thenComparing(Entry::productId, Comparator.reverseOrder());
+        for (Window w : Window.values()) heaps.put(w, new PriorityQueue<>(topN + 1, worstFirst));
+
+        for (Map.Entry<Long, Counter> e : counters.entrySet()) {
+            Counter c = e.getValue();
+            if (nowMillis > c.decayedAt) decay(c, nowMillis);
+            offer(heaps.get(Window.TOTAL), new Entry(e.getKey(), c.total));
+            for (int w = 0; w < DECAYED.length; w++) {
+                offer(heaps.get(DECAYED[w]), new Entry(e.getKey(), c.scores[w]));
+            }
+        }
+        for (Window w : Window.values()) {
+            List<Entry> list = new ArrayList<>(heaps.get(w));
+            list.sort(worstFirst.reversed());
+            next.put(w, List.copyOf(list));
+        }
+        snapshot = next;
+    }
+
+    /** Top món theo loại, điểm giảm dần (tối đa topN). */
+    public List<Entry> top(Window window) {
+        return snapshot.getOrDefault(window, List.of());
+    }
+
+    private void offer(PriorityQueue<Entry> heap, Entry entry) {
+        if (entry.score() <= 1e-9) return;
+        heap.add(entry);
+        if (heap.size() > topN) heap.poll();
+    }
+
+    private static void decay(Counter c, long toMillis) {
+        if (c.decayedAt > 0) {
+            long dt = toMillis - c.decayedAt;
+            for (int w = 0; w < DECAYED.length; w++) c.scores[w] *= Math.exp(-(double) dt / DECAYED[w].tauMillis);
+        }
+        c.decayedAt = toMillis;
+    }
+}
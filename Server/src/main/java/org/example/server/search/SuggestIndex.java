@@ -0,0 +1,224 @@
+package org.example.server.search;
+
+import java.util.*;
+
+/**
+ * Gợi ý khi đang gõ: trie trên tên món / danh mục đã bỏ dấu, xếp theo số phần đã bán.
+ * - Mỗi từ trong tên đều là 1 điểm bắt đầu ("bo" gợi ý được "Phở bò tái").
+ * - Top-K của từng nút được tính sẵn lúc dựng, nên tra cứu chỉ là đi theo tiền tố rồi đọc mảng.
+ * - Trie dựng xong là bất biến, nằm trong các mảng phẳng; thay đổi thì dựng lại rồi tráo tham chiếu,
+ *   luồng đọc không cần khoá.
+ */
+public class SuggestIndex {
+
+    public record Suggestion(String type, Long id, String text) {}
+
+    public static final String PRODUCT = "product";
+    public static final String CATEGORY = "category";
+
+    public static final int MAX_RESULTS = 10;
+    // Bỏ qua phần đuôi quá dài của tên, không ai gõ tới
+    private static final int MAX_KEY_LENGTH = 40;
+
+    private record Source(Suggestion suggestion, String folded, Long categoryId, boolean active) {}
+
+    private final Map<Long, Source> products = new HashMap<>();
+    private final Map<Long, Source> categories = new HashMap<>();
+    private Map<Long, Long> sold = Map.of();
+
+    private volatile Trie trie = Trie.EMPTY;
+
+    public synchronized void upsertProduct(Long id, String name, Long categoryId, boolean active) {
+        products.put(id, new Source(new Suggestion(PRODUCT, id, name), fold(name), categoryId, active));
+        rebuild();
+    }
+
+    public synchronized void removeProduct(Long id) {
+        if (products.remove(id) != null) rebuild();
+    }
+
+    public synchronized void upsertCategory(Long id, String name) {
+        categories.put(id, new Source(new Suggestion(CATEGORY, id, name), fold(name), null, true));
+        rebuild();
+    }
+
+    public synchronized void removeCategory(Long id) {
+        if (categories.remove(id) != null) rebuild();
+    }
+
+    /** Dựng lại toàn bộ 1 lần (lúc khởi động). */
+    public synchronized void replaceAll(Map<Long, String> categoryNames, Collection<ProductSearchIndex.Doc> docs) {
+        products.clear();
+        categories.clear();
+        categoryNames.forEach((id, name) ->
+                categories.put(id, new Source(new Suggestion(CATEGORY, id, name), fold(name), null, true)));
+        for (ProductSearchIndex.Doc d : docs) {
+            products.put(d.id(), new Source(new Suggestion(PRODUCT, d.id(), d.name()), fold(d.name()), d.categoryId(), d.active()));
+        }
+        rebuild();
+    }
+
+    public synchronized void setPopularity(Map<Long, Long> soldByProduct) {
+        this.sold = Map.copyOf(soldByProduct);
+        rebuild();
+    }
+
+    public List<Suggestion> suggest(String query, int limit) {
+        return trie.lookup(fold(query), Math.min(Math.max(limit, 0), MAX_RESULTS));
+    }
+
+    int nodeCount() {
+        return trie.labels.length;
+    }
+
+    // Gộp khoảng trắng / ký tự lạ thành 1 dấu cách để "pho   bo" và "phở-bò" đều khớp
+    private static String fold(String text) {
+        return String.join(" ", VietnameseText.tokenize(text));
+    }
+
+    private void rebuild() {
+        Map<Long, Long> categorySold = new HashMap<>();
+        List<Source> entries = new ArrayList<>();
+        for (Source p : products.values()) {
+            if (!p.active() || p.folded().isEmpty()) continue;
+            long s = sold.getOrDefault(p.suggestion().id(), 0L);
+            if (p.categoryId() != null) categorySold.merge(p.categoryId(), s, Long::sum);
+            entries.add(p);
+        }
+        for (Source c : categories.values()) {
+            // Danh mục không còn món nào đang bán thì không gợi ý
+            if (c.folded().isEmpty() || !categorySold.containsKey(c.suggestion().id())) continue;
+            entries.add(c);
+        }
+
+        // Thứ tự trong mảng = thứ hạng: bán chạy trước, tên ngắn trước
+        entries.sort(Comparator.comparingLong((Source e) -> -score(e, categorySold))
+                .thenComparingInt(e -> e.folded().length())
+                .thenComparing(e -> e.suggestion().type())
+                .thenComparing(e -> e.suggestion().id()));
+
+        trie = Trie.build(entries.stream().map(Source::folded).toList(),
+                entries.stream().map(Source::suggestion).toList());
+    }
+
+    private long score(Source e, Map<Long, Long> categorySold) {
+        Long id = e.suggestion().id();
+        return PRODUCT.equals(e.suggestion().type()) ? sold.getOrDefault(id, 0L) : categorySold.getOrDefault(id, 0L);
+    }
+
+    /** Trie phẳng: nút i có các con ở [childStart[i], childStart[i] + childCount[i]) xếp theo nhãn. */
+    private static final class Trie {
+
+        static final Trie EMPTY = build(List.of(), List.of());
+
+        final char[] labels;
+        final int[] childStart;
+        final int[] childCount;
+        final int[] topStart;
+        final byte[] topCount;
+        final int[] top;
+        final Suggestion[] suggestions;
+
+        private Trie(char[] labels, int[] childStart, int[] childCount,
+                     int[] topStart, byte[] topCount, int[] top, Suggestion[] suggestions) {
+            this.labels = labels;
+            this.childStart = childStart;
+            this.childCount = childCount;
+            this.topStart = topStart;
+            this.topCount = topCount;
+            this.top = top;
+            this.suggestions = suggestions;
+        }
+
+        List<Suggestion> lookup(String prefix, int limit) {
+            int node = 0;
+            for (int i = 0; i < prefix.length(); i++) {
+                node = child(node, prefix.charAt(i));
+                if (node < 0) return List.of();
+            }
+            int n = Math.min(limit, topCount[node]);
+            if (n == 0) return List.of();
+            Suggestion[] out = new Suggestion[n];
+            for (int k = 0; k < n; k++) out[k] = suggestions[top[topStart[node] + k]];
+            return Arrays.asList(out);
+        }
+
+        private int child(int node, char c) {
+            int lo = childStart[node], hi = lo + childCount[node] - 1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                char l = labels[mid];
+                if (l < c) lo = mid + 1;
+                else if (l > c) hi = mid - 1;
+                else return mid;
+            }
+            return -1;
+        }
+
+        // keys[i] ứng với suggestions[i]; chỉ số nhỏ hơn = hạng cao hơn
+        static Trie build(List<String> keys, List<Suggestion> suggestions) {
+            Node root = new Node('\0');
+            for (int i = 0; i < keys.size(); i++) {
+                String key = keys.get(i);
+                for (int start = 0; start < key.length(); start++) {
+                    if (start > 0 && key.charAt(start - 1) != ' ') continue;
+                    int end = Math.min(key.length(), start + MAX_KEY_LENGTH);
+                    Node n = root;
+                    n.offer(i);
+                    for (int j = start; j < end; j++) {
+                        n = n.children.computeIfAbsent(key.charAt(j), Node::new);
+                        n.offer(i);
+                    }
+                }
+            }
+
+            // BFS: con của cùng 1 nút nằm liền nhau trong mảng
+            List<Node> order = new ArrayList<>();
+            order.add(root);
+            for (int i = 0; i < order.size(); i++) {
+                Node n = order.get(i);
+                n.firstChild = order.size();
+                n.children.values().stream().sorted(Comparator.comparingInt(c -> c.label)).forEach(order::add);
+            }
+
+            int size = order.size();
+            char[] labels = new char[size];
+            int[] childStart = new int[size];
+            int[] childCount = new int[size];
+            int[] topStart = new int[size];
+            byte[] topCount = new byte[size];
+            int total = 0;
+            for (Node n : order) total += n.top.size();
+            int[] top = new int[total];
+            int pos = 0;
+            for (int i = 0; i < size; i++) {
+                Node n = order.get(i);
+                labels[i] = n.label;
+                childStart[i] = n.firstChild;
+                childCount[i] = n.children.size();
+                topStart[i] = pos;
+                topCount[i] = (byte) n.top.size();
+                for (int idx : n.top) top[pos++] = idx;
+            }
+            return new Trie(labels, childStart, childCount, topStart, topCount, top,
+                    suggestions.toArray(new Suggestion[0]));
+        }
+    }
+
+    private static final class Node {
+        final char label;
+        final Map<Character, Node> children = new HashMap<>(4);
+        // Món được chèn theo thứ hạng nên K chỉ số đầu tiên đi qua nút chính là top-K
+        final List<Integer> top = new ArrayList<>(2);
+        int firstChild;
+
+        Node(char label) {
+            this.label = label;
+        }
+
+        void offer(int idx) {
+            // 1 món có thể đi qua cùng nút từ nhiều từ khác nhau, nhưng luôn liên tiếp nhau
+            if (top.size() < MAX_RESULTS && (top.isEmpty() || top.get(top.size() - 1) != idx)) top.add(idx);
+        }
+    }
+}
@@ -11,7 +11,6 @@ import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
-import java.util.Arrays;
 import java.util.Collection;
 import java.util.stream.Collectors;
 
@@ -30,15 +29,13 @@ public class JwtAuthFilter extends OncePerRequestFilter {
         if (header != null && header.startsWith("Bearer ")) {
             String token = header.substring(7).trim();
             try {
-                String username = jwtService.extractUsername(token);
-                if (username != null && jwtService.isValid(token, username)) {
-                    String[] roles = jwtService.extractRoles(token); // có thể null/empty
-                    Collection<SimpleGrantedAuthority> authorities =
-                            (roles == null ? java.util.List.<SimpleGrantedAuthority>of()
-                                    : Arrays.stream(roles)
-                                    .map(r -> r.startsWith("ROLE_") ? r : "ROLE_" + r)
-                                    .map(SimpleGrantedAuthority::new)
-                                    .collect(Collectors.toList()));
+                // Parse + verify 1 lần, request sau cùng token lấy từ cache
+                VerifiedToken verified = jwtService.verify(token).orElse(null);
+                if (verified != null) {
+                    String username = verified.username();
+                    Collection<SimpleGrantedAuthority> authorities = verified.roles().stream()
+                            .map(SimpleGrantedAuthority::new)
+                            .collect(Collectors.toList());
 
                     var auth = new UsernamePasswordAuthenticationToken(username, null, authorities);
                     SecurityContextHolder.getContext().setAuthentication(auth);
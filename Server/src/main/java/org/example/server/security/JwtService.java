@@ -1,16 +1,25 @@
 package org.example.server.security;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import io.jsonwebtoken.Claims;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.SignatureAlgorithm;
+import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import javax.crypto.SecretKey;
 import javax.crypto.spec.SecretKeySpec;
 import java.nio.charset.StandardCharsets;
-import java.security.Key;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -23,21 +32,72 @@ public class JwtService {
     @Value("${jwt.ttl:3600000}")
     private long defaultTtlMillis;
 
-    private Key getSigningKey() {
-        // JJWT 0.9.x dùng SecretKeySpec + SignatureAlgorithm
-        return new SecretKeySpec(
+    @Value("${app.jwt.cache-size:10000}")
+    private int cacheSize;
+
+    @Value("${app.jwt.cache-minutes:30}")
+    private long cacheMinutes;
+
+    // Key và parser không đổi trong suốt vòng đời app -> tạo 1 lần
+    private SecretKey signingKey;
+    private JwtParser parser;
+
+    // sha256(token) -> kết quả verify; ngoài giới hạn của cache còn kiểm tra exp của token mỗi lần đọc
+    private Cache<String, VerifiedToken> verified;
+
+    // Giờ để so exp (cả lúc parse lẫn khi trúng cache); test thay bằng đồng hồ cố định
+    private Clock clock = Clock.systemUTC();
+
+    @PostConstruct
+    void init() {
+        signingKey = new SecretKeySpec(
                 secret.getBytes(StandardCharsets.UTF_8),
                 SignatureAlgorithm.HS512.getJcaName()
         );
+        parser = Jwts.parser().verifyWith(signingKey).clock(() -> Date.from(clock.instant())).build();
+        verified = Caffeine.newBuilder()
+                .maximumSize(Math.max(1, cacheSize))
+                .expireAfterWrite(Duration.ofMinutes(Math.max(1, cacheMinutes)))
+                .build();
     }
 
-    /** Parse claims (JJWT 0.9.x API) */
+    private SecretKey getSigningKey() {
+        return signingKey;
+    }
+
+    /** Parse claims (verify chữ ký + exp) */
     public Claims extractAllClaims(String token) throws JwtException {
-        return Jwts.parser()
-                .setSigningKey(getSigningKey())
-                .build()
-                .parseClaimsJws(token)
-                .getBody();
+        return parser.parseSignedClaims(token).getPayload();
+    }
+
+    /**
+     * Verify 1 lần và nhớ kết quả đến khi token hết hạn.
+     * Token sai chữ ký / hết hạn -> Optional.empty() (không cache).
+     */
+    public Optional<VerifiedToken> verify(String token) {
+        if (token == null || token.isBlank()) return Optional.empty();
+
+        String key = sha256(token);
+        Instant now = clock.instant();
+        VerifiedToken cached = verified.getIfPresent(key);
+        if (cached != null) {
+            if (!cached.isExpired(now)) return Optional.of(cached);
+            verified.invalidate(key);
+            return Optional.empty();
+        }
+
+        try {
+            Claims c = extractAllClaims(token);
+            if (c.getSubject() == null) return Optional.empty();
+            Date exp = c.getExpiration();
+            VerifiedToken vt = new VerifiedToken(c.getSubject(), normalizeRoles(readRoles(c)),
+                    exp == null ? null : exp.toInstant());
+            if (vt.isExpired(now)) return Optional.empty();
+            verified.put(key, vt);
+            return Optional.of(vt);
+        } catch (JwtException | IllegalArgumentException e) {
+            return Optional.empty();
+        }
     }
 
     public String extractUsername(String token) {
@@ -58,7 +118,14 @@ public class JwtService {
     /** Đọc roles robust (List, array, string, JSON string) */
     public String[] extractRoles(String token) {
         try {
-            Object r = extractAllClaims(token).get("roles");
+            return readRoles(extractAllClaims(token));
+        } catch (Exception ignored) {}
+        return new String[0];
+    }
+
+    private static String[] readRoles(Claims claims) {
+        try {
+            Object r = claims.get("roles");
             if (r == null) return new String[0];
 
             if (r instanceof List<?> list) {
@@ -79,18 +146,30 @@ public class JwtService {
         return new String[0];
     }
 
-    /** Giữ tương thích: generate với roles[] + TTL chỉ định */
-    public String generate(String username, String[] roles, long ttlMillis) {
-        long now = System.currentTimeMillis();
-
-        // Chuẩn hoá prefix ROLE_
-        List<String> norm = Arrays.stream(roles == null ? new String[0] : roles)
+    // Chuẩn hoá prefix ROLE_
+    private static List<String> normalizeRoles(String[] roles) {
+        return Arrays.stream(roles == null ? new String[0] : roles)
                 .filter(Objects::nonNull)
                 .map(String::trim)
                 .filter(s -> !s.isEmpty())
                 .map(r -> r.startsWith("ROLE_") ? r : "ROLE_" + r)
                 .distinct()
                 .collect(Collectors.toList());
+    }
+
+    private static String sha256(String value) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(md.digest(value.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /** Giữ tương thích: generate với roles[] + TTL chỉ định */
+    public String generate(String username, String[] roles, long ttlMillis) {
+        long now = System.currentTimeMillis();
+        List<String> norm = normalizeRoles(roles);
 
         return Jwts.builder()
                 .setSubject(username)
@@ -0,0 +1,93 @@
+package org.example.server.security;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Token bucket trong bộ nhớ, không khoá: mỗi key chỉ là 1 AtomicLong giữ thời điểm bucket
+ * được nạp đầy trở lại (GCRA). Lấy token = CAS đẩy mốc đó lên 1 khoảng nanosPerToken.
+ * Bucket đã đầy thì xoá khỏi map cũng không mất thông tin -> dọn định kỳ, và giới hạn maxKeys.
+ * Quá maxKeys mà vẫn không còn bucket đầy thì bỏ các bucket gần đầy nhất, để spam nhiều key mới
+ * không xoá được bucket của client đang bị chặn.
+ */
+@Component
+@ConditionalOnProperty(name = "app.rate-limit.mode", havingValue = "local", matchIfMissing = true)
+public class LocalRateLimiter implements RateLimiter {
+
+    private final Map<String, AtomicLong> buckets = new ConcurrentHashMap<>();
+    private final int maxKeys;
+    private final LongSupplier clock;
+
+    @Autowired
+    public LocalRateLimiter(RateLimitProperties props) {
+        this(props.getMaxKeys(), System::nanoTime);
+    }
+
+    LocalRateLimiter(int maxKeys, LongSupplier clock) {
+        this.maxKeys = Math.max(1, maxKeys);
+        this.clock = clock;
+    }
+
+    @Override
+    public Decision tryConsume(String key, RateLimitProperties.Policy policy) {
+        long interval = policy.nanosPerToken();
+        long burst = interval * Math.max(1, policy.getCapacity());
+
+        AtomicLong fullAt = buckets.get(key);
+        if (fullAt == null) {
+            if (buckets.size() >= maxKeys) evict();
+            fullAt = buckets.computeIfAbsent(key, k -> new AtomicLong(clock.getAsLong()));
+        }
+
+        while (true) {
+            long now = clock.getAsLong();
+            long cur = fullAt.get();
+            long next = (cur - now < 0 ? now : cur) + interval;
+            long debt = next - now;
+            if (debt > burst) {
+                return new Decision(false, 0, ceilMillis(debt - burst));
+            }
+            if (fullAt.compareAndSet(cur, next)) {
+                return new Decision(true, (burst - debt) / interval, 0);
+            }
+        }
+    }
+
+    int size() {
+        return buckets.size();
+    }
+
+    // Bucket đã nạp đầy -> bỏ đi, lần sau tạo lại y hệt
+    @Scheduled(fixedDelayString = "${app.rate-limit.sweep-ms:60000}")
+    public void sweep() {
+        long now = clock.getAsLong();
+        buckets.entrySet().removeIf(e -> e.getValue().get() - now <= 0);
+    }
+
+    private void evict() {
+        sweep();
+        if (buckets.size() < maxKeys) return;
+        // Vẫn đầy (bị spam nhiều key) -> bỏ các bucket sắp đầy lại nhất (ít bị trừ nhất), bỏ luôn 1/10
+        // để lần thêm key sau không phải sắp xếp lại ngay
+        List<Map.Entry<String, Long>> byFullAt = new ArrayList<>(buckets.size());
+        buckets.forEach((k, v) -> byFullAt.add(Map.entry(k, v.get())));
+        byFullAt.sort(Map.Entry.comparingByValue());
+        int remove = buckets.size() - maxKeys + 1 + maxKeys / 10;
+        for (int i = 0; i < remove && i < byFullAt.size(); i++) {
+            buckets.remove(byFullAt.get(i).getKey());
+        }
+    }
+
+    private static long ceilMillis(long nanos) {
+        return (nanos + 999_999) / 1_000_000;
+    }
+}
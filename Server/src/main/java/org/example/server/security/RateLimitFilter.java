@@ -6,56 +6,45 @@ import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Component;
+import org.springframework.util.AntPathMatcher;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 @Component
 public class RateLimitFilter extends OncePerRequestFilter {
 
-    // Lưu trữ thông tin request của từng IP
-    // Key: IP Address, Value: Cặp (Thời gian bắt đầu, Số lượng request)
-    private final Map<String, RequestInfo> ipRequestMap = new ConcurrentHashMap<>();
+    private final RateLimiter rateLimiter;
+    private final RateLimitProperties props;
+    private final JwtService jwtService;
+    private final AntPathMatcher matcher = new AntPathMatcher();
 
-    // CẤU HÌNH GIỚI HẠN
-    private static final int MAX_REQUESTS = 100;      // Cho phép tối đa 50 request
-    private static final long DURATION = 20 * 1000;  // Trong vòng 1 phút
-
-    private static class RequestInfo {
-        long startTime;
-        int count;
-
-        public RequestInfo(long startTime, int count) {
-            this.startTime = startTime;
-            this.count = count;
-        }
+    public RateLimitFilter(RateLimiter rateLimiter, RateLimitProperties props, JwtService jwtService) {
+        this.rateLimiter = rateLimiter;
+        this.props = props;
+        this.jwtService = jwtService;
     }
 
     @Override
     protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
             throws ServletException, IOException {
 
-        String clientIp = getClientIp(request);
-        long now = System.currentTimeMillis();
-
-        ipRequestMap.compute(clientIp, (ip, info) -> {
-            if (info == null || (now - info.startTime > DURATION)) {
-                // Nếu chưa có hoặc đã qua 1 phút -> Reset bộ đếm
-                return new RequestInfo(now, 1);
-            } else {
-                // Nếu còn trong 1 phút -> Tăng bộ đếm
-                info.count++;
-                return info;
-            }
-        });
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        if (isExcluded(path)) {
+            filterChain.doFilter(request, response);
+            return;
+        }
 
-        RequestInfo info = ipRequestMap.get(clientIp);
+        RateLimitProperties.Policy policy = resolvePolicy(request.getMethod(), path);
+        RateLimiter.Decision decision = rateLimiter.tryConsume(policy.getName() + ":" + principal(request, policy), policy);
 
-        if (info.count > MAX_REQUESTS) {
+        if (decision.remaining() >= 0) {
+            response.setHeader("X-RateLimit-Remaining", String.valueOf(decision.remaining()));
+        }
+        if (!decision.allowed()) {
             // Chặn request nếu vượt quá giới hạn
             response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+            response.setHeader("Retry-After", String.valueOf(Math.max(1, (decision.retryAfterMillis() + 999) / 1000)));
             response.getWriter().write("Too many requests. Please try again later.");
             response.getWriter().flush();
             return; // Dừng lại, không cho đi tiếp
@@ -65,15 +54,32 @@ public class RateLimitFilter extends OncePerRequestFilter {
         filterChain.doFilter(request, response);
     }
 
-    // Hàm lấy IP thật của client (xử lý trường hợp qua proxy/load balancer)
-    private String getClientIp(HttpServletRequest request) {
-        String xForwardedFor = request.getHeader("X-Forwarded-For");
-        if (xForwardedFor != null && !xForwardedFor.isEmpty()) {
-            return xForwardedFor.split(",")[0].trim();
+    private boolean isExcluded(String path) {
+        for (String pattern : props.getExclude()) {
+            if (matcher.match(pattern, path)) return true;
         }
-        return request.getRemoteAddr();
+        return false;
     }
 
-    // Dọn dẹp bộ nhớ định kỳ (Optional: để tránh Map bị phình to nếu chạy lâu dài)
-    // Bạn có thể dùng @Scheduled để clear map mỗi vài giờ nếu cần.
-}
\ No newline at end of file
+    // Policy đầu tiên khớp method + path, không có thì dùng default
+    private RateLimitProperties.Policy resolvePolicy(String method, String path) {
+        for (RateLimitProperties.Policy p : props.getPolicies()) {
+            if (p.getMethod() != null && !p.getMethod().isBlank() && !p.getMethod().equalsIgnoreCase(method)) continue;
+            if (matcher.match(p.getPattern(), path)) return p;
+        }
+        return props.getDefaultPolicy();
+    }
+
+    private String principal(HttpServletRequest request, RateLimitProperties.Policy policy) {
+        if (policy.getKeyBy() == RateLimitProperties.KeyBy.USER) {
+            String header = request.getHeader("Authorization");
+            if (header != null && header.startsWith("Bearer ")) {
+                // verify() có cache nên JwtAuthFilter phía sau không phải verify lại
+                var user = jwtService.verify(header.substring(7).trim());
+                if (user.isPresent()) return "u:" + user.get().username();
+            }
+        }
+        // IP do Tomcat (RemoteIpValve) giải từ chuỗi proxy tin cậy; không tự đọc X-Forwarded-For vì client đặt được
+        return "ip:" + request.getRemoteAddr();
+    }
+}
@@ -0,0 +1,57 @@
+package org.example.server.security;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Cấu hình app.rate-limit.*: policy theo route (khớp theo thứ tự khai báo), không khớp thì dùng default.
+ */
+@Component
+@ConfigurationProperties(prefix = "app.rate-limit")
+@Getter
+@Setter
+public class RateLimitProperties {
+
+    /** local = bộ nhớ từng instance, redis = dùng chung giữa các instance. */
+    private String mode = "local";
+
+    /** Số key tối đa giữ trong bộ nhớ (chế độ local). */
+    private int maxKeys = 100_000;
+
+    /** Đường dẫn không giới hạn (webhook cổng thanh toán, websocket...). */
+    private List<String> exclude = new ArrayList<>(List.of("/api/payments/webhook"));
+
+    private Policy defaultPolicy = new Policy();
+
+    private List<Policy> policies = new ArrayList<>();
+
+    public enum KeyBy { IP, USER }
+
+    @Getter
+    @Setter
+    public static class Policy {
+        private String name = "default";
+        /** Ant pattern, vd /api/auth/** */
+        private String pattern = "/**";
+        /** GET/POST...; để trống = mọi method. */
+        private String method;
+        /** Số request được dồn tối đa (burst). */
+        private int capacity = 100;
+        /** Nạp lại refillTokens token sau mỗi refillPeriod. */
+        private int refillTokens = 100;
+        private Duration refillPeriod = Duration.ofSeconds(20);
+        /** USER: theo username khi có JWT hợp lệ, không có thì theo IP. */
+        private KeyBy keyBy = KeyBy.IP;
+
+        /** Số nano giây để nạp 1 token. */
+        public long nanosPerToken() {
+            return Math.max(1, refillPeriod.toNanos() / Math.max(1, refillTokens));
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package org.example.server.security;
+
+/** Token bucket theo key; bản local dùng trong 1 instance (và trong test), bản redis dùng chung cả cụm. */
+public interface RateLimiter {
+
+    record Decision(boolean allowed, long remaining, long retryAfterMillis) {}
+
+    Decision tryConsume(String key, RateLimitProperties.Policy policy);
+}
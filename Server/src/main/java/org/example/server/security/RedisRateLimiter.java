@@ -0,0 +1,73 @@
+package org.example.server.security;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Cùng thuật toán với LocalRateLimiter nhưng trạng thái nằm trên Redis (1 script Lua, nguyên tử),
+ * nên giới hạn áp dụng chung cho mọi instance. Dùng giờ của Redis để các máy lệch giờ không ảnh hưởng.
+ */
+@Component
+@ConditionalOnProperty(name = "app.rate-limit.mode", havingValue = "redis")
+public class RedisRateLimiter implements RateLimiter {
+
+    private static final Logger log = LoggerFactory.getLogger(RedisRateLimiter.class);
+
+    private static final String PREFIX = "rl:";
+
+    // ARGV: micro giây / token, burst (micro giây) -> {1, còn lại} hoặc {0, chờ bao nhiêu micro giây}
+    private static final DefaultRedisScript<List<Long>> SCRIPT = new DefaultRedisScript<>("""
+            local interval = tonumber(ARGV[1])
+            local burst = tonumber(ARGV[2])
+            local t = redis.call('TIME')
+            local now = tonumber(t[1]) * 1000000 + tonumber(t[2])
+            local fullAt = tonumber(redis.call('GET', KEYS[1]) or now)
+            if fullAt < now then fullAt = now end
+            local nextAt = fullAt + interval
+            local debt = nextAt - now
+            if debt > burst then
+                return {0, debt - burst}
+            end
+            redis.call('SET', KEYS[1], string.format('%d', nextAt), 'PX', math.ceil(debt / 1000) + 1)
+            return {1, math.floor((burst - debt) / interval)}
+            """, longList());
+
+    private final StringRedisTemplate redis;
+
+    public RedisRateLimiter(StringRedisTemplate redis) {
+        this.redis = redis;
+    }
+
+    @Override
+    public Decision tryConsume(String key, RateLimitProperties.Policy policy) {
+        long interval = Math.max(1, policy.nanosPerToken() / 1000);
+        long burst = interval * Math.max(1, policy.getCapacity());
+        try {
+            List<Long> res = redis.execute(SCRIPT, List.of(PREFIX + key),
+                    String.valueOf(interval), String.valueOf(burst));
+            if (res == null || res.size() < 2) return new Decision(true, -1, 0);
+
+            long flag = res.get(0);
+            long value = res.get(1);
+            return flag == 1
+                    ? new Decision(true, value, 0)
+                    : new Decision(false, 0, (value + 999) / 1000);
+        } catch (Exception e) {
+            // Redis lỗi thì cho qua, không để rate limit làm sập cả API
+            log.warn("Redis rate limit unavailable, allowing request: {}", e.getMessage());
+            return new Decision(true, -1, 0);
+        }
+    }
+
+    // Số nguyên Lua trả về là Long; DefaultRedisScript chỉ nhận Class nên phải ép kiểu List.class
+    @SuppressWarnings("unchecked")
+    private static Class<List<Long>> longList() {
+        return (Class<List<Long>>) (Class<?>) List.class;
+    }
+}
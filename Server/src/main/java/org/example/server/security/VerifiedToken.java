@@ -0,0 +1,12 @@
+package org.example.server.security;
+
+import java.time.Instant;
+import java.util.List;
+
+/** Kết quả verify JWT: đã kiểm chữ ký + hạn, roles đã chuẩn hoá prefix ROLE_. */
+public record VerifiedToken(String username, List<String> roles, Instant expiresAt) {
+
+    public boolean isExpired(Instant now) {
+        return expiresAt != null && !expiresAt.isAfter(now);
+    }
+}
@@ -0,0 +1,63 @@
+package org.example.server.service;
+
+import lombok.RequiredArgsConstructor;
+import org.example.server.entity.Order;
+import org.example.server.repository.OrderRepository;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Danh sách đơn cho admin, 2 bước:
+ * 1) phân trang id bằng index (không fetch join, không phân trang trong bộ nhớ)
+ * 2) nạp user/shipping rồi items/product cho đúng các id của trang.
+ * Số câu SQL mỗi trang cố định, không phụ thuộc số đơn hay số món.
+ */
+@Service
+@RequiredArgsConstructor
+public class AdminOrderQueryService {
+
+    private static final int MAX_PAGE_SIZE = 100;
+
+    private final OrderRepository orderRepo;
+
+    public record Filter(String status, LocalDate from, LocalDate to, String paymentMethod) {
+        public static Filter none() { return new Filter(null, null, null, null); }
+    }
+
+    @Transactional(readOnly = true)
+    public Page<Order> findOrders(Filter filter, int page, int size) {
+        Pageable pageable = PageRequest.of(Math.max(page, 0), Math.min(Math.max(size, 1), MAX_PAGE_SIZE),
+                Sort.by(Sort.Direction.DESC, "createdAt").and(Sort.by(Sort.Direction.DESC, "id")));
+
+        Page<Long> ids = orderRepo.findAdminOrderIds(
+                upper(filter.status()),
+                filter.from() != null ? filter.from().atStartOfDay() : null,
+                filter.to() != null ? filter.to().plusDays(1).atStartOfDay() : null, // "to" tính cả ngày cuối
+                upper(filter.paymentMethod()),
+                pageable);
+
+        if (ids.isEmpty()) return new PageImpl<>(List.of(), pageable, ids.getTotalElements());
+
+        List<Order> orders = orderRepo.findWithUserAndShippingByIdIn(ids.getContent());
+        orderRepo.findWithItemsByIdIn(ids.getContent());
+
+        Map<Long, Order> byId = new HashMap<>();
+        for (Order o : orders) byId.put(o.getId(), o);
+        return ids.map(byId::get);
+    }
+
+    private static String upper(String s) {
+        return (s == null || s.isBlank()) ? null : s.trim().toUpperCase(Locale.ROOT);
+    }
+}
@@ -96,9 +96,17 @@ public class CartService {
 
     @Transactional
     public void clear(Authentication auth) {
-        var user = resolveUser(auth);
-        var cart = getOrCreate(user);
-        cart.getItems().clear();
-        cartRepo.save(cart);
+        clear(auth.getName());
+    }
+
+    // Dùng cho outbox sau checkout (không có Authentication)
+    @Transactional
+    public void clear(String username) {
+        var user = userRepo.findByUsername(username)
+                .orElseThrow(() -> new IllegalArgumentException("Không tìm thấy user: " + username));
+        cartRepo.findByUser(user).ifPresent(cart -> {
+            cart.getItems().clear();
+            cartRepo.save(cart);
+        });
     }
 }
@@ -0,0 +1,109 @@
+package org.example.server.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.example.server.dto.ProductView;
+import org.example.server.event.CatalogChangedEvent;
+import org.example.server.repository.ProductRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.Serializable;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Danh sách món công khai (active) dưới dạng snapshot bất biến: JSON đã serialize sẵn + ETag mạnh.
+ * Đọc bằng projection ProductView (không dựng entity) và serialize bằng ObjectWriter dựng sẵn cho List<ProductView>.
+ * Lưu trong cache "catalog" (Caffeine hoặc Redis tuỳ spring.cache.type), dựng lại khi món/danh mục đổi.
+ */
+@Service
+public class CatalogSnapshotService {
+
+    private static final Logger log = LoggerFactory.getLogger(CatalogSnapshotService.class);
+
+    public static final String CACHE = "catalog";
+    private static final String PUBLIC_KEY = "public_active_list";
+
+    public record CatalogSnapshot(long version, String etag, byte[] json) implements Serializable {}
+
+    private final ProductRepository productRepository;
+    private final ObjectWriter catalogWriter;
+    private final Cache cache;
+    private final TransactionTemplate readTx;
+
+    // Tăng mỗi lần catalog đổi: bản đang dựng dở từ dữ liệu cũ sẽ không được ghi vào cache
+    private final AtomicLong generation = new AtomicLong();
+    private final Object buildLock = new Object();
+
+    public CatalogSnapshotService(ProductRepository productRepository,
+                                  ObjectMapper objectMapper,
+                                  CacheManager cacheManager,
+                                  PlatformTransactionManager txManager) {
+        this.productRepository = productRepository;
+        this.catalogWriter = objectMapper.writerFor(new TypeReference<List<ProductView>>() {});
+        this.cache = cacheManager.getCache(CACHE);
+        this.readTx = new TransactionTemplate(txManager);
+        this.readTx.setReadOnly(true);
+        this.readTx.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    public CatalogSnapshot current() {
+        CatalogSnapshot snapshot = cache.get(PUBLIC_KEY, CatalogSnapshot.class);
+        if (snapshot != null) return snapshot;
+
+        // Chỉ 1 thread dựng, các thread khác chờ rồi đọc lại
+        synchronized (buildLock) {
+            snapshot = cache.get(PUBLIC_KEY, CatalogSnapshot.class);
+            if (snapshot != null) return snapshot;
+
+            long gen = generation.get();
+            snapshot = build();
+            if (gen == generation.get()) cache.put(PUBLIC_KEY, snapshot);
+            return snapshot;
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onCatalogChanged(CatalogChangedEvent event) {
+        generation.incrementAndGet();
+        cache.evict(PUBLIC_KEY);
+        try {
+            current(); // dựng lại luôn để request sau không phải chờ
+        } catch (Exception ex) {
+            log.warn("Catalog rebuild after {} failed: {}", event, ex.getMessage());
+        }
+    }
+
+    private CatalogSnapshot build() {
+        byte[] json = readTx.execute(status -> {
+            List<ProductView> products = productRepository.findActiveViews(); // ORDER BY id -> ETag ổn định
+            try {
+                return catalogWriter.writeValueAsBytes(products);
+            } catch (Exception e) {
+                throw new IllegalStateException("Cannot serialize catalog", e);
+            }
+        });
+        return new CatalogSnapshot(System.currentTimeMillis(), etag(json), json);
+    }
+
+    private static String etag(byte[] json) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(json);
+            return "\"" + Base64.getUrlEncoder().withoutPadding().encodeToString(hash) + "\"";
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -2,7 +2,9 @@ package org.example.server.service;
 
 import lombok.RequiredArgsConstructor;
 import org.example.server.entity.Category;
+import org.example.server.event.CatalogChangedEvent;
 import org.example.server.repository.CategoryRepository;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
 
@@ -12,6 +14,7 @@ import java.util.List;
 @RequiredArgsConstructor
 public class CategoryService {
     private final CategoryRepository categoryRepo;
+    private final ApplicationEventPublisher eventPublisher;
 
     public List<Category> getAll() { return categoryRepo.findAll(); }
 
@@ -22,7 +25,9 @@ public class CategoryService {
     public Category create(Category c) {
         if (c.getName() == null || c.getName().isBlank()) throw new RuntimeException("Name is required");
         if (categoryRepo.existsByNameIgnoreCase(c.getName())) throw new RuntimeException("Category already exists");
-        return categoryRepo.save(c);
+        Category saved = categoryRepo.save(c);
+        eventPublisher.publishEvent(CatalogChangedEvent.category(saved.getId()));
+        return saved;
     }
 
     public Category update(Long id, Category c) {
@@ -33,11 +38,16 @@ public class CategoryService {
             e.setName(c.getName());
         }
         if (c.getDescription()!=null) e.setDescription(c.getDescription());
-        return categoryRepo.save(e);
+        Category saved = categoryRepo.save(e);
+        eventPublisher.publishEvent(CatalogChangedEvent.category(id));
+        return saved;
     }
 
     public void delete(Long id) {
-        try { categoryRepo.deleteById(id); }
+        try {
+            categoryRepo.deleteById(id);
+            eventPublisher.publishEvent(CatalogChangedEvent.category(id));
+        }
         catch (DataIntegrityViolationException ex) {
             throw new RuntimeException("Không thể xoá: danh mục đang được sử dụng");
         }
@@ -0,0 +1,172 @@
+package org.example.server.service;
+
+import jakarta.annotation.PreDestroy;
+import org.example.server.event.OrderChangedEvent;
+import org.example.server.repository.CoPurchaseRepository;
+import org.example.server.search.CoPurchaseGraph;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * "Khách gọi món này cũng hay gọi": ma trận đồng xuất hiện giữa các món trên đơn DONE.
+ * Số đếm lưu ở product_co_purchases để khởi động là nạp lại ngay; đơn mới DONE được cộng dần
+ * (mỗi đơn đúng 1 lần nhờ cờ orders.co_purchase_counted), đơn cũ chưa đếm được quét bù theo lô.
+ * Mỗi đơn chỉ instance nhận cờ được cộng vào bộ nhớ, nên định kỳ nạp lại toàn bộ số đếm chung từ DB.
+ */
+@Service
+public class CoPurchaseService {
+
+    private static final Logger log = LoggerFactory.getLogger(CoPurchaseService.class);
+
+    private final CoPurchaseRepository coPurchaseRepository;
+    private final TransactionTemplate txTemplate;
+    private final int neighbours;
+    private final int minSupport;
+    private final int batchSize;
+    // Chỉ thread co-purchase ghi; nạp lại thì dựng graph mới rồi tráo
+    private volatile CoPurchaseGraph graph;
+
+    private final ExecutorService executor =
+            Executors.newSingleThreadExecutor(r -> new Thread(r, "co-purchase"));
+    private final AtomicBoolean runQueued = new AtomicBoolean(false);
+    private volatile boolean loaded = false;
+
+    public CoPurchaseService(CoPurchaseRepository coPurchaseRepository,
+                             PlatformTransactionManager txManager,
+                             @Value("${app.recommend.neighbours:20}") int neighbours,
+                             @Value("${app.recommend.min-support:2}") int minSupport,
+                             @Value("${app.recommend.batch-size:500}") int batchSize) {
+        this.coPurchaseRepository = coPurchaseRepository;
+        this.txTemplate = new TransactionTemplate(txManager);
+        this.neighbours = neighbours;
+        this.minSupport = minSupport;
+        this.graph = new CoPurchaseGraph(neighbours, minSupport);
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmStart() {
+        executor.execute(() -> {
+            try {
+                reload();
+                log.info("Co-purchase matrix loaded for {} products", graph.productCount());
+            } catch (Exception ex) {
+                log.error("Co-purchase warm start failed: {}", ex.getMessage(), ex);
+            }
+        });
+        wakeUp();
+    }
+
+    // Đơn do instance khác đếm chỉ có trong DB -> nạp lại để các instance không lệch nhau mãi
+    @Scheduled(fixedDelayString = "${app.recommend.reload-ms:900000}",
+            initialDelayString = "${app.recommend.reload-ms:900000}")
+    public void periodicReload() {
+        executor.execute(() -> {
+            try {
+                reload();
+            } catch (Exception ex) {
+                log.error("Co-purchase reload failed: {}", ex.getMessage(), ex);
+            }
+        });
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onOrderChanged(OrderChangedEvent event) {
+        wakeUp();
+    }
+
+    // Lưới an toàn + quét bù các đơn DONE cũ chưa được đếm
+    @Scheduled(fixedDelayString = "${app.recommend.poll-ms:60000}")
+    public void poll() {
+        wakeUp();
+    }
+
+    /** Món hay được gọi cùng productId, điểm giảm dần. */
+    public List<Long> alsoOrdered(Long productId, int limit) {
+        return graph.neighbours(productId).stream()
+                .limit(Math.max(0, limit))
+                .map(CoPurchaseGraph.Neighbour::productId)
+                .toList();
+    }
+
+    /** Gộp hàng xóm của nhiều món (vd các món khách đã gọi), bỏ chính các món đó. */
+    public List<Long> alsoOrdered(Collection<Long> productIds, int limit) {
+        return graph.blend(productIds, limit);
+    }
+
+    private void wakeUp() {
+        if (runQueued.compareAndSet(false, true)) {
+            executor.execute(() -> {
+                runQueued.set(false);
+                try {
+                    catchUp();
+                } catch (Exception ex) {
+                    log.error("Co-purchase update failed: {}", ex.getMessage(), ex);
+                }
+            });
+        }
+    }
+
+    // Chạy trên thread co-purchase như catchUp, nên không có số cộng nào chen vào giữa lúc đọc và lúc tráo
+    private void reload() {
+        CoPurchaseGraph next = new CoPurchaseGraph(neighbours, minSupport);
+        coPurchaseRepository.forEach(rs ->
+                next.addCount(rs.getLong("product_id"), rs.getLong("other_id"), rs.getLong("co_count")));
+        next.rebuild();
+        graph = next;
+        loaded = true;
+    }
+
+    private void catchUp() {
+        if (!loaded) return; // chưa nạp xong số đếm cũ thì cộng thêm sẽ lệch
+        int counted = 0;
+        while (true) {
+            List<Long> orderIds = coPurchaseRepository.findUncountedDoneOrders(batchSize);
+            if (orderIds.isEmpty()) break;
+
+            List<List<Long>> applied = txTemplate.execute(status -> {
+                List<List<Long>> out = new ArrayList<>();
+                SortedMap<CoPurchaseGraph.Pair, Long> counts = new TreeMap<>();
+                for (Long orderId : orderIds) {
+                    if (!coPurchaseRepository.markCounted(orderId)) continue; // instance khác đã đếm
+                    List<Long> products = coPurchaseRepository.findProductIdsOfOrder(orderId);
+                    CoPurchaseGraph.pairs(products).forEach(p -> counts.merge(p, 1L, Long::sum));
+                    out.add(products);
+                }
+                coPurchaseRepository.increment(counts);
+                return out;
+            });
+
+            // Chỉ cộng vào bộ nhớ sau khi DB đã commit
+            applied.forEach(graph::addOrder);
+            counted += applied.size();
+            if (orderIds.size() < batchSize) break;
+        }
+        if (counted > 0) {
+            graph.rebuild();
+            log.debug("Co-purchase matrix updated with {} orders", counted);
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdown();
+    }
+}
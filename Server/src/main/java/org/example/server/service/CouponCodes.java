@@ -0,0 +1,59 @@
+package org.example.server.service;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Locale;
+import java.util.random.RandomGenerator;
+
+/**
+ * Sinh / chuẩn hoá mã coupon và khoá băm 64-bit dùng làm khoá chính bảng coupon_codes.
+ * Bảng chữ bỏ 0/O, 1/I/L để khách gõ lại không nhầm; 10 ký tự ngẫu nhiên = 31^10 ≈ 8e14 tổ hợp.
+ */
+public final class CouponCodes {
+
+    static final String ALPHABET = "23456789ABCDEFGHJKMNPQRSTUVWXYZ";
+    public static final int MAX_PREFIX = 8;
+
+    private CouponCodes() {
+    }
+
+    /** Bỏ khoảng trắng / gạch nối, viết hoa: "abcd-efgh" và "ABCDEFGH" là cùng 1 mã. */
+    public static String normalize(String code) {
+        if (code == null) return "";
+        StringBuilder sb = new StringBuilder(code.length());
+        for (int i = 0; i < code.length(); i++) {
+            char c = code.charAt(i);
+            if (c != '-' && !Character.isWhitespace(c)) sb.append(c);
+        }
+        return sb.toString().toUpperCase(Locale.ROOT);
+    }
+
+    /** Prefix chỉ gồm chữ / số, tối đa MAX_PREFIX ký tự; null = không có prefix. */
+    public static String prefix(String prefix) {
+        String p = normalize(prefix);
+        if (p.length() > MAX_PREFIX || !p.chars().allMatch(c -> (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9'))) {
+            throw new IllegalArgumentException("Prefix must be up to " + MAX_PREFIX + " letters or digits");
+        }
+        return p;
+    }
+
+    public static String generate(String prefix, int randomLength, RandomGenerator random) {
+        StringBuilder sb = new StringBuilder(prefix.length() + randomLength);
+        sb.append(prefix);
+        for (int i = 0; i < randomLength; i++) sb.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+        return sb.toString();
+    }
+
+    /** 8 byte đầu của SHA-256 của mã đã chuẩn hoá. */
+    public static long hash(String code) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256")
+                    .digest(normalize(code).getBytes(StandardCharsets.UTF_8));
+            return ByteBuffer.wrap(digest, 0, Long.BYTES).getLong();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
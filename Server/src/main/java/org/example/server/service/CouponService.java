@@ -0,0 +1,166 @@
+package org.example.server.service;
+
+import org.example.server.common.PromotionUnavailableException;
+import org.example.server.dto.CouponDtos;
+import org.example.server.entity.Promotion;
+import org.example.server.repository.CouponRepository;
+import org.example.server.repository.PromotionRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.security.SecureRandom;
+import java.util.*;
+import java.util.function.LongFunction;
+
+/**
+ * Lô mã coupon dùng 1 lần: 1 khuyến mãi cha (couponBatch = true) + bảng coupon_codes gọn (băm, mã, đơn đã dùng).
+ * Sinh theo từng lô nhỏ, mỗi lô 1 câu INSERT nhiều dòng, không giữ cả đợt trong bộ nhớ;
+ * xuất CSV theo trang keyset ghi thẳng ra response.
+ */
+@Service
+public class CouponService {
+
+    private static final Logger log = LoggerFactory.getLogger(CouponService.class);
+    private static final int MAX_CODE_LENGTH = 20;
+    // Lô sinh ra toàn mã trùng liên tiếp = không gian mã gần cạn (prefix + độ dài quá ngắn)
+    private static final int MAX_EMPTY_CHUNKS = 3;
+
+    private final CouponRepository couponRepo;
+    private final PromotionRepository promoRepo;
+    private final Random random;
+    private final int chunkSize;
+    private final int maxPerRequest;
+    private final int codeLength;
+    private final int exportPageSize;
+
+    @Autowired
+    public CouponService(CouponRepository couponRepo,
+                         PromotionRepository promoRepo,
+                         @Value("${app.coupons.chunk-size:1000}") int chunkSize,
+                         @Value("${app.coupons.max-per-request:200000}") int maxPerRequest,
+                         @Value("${app.coupons.code-length:10}") int codeLength,
+                         @Value("${app.coupons.export-page-size:5000}") int exportPageSize) {
+        this(couponRepo, promoRepo, chunkSize, maxPerRequest, codeLength, exportPageSize, new SecureRandom());
+    }
+
+    CouponService(CouponRepository couponRepo, PromotionRepository promoRepo, int chunkSize, int maxPerRequest,
+                  int codeLength, int exportPageSize, Random random) {
+        this.couponRepo = couponRepo;
+        this.promoRepo = promoRepo;
+        this.random = random;
+        this.chunkSize = Math.max(1, chunkSize);
+        this.maxPerRequest = maxPerRequest;
+        this.codeLength = Math.min(Math.max(6, codeLength), MAX_CODE_LENGTH - CouponCodes.MAX_PREFIX);
+        this.exportPageSize = Math.max(1, exportPageSize);
+    }
+
+    /** Khuyến mãi phải tồn tại và là lô coupon. */
+    public Promotion requireBatch(Long promotionId) {
+        Promotion p = promoRepo.findById(promotionId).orElseThrow(() -> new RuntimeException("Promotion not found"));
+        if (!Boolean.TRUE.equals(p.getCouponBatch())) {
+            throw new IllegalArgumentException("Promotion is not a coupon batch");
+        }
+        return p;
+    }
+
+    /**
+     * Sinh count mã mới cho lô. Mỗi lô nhỏ tự commit: lỗi giữa chừng thì các mã đã sinh vẫn giữ,
+     * gọi lại với số còn thiếu.
+     */
+    public CouponDtos.BatchResult generate(Long promotionId, int count, String prefix) {
+        requireBatch(promotionId);
+        if (count < 1 || count > maxPerRequest) {
+            throw new IllegalArgumentException("Count must be between 1 and " + maxPerRequest);
+        }
+        String pre = CouponCodes.prefix(prefix);
+        long t0 = System.nanoTime();
+
+        List<String> codes = new ArrayList<>(Math.min(chunkSize, count));
+        long[] hashes = new long[Math.min(chunkSize, count)];
+        Set<Long> seen = new HashSet<>();
+        int generated = 0;
+        int emptyChunks = 0;
+        while (generated < count) {
+            int n = Math.min(chunkSize, count - generated);
+            codes.clear();
+            seen.clear();
+            while (codes.size() < n) {
+                String code = CouponCodes.generate(pre, codeLength, random);
+                long hash = CouponCodes.hash(code);
+                if (seen.add(hash)) {
+                    hashes[codes.size()] = hash;
+                    codes.add(code);
+                }
+            }
+            // Mã trùng với mã đã có (rất hiếm) bị bỏ qua, vòng sau sinh bù
+            int inserted = couponRepo.insertIgnore(promotionId, codes, hashes);
+            generated += inserted;
+            emptyChunks = inserted == 0 ? emptyChunks + 1 : 0;
+            if (emptyChunks >= MAX_EMPTY_CHUNKS) {
+                throw new IllegalStateException("Coupon code space exhausted after " + generated + " codes");
+            }
+        }
+        long tookMs = (System.nanoTime() - t0) / 1_000_000;
+        log.info("Generated {} coupon codes for promotion {} in {} ms", generated, promotionId, tookMs);
+        return new CouponDtos.BatchResult(promotionId, count, generated, couponRepo.count(promotionId), tookMs);
+    }
+
+    public Optional<CouponRepository.Coupon> find(String code) {
+        String c = CouponCodes.normalize(code);
+        if (c.isEmpty() || c.length() > MAX_CODE_LENGTH) return Optional.empty();
+        return couponRepo.find(CouponCodes.hash(c), c);
+    }
+
+    /** Đánh dấu mã đã dùng cho đơn, trong transaction đặt đơn; mã đã bị đơn khác dùng thì ném lỗi. */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void redeem(String code, Long promotionId, Long orderId) {
+        String c = CouponCodes.normalize(code);
+        if (!couponRepo.redeem(CouponCodes.hash(c), c, orderId)) {
+            throw new PromotionUnavailableException(promotionId, "Code already used");
+        }
+    }
+
+    /** Trả mã của đơn (huỷ đơn / thanh toán thất bại) để dùng lại được. */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void release(Long orderId) {
+        couponRepo.release(orderId);
+    }
+
+    public void deleteBatch(Long promotionId) {
+        couponRepo.deleteByPromotion(promotionId);
+    }
+
+    public long export(Long promotionId, Writer out) throws IOException {
+        return writeCsv(out, after -> couponRepo.page(promotionId, after, exportPageSize));
+    }
+
+    /** Ghi CSV theo từng trang (trang sau bắt đầu sau code_hash cuối của trang trước); trả về số dòng. */
+    static long writeCsv(Writer out, LongFunction<List<CouponRepository.Coupon>> pageAfter) throws IOException {
+        out.write("code,redeemed_order_id,redeemed_at\n");
+        long rows = 0;
+        long after = Long.MIN_VALUE;
+        while (true) {
+            List<CouponRepository.Coupon> page = pageAfter.apply(after);
+            if (page.isEmpty()) break;
+            for (CouponRepository.Coupon c : page) {
+                out.write(c.code());
+                out.write(',');
+                if (c.redeemedOrderId() != null) out.write(c.redeemedOrderId().toString());
+                out.write(',');
+                if (c.redeemedAt() != null) out.write(c.redeemedAt().toString());
+                out.write('\n');
+                after = c.codeHash();
+                rows++;
+            }
+            out.flush(); // đẩy từng trang ra client, không dồn cả lô trong buffer
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,175 @@
+package org.example.server.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.example.server.common.IdempotencyConflictException;
+import org.example.server.common.IdempotencyMismatchException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Chống tạo trùng khi client retry (header Idempotency-Key).
+ * Lần đầu chạy thật và lưu kết quả kèm băm nội dung request; các lần sau trong TTL trả lại đúng kết quả đó,
+ * còn dùng lại key cho request khác nội dung thì bị từ chối (422).
+ * Request trùng đến cùng lúc trên cùng instance sẽ chờ chung 1 lần chạy.
+ */
+@Service
+public class IdempotencyService {
+
+    public static final String HEADER = "Idempotency-Key";
+    public static final String REPLAYED_HEADER = "Idempotent-Replayed";
+
+    private static final int MAX_KEY_LENGTH = 128;
+    private static final String FINGERPRINT_FIELD = "fingerprint";
+    private static final String BODY_FIELD = "body";
+
+    @FunctionalInterface
+    public interface Action {
+        Object run() throws Exception;
+    }
+
+    public record Result(JsonNode body, boolean replayed) {}
+
+    // Lần chạy đang dở trên instance này, kèm băm request để request chờ chung cũng được so
+    private record Running(String fingerprint, CompletableFuture<JsonNode> result) {}
+
+    private final IdempotencyStore store;
+    private final ObjectMapper objectMapper;
+    private final Map<String, Running> inFlight = new ConcurrentHashMap<>();
+
+    @Value("${app.idempotency.ttl-minutes:1440}")
+    private long ttlMinutes;
+
+    @Value("${app.idempotency.wait-seconds:15}")
+    private long waitSeconds;
+
+    // Phải dài hơn request chậm nhất: hết hạn giữa chừng thì instance khác giữ được key và chạy lần 2
+    @Value("${app.idempotency.lock-seconds:120}")
+    private long lockSeconds;
+
+    public IdempotencyService(IdempotencyStore store, ObjectMapper objectMapper) {
+        this.store = store;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * @param request nội dung request (body, tham số) để nhận ra key bị dùng lại cho request khác
+     */
+    public Result execute(String scope, String principal, String idempotencyKey, Object request, Action action)
+            throws Exception {
+        if (idempotencyKey == null || idempotencyKey.isBlank()) {
+            return new Result(objectMapper.valueToTree(action.run()), false);
+        }
+        if (idempotencyKey.length() > MAX_KEY_LENGTH) {
+            throw new IllegalArgumentException(HEADER + " is too long");
+        }
+        // Khách vô danh không phân biệt được với nhau -> key của người này có thể trả kết quả của người khác
+        if (principal == null || principal.isBlank()) {
+            throw new IllegalArgumentException(HEADER + " requires an authenticated request");
+        }
+
+        String key = scope + ":" + sha256(principal + ":" + idempotencyKey.trim());
+        String fingerprint = sha256(objectMapper.writeValueAsString(request));
+
+        Running mine = new Running(fingerprint, new CompletableFuture<>());
+        Running running = inFlight.putIfAbsent(key, mine);
+        if (running != null) {
+            requireSameRequest(running.fingerprint(), fingerprint);
+            return new Result(await(running.result()), true);
+        }
+
+        try {
+            Result result = executeOnce(key, fingerprint, action);
+            mine.result().complete(result.body());
+            return result;
+        } catch (Exception e) {
+            mine.result().completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, mine);
+        }
+    }
+
+    private Result executeOnce(String key, String fingerprint, Action action) throws Exception {
+        Optional<String> stored = store.get(key);
+        if (stored.isPresent()) return new Result(replay(stored.get(), fingerprint), true);
+
+        // get() ở trên có thể đã cũ: tryAcquire thất bại cả khi instance khác vừa lưu xong kết quả
+        if (!store.tryAcquire(key, Duration.ofSeconds(Math.max(lockSeconds, waitSeconds)))) {
+            // Instance khác đang xử lý (hoặc vừa xử lý xong) cùng key -> chờ / đọc kết quả của nó
+            return new Result(replay(waitForStored(key, Duration.ofSeconds(waitSeconds)), fingerprint), true);
+        }
+
+        try {
+            JsonNode body = objectMapper.valueToTree(action.run());
+            ObjectNode entry = objectMapper.createObjectNode();
+            entry.put(FINGERPRINT_FIELD, fingerprint);
+            entry.set(BODY_FIELD, body);
+            store.complete(key, objectMapper.writeValueAsString(entry), Duration.ofMinutes(ttlMinutes));
+            return new Result(body, false);
+        } catch (Exception e) {
+            store.release(key);
+            throw e;
+        }
+    }
+
+    // Kết quả đã lưu: {fingerprint, body}; bản ghi cũ (chỉ có body) được coi là khớp tới khi hết TTL
+    private JsonNode replay(String storedJson, String fingerprint) throws Exception {
+        JsonNode stored = objectMapper.readTree(storedJson);
+        if (stored.isObject() && stored.size() == 2 && stored.has(FINGERPRINT_FIELD) && stored.has(BODY_FIELD)) {
+            requireSameRequest(stored.get(FINGERPRINT_FIELD).asText(), fingerprint);
+            return stored.get(BODY_FIELD);
+        }
+        return stored;
+    }
+
+    private static void requireSameRequest(String storedFingerprint, String fingerprint) {
+        if (!storedFingerprint.equals(fingerprint)) {
+            throw new IdempotencyMismatchException(HEADER + " was already used for a different request");
+        }
+    }
+
+    private String waitForStored(String key, Duration timeout) throws Exception {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        while (System.nanoTime() < deadline) {
+            Optional<String> stored = store.get(key);
+            if (stored.isPresent()) return stored.get();
+            Thread.sleep(100);
+        }
+        throw new IdempotencyConflictException("Request with the same " + HEADER + " is still in progress");
+    }
+
+    private JsonNode await(CompletableFuture<JsonNode> running) throws Exception {
+        try {
+            return running.get(waitSeconds, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception cause) throw cause;
+            throw e;
+        } catch (TimeoutException e) {
+            throw new IdempotencyConflictException("Request with the same " + HEADER + " is still in progress");
+        }
+    }
+
+    private static String sha256(String value) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(md.digest(value.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package org.example.server.service;
+
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * Nơi lưu kết quả của các request có Idempotency-Key.
+ * Mặc định dùng bộ nhớ trong, bật Redis bằng app.idempotency.store=redis.
+ */
+public interface IdempotencyStore {
+
+    /** Kết quả (JSON) đã lưu của lần gọi đầu tiên, nếu có. */
+    Optional<String> get(String key);
+
+    /**
+     * Đánh dấu key đang được xử lý. false = request khác đang giữ key hoặc key đã có kết quả.
+     * Phải là 1 thao tác nguyên tử trên cùng bản ghi với kết quả: giữ được key nghĩa là chưa ai chạy xong.
+     */
+    boolean tryAcquire(String key, Duration lockTtl);
+
+    /** Lưu kết quả thay cho dấu "đang xử lý". */
+    void complete(String key, String responseJson, Duration ttl);
+
+    /** Bỏ dấu "đang xử lý" khi xử lý lỗi, để client retry được; không đụng tới kết quả đã lưu. */
+    void release(String key);
+}
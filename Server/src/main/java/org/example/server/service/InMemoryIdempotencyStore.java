@@ -0,0 +1,54 @@
+package org.example.server.service;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+@Component
+@ConditionalOnProperty(name = "app.idempotency.store", havingValue = "memory", matchIfMissing = true)
+public class InMemoryIdempotencyStore implements IdempotencyStore {
+
+    // responseJson == null nghĩa là key đang được xử lý
+    private record Entry(String responseJson, long expiresAt) {
+        boolean expired(long now) { return expiresAt <= now; }
+    }
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    @Override
+    public Optional<String> get(String key) {
+        Entry e = entries.get(key);
+        if (e == null || e.expired(System.currentTimeMillis())) return Optional.empty();
+        return Optional.ofNullable(e.responseJson());
+    }
+
+    @Override
+    public boolean tryAcquire(String key, Duration lockTtl) {
+        long now = System.currentTimeMillis();
+        Entry lock = new Entry(null, now + lockTtl.toMillis());
+        Entry result = entries.compute(key, (k, cur) -> (cur == null || cur.expired(now)) ? lock : cur);
+        return result == lock;
+    }
+
+    @Override
+    public void complete(String key, String responseJson, Duration ttl) {
+        entries.put(key, new Entry(responseJson, System.currentTimeMillis() + ttl.toMillis()));
+    }
+
+    @Override
+    public void release(String key) {
+        entries.computeIfPresent(key, (k, cur) -> cur.responseJson() == null ? null : cur);
+    }
+
+    // Dọn key hết hạn để map không phình mãi
+    @Scheduled(fixedDelay = 60_000)
+    public void evictExpired() {
+        long now = System.currentTimeMillis();
+        entries.entrySet().removeIf(e -> e.getValue().expired(now));
+    }
+}
@@ -0,0 +1,161 @@
+package org.example.server.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Sổ lượt dùng trong bộ nhớ (1 instance / test). Mỗi shard giữ số lượt còn trống và chỉ giữ lượt bằng CAS khi còn > 0,
+ * nên tổng lượt giữ được không vượt tổng capacity kể cả khi admin đổi maxUses giữa chừng.
+ * Không có transaction DB: đơn rollback thì trả lượt sau rollback, huỷ đơn thì trả lượt sau commit.
+ */
+@Component
+@ConditionalOnProperty(name = "app.promotions.usage-store", havingValue = "memory")
+public class InMemoryPromotionUsageLedger implements PromotionUsageLedger {
+
+    private static final class Shards {
+        final AtomicIntegerArray used;
+        // capacity - used của từng shard; âm khi admin hạ maxUses xuống dưới số đã dùng
+        final AtomicIntegerArray free;
+        final int[] caps; // chỉ sửa trong synchronized (shards)
+
+        Shards(int n, int alreadyUsed) {
+            used = new AtomicIntegerArray(n);
+            free = new AtomicIntegerArray(n);
+            caps = new int[n];
+            used.set(0, alreadyUsed);
+            free.set(0, -alreadyUsed);
+        }
+    }
+
+    private record Redemption(Long promotionId, int shard) {}
+
+    // Trừ vào free khi đang chia lại capacity: take thấy giá trị rất âm thì chờ thay vì giữ lượt
+    private static final int FROZEN = 1 << 30;
+
+    private final int shards;
+    private final Map<Long, Shards> counters = new ConcurrentHashMap<>();
+    private final Map<Long, List<Redemption>> byOrder = new ConcurrentHashMap<>();
+
+    public InMemoryPromotionUsageLedger(@Value("${app.promotions.usage-shards:8}") int shards) {
+        this.shards = Math.max(1, shards);
+    }
+
+    @Override
+    public void configure(Long promotionId, Integer maxUses, int alreadyUsed) {
+        Shards s = counters.computeIfAbsent(promotionId, k -> new Shards(shards, Math.max(0, alreadyUsed)));
+        synchronized (s) {
+            // Chặn giữ lượt mới trong lúc đọc used: nếu không, 1 lượt trả ở shard này rồi giữ lại ở shard kia
+            // giữa 2 lần đọc bị đếm 2 lần, tổng used đọc được vượt thực tế và capacity chia ra vượt maxUses
+            for (int i = 0; i < s.caps.length; i++) s.free.addAndGet(i, -FROZEN);
+            int[] used = new int[s.caps.length];
+            for (int i = 0; i < used.length; i++) used[i] = s.used.get(i);
+            int[] caps = PromotionUsageLedger.capacities(maxUses, used);
+            // Cộng phần chênh capacity vào số lượt trống: lượt đang được giữ song song vẫn được tính đúng
+            for (int i = 0; i < caps.length; i++) {
+                s.free.addAndGet(i, caps[i] - s.caps[i] + FROZEN);
+                s.caps[i] = caps[i];
+            }
+        }
+    }
+
+    @Override
+    public boolean reserve(Long promotionId, Long orderId) {
+        Shards s = counters.get(promotionId);
+        if (s == null) return false;
+        int n = s.caps.length;
+        int start = ThreadLocalRandom.current().nextInt(n);
+        for (int k = 0; k < n; k++) {
+            int shard = (start + k) % n;
+            if (take(s.free, shard)) {
+                s.used.incrementAndGet(shard);
+                Redemption r = new Redemption(promotionId, shard);
+                byOrder.computeIfAbsent(orderId, id -> new CopyOnWriteArrayList<>()).add(r);
+                undoOnRollback(orderId, r);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void release(Long orderId) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    releaseNow(orderId);
+                }
+            });
+        } else {
+            releaseNow(orderId);
+        }
+    }
+
+    @Override
+    public void remove(Long promotionId) {
+        counters.remove(promotionId);
+        byOrder.values().forEach(list -> list.removeIf(r -> r.promotionId().equals(promotionId)));
+    }
+
+    @Override
+    public Map<Long, Integer> usedCounts() {
+        Map<Long, Integer> out = new HashMap<>();
+        counters.forEach((id, s) -> {
+            int sum = 0;
+            for (int i = 0; i < s.caps.length; i++) sum += s.used.get(i);
+            out.put(id, sum);
+        });
+        return out;
+    }
+
+    private static boolean take(AtomicIntegerArray free, int shard) {
+        while (true) {
+            int f = free.get(shard);
+            if (f < -FROZEN / 2) { // đang chia lại capacity, xong ngay
+                Thread.onSpinWait();
+                continue;
+            }
+            if (f <= 0) return false;
+            if (free.compareAndSet(shard, f, f - 1)) return true;
+        }
+    }
+
+    private void releaseNow(Long orderId) {
+        List<Redemption> redemptions = byOrder.remove(orderId);
+        if (redemptions == null) return;
+        redemptions.forEach(this::giveBack);
+    }
+
+    private void giveBack(Redemption r) {
+        Shards s = counters.get(r.promotionId());
+        if (s == null) return;
+        s.used.decrementAndGet(r.shard());
+        s.free.incrementAndGet(r.shard());
+    }
+
+    private void undoOnRollback(Long orderId, Redemption r) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) return;
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status != STATUS_ROLLED_BACK) return;
+                List<Redemption> list = byOrder.get(orderId);
+                if (list != null && list.remove(r)) {
+                    giveBack(r);
+                    byOrder.remove(orderId, List.of());
+                }
+            }
+        });
+    }
+}
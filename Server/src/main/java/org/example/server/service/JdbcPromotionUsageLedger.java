@@ -0,0 +1,87 @@
+package org.example.server.service;
+
+import org.example.server.repository.PromotionUsageRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Sổ lượt dùng trong DB. Giữ / trả lượt chạy trong transaction của đơn (MANDATORY):
+ * đơn rollback thì lượt đã giữ cũng rollback, không cần bù trừ.
+ */
+@Component
+@ConditionalOnProperty(name = "app.promotions.usage-store", havingValue = "jdbc", matchIfMissing = true)
+public class JdbcPromotionUsageLedger implements PromotionUsageLedger {
+
+    private final PromotionUsageRepository usageRepo;
+    private final int shards;
+    // Số shard của 1 khuyến mãi không đổi sau khi tạo (đổi app.promotions.usage-shards chỉ áp cho khuyến mãi mới)
+    private final Map<Long, Integer> shardCounts = new ConcurrentHashMap<>();
+
+    public JdbcPromotionUsageLedger(PromotionUsageRepository usageRepo,
+                                    @Value("${app.promotions.usage-shards:8}") int shards) {
+        this.usageRepo = usageRepo;
+        this.shards = Math.max(1, shards);
+    }
+
+    @Override
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void configure(Long promotionId, Integer maxUses, int alreadyUsed) {
+        // Khoá mọi shard của khuyến mãi: đơn đang giữ lượt xong mới chia lại, không ai giữ theo capacity cũ
+        int[] used = usageRepo.lockShards(promotionId);
+        if (used.length > 0) {
+            usageRepo.setCapacities(promotionId, PromotionUsageLedger.capacities(maxUses, used));
+            return;
+        }
+        used = new int[shards];
+        used[0] = Math.max(0, alreadyUsed);
+        usageRepo.insertShards(promotionId, used, PromotionUsageLedger.capacities(maxUses, used));
+        shardCounts.put(promotionId, shards);
+    }
+
+    @Override
+    @Transactional(propagation = Propagation.MANDATORY)
+    public boolean reserve(Long promotionId, Long orderId) {
+        int n = shardCounts.computeIfAbsent(promotionId, usageRepo::countShards);
+        if (n == 0) {
+            shardCounts.remove(promotionId);
+            return false;
+        }
+        // Bắt đầu từ shard ngẫu nhiên để các đơn đồng thời rải ra nhiều dòng; shard đầy thì thử shard kế tiếp
+        int start = ThreadLocalRandom.current().nextInt(n);
+        for (int k = 0; k < n; k++) {
+            int shard = (start + k) % n;
+            if (usageRepo.take(promotionId, shard)) {
+                usageRepo.insertRedemption(orderId, promotionId, shard);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void release(Long orderId) {
+        for (PromotionUsageRepository.Redemption r : usageRepo.lockRedemptions(orderId)) {
+            usageRepo.giveBack(orderId, r);
+        }
+    }
+
+    @Override
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void remove(Long promotionId) {
+        usageRepo.deleteAll(promotionId);
+        shardCounts.remove(promotionId);
+    }
+
+    @Override
+    public Map<Long, Integer> usedCounts() {
+        return usageRepo.usedCounts();
+    }
+}
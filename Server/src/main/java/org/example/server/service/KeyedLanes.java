@@ -0,0 +1,70 @@
+package org.example.server.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongConsumer;
+
+/**
+ * N thread xử lý theo khoá: 1 khoá luôn vào cùng 1 thread (khoá % N) nên các việc cùng khoá chạy tuần tự,
+ * khoá khác nhau chạy song song. Gọi submit dồn dập cho cùng khoá chỉ xếp 1 lượt chờ.
+ */
+public class KeyedLanes {
+
+    private static final Logger log = LoggerFactory.getLogger(KeyedLanes.class);
+
+    private final ExecutorService[] lanes;
+    private final Set<Long> queued = ConcurrentHashMap.newKeySet();
+    private final LongConsumer drain;
+
+    public KeyedLanes(String name, int lanes, LongConsumer drain) {
+        this.lanes = new ExecutorService[Math.max(1, lanes)];
+        for (int i = 0; i < this.lanes.length; i++) {
+            String threadName = name + "-" + i;
+            this.lanes[i] = Executors.newSingleThreadExecutor(r -> new Thread(r, threadName));
+        }
+        this.drain = drain;
+    }
+
+    /** Xếp 1 lượt drain cho khoá; false nếu khoá đã có lượt đang chờ (lượt đó sẽ thấy cả việc mới). */
+    public boolean submit(long key) {
+        if (!queued.add(key)) return false;
+        lanes[lane(key)].execute(() -> {
+            // Bỏ đánh dấu trước khi drain: việc đến trong lúc drain sẽ xếp thêm 1 lượt, không bị sót
+            queued.remove(key);
+            try {
+                drain.accept(key);
+            } catch (Exception ex) {
+                log.error("Lane drain failed for key {}: {}", key, ex.getMessage(), ex);
+            }
+        });
+        return true;
+    }
+
+    /** Số khoá đang chờ drain. */
+    public int depth() {
+        return queued.size();
+    }
+
+    int lane(long key) {
+        return (int) Math.floorMod(key, (long) lanes.length);
+    }
+
+    public void shutdown() {
+        for (ExecutorService lane : lanes) lane.shutdown();
+    }
+
+    /** Chờ các lượt đã xếp chạy xong sau shutdown(); false nếu hết thời gian. */
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (ExecutorService lane : lanes) {
+            if (!lane.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,206 @@
+package org.example.server.service;
+
+import org.example.server.dto.KitchenDtos.*;
+import org.example.server.entity.Order;
+import org.example.server.entity.OrderItem;
+import org.example.server.entity.User;
+import org.example.server.event.OrderChangedEvent;
+import org.example.server.repository.OrderRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.*;
+
+/**
+ * Bảng bếp giữ trong bộ nhớ (đơn CONFIRMED/PREPARING).
+ * Mỗi thay đổi đơn/món được đẩy xuống client dưới dạng delta có số thứ tự (seq);
+ * client thấy hụt seq thì gọi snapshot để đồng bộ lại.
+ * Đồng thời giữ bộ đếm "cần nấu bao nhiêu phần mỗi món", cập nhật theo đúng phần chênh lệch của đơn.
+ */
+@Service
+public class KitchenBoardService {
+
+    private static final Logger log = LoggerFactory.getLogger(KitchenBoardService.class);
+
+    public static final String TOPIC = "/topic/kitchen/board";
+    public static final String AGGREGATE_TOPIC = "/topic/kitchen/aggregated";
+    static final List<String> BOARD_STATUSES = List.of("CONFIRMED", "PREPARING");
+
+    private final OrderRepository orderRepo;
+    private final SimpMessagingTemplate messagingTemplate;
+
+    // Thứ tự theo createdAt như query cũ (ORDER BY createdAt ASC)
+    private final Map<Long, OrderView> orders = new LinkedHashMap<>();
+    private long seq = 0;
+
+    // productId -> số phần chưa DONE trong các đơn trên bảng
+    private final Map<Long, Long> toCook = new HashMap<>();
+    private final Map<Long, String> productNames = new HashMap<>();
+    private long aggregateSeq = 0;
+
+    public KitchenBoardService(OrderRepository orderRepo, SimpMessagingTemplate messagingTemplate) {
+        this.orderRepo = orderRepo;
+        this.messagingTemplate = messagingTemplate;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional(readOnly = true)
+    public void load() {
+        List<Order> active = orderRepo.findByStatusInWithDetails(BOARD_STATUSES);
+        synchronized (this) {
+            orders.clear();
+            toCook.clear();
+            for (Order o : active) {
+                OrderView view = toView(o);
+                orders.put(o.getId(), view);
+                addCounts(view, 1, null);
+            }
+            seq++;
+            aggregateSeq++;
+        }
+        log.info("Kitchen board loaded with {} orders", active.size());
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    @Transactional(propagation = Propagation.REQUIRES_NEW, readOnly = true)
+    public void onOrderChanged(OrderChangedEvent event) {
+        // Đọc + áp dụng trong cùng khoá: 2 commit liên tiếp không thể ghi đè nhau bằng dữ liệu cũ
+        synchronized (this) {
+            Order o = orderRepo.findByIdWithDetails(event.orderId()).orElse(null);
+            OrderView next = (o != null && BOARD_STATUSES.contains(o.getStatus())) ? toView(o) : null;
+            apply(event.orderId(), next);
+        }
+    }
+
+    public synchronized BoardSnapshot snapshot() {
+        return new BoardSnapshot(seq, List.copyOf(orders.values()));
+    }
+
+    public synchronized List<OrderView> orders() {
+        return List.copyOf(orders.values());
+    }
+
+    public synchronized List<AggregateRow> aggregated() {
+        List<AggregateRow> rows = new ArrayList<>(toCook.size());
+        toCook.forEach((id, qty) -> rows.add(new AggregateRow(id, productNames.get(id), qty)));
+        return rows;
+    }
+
+    private synchronized void apply(Long orderId, OrderView next) {
+        OrderView prev = next == null ? orders.remove(orderId) : orders.get(orderId);
+
+        if (prev == null && next == null) return;
+
+        updateCounts(prev, next);
+
+        if (prev == null) {
+            insertSorted(next);
+            send(new BoardDelta(++seq, "ORDER_ADDED", orderId, next.status(), null, null, null, next));
+            return;
+        }
+        if (next == null) {
+            send(new BoardDelta(++seq, "ORDER_REMOVED", orderId, null, null, null, null, null));
+            return;
+        }
+
+        orders.put(orderId, next);
+        if (!Objects.equals(prev.status(), next.status())) {
+            send(new BoardDelta(++seq, "ORDER_STATUS", orderId, next.status(), null, null, null, null));
+        }
+
+        Map<Long, ItemView> before = new HashMap<>();
+        for (ItemView i : prev.items()) before.put(i.id(), i);
+        for (ItemView i : next.items()) {
+            ItemView old = before.get(i.id());
+            if (old == null || !Objects.equals(old.status(), i.status()) || !Objects.equals(old.chef(), i.chef())) {
+                send(new BoardDelta(++seq, "ITEM_UPDATED", orderId, next.status(), i.id(), i.status(), i.chef(), null));
+            }
+        }
+    }
+
+    // Đơn mới thường là mới nhất -> thêm cuối; chỉ sắp lại khi bị lệch thứ tự
+    private void insertSorted(OrderView view) {
+        orders.put(view.id(), view);
+        OrderView last = null;
+        boolean sorted = true;
+        for (OrderView o : orders.values()) {
+            if (last != null && last.createdAt() != null && o.createdAt() != null && o.createdAt().isBefore(last.createdAt())) {
+                sorted = false;
+                break;
+            }
+            last = o;
+        }
+        if (sorted) return;
+
+        List<OrderView> all = new ArrayList<>(orders.values());
+        all.sort(Comparator.comparing(OrderView::createdAt, Comparator.nullsLast(Comparator.naturalOrder())));
+        orders.clear();
+        for (OrderView o : all) orders.put(o.id(), o);
+    }
+
+    private void updateCounts(OrderView prev, OrderView next) {
+        Set<Long> touched = new HashSet<>();
+        if (prev != null) addCounts(prev, -1, touched);
+        if (next != null) addCounts(next, 1, touched);
+
+        List<AggregateRow> changed = new ArrayList<>();
+        for (Long productId : touched) {
+            long before = 0;
+            if (prev != null) before = countOf(prev, productId);
+            long after = next == null ? 0 : countOf(next, productId);
+            if (before == after) continue;
+            long qty = toCook.getOrDefault(productId, 0L);
+            changed.add(new AggregateRow(productId, productNames.get(productId), qty));
+            if (qty == 0) productNames.remove(productId);
+        }
+        if (!changed.isEmpty()) {
+            messagingTemplate.convertAndSend(AGGREGATE_TOPIC, new AggregateUpdate(++aggregateSeq, changed));
+        }
+    }
+
+    private void addCounts(OrderView view, int sign, Set<Long> touched) {
+        for (ItemView i : view.items()) {
+            if (i.product() == null || "DONE".equals(i.status())) continue;
+            Long productId = i.product().id();
+            productNames.put(productId, i.product().name());
+            toCook.merge(productId, (long) sign * i.quantity(), Long::sum);
+            if (toCook.get(productId) <= 0) toCook.remove(productId);
+            if (touched != null) touched.add(productId);
+        }
+    }
+
+    private static long countOf(OrderView view, Long productId) {
+        long total = 0;
+        for (ItemView i : view.items()) {
+            if (i.product() != null && productId.equals(i.product().id()) && !"DONE".equals(i.status())) {
+                total += i.quantity();
+            }
+        }
+        return total;
+    }
+
+    private void send(BoardDelta delta) {
+        messagingTemplate.convertAndSend(TOPIC, delta);
+    }
+
+    static OrderView toView(Order o) {
+        List<ItemView> items = new ArrayList<>();
+        for (OrderItem i : o.getItems()) {
+            ProductRef product = i.getProduct() == null ? null
+                    : new ProductRef(i.getProduct().getId(), i.getProduct().getName(), i.getProduct().getImageUrl());
+            items.add(new ItemView(i.getId(), i.getQuantity(), i.getStatus(), userRef(i.getChef()), product));
+        }
+        return new OrderView(o.getId(), o.getStatus(), o.getCreatedAt(), userRef(o.getUser()), List.copyOf(items));
+    }
+
+    private static UserRef userRef(User u) {
+        return u == null ? null : new UserRef(u.getId(), u.getUsername());
+    }
+}
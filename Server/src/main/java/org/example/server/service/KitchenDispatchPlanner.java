@@ -0,0 +1,138 @@
+package org.example.server.service;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Thuật toán chia món cho đầu bếp, không phụ thuộc Spring/DB để test và mô phỏng được.
+ * Gom các món giống nhau giữa nhiều đơn thành 1 mẻ (tối đa maxBatchPortions phần),
+ * mẻ nào có đơn cũ nhất được chia trước, giao cho người sẽ xong sớm nhất.
+ * Hàng đợi mỗi người có giới hạn: ai còn quá maxQueueMinutes phút việc thì không nhận mẻ mới (trừ khi đang có
+ * mẻ cùng món chờ nấu); mẻ chưa ai nhận ở lại bảng chung cho lượt chia sau, lúc đó có thể gom thêm món mới.
+ */
+public class KitchenDispatchPlanner {
+
+    /** Món chưa ai nhận. */
+    public record Task(Long itemId, Long orderId, Long productId, int quantity, LocalDateTime orderedAt) {}
+
+    /** Tải hiện tại của đầu bếp: số phút việc còn lại + số phần đang chờ nấu (chưa bắt đầu) theo món. */
+    public record ChefLoad(String username, int queuedMinutes, Map<Long, Integer> queuedPortions) {}
+
+    public record Assignment(String username, Long productId, List<Long> itemIds, int portions, int minutes) {}
+
+    private final int maxBatchPortions;
+    private final double extraPortionFactor;
+    private final int maxQueueMinutes;
+
+    /**
+     * @param maxBatchPortions   số phần tối đa nấu chung 1 mẻ
+     * @param extraPortionFactor mỗi phần thêm vào mẻ tốn thêm bao nhiêu lần thời gian chế biến (vd 0.25)
+     * @param maxQueueMinutes    còn nhiều hơn số phút việc này thì không giao mẻ mới
+     */
+    public KitchenDispatchPlanner(int maxBatchPortions, double extraPortionFactor, int maxQueueMinutes) {
+        this.maxBatchPortions = Math.max(1, maxBatchPortions);
+        this.extraPortionFactor = extraPortionFactor;
+        this.maxQueueMinutes = Math.max(0, maxQueueMinutes);
+    }
+
+    /** Thời gian nấu 1 mẻ gồm portions phần. */
+    public int batchMinutes(int prepMinutes, int portions) {
+        if (portions <= 0) return 0;
+        return prepMinutes + extraMinutes(prepMinutes, portions - 1);
+    }
+
+    /** Thời gian nấu hết portions phần cùng món đang chờ: các mẻ đầy maxBatchPortions phần + mẻ cuối. */
+    public int queuedMinutes(int prepMinutes, int portions) {
+        if (portions <= 0) return 0;
+        int full = portions / maxBatchPortions;
+        return full * batchMinutes(prepMinutes, maxBatchPortions) + batchMinutes(prepMinutes, portions % maxBatchPortions);
+    }
+
+    private int extraMinutes(int prepMinutes, int portions) {
+        return (int) Math.ceil(prepMinutes * extraPortionFactor * portions);
+    }
+
+    /** Các mẻ được giao; món không có trong kết quả thì để lượt sau (mọi người đều đã đủ việc). */
+    public List<Assignment> plan(List<Task> tasks, List<ChefLoad> chefs, Function<Long, Integer> prepMinutes) {
+        if (tasks.isEmpty() || chefs.isEmpty()) return List.of();
+
+        // Trạng thái làm việc có thể thay đổi trong lúc chia
+        List<Slot> slots = new ArrayList<>();
+        for (ChefLoad c : chefs) slots.add(new Slot(c.username(), c.queuedMinutes(), new HashMap<>(c.queuedPortions())));
+
+        List<Assignment> result = new ArrayList<>();
+        for (List<Task> batch : batches(tasks)) {
+            Long productId = batch.get(0).productId();
+            int prep = Math.max(1, prepMinutes.apply(productId));
+            int portions = batch.stream().mapToInt(Task::quantity).sum();
+
+            Slot best = null;
+            int bestCost = 0;
+            for (Slot s : slots) {
+                // Các phần cùng món đang chờ được nấu thành mẻ đầy; mẻ cuối còn chỗ thì nấu kèm được
+                int open = s.queuedPortions.getOrDefault(productId, 0) % maxBatchPortions;
+                boolean joins = open > 0 && open + portions <= maxBatchPortions;
+                // Đủ việc rồi thì thôi, trừ khi nấu kèm được mẻ đang chờ: mẻ mới thì vẫn phải xếp hàng
+                if (!joins && s.minutes > maxQueueMinutes) continue;
+                int cost = joins ? extraMinutes(prep, portions) : batchMinutes(prep, portions);
+                if (best == null || finish(s, cost) < finish(best, bestCost)
+                        || (finish(s, cost) == finish(best, bestCost) && s.minutes < best.minutes)) {
+                    best = s;
+                    bestCost = cost;
+                }
+            }
+
+            if (best == null) continue;
+            best.minutes += bestCost;
+            best.queuedPortions.merge(productId, portions, Integer::sum);
+            result.add(new Assignment(best.username, productId,
+                    batch.stream().map(Task::itemId).toList(), portions, bestCost));
+        }
+        return result;
+    }
+
+    private static int finish(Slot s, int cost) {
+        return s.minutes + cost;
+    }
+
+    // Gom theo món, mẻ có đơn cũ nhất đứng trước; trong mẻ giữ thứ tự đơn
+    List<List<Task>> batches(List<Task> tasks) {
+        Map<Long, List<Task>> byProduct = new LinkedHashMap<>();
+        tasks.stream()
+                .sorted(Comparator.comparing(Task::orderedAt, Comparator.nullsLast(Comparator.naturalOrder()))
+                        .thenComparing(Task::itemId))
+                .forEach(t -> byProduct.computeIfAbsent(t.productId(), k -> new ArrayList<>()).add(t));
+
+        List<List<Task>> batches = new ArrayList<>();
+        for (List<Task> group : byProduct.values()) {
+            List<Task> current = new ArrayList<>();
+            int portions = 0;
+            for (Task t : group) {
+                if (!current.isEmpty() && portions + t.quantity() > maxBatchPortions) {
+                    batches.add(current);
+                    current = new ArrayList<>();
+                    portions = 0;
+                }
+                current.add(t);
+                portions += t.quantity();
+            }
+            if (!current.isEmpty()) batches.add(current);
+        }
+        batches.sort(Comparator.comparing((List<Task> b) -> b.get(0).orderedAt(),
+                Comparator.nullsLast(Comparator.naturalOrder())));
+        return batches;
+    }
+
+    private static final class Slot {
+        final String username;
+        int minutes;
+        final Map<Long, Integer> queuedPortions;
+
+        Slot(String username, int minutes, Map<Long, Integer> queuedPortions) {
+            this.username = username;
+            this.minutes = minutes;
+            this.queuedPortions = queuedPortions;
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package org.example.server.service;
+
+import jakarta.annotation.PreDestroy;
+import org.example.server.dto.KitchenDtos.ChefAssignment;
+import org.example.server.dto.KitchenDtos.ItemView;
+import org.example.server.dto.KitchenDtos.OrderView;
+import org.example.server.entity.Product;
+import org.example.server.entity.User;
+import org.example.server.event.OrderChangedEvent;
+import org.example.server.repository.OrderItemRepository;
+import org.example.server.repository.ProductRepository;
+import org.example.server.repository.UserRepository;
+import org.example.server.service.KitchenDispatchPlanner.Assignment;
+import org.example.server.service.KitchenDispatchPlanner.ChefLoad;
+import org.example.server.service.KitchenDispatchPlanner.Task;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Chia món cho các đầu bếp đang trong ca thay vì để mọi người cùng giành món.
+ * Món được giao vẫn ở PENDING nhưng có chef; chỉ người đó mới chuyển sang COOKING được.
+ * Mỗi mẻ được đẩy riêng cho từng người qua /topic/kitchen/chef/{username}.
+ */
+@Service
+public class KitchenDispatcher {
+
+    private static final Logger log = LoggerFactory.getLogger(KitchenDispatcher.class);
+
+    public static final String CHEF_TOPIC = "/topic/kitchen/chef/";
+
+    private final KitchenBoardService board;
+    private final OrderItemRepository orderItemRepository;
+    private final ProductRepository productRepository;
+    private final UserRepository userRepository;
+    private final SimpMessagingTemplate messagingTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    private final TransactionTemplate txTemplate;
+    private final KitchenDispatchPlanner planner;
+
+    private final Set<String> onDuty = ConcurrentHashMap.newKeySet();
+    private final ExecutorService executor =
+            Executors.newSingleThreadExecutor(r -> new Thread(r, "kitchen-dispatcher"));
+    private final AtomicBoolean runQueued = new AtomicBoolean(false);
+
+    @Value("${app.kitchen.default-prep-minutes:10}")
+    private int defaultPrepMinutes;
+
+    public KitchenDispatcher(KitchenBoardService board,
+                             OrderItemRepository orderItemRepository,
+                             ProductRepository productRepository,
+                             UserRepository userRepository,
+                             SimpMessagingTemplate messagingTemplate,
+                             ApplicationEventPublisher eventPublisher,
+                             PlatformTransactionManager txManager,
+                             @Value("${app.kitchen.max-batch-portions:6}") int maxBatchPortions,
+                             @Value("${app.kitchen.extra-portion-factor:0.25}") double extraPortionFactor,
+                             @Value("${app.kitchen.max-queue-minutes:6}") int maxQueueMinutes) {
+        this.board = board;
+        this.orderItemRepository = orderItemRepository;
+        this.productRepository = productRepository;
+        this.userRepository = userRepository;
+        this.messagingTemplate = messagingTemplate;
+        this.eventPublisher = eventPublisher;
+        this.txTemplate = new TransactionTemplate(txManager);
+        this.planner = new KitchenDispatchPlanner(maxBatchPortions, extraPortionFactor, maxQueueMinutes);
+    }
+
+    public Set<String> join(String username) {
+        onDuty.add(username);
+        wakeUp();
+        return Set.copyOf(onDuty);
+    }
+
+    /** Rời ca: trả các món đã giao nhưng chưa nấu về cho người khác. */
+    public Set<String> leave(String username) {
+        onDuty.remove(username);
+        Set<Long> orderIds = new HashSet<>();
+        for (OrderView o : board.orders()) {
+            for (ItemView i : o.items()) {
+                if ("PENDING".equals(i.status()) && i.chef() != null && username.equals(i.chef().username())) {
+                    orderIds.add(o.id());
+                }
+            }
+        }
+        txTemplate.executeWithoutResult(status -> {
+            User chef = userRepository.findByUsername(username).orElse(null);
+            if (chef == null) return;
+            orderItemRepository.unassignPending(chef);
+            orderIds.forEach(id -> eventPublisher.publishEvent(new OrderChangedEvent(id)));
+        });
+        wakeUp();
+        return Set.copyOf(onDuty);
+    }
+
+    public Set<String> onDuty() {
+        return Set.copyOf(onDuty);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onOrderChanged(OrderChangedEvent event) {
+        wakeUp();
+    }
+
+    // Lưới an toàn: thay đổi đến trước khi bảng bếp kịp cập nhật
+    @Scheduled(fixedDelayString = "${app.kitchen.dispatch-ms:10000}")
+    public void poll() {
+        wakeUp();
+    }
+
+    private void wakeUp() {
+        if (onDuty.isEmpty()) return;
+        if (runQueued.compareAndSet(false, true)) {
+            executor.execute(() -> {
+                runQueued.set(false);
+                try {
+                    dispatch();
+                } catch (Exception ex) {
+                    log.error("Kitchen dispatch failed: {}", ex.getMessage(), ex);
+                }
+            });
+        }
+    }
+
+    private void dispatch() {
+        List<String> chefs = new ArrayList<>(onDuty);
+        if (chefs.isEmpty()) return;
+
+        List<OrderView> orders = board.orders();
+        List<Task> tasks = new ArrayList<>();
+        Map<Long, String> productNames = new HashMap<>();
+        Map<Long, Long> orderOfItem = new HashMap<>();
+        Map<Long, Integer> quantityOfItem = new HashMap<>();
+        for (OrderView o : orders) {
+            for (ItemView i : o.items()) {
+                if (i.product() == null) continue;
+                productNames.put(i.product().id(), i.product().name());
+                if ("PENDING".equals(i.status()) && i.chef() == null) {
+                    tasks.add(new Task(i.id(), o.id(), i.product().id(), i.quantity(), o.createdAt()));
+                    orderOfItem.put(i.id(), o.id());
+                    quantityOfItem.put(i.id(), i.quantity());
+                }
+            }
+        }
+        if (tasks.isEmpty()) return;
+
+        Map<Long, Integer> prep = prepMinutes(productNames.keySet());
+        List<Assignment> plan = planner.plan(tasks, loads(chefs, orders, prep),
+                id -> prep.getOrDefault(id, defaultPrepMinutes));
+
+        List<Assignment> applied = txTemplate.execute(status -> {
+            List<Assignment> ok = new ArrayList<>();
+            Set<Long> changedOrders = new HashSet<>();
+            for (Assignment a : plan) {
+                User chef = userRepository.findByUsername(a.username()).orElse(null);
+                if (chef == null) continue;
+                // Có thể đã bị người khác nhận tay trong lúc tính -> chỉ giao phần còn trống,
+                // rồi đọc lại đúng các món người này giữ để không đẩy món của người khác
+                if (orderItemRepository.assignChef(chef, a.itemIds()) == 0) continue;
+                List<Long> mine = a.itemIds().size() == 1 ? a.itemIds()
+                        : orderItemRepository.findPendingIdsOfChef(chef, a.itemIds());
+                if (mine.isEmpty()) continue;
+                ok.add(mine.size() == a.itemIds().size() ? a : partial(a, mine, quantityOfItem));
+                mine.forEach(id -> changedOrders.add(orderOfItem.get(id)));
+            }
+            changedOrders.forEach(id -> eventPublisher.publishEvent(new OrderChangedEvent(id)));
+            return ok;
+        });
+
+        for (Assignment a : applied) {
+            List<Long> orderIds = a.itemIds().stream().map(orderOfItem::get).distinct().toList();
+            messagingTemplate.convertAndSend(CHEF_TOPIC + a.username(), new ChefAssignment(
+                    a.productId(), productNames.get(a.productId()), a.portions(), a.minutes(), a.itemIds(), orderIds));
+        }
+        log.debug("Dispatched {} batches to {} chefs", applied.size(), chefs.size());
+    }
+
+    // Phần còn lại của mẻ khi 1 số món đã bị nhận tay: số phút ước theo tỉ lệ số phần
+    private static Assignment partial(Assignment a, List<Long> itemIds, Map<Long, Integer> quantityOfItem) {
+        int portions = itemIds.stream().mapToInt(id -> quantityOfItem.getOrDefault(id, 0)).sum();
+        int minutes = a.portions() == 0 ? a.minutes() : (int) Math.ceil((double) a.minutes() * portions / a.portions());
+        return new Assignment(a.username(), a.productId(), itemIds, portions, minutes);
+    }
+
+    // Việc còn lại của từng người: mẻ đang chờ (PENDING) + đang nấu (COOKING), gom theo món
+    private List<ChefLoad> loads(List<String> chefs, List<OrderView> orders, Map<Long, Integer> prep) {
+        Map<String, Map<Long, Integer>> queued = new HashMap<>();
+        Map<String, Map<Long, Integer>> cooking = new HashMap<>();
+        for (OrderView o : orders) {
+            for (ItemView i : o.items()) {
+                if (i.chef() == null || i.product() == null) continue;
+                Map<String, Map<Long, Integer>> target =
+                        "PENDING".equals(i.status()) ? queued : "COOKING".equals(i.status()) ? cooking : null;
+                if (target == null) continue;
+                target.computeIfAbsent(i.chef().username(), k -> new HashMap<>())
+                        .merge(i.product().id(), i.quantity(), Integer::sum);
+            }
+        }
+
+        List<ChefLoad> loads = new ArrayList<>();
+        for (String chef : chefs) {
+            Map<Long, Integer> q = queued.getOrDefault(chef, Map.of());
+            int minutes = 0;
+            for (var e : q.entrySet()) minutes += planner.queuedMinutes(prep.getOrDefault(e.getKey(), defaultPrepMinutes), e.getValue());
+            for (var e : cooking.getOrDefault(chef, Map.of()).entrySet()) {
+                minutes += planner.batchMinutes(prep.getOrDefault(e.getKey(), defaultPrepMinutes), e.getValue());
+            }
+            loads.add(new ChefLoad(chef, minutes, q));
+        }
+        return loads;
+    }
+
+    private Map<Long, Integer> prepMinutes(Collection<Long> productIds) {
+        Map<Long, Integer> prep = new HashMap<>();
+        for (Product p : productRepository.findAllById(productIds)) {
+            if (p.getPrepTimeMinutes() != null && p.getPrepTimeMinutes() > 0) prep.put(p.getId(), p.getPrepTimeMinutes());
+        }
+        return prep;
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdown();
+    }
+}
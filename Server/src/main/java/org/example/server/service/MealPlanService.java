@@ -0,0 +1,164 @@
+package org.example.server.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.example.server.dto.MealPlanDtos.Macros;
+import org.example.server.dto.MealPlanDtos.MealPlanResponse;
+import org.example.server.dto.MealPlanDtos.PlanItem;
+import org.example.server.dto.ProductView;
+import org.example.server.entity.User;
+import org.example.server.entity.UserProfile;
+import org.example.server.repository.UserProfileRepository;
+import org.example.server.repository.UserRepository;
+import org.example.server.search.NutritionIndex;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.Authentication;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Thực đơn cả ngày: chọn tổ hợp món sát mục tiêu calo / protein / carbs / fat trong ngân sách.
+ * Mục tiêu được làm tròn theo "nhóm hồ sơ" (calo tròn 50, mục tiêu cân nặng, ngân sách tròn bước),
+ * nên khách cùng nhóm dùng chung lời giải đã cache; khoá cache kèm phiên bản chỉ mục dinh dưỡng
+ * nên món đổi giá / ẩn đi thì lời giải cũ tự hết hiệu lực.
+ */
+@Service
+public class MealPlanService {
+
+    private static final int CALORIE_STEP = 50;
+
+    // Tỉ lệ năng lượng protein / carbs / fat theo mục tiêu
+    private static final Map<String, double[]> SPLITS = Map.of(
+            "LOSE", new double[]{0.30, 0.40, 0.30},
+            "GAIN", new double[]{0.25, 0.50, 0.25},
+            "MAINTAIN", new double[]{0.20, 0.50, 0.30});
+
+    private record Bucket(int calories, String goal, long budget, long version) {}
+
+    private final UserRepository userRepo;
+    private final UserProfileRepository profileRepo;
+    private final RecommendationService recommendationService;
+    private final ProductSearchService productSearchService;
+    private final MealPlanSolver solver = new MealPlanSolver();
+    private final Cache<Bucket, MealPlanSolver.Plan> cache;
+
+    private final int maxPortions;
+    private final int maxPerItem;
+    private final int maxCandidates;
+    private final long budgetStep;
+    private final long timeBudgetMillis;
+
+    public MealPlanService(UserRepository userRepo,
+                           UserProfileRepository profileRepo,
+                           RecommendationService recommendationService,
+                           ProductSearchService productSearchService,
+                           @Value("${app.meal-plan.max-portions:6}") int maxPortions,
+                           @Value("${app.meal-plan.max-per-item:2}") int maxPerItem,
+                           @Value("${app.meal-plan.max-candidates:60}") int maxCandidates,
+                           @Value("${app.meal-plan.budget-step:10000}") long budgetStep,
+                           @Value("${app.meal-plan.time-budget-ms:50}") long timeBudgetMillis,
+                           @Value("${app.meal-plan.cache-size:2000}") long cacheSize) {
+        this.userRepo = userRepo;
+        this.profileRepo = profileRepo;
+        this.recommendationService = recommendationService;
+        this.productSearchService = productSearchService;
+        this.maxPortions = maxPortions;
+        this.maxPerItem = maxPerItem;
+        this.maxCandidates = maxCandidates;
+        this.budgetStep = Math.max(1, budgetStep);
+        this.timeBudgetMillis = timeBudgetMillis;
+        this.cache = Caffeine.newBuilder().maximumSize(cacheSize).expireAfterAccess(1, TimeUnit.DAYS).build();
+    }
+
+    @Transactional(readOnly = true)
+    public MealPlanResponse plan(Authentication auth, BigDecimal budget) {
+        User user = userRepo.findByUsername(auth.getName())
+                .orElseThrow(() -> new RuntimeException("User not found"));
+        UserProfile profile = profileRepo.findByUser(user)
+                .orElseThrow(() -> new RuntimeException("Profile not found"));
+
+        int calories = Math.round(recommendationService.dailyCalories(profile) / (float) CALORIE_STEP) * CALORIE_STEP;
+        String goal = SPLITS.containsKey(profile.getGoal()) ? profile.getGoal() : "MAINTAIN";
+        long budgetBucket = budgetBucket(budget, budgetStep);
+
+        Bucket bucket = new Bucket(calories, goal, budgetBucket, productSearchService.nutritionVersion());
+        MealPlanSolver.Target target = target(calories, goal);
+        MealPlanSolver.Plan plan = cache.get(bucket, b -> solve(target, b.budget()));
+
+        List<Long> ids = new ArrayList<>(plan.quantities().keySet());
+        List<PlanItem> items = new ArrayList<>();
+        for (ProductView p : productSearchService.findAllInOrder(ids)) {
+            items.add(new PlanItem(p, plan.quantities().get(p.id())));
+        }
+        return new MealPlanResponse(
+                new Macros(target.calories(), target.protein(), target.carbs(), target.fat()),
+                new Macros(round1(plan.calories()), round1(plan.protein()), round1(plan.carbs()), round1(plan.fat())),
+                BigDecimal.valueOf(plan.price()).setScale(0, RoundingMode.HALF_UP),
+                budgetBucket > 0 ? BigDecimal.valueOf(budgetBucket) : null,
+                items,
+                plan.complete());
+    }
+
+    private MealPlanSolver.Plan solve(MealPlanSolver.Target target, long budget) {
+        List<MealPlanSolver.Item> candidates = candidates(target, budget);
+        return solver.solve(candidates, target, new MealPlanSolver.Limits(
+                maxPortions, maxPerItem, budget, TimeUnit.MILLISECONDS.toNanos(timeBudgetMillis)));
+    }
+
+    // Giữ các món có tỉ lệ macro gần mục tiêu nhất để không gian tìm kiếm vừa với thời gian cho phép
+    private List<MealPlanSolver.Item> candidates(MealPlanSolver.Target target, long budget) {
+        double[] want = ratios(target.protein(), target.carbs(), target.fat());
+        return productSearchService.nutritionRows().stream()
+                .filter(r -> r.calories() > 0 && r.calories() <= target.calories())
+                .filter(r -> budget <= 0 || (r.price() != null && r.price() <= budget))
+                .map(MealPlanService::toItem)
+                .sorted(Comparator.comparingDouble((MealPlanSolver.Item i) -> distance(want, i)).thenComparing(MealPlanSolver.Item::id))
+                .limit(maxCandidates)
+                .toList();
+    }
+
+    /**
+     * Khoá cache theo ngân sách: làm tròn xuống theo bước để không vượt ngân sách khách nhập,
+     * ngân sách nhỏ hơn 1 bước thì giữ nguyên (không được về 0 vì 0 nghĩa là không giới hạn).
+     */
+    static long budgetBucket(BigDecimal budget, long step) {
+        if (budget == null || budget.signum() <= 0) return 0;
+        long value = Math.max(1, budget.longValue());
+        return value < step ? value : value / step * step;
+    }
+
+    static MealPlanSolver.Target target(int calories, String goal) {
+        double[] split = SPLITS.getOrDefault(goal, SPLITS.get("MAINTAIN"));
+        return new MealPlanSolver.Target(calories,
+                round1(calories * split[0] / 4),
+                round1(calories * split[1] / 4),
+                round1(calories * split[2] / 9));
+    }
+
+    private static double distance(double[] want, MealPlanSolver.Item i) {
+        double[] got = ratios(i.protein(), i.carbs(), i.fat());
+        double d = 0;
+        for (int k = 0; k < 3; k++) d += Math.abs(want[k] - got[k]);
+        return d;
+    }
+
+    // Tỉ lệ năng lượng đến từ protein / carbs / fat
+    private static double[] ratios(double protein, double carbs, double fat) {
+        double p = protein * 4, c = carbs * 4, f = fat * 9, sum = p + c + f;
+        return sum <= 0 ? new double[]{0, 0, 0} : new double[]{p / sum, c / sum, f / sum};
+    }
+
+    private static MealPlanSolver.Item toItem(NutritionIndex.Row r) {
+        return new MealPlanSolver.Item(r.id(), r.calories(), r.protein(), r.carbs(), r.fat(),
+                r.price() == null ? 0 : r.price());
+    }
+
+    private static double round1(double v) {
+        return Math.round(v * 10) / 10.0;
+    }
+}
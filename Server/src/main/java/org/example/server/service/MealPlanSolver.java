@@ -0,0 +1,199 @@
+package org.example.server.service;
+
+import java.util.*;
+import java.util.function.LongSupplier;
+
+/**
+ * Chọn tổ hợp món (mỗi món tối đa vài phần) sao cho tổng calo / protein / carbs / fat sát mục tiêu nhất,
+ * trong giới hạn số phần và ngân sách. Không phụ thuộc Spring/DB để test được.
+ * Branch-and-bound: khởi đầu bằng lời giải tham lam, sau đó DFS có cắt nhánh theo cận dưới của độ lệch.
+ * Hết thời gian cho phép thì trả về lời giải tốt nhất đã tìm được.
+ */
+public class MealPlanSolver {
+
+    public record Item(Long id, double calories, double protein, double carbs, double fat, double price) {}
+
+    public record Target(double calories, double protein, double carbs, double fat) {}
+
+    /**
+     * @param maxPortions tổng số phần tối đa của cả ngày
+     * @param maxPerItem  số phần tối đa của 1 món
+     * @param budget      tổng tiền tối đa; <= 0 là không giới hạn
+     */
+    public record Limits(int maxPortions, int maxPerItem, double budget, long timeBudgetNanos) {}
+
+    /** quantities giữ thứ tự món; complete = đã duyệt hết không gian tìm kiếm (lời giải tối ưu). */
+    public record Plan(Map<Long, Integer> quantities, double calories, double protein, double carbs, double fat,
+                       double price, double deviation, boolean complete) {}
+
+    // Calo quan trọng nhất, sau đó tới protein
+    private static final double[] WEIGHTS = {2.0, 1.5, 1.0, 1.0};
+    private static final int M = 4;
+    private static final int CLOCK_CHECK_EVERY = 1024;
+
+    private final LongSupplier nanoTime;
+
+    public MealPlanSolver() {
+        this(System::nanoTime);
+    }
+
+    // Test truyền đồng hồ giả để kiểm tra việc dừng khi hết giờ mà không phụ thuộc tốc độ máy
+    MealPlanSolver(LongSupplier nanoTime) {
+        this.nanoTime = nanoTime;
+    }
+
+    public Plan solve(List<Item> candidates, Target target, Limits limits) {
+        return new Search(candidates, target, limits, nanoTime).run();
+    }
+
+    private static final class Search {
+        final Item[] items;
+        final double[][] macros;
+        final double[] target;
+        final Limits limits;
+        final boolean hasBudget;
+        // Mỗi macro: giá trị lớn nhất của 1 phần trong các món từ i trở đi (cận trên phần còn có thể bù)
+        final double[][] suffixMax;
+        final LongSupplier nanoTime;
+        final long deadline;
+
+        final int[] qty;
+        final double[] totals = new double[M];
+        double price;
+
+        int[] bestQty;
+        double bestDeviation = Double.POSITIVE_INFINITY;
+        long nodes;
+        boolean timedOut;
+
+        Search(List<Item> candidates, Target t, Limits limits, LongSupplier nanoTime) {
+            // Món nhiều calo trước: cận "phần còn lại bù được" giảm nhanh, cắt nhánh sớm hơn
+            this.items = candidates.stream()
+                    .sorted(Comparator.comparingDouble(Item::calories).reversed().thenComparing(Item::id))
+                    .toArray(Item[]::new);
+            this.macros = new double[items.length][];
+            for (int i = 0; i < items.length; i++) {
+                Item it = items[i];
+                macros[i] = new double[]{it.calories(), it.protein(), it.carbs(), it.fat()};
+            }
+            // Mục tiêu 0 sẽ làm chia cho 0 khi tính độ lệch tương đối
+            this.target = new double[]{Math.max(1, t.calories()), Math.max(1, t.protein()),
+                    Math.max(1, t.carbs()), Math.max(1, t.fat())};
+            this.limits = limits;
+            this.hasBudget = limits.budget() > 0;
+            this.suffixMax = new double[items.length + 1][M];
+            for (int i = items.length - 1; i >= 0; i--) {
+                for (int m = 0; m < M; m++) suffixMax[i][m] = Math.max(suffixMax[i + 1][m], macros[i][m]);
+            }
+            this.qty = new int[items.length];
+            this.nanoTime = nanoTime;
+            this.deadline = nanoTime.getAsLong() + limits.timeBudgetNanos();
+        }
+
+        Plan run() {
+            greedy();
+            Arrays.fill(qty, 0);
+            Arrays.fill(totals, 0);
+            price = 0;
+            dfs(0, limits.maxPortions());
+            return toPlan();
+        }
+
+        // Thêm dần phần làm giảm độ lệch nhiều nhất cho tới khi không giảm được nữa
+        private void greedy() {
+            int portions = 0;
+            double current = deviation(totals);
+            while (portions < limits.maxPortions()) {
+                int bestItem = -1;
+                double bestDev = current;
+                for (int i = 0; i < items.length; i++) {
+                    if (qty[i] >= limits.maxPerItem() || !affordable(i, 1)) continue;
+                    add(i, 1);
+                    double d = deviation(totals);
+                    add(i, -1);
+                    if (d < bestDev) {
+                        bestDev = d;
+                        bestItem = i;
+                    }
+                }
+                if (bestItem < 0) break;
+                add(bestItem, 1);
+                qty[bestItem]++;
+                portions++;
+                current = bestDev;
+            }
+            record(current);
+        }
+
+        private void dfs(int i, int remaining) {
+            if (timedOut) return;
+            // Xem đồng hồ cả ở nút đầu tiên: hết giờ ngay sau bước tham lam thì trả đúng lời giải tham lam
+            if (nodes++ % CLOCK_CHECK_EVERY == 0 && nanoTime.getAsLong() > deadline) {
+                timedOut = true;
+                return;
+            }
+
+            double current = deviation(totals);
+            if (current < bestDeviation) record(current);
+            if (i == items.length || remaining == 0) return;
+            if (lowerBound(i, remaining) >= bestDeviation) return;
+
+            int max = Math.min(limits.maxPerItem(), remaining);
+            while (max > 0 && !affordable(i, max)) max--;
+            for (int q = max; q >= 0; q--) {
+                if (q > 0) add(i, q);
+                qty[i] = q;
+                dfs(i + 1, remaining - q);
+                qty[i] = 0;
+                if (q > 0) add(i, -q);
+                if (timedOut) return;
+            }
+        }
+
+        // Độ lệch không thể nhỏ hơn: phần đã vượt mục tiêu (chỉ cộng thêm được) +
+        // phần thiếu mà kể cả dồn hết số phần còn lại vào món giàu macro đó nhất cũng không bù đủ
+        private double lowerBound(int i, int remaining) {
+            double lb = 0;
+            for (int m = 0; m < M; m++) {
+                double over = totals[m] - target[m];
+                double under = target[m] - totals[m] - remaining * suffixMax[i][m];
+                if (over > 0) lb += WEIGHTS[m] * over / target[m];
+                else if (under > 0) lb += WEIGHTS[m] * under / target[m];
+            }
+            return lb;
+        }
+
+        private double deviation(double[] x) {
+            double d = 0;
+            for (int m = 0; m < M; m++) d += WEIGHTS[m] * Math.abs(x[m] - target[m]) / target[m];
+            return d;
+        }
+
+        private boolean affordable(int i, int q) {
+            return !hasBudget || price + items[i].price() * q <= limits.budget() + 1e-9;
+        }
+
+        private void add(int i, int q) {
+            for (int m = 0; m < M; m++) totals[m] += macros[i][m] * q;
+            price += items[i].price() * q;
+        }
+
+        private void record(double deviation) {
+            bestDeviation = deviation;
+            bestQty = qty.clone();
+        }
+
+        private Plan toPlan() {
+            Map<Long, Integer> quantities = new LinkedHashMap<>();
+            double[] sum = new double[M];
+            double cost = 0;
+            for (int i = 0; i < items.length; i++) {
+                if (bestQty == null || bestQty[i] == 0) continue;
+                quantities.put(items[i].id(), bestQty[i]);
+                for (int m = 0; m < M; m++) sum[m] += macros[i][m] * bestQty[i];
+                cost += items[i].price() * bestQty[i];
+            }
+            return new Plan(quantities, sum[0], sum[1], sum[2], sum[3], cost, bestDeviation, !timedOut);
+        }
+    }
+}
@@ -1,16 +1,20 @@
 package org.example.server.service;
 
 import lombok.RequiredArgsConstructor;
+import org.example.server.dto.OrderDtos;
+import org.example.server.dto.PricingDtos;
 import org.example.server.entity.*;
+import org.example.server.event.OrderChangedEvent;
+import org.example.server.repository.CartRepository;
 import org.example.server.repository.OrderItemRepository;
 import org.example.server.repository.OrderRepository;
 import org.example.server.repository.ProductRepository;
 import org.example.server.repository.UserRepository;
-import org.springframework.data.domain.Page;
+import org.example.server.search.PromotionRules;
+import org.hibernate.Hibernate;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
-import org.springframework.data.domain.Sort;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.security.access.AccessDeniedException;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
@@ -19,6 +23,7 @@ import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.util.*;
 
@@ -29,13 +34,15 @@ public class OrderService {
     private final OrderRepository orderRepo;
     private final UserRepository userRepo;
     private final ProductRepository productRepo;
-    private final CartService cartService;
     private final ShippingInfoService shippingInfoService;
+    private final PricingService pricingService;
     private final PromotionService promotionService;
     private final NotificationService notificationService;
-    private final EmailService emailService;
-    private final SimpMessagingTemplate messagingTemplate;
+    private final OutboxService outboxService;
+    private final ApplicationEventPublisher eventPublisher;
     private final OrderItemRepository orderItemRepository;
+    private final StockReservationService stockReservationService;
+    private final CartRepository cartRepository;
 
     // Quy d?nh chuy?n tr?ng thi h?p l?
     private static final Map<String, Set<String>> ALLOWED = Map.of(
@@ -52,49 +59,29 @@ public class OrderService {
         User user = userRepo.findByUsername(username)
                 .orElseThrow(() -> new RuntimeException("User not found"));
 
-        BigDecimal subtotal = BigDecimal.ZERO;
+        Set<Long> productIds = new HashSet<>();
         for (OrderItem i : items) {
-            Product p = productRepo.findById(i.getProduct().getId())
-                    .orElseThrow(() -> new RuntimeException("Product not found: " + i.getProduct().getId()));
-            if (p.getStock() < i.getQuantity()) {
-                throw new RuntimeException("Out of stock for product: " + p.getName());
+            if (i.getProduct() == null || i.getProduct().getId() == null) {
+                throw new RuntimeException("Product is required");
             }
-            i.setPrice(p.getPrice());
-            i.setProduct(p);
-            subtotal = subtotal.add(p.getPrice().multiply(BigDecimal.valueOf(i.getQuantity())));
-        }
-
-        // --- 1. TNH GI?M GI T? COUPON ---
-        BigDecimal promoDiscount = BigDecimal.ZERO;
-        Promotion applied = null;
-        if (promoCode != null && !promoCode.isBlank()) {
-            var res = promotionService.preview(promoCode, items);
-            promoDiscount = res.discount();
-            applied = res.promotion();
+            productIds.add(i.getProduct().getId());
         }
+        Map<Long, Product> products = new HashMap<>();
+        productRepo.findAllById(productIds).forEach(p -> products.put(p.getId(), p));
 
-        // --- 2. TNH GI?M GI T? H?NG THNH VIN ---
-        BigDecimal memberDiscount = BigDecimal.ZERO;
-        int points = user.getPoints() == null ? 0 : user.getPoints();
-        double rate = 0;
-
-        if (points >= 2000) {
-            rate = 0.08; // Kim Cuong: 8%
-        } else if (points >= 500) {
-            rate = 0.05; // Vng: 5%
-        } else if (points >= 100) {
-            rate = 0.03; // B?c: 3%
-        } else {
-            rate = 0.01; // ?ng: 1%
+        List<PromotionRules.Line> lines = new ArrayList<>(items.size());
+        for (OrderItem i : items) {
+            Product p = products.get(i.getProduct().getId());
+            if (p == null) {
+                throw new RuntimeException("Product not found: " + i.getProduct().getId());
+            }
+            i.setPrice(p.getPrice());
+            i.setProduct(p);
+            lines.add(PricingService.line(p, i.getQuantity()));
         }
 
-        memberDiscount = subtotal.multiply(BigDecimal.valueOf(rate));
-
-        // T?ng gi?m gi
-        BigDecimal totalDiscount = promoDiscount.add(memberDiscount);
-
-        BigDecimal total = subtotal.subtract(totalDiscount);
-        if (total.compareTo(BigDecimal.ZERO) < 0) total = BigDecimal.ZERO;
+        // Ma nhap + khuyen mai tu dong + hang thanh vien: cung ham tinh voi /api/cart/pricing
+        PricingDtos.Quote quote = pricingService.quote(lines, user.getPoints(), promoCode);
 
         Authentication auth = SecurityContextHolder.getContext().getAuthentication();
         if (auth == null || !auth.getName().equals(username)) {
@@ -104,14 +91,11 @@ public class OrderService {
         shippingInfoService.upsertMy(auth, shippingData);
         ShippingInfo shippingSnapshot = shippingInfoService.snapshotForOrder(user);
 
-        // Luu m khuy?n mi d?c bi?t n?u dng h?ng thnh vin
-        String finalPromoCode = applied != null ? applied.getCode() : (rate > 0 ? "MEMBER_RANK" : null);
-
         Order order = Order.builder()
                 .user(user)
-                .total(total)
-                .discount(totalDiscount)
-                .promotionCode(finalPromoCode)
+                .total(quote.total())
+                .discount(quote.discount())
+                .promotionCode(PricingService.label(quote))
                 .status("PENDING")
                 .paymentMethod(paymentMethod.toUpperCase())
                 .shipping(shippingSnapshot)
@@ -120,31 +104,96 @@ public class OrderService {
         items.forEach(i -> i.setOrder(order));
         order.setItems(items);
 
+        // Reserve stock for every line in one conditional batch (fails -> whole order rolls back)
+        stockReservationService.reserve(items);
+
         Order saved = orderRepo.save(order);
 
-        // Tr? t?n kho
-        for (OrderItem i : saved.getItems()) {
-            Product p = i.getProduct();
-            p.setStock(p.getStock() - i.getQuantity());
-            productRepo.save(p);
+        Long orderId = saved.getId();
+        // Hold one use of every applied promotion in this transaction (limit reached -> whole order rolls back)
+        List<Long> promotionIds = new ArrayList<>();
+        PricingDtos.AppliedDiscount coupon = null;
+        for (PricingDtos.AppliedDiscount d : quote.discounts()) {
+            if (d.promotionId() != null) promotionIds.add(d.promotionId());
+            if ("COUPON".equals(d.kind())) coupon = d;
         }
-        // Tang lu?t dng m gi?m gi
-        if (applied != null) promotionService.increaseUsage(applied);
+        promotionService.reserveUsage(orderId, promotionIds,
+                coupon == null ? null : coupon.code(), coupon == null ? null : coupon.promotionId());
 
-        notificationService.newOrderNotify(saved);
+        // Side effects go through the outbox: rows are written here, sent after commit
+        outboxService.publish(OutboxService.NEW_ORDER_NOTIFY, orderId, Map.of("orderId", orderId));
         if (user.getEmail() != null && Boolean.TRUE.equals(user.getIsEmailVerified())) {
-            emailService.sendOrderConfirmation(user.getEmail(), saved);
+            outboxService.publish(OutboxService.ORDER_CONFIRMATION_EMAIL, orderId,
+                    Map.of("orderId", orderId, "email", user.getEmail()));
         }
-        cartService.clear(auth);
+
+        // Drop exactly the ordered products from the cart, in this transaction: a late or retried clear
+        // after commit would also delete what the user added after checkout
+        cartRepository.deleteItemsByUserAndProductIdIn(user, productIds);
 
         return saved;
     }
 
+    private static final int MAX_HISTORY_PAGE = 50;
+
+    // Keyset pagination on (createdAt, id): no OFFSET, no fetch-join over the whole history
     @Transactional(readOnly = true)
-    public List<Order> getUserOrders(String username) {
+    public OrderDtos.OrderPage getUserOrders(String username, String cursor, int limit) {
         User user = userRepo.findByUsername(username)
                 .orElseThrow(() -> new RuntimeException("User not found"));
-        return orderRepo.findByUserWithItems(user);
+
+        int size = Math.min(Math.max(limit, 1), MAX_HISTORY_PAGE);
+        Pageable probe = PageRequest.of(0, size + 1); // +1 row to know whether another page exists
+
+        List<Long> ids;
+        if (cursor == null || cursor.isBlank()) {
+            ids = orderRepo.findUserOrderIds(user.getId(), probe);
+        } else {
+            OrderCursor c = OrderCursor.decode(cursor);
+            ids = orderRepo.findUserOrderIdsAfter(user.getId(), c.createdAt(), c.id(), probe);
+        }
+
+        boolean hasMore = ids.size() > size;
+        if (hasMore) ids = ids.subList(0, size);
+        if (ids.isEmpty()) return new OrderDtos.OrderPage(List.of(), null);
+
+        Map<Long, Order> byId = new HashMap<>();
+        for (Order o : orderRepo.findWithShippingByIdIn(ids)) byId.put(o.getId(), o);
+
+        List<Order> page = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            Order o = byId.get(id);
+            if (o != null) page.add(o);
+        }
+
+        // Items of the whole page load in one batch (@BatchSize), products likewise
+        for (Order o : page) {
+            for (OrderItem i : o.getItems()) Hibernate.initialize(i.getProduct());
+        }
+
+        String next = null;
+        if (hasMore) {
+            Order last = page.get(page.size() - 1);
+            next = new OrderCursor(last.getCreatedAt(), last.getId()).encode();
+        }
+        return new OrderDtos.OrderPage(page, next);
+    }
+
+    private record OrderCursor(LocalDateTime createdAt, Long id) {
+        String encode() {
+            String raw = createdAt + "|" + id;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+        }
+
+        static OrderCursor decode(String cursor) {
+            try {
+                String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+                int sep = raw.lastIndexOf('|');
+                return new OrderCursor(LocalDateTime.parse(raw.substring(0, sep)), Long.valueOf(raw.substring(sep + 1)));
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Invalid cursor");
+            }
+        }
     }
 
     @Transactional(readOnly = true)
@@ -164,12 +213,6 @@ public class OrderService {
         return order;
     }
 
-    @Transactional(readOnly = true)
-    public Page<Order> getAllOrders(int page, int size) {
-        Pageable pageable = PageRequest.of(page, size, Sort.by(Sort.Direction.DESC, "createdAt"));
-        return orderRepo.findAllWithUserDetails(pageable);
-    }
-
     @Transactional
     public Order updateStatus(Long id, String nextRaw) {
         Order o = orderRepo.findByIdWithDetails(id).orElseThrow(NoSuchElementException::new);
@@ -202,10 +245,15 @@ public class OrderService {
         }
         // ----------------------------------------------------------
 
+        if ("CANCELLED".equals(next)) {
+            promotionService.releaseUsage(o.getId());
+        }
         if ("PENDING".equals(cur) && "CONFIRMED".equals(next)) {
             notificationService.notifyKitchenOfNewOrder(o);
         }
-        return orderRepo.save(o);
+        Order saved = orderRepo.save(o);
+        eventPublisher.publishEvent(new OrderChangedEvent(saved.getId()));
+        return saved;
     }
 
     private String normalize(String s) {
@@ -232,23 +280,12 @@ public class OrderService {
         order.setUpdatedAt(LocalDateTime.now());
         Order saved = orderRepo.save(order);
 
-        // Hon l?i kho
-        for (OrderItem i : saved.getItems()) {
-            Product p = i.getProduct();
-            if (p != null) {
-                p.setStock(p.getStock() + i.getQuantity());
-                productRepo.save(p);
-            }
-        }
+        // Return stock in one batch, and the promotion uses held by the order
+        stockReservationService.release(saved.getItems());
+        promotionService.releaseUsage(saved.getId());
         return saved;
     }
 
-    @Transactional(readOnly = true)
-    public List<Order> getKitchenOrders() {
-        List<String> statuses = List.of("CONFIRMED", "PREPARING");
-        return orderRepo.findByStatusInWithDetails(statuses);
-    }
-
     @Transactional
     public OrderItem updateItemStatus(Long itemId, String status, Authentication auth) {
         OrderItem item = orderItemRepository.findById(itemId)
@@ -287,8 +324,8 @@ public class OrderService {
         }
         orderRepo.save(order);
 
-        // B?n socket bo frontend
-        messagingTemplate.convertAndSend("/topic/kitchen/update", "UPDATE");
+        // Kitchen board picks this up after commit and pushes only the delta
+        eventPublisher.publishEvent(new OrderChangedEvent(order.getId()));
 
         return savedItem;
     }
@@ -304,7 +341,9 @@ public class OrderService {
         boolean updated = false;
         // 2. Duy?t qua cc mn chua nh?n (PENDING) v chuy?n sang COOKING
         for (OrderItem item : order.getItems()) {
-            if ("PENDING".equals(item.getStatus())) {
+            // Skip items the dispatcher already handed to another chef
+            boolean mine = item.getChef() == null || item.getChef().getId().equals(chef.getId());
+            if ("PENDING".equals(item.getStatus()) && mine) {
                 item.setStatus("COOKING");
                 item.setChef(chef);
                 orderItemRepository.save(item);
@@ -317,7 +356,7 @@ public class OrderService {
             order.setStatus("PREPARING");
             order.setUpdatedAt(LocalDateTime.now());
             orderRepo.save(order);
-            messagingTemplate.convertAndSend("/topic/kitchen/update", "CLAIM_ORDER");
+            eventPublisher.publishEvent(new OrderChangedEvent(order.getId()));
         }
     }
     @Transactional
@@ -352,8 +391,7 @@ public class OrderService {
             order.setUpdatedAt(LocalDateTime.now());
             orderRepo.save(order);
 
-            // B?n socket d? frontend t? c?p nh?t
-            messagingTemplate.convertAndSend("/topic/kitchen/update", "FINISH_ORDER");
+            eventPublisher.publishEvent(new OrderChangedEvent(order.getId()));
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,191 @@
+package org.example.server.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import org.example.server.entity.Order;
+import org.example.server.entity.OutboxEvent;
+import org.example.server.repository.OrderRepository;
+import org.example.server.repository.OutboxEventRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Gửi các event trong outbox sau khi đơn hàng đã commit.
+ * Chạy trên 1 thread riêng: lấy theo batch, retry có backoff, giữ thứ tự theo từng đơn.
+ */
+@Component
+public class OutboxDispatcher {
+
+    private static final Logger log = LoggerFactory.getLogger(OutboxDispatcher.class);
+
+    private final OutboxEventRepository outboxRepo;
+    private final OrderRepository orderRepo;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate txTemplate;
+
+    private final Map<String, Consumer<JsonNode>> handlers = new HashMap<>();
+    private final ExecutorService executor =
+            Executors.newSingleThreadExecutor(r -> new Thread(r, "outbox-dispatcher"));
+    private final AtomicBoolean drainQueued = new AtomicBoolean(false);
+
+    @Value("${app.outbox.batch-size:100}")
+    private int batchSize;
+
+    @Value("${app.outbox.max-attempts:8}")
+    private int maxAttempts;
+
+    public OutboxDispatcher(OutboxEventRepository outboxRepo,
+                            OrderRepository orderRepo,
+                            NotificationService notificationService,
+                            EmailService emailService,
+                            ObjectMapper objectMapper,
+                            PlatformTransactionManager txManager) {
+        this.outboxRepo = outboxRepo;
+        this.orderRepo = orderRepo;
+        this.objectMapper = objectMapper;
+        this.txTemplate = new TransactionTemplate(txManager);
+        this.txTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+
+        handlers.put(OutboxService.NEW_ORDER_NOTIFY, p ->
+                notificationService.newOrderNotify(loadOrder(p)));
+        handlers.put(OutboxService.ORDER_CONFIRMATION_EMAIL, p -> {
+            // Ghi dấu đã gửi (commit riêng) trước khi gửi: retry sau lỗi giữa chừng không gửi mail lần 2
+            if (orderRepo.markConfirmationEmailSent(p.get("orderId").asLong(), LocalDateTime.now()) == 0) return;
+            emailService.sendOrderConfirmation(p.get("email").asText(), loadOrder(p));
+        });
+        // Lượt dùng khuyến mãi giờ giữ ngay lúc đặt đơn (PromotionUsageLedger); chỉ đánh dấu xong các event cũ còn tồn
+        handlers.put(OutboxService.PROMOTION_USAGE, p -> {});
+        // Giỏ giờ được dọn trong transaction đặt đơn; chỉ đánh dấu xong các event cũ còn tồn
+        handlers.put(OutboxService.CART_CLEAR, p -> {});
+    }
+
+    /** Gọi sau commit: xếp 1 lượt drain, các lần gọi dồn dập chỉ tạo 1 lượt. */
+    public void wakeUp() {
+        if (drainQueued.compareAndSet(false, true)) {
+            executor.execute(() -> {
+                drainQueued.set(false);
+                drain();
+            });
+        }
+    }
+
+    // Lưới an toàn: event retry hoặc bị bỏ lỡ khi restart
+    @Scheduled(fixedDelayString = "${app.outbox.poll-ms:5000}")
+    public void poll() {
+        wakeUp();
+    }
+
+    // Đi hết các event PENDING theo keyset id: event chờ backoff bị bỏ qua nhưng không chặn các trang sau
+    void drain() {
+        try {
+            Set<Long> blocked = new HashSet<>(); // đơn có event trước chưa xong -> dừng các event sau
+            long afterId = 0;
+            while (true) {
+                List<OutboxEvent> batch = outboxRepo.findPendingAfter(afterId, PageRequest.of(0, batchSize));
+                if (batch.isEmpty()) return;
+
+                LocalDateTime now = LocalDateTime.now();
+                for (OutboxEvent e : batch) {
+                    afterId = e.getId();
+                    Long key = e.getAggregateId();
+                    if (key != null && blocked.contains(key)) continue;
+
+                    if (e.getNextAttemptAt() != null && e.getNextAttemptAt().isAfter(now)) {
+                        if (key != null) blocked.add(key);
+                        continue;
+                    }
+                    if (!dispatch(e.getId()) && key != null) blocked.add(key);
+                }
+
+                if (batch.size() < batchSize) return;
+            }
+        } catch (Exception ex) {
+            log.error("Outbox drain failed: {}", ex.getMessage(), ex);
+        }
+    }
+
+    // true = event đã xong (DONE/FAILED hẳn), false = còn chờ retry
+    private boolean dispatch(Long id) {
+        try {
+            Boolean ok = txTemplate.execute(status -> {
+                OutboxEvent e = outboxRepo.lockById(id).orElse(null);
+                if (e == null || !"PENDING".equals(e.getStatus())) return true; // instance khác đã xử lý
+
+                Consumer<JsonNode> handler = handlers.get(e.getType());
+                if (handler == null) throw new IllegalStateException("No handler for " + e.getType());
+
+                handler.accept(readPayload(e));
+                e.setStatus("DONE");
+                e.setProcessedAt(LocalDateTime.now());
+                e.setAttempts(e.getAttempts() + 1);
+                outboxRepo.save(e);
+                return true;
+            });
+            return Boolean.TRUE.equals(ok);
+        } catch (Exception ex) {
+            return markFailedAttempt(id, ex);
+        }
+    }
+
+    private boolean markFailedAttempt(Long id, Exception cause) {
+        Boolean gaveUp = txTemplate.execute(status -> {
+            OutboxEvent e = outboxRepo.findById(id).orElse(null);
+            if (e == null) return true;
+
+            int attempts = e.getAttempts() + 1;
+            e.setAttempts(attempts);
+            String msg = String.valueOf(cause.getMessage());
+            e.setLastError(msg.length() > 1000 ? msg.substring(0, 1000) : msg);
+
+            if (attempts >= maxAttempts) {
+                e.setStatus("FAILED");
+                log.error("Outbox event {} ({}) failed permanently: {}", e.getId(), e.getType(), msg);
+            } else {
+                long delaySec = Math.min(300, 1L << attempts); // 2s, 4s, 8s ... tối đa 5 phút
+                e.setNextAttemptAt(LocalDateTime.now().plusSeconds(delaySec));
+                log.warn("Outbox event {} ({}) attempt {} failed: {}", e.getId(), e.getType(), attempts, msg);
+            }
+            outboxRepo.save(e);
+            return "FAILED".equals(e.getStatus());
+        });
+        return Boolean.TRUE.equals(gaveUp);
+    }
+
+    private JsonNode readPayload(OutboxEvent e) {
+        try {
+            return objectMapper.readTree(e.getPayload() == null ? "{}" : e.getPayload());
+        } catch (Exception ex) {
+            throw new IllegalStateException("Invalid outbox payload for event " + e.getId(), ex);
+        }
+    }
+
+    private Order loadOrder(JsonNode payload) {
+        long orderId = payload.get("orderId").asLong();
+        return orderRepo.findByIdWithDetails(orderId)
+                .orElseThrow(() -> new RuntimeException("Order not found: " + orderId));
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,56 @@
+package org.example.server.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import org.example.server.entity.OutboxEvent;
+import org.example.server.repository.OutboxEventRepository;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Map;
+
+@Service
+@RequiredArgsConstructor
+public class OutboxService {
+
+    public static final String NEW_ORDER_NOTIFY = "NEW_ORDER_NOTIFY";
+    public static final String ORDER_CONFIRMATION_EMAIL = "ORDER_CONFIRMATION_EMAIL";
+    public static final String PROMOTION_USAGE = "PROMOTION_USAGE"; // chỉ còn event cũ; lượt dùng giờ giữ ngay lúc đặt đơn
+    public static final String CART_CLEAR = "CART_CLEAR"; // chỉ còn event cũ; giỏ giờ dọn ngay lúc đặt đơn
+
+    private final OutboxEventRepository outboxRepo;
+    private final OutboxDispatcher dispatcher;
+    private final ObjectMapper objectMapper;
+
+    /**
+     * Ghi event vào outbox trong cùng transaction với nghiệp vụ.
+     * Event chỉ được gửi đi sau khi transaction commit.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void publish(String type, Long aggregateId, Map<String, Object> payload) {
+        String json;
+        try {
+            json = objectMapper.writeValueAsString(payload);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Invalid outbox payload", e);
+        }
+
+        outboxRepo.save(OutboxEvent.builder()
+                .type(type)
+                .aggregateId(aggregateId)
+                .payload(json)
+                .build());
+
+        // Đánh thức dispatcher ngay sau commit thay vì chờ lượt poll kế tiếp
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                dispatcher.wakeUp();
+            }
+        });
+    }
+}
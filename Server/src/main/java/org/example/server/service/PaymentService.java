@@ -2,20 +2,19 @@ package org.example.server.service;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
-import org.example.server.entity.Cart;
 import org.example.server.entity.Order;
-import org.example.server.entity.OrderItem;
 import org.example.server.entity.Payment;
-import org.example.server.entity.Product;
-import org.example.server.entity.User;
-import org.example.server.repository.CartRepository;
+import org.example.server.entity.PaymentWebhookEvent;
+import org.example.server.event.OrderChangedEvent;
 import org.example.server.repository.OrderRepository;
 import org.example.server.repository.PaymentRepository;
-import org.example.server.repository.ProductRepository;
+import org.example.server.repository.PaymentWebhookEventRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 import vn.payos.PayOS;
 import vn.payos.model.v2.paymentRequests.CreatePaymentLinkRequest;
@@ -30,9 +29,11 @@ public class PaymentService {
 
     private final PayOS payOS;
     private final PaymentRepository paymentRepository;
+    private final PaymentWebhookEventRepository webhookEventRepository;
     private final OrderRepository orderRepository;
-    private final ProductRepository productRepository;
-    private final CartRepository cartRepository;
+    private final StockReservationService stockReservationService;
+    private final PromotionService promotionService;
+    private final ApplicationEventPublisher eventPublisher;
     private final ObjectMapper objectMapper = new ObjectMapper();
 
     @Value("${payos.return-url}")
@@ -43,18 +44,22 @@ public class PaymentService {
 
     public PaymentService(
             PaymentRepository paymentRepository,
+            PaymentWebhookEventRepository webhookEventRepository,
             OrderRepository orderRepository,
-            ProductRepository productRepository,
-            CartRepository cartRepository,
+            StockReservationService stockReservationService,
+            PromotionService promotionService,
+            ApplicationEventPublisher eventPublisher,
             @Value("${payos.client-id}") String clientId,
             @Value("${payos.api-key}") String apiKey,
             @Value("${payos.checksum-key}") String checksumKey
     ) {
         this.payOS = new PayOS(clientId, apiKey, checksumKey);
         this.paymentRepository = paymentRepository;
+        this.webhookEventRepository = webhookEventRepository;
         this.orderRepository = orderRepository;
-        this.productRepository = productRepository;
-        this.cartRepository = cartRepository;
+        this.stockReservationService = stockReservationService;
+        this.promotionService = promotionService;
+        this.eventPublisher = eventPublisher;
     }
 
     @Transactional
@@ -105,78 +110,79 @@ public class PaymentService {
         return base + (base.contains("?") ? "&" : "?") + "orderId=" + id;
     }
 
-    @Transactional
-    public void handleWebhook(ObjectNode webhookBody) {
+    /**
+     * Verifies the signature and stores the event; nothing is applied inside the request, so PayOS gets 200 at once.
+     * @return the orderCode to process, or null if (orderCode, code) was already received or has no orderCode
+     */
+    public Long receiveWebhook(ObjectNode webhookBody) {
+        String webhookBodyStr;
+        Long orderCode;
+        String code;
+        String desc;
         try {
-            // Chuy?n ObjectNode thnh chu?i JSON d? verify
-            String webhookBodyStr = objectMapper.writeValueAsString(webhookBody);
-
+            webhookBodyStr = objectMapper.writeValueAsString(webhookBody);
             // Dng var d? t? d?ng nh?n ki?u d? li?u tr? v? t? SDK
             var verifiedData = payOS.webhooks().verify(webhookBodyStr);
-
-            log.info("Webhook verified: {}", verifiedData);
-
-            // L?y d? li?u t? verifiedData
-            Long orderCode = verifiedData.getOrderCode();
-            String code = verifiedData.getCode();
-            String desc = verifiedData.getDesc();
-
-            if (orderCode == null) {
-                log.warn("Khng xc d?nh du?c orderCode t? webhook");
-                return;
-            }
-
-            Payment payment = paymentRepository.findByPayosOrderId(String.valueOf(orderCode));
-            Order order = (payment != null) ? payment.getOrder() : orderRepository.findByIdWithDetails(orderCode).orElse(null);
-
-            if (order == null) {
-                log.warn("Khng tm th?y Order cho orderCode={}", orderCode);
-                return;
-            }
-
-            // Map tr?ng thi
-            String payStatus = "FAILED";
-            if ("00".equals(code) || "success".equalsIgnoreCase(desc)) {
-                payStatus = "SUCCESS";
-            }
-
-            if (payment != null) {
-                payment.setStatus(payStatus);
-                paymentRepository.save(payment);
-            }
-
-            if ("SUCCESS".equalsIgnoreCase(payStatus)) {
-                if ("PENDING".equalsIgnoreCase(order.getStatus())) {
-                    order.setStatus("CONFIRMED");
-                    order.setUpdatedAt(LocalDateTime.now());
-                    orderRepository.save(order);
-                    clearUserCart(order.getUser());
-                }
-            } else if ("FAILED".equalsIgnoreCase(payStatus) || "CANCELLED".equalsIgnoreCase(payStatus)) {
-                if ("PENDING".equalsIgnoreCase(order.getStatus())) {
-                    order.setStatus("CANCELLED");
-                    order.setUpdatedAt(LocalDateTime.now());
-                    orderRepository.save(order);
-                    // Hon l?i kho
-                    for (OrderItem it : order.getItems()) {
-                        Product p = it.getProduct();
-                        p.setStock(p.getStock() + it.getQuantity());
-                        productRepository.save(p);
-                    }
-                }
-            }
+            orderCode = verifiedData.getOrderCode();
+            code = verifiedData.getCode();
+            desc = verifiedData.getDesc();
         } catch (Exception e) {
-            log.error("L?i x? l webhook: {}", e.getMessage(), e);
-            throw new RuntimeException(e);
+            log.warn("Webhook rejected: {}", e.getMessage());
+            throw new IllegalArgumentException("Invalid webhook signature");
+        }
+
+        if (orderCode == null) {
+            log.warn("Webhook without orderCode: {}", webhookBodyStr);
+            return null;
+        }
+        if (code == null) code = "";
+        if (desc != null && desc.length() > 255) desc = desc.substring(0, 255);
+
+        if (webhookEventRepository.insertIgnore(orderCode, code, desc, webhookBodyStr) == 0) {
+            log.info("Duplicate webhook ignored: orderCode={}, code={}", orderCode, code);
+            return null;
         }
+        return orderCode;
     }
 
-    private void clearUserCart(User user) {
-        if (user == null) return;
-        Cart cart = cartRepository.findByUser(user).orElse(null);
-        if (cart != null && cart.getItems() != null && !cart.getItems().isEmpty()) {
-            cart.getItems().clear();
-            cartRepository.save(cart);
+    /**
+     * Applies one stored webhook event to its order and payment (called by PaymentWebhookWorker with the event row locked).
+     * Only a PENDING order (and its payment) changes, so a re-applied or later event is a no-op.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void applyWebhook(PaymentWebhookEvent event) {
+        Long orderCode = event.getOrderCode();
+        Payment payment = paymentRepository.findByPayosOrderId(String.valueOf(orderCode));
+        Order order = (payment != null) ? payment.getOrder() : orderRepository.findByIdWithDetails(orderCode).orElse(null);
+
+        if (order == null) {
+            log.warn("Webhook event {}: no order for orderCode={}", event.getId(), orderCode);
+            return;
+        }
+
+        String payStatus = "00".equals(event.getCode()) || "success".equalsIgnoreCase(event.getDescription())
+                ? "SUCCESS" : "FAILED";
+
+        // A later event for an order that is no longer PENDING (e.g. FAILED after SUCCESS) changes nothing
+        if (!"PENDING".equalsIgnoreCase(order.getStatus())) return;
+
+        if (payment != null) {
+            payment.setStatus(payStatus);
+            paymentRepository.save(payment);
+        }
+
+        order.setUpdatedAt(LocalDateTime.now());
+        if ("SUCCESS".equals(payStatus)) {
+            // The ordered products already left the cart when the order was placed; items added since stay
+            order.setStatus("CONFIRMED");
+            orderRepository.save(order);
+            eventPublisher.publishEvent(new OrderChangedEvent(order.getId()));
+        } else {
+            order.setStatus("CANCELLED");
+            orderRepository.save(order);
+            // Return stock in one batch, and the promotion uses held by the order
+            stockReservationService.release(order.getItems());
+            promotionService.releaseUsage(order.getId());
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,153 @@
+package org.example.server.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.example.server.entity.PaymentWebhookEvent;
+import org.example.server.repository.PaymentWebhookEventRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Áp các webhook PayOS đã lưu, ngoài request HTTP.
+ * Mỗi orderCode luôn vào cùng 1 lane nên event của 1 đơn áp đúng thứ tự nhận; đơn khác nhau chạy song song.
+ * Lỗi thì retry có backoff như outbox; event sau của cùng đơn chờ event trước xong.
+ */
+@Component
+public class PaymentWebhookWorker {
+
+    private static final Logger log = LoggerFactory.getLogger(PaymentWebhookWorker.class);
+
+    private final PaymentWebhookEventRepository eventRepo;
+    private final PaymentService paymentService;
+    private final TransactionTemplate txTemplate;
+    private final MeterRegistry registry;
+    private final KeyedLanes lanes;
+    // Số event PENDING trong bảng (gồm cả event chờ retry / còn tồn khi restart), đếm lại mỗi lượt poll
+    private final AtomicLong pendingEvents = new AtomicLong();
+
+    @Value("${app.payments.webhook-max-attempts:8}")
+    private int maxAttempts;
+
+    @Value("${app.payments.webhook-batch-size:100}")
+    private int batchSize;
+
+    public PaymentWebhookWorker(PaymentWebhookEventRepository eventRepo,
+                                PaymentService paymentService,
+                                PlatformTransactionManager txManager,
+                                MeterRegistry registry,
+                                @Value("${app.payments.webhook-workers:4}") int workers) {
+        this.eventRepo = eventRepo;
+        this.paymentService = paymentService;
+        this.txTemplate = new TransactionTemplate(txManager);
+        this.txTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.registry = registry;
+        this.lanes = new KeyedLanes("payment-webhook", workers, this::drain);
+
+        Gauge.builder("payment.webhook.queue.depth", lanes, KeyedLanes::depth)
+                .description("Orders waiting for their webhook events to be applied")
+                .register(registry);
+        Gauge.builder("payment.webhook.events.pending", pendingEvents, AtomicLong::get)
+                .description("Stored webhook events not applied yet, including those waiting for a retry")
+                .register(registry);
+    }
+
+    /** Gọi sau khi lưu event: xếp 1 lượt áp cho đơn trên lane của nó. */
+    public void submit(Long orderCode) {
+        if (orderCode != null) lanes.submit(orderCode);
+    }
+
+    // Lưới an toàn: event chờ retry hoặc còn tồn khi restart
+    @Scheduled(fixedDelayString = "${app.payments.webhook-poll-ms:5000}")
+    public void poll() {
+        try {
+            pendingEvents.set(eventRepo.countByStatus("PENDING"));
+            eventRepo.findDueOrderCodes(LocalDateTime.now(), PageRequest.of(0, batchSize)).forEach(lanes::submit);
+        } catch (Exception ex) {
+            log.error("Webhook poll failed: {}", ex.getMessage(), ex);
+        }
+    }
+
+    private void drain(long orderCode) {
+        List<Long> ids = eventRepo.findPendingIds(orderCode);
+        for (Long id : ids) {
+            // Event trước chưa xong -> dừng, giữ thứ tự cho các event sau của đơn
+            if (!apply(id)) return;
+        }
+    }
+
+    // true = event đã xong (DONE/FAILED hẳn), false = còn chờ retry
+    private boolean apply(Long id) {
+        Timer.Sample sample = Timer.start(registry);
+        String outcome = "applied";
+        try {
+            Boolean done = txTemplate.execute(status -> {
+                PaymentWebhookEvent e = eventRepo.lockById(id).orElse(null);
+                if (e == null || !"PENDING".equals(e.getStatus())) return true; // instance khác đã xử lý
+                if (e.getNextAttemptAt() != null && e.getNextAttemptAt().isAfter(LocalDateTime.now())) return false;
+
+                paymentService.applyWebhook(e);
+                e.setStatus("DONE");
+                e.setProcessedAt(LocalDateTime.now());
+                e.setAttempts(e.getAttempts() + 1);
+                eventRepo.save(e);
+                return true;
+            });
+            if (!Boolean.TRUE.equals(done)) outcome = "waiting";
+            return Boolean.TRUE.equals(done);
+        } catch (Exception ex) {
+            boolean gaveUp = markFailedAttempt(id, ex);
+            outcome = gaveUp ? "failed" : "retry";
+            return gaveUp;
+        } finally {
+            sample.stop(Timer.builder("payment.webhook.apply")
+                    .description("Time to apply one stored PayOS webhook event")
+                    .tag("outcome", outcome)
+                    .register(registry));
+        }
+    }
+
+    private boolean markFailedAttempt(Long id, Exception cause) {
+        Boolean gaveUp = txTemplate.execute(status -> {
+            PaymentWebhookEvent e = eventRepo.findById(id).orElse(null);
+            if (e == null) return true;
+
+            int attempts = e.getAttempts() + 1;
+            e.setAttempts(attempts);
+            String msg = String.valueOf(cause.getMessage());
+            e.setLastError(msg.length() > 1000 ? msg.substring(0, 1000) : msg);
+
+            if (attempts >= maxAttempts) {
+                e.setStatus("FAILED");
+                log.error("Webhook event {} (orderCode={}) failed permanently: {}", e.getId(), e.getOrderCode(), msg);
+            } else {
+                long delaySec = Math.min(300, 1L << attempts); // 2s, 4s, 8s ... tối đa 5 phút
+                e.setNextAttemptAt(LocalDateTime.now().plusSeconds(delaySec));
+                log.warn("Webhook event {} (orderCode={}) attempt {} failed: {}", e.getId(), e.getOrderCode(), attempts, msg);
+            }
+            eventRepo.save(e);
+            return "FAILED".equals(e.getStatus());
+        });
+        return Boolean.TRUE.equals(gaveUp);
+    }
+
+    // Để event đang áp dở xong transaction; phần còn lại lượt poll của lần chạy sau sẽ nhặt
+    @PreDestroy
+    void shutdown() throws InterruptedException {
+        lanes.shutdown();
+        lanes.awaitTermination(10, TimeUnit.SECONDS);
+    }
+}
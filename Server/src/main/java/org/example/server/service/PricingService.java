@@ -0,0 +1,105 @@
+package org.example.server.service;
+
+import lombok.RequiredArgsConstructor;
+import org.example.server.dto.PricingDtos.AppliedDiscount;
+import org.example.server.dto.PricingDtos.Quote;
+import org.example.server.entity.Cart;
+import org.example.server.entity.CartItem;
+import org.example.server.entity.Product;
+import org.example.server.entity.User;
+import org.example.server.repository.CartRepository;
+import org.example.server.repository.UserRepository;
+import org.example.server.search.PromotionRules;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+/**
+ * Tính tiền giỏ hàng: mã khách nhập + khuyến mãi tự động + giảm theo hạng thành viên, chọn tổ hợp có lợi nhất.
+ * Giỏ hàng (xem trước) và đặt đơn dùng chung hàm quote() nên hai nơi luôn ra cùng 1 kết quả với cùng giá món.
+ */
+@Service
+@RequiredArgsConstructor
+public class PricingService {
+
+    public record Tier(String name, int minPoints, BigDecimal rate) {}
+
+    // Từ cao xuống thấp
+    private static final List<Tier> TIERS = List.of(
+            new Tier("DIAMOND", 2000, new BigDecimal("0.08")),
+            new Tier("GOLD", 500, new BigDecimal("0.05")),
+            new Tier("SILVER", 100, new BigDecimal("0.03")),
+            new Tier("BRONZE", 0, new BigDecimal("0.01")));
+
+    static final String MEMBER_RANK = "MEMBER_RANK";
+    private static final int PROMOTION_CODE_LENGTH = 255;
+
+    private final PromotionService promotionService;
+    private final CartRepository cartRepo;
+    private final UserRepository userRepo;
+
+    public static Tier tierOf(Integer points) {
+        int p = points == null ? 0 : points;
+        for (Tier t : TIERS) {
+            if (p >= t.minPoints()) return t;
+        }
+        return TIERS.get(TIERS.size() - 1);
+    }
+
+    /** Không chạm DB: bộ luật khuyến mãi đã biên dịch sẵn trong bộ nhớ. */
+    public Quote quote(List<PromotionRules.Line> lines, Integer points, String code) {
+        Tier tier = tierOf(points);
+        PromotionRules.Offer offer = promotionService.bestOffer(code, lines, tier.rate());
+        List<AppliedDiscount> discounts = new ArrayList<>(offer.applied().size());
+        for (PromotionRules.Applied a : offer.applied()) {
+            PromotionRules.Rule r = a.rule();
+            if (r == null) {
+                discounts.add(new AppliedDiscount("MEMBER", null, null, tier.name(), a.discount()));
+            } else if (r.couponBatch()) {
+                discounts.add(new AppliedDiscount("COUPON", r.id(), CouponCodes.normalize(code), r.name(), a.discount()));
+            } else {
+                discounts.add(new AppliedDiscount(r.automatic() ? "AUTO" : "CODE", r.id(), r.code(), r.name(), a.discount()));
+            }
+        }
+        return new Quote(offer.subtotal(), discounts, offer.discount(), offer.total(), tier.name(), offer.codeMessage());
+    }
+
+    /** Báo giá cho giỏ hiện tại của khách, giá món lấy như lúc đặt đơn (giá đang lưu của món). */
+    @Transactional(readOnly = true)
+    public Quote quoteCart(String username, String code) {
+        User user = userRepo.findByUsername(username).orElseThrow(() -> new RuntimeException("User not found"));
+        List<PromotionRules.Line> lines = new ArrayList<>();
+        cartRepo.findByUsernameWithItemsAndProduct(username).map(Cart::getItems).orElse(List.of())
+                .forEach(item -> toLine(item).ifPresent(lines::add));
+        return quote(lines, user.getPoints(), code);
+    }
+
+    private static Optional<PromotionRules.Line> toLine(CartItem item) {
+        Product p = item.getProduct();
+        if (p == null || p.getPrice() == null) return Optional.empty();
+        return Optional.of(line(p, item.getQuantity()));
+    }
+
+    public static PromotionRules.Line line(Product p, int quantity) {
+        return new PromotionRules.Line(p.getId(), p.getCategory() == null ? null : p.getCategory().getId(),
+                p.getPrice(), quantity);
+    }
+
+    /** Giá trị lưu vào orders.promotion_code: mã đã áp (kể cả mã coupon), AUTO-{id} cho khuyến mãi tự động, MEMBER_RANK cho hạng. */
+    public static String label(Quote quote) {
+        String label = quote.discounts().stream()
+                .map(d -> switch (d.kind()) {
+                    case "CODE", "COUPON" -> d.code();
+                    case "AUTO" -> "AUTO-" + d.promotionId();
+                    default -> MEMBER_RANK;
+                })
+                .collect(Collectors.joining(","));
+        if (label.isEmpty()) return null;
+        return label.length() > PROMOTION_CODE_LENGTH ? label.substring(0, PROMOTION_CODE_LENGTH) : label;
+    }
+}
@@ -0,0 +1,251 @@
+package org.example.server.service;
+
+import org.example.server.dto.ProductView;
+import org.example.server.entity.Category;
+import org.example.server.entity.Product;
+import org.example.server.event.CatalogChangedEvent;
+import org.example.server.repository.CategoryRepository;
+import org.example.server.repository.ProductRepository;
+import org.example.server.search.FacetIndex;
+import org.example.server.search.NutritionIndex;
+import org.example.server.search.ProductSearchIndex;
+import org.example.server.search.SuggestIndex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Tìm món bằng chỉ mục trong bộ nhớ thay cho LIKE '%q%'.
+ * Dựng toàn bộ lúc khởi động và định kỳ, giữa các lần đó cập nhật từng món khi catalog đổi.
+ * Kèm bộ gợi ý khi đang gõ (SuggestIndex), bộ đếm facet (FacetIndex) và chỉ mục dinh dưỡng
+ * (NutritionIndex) dùng chung nguồn dữ liệu.
+ */
+@Service
+public class ProductSearchService {
+
+    private static final Logger log = LoggerFactory.getLogger(ProductSearchService.class);
+
+    private final ProductRepository productRepository;
+    private final CategoryRepository categoryRepository;
+    private final TransactionTemplate readTx;
+    private final ProductSearchIndex index = new ProductSearchIndex();
+    private final SuggestIndex suggestIndex = new SuggestIndex();
+    private final FacetIndex facetIndex;
+    private final NutritionIndex nutritionIndex = new NutritionIndex();
+    // Giá + danh mục hiện tại của từng món, để tính giỏ hàng (xem trước khuyến mãi) không chạm DB
+    private final Map<Long, PriceRef> prices = new ConcurrentHashMap<>();
+
+    public record PriceRef(Long id, Long categoryId, BigDecimal price, boolean active) {}
+
+    public record BrowseResult(Page<ProductView> page, Map<String, List<FacetIndex.FacetCount>> facets) {}
+
+    public ProductSearchService(ProductRepository productRepository,
+                                CategoryRepository categoryRepository,
+                                PlatformTransactionManager txManager,
+                                @Value("${app.search.price-buckets:30000,50000,80000,120000}") double[] priceBuckets,
+                                @Value("${app.search.calorie-buckets:300,500,700}") double[] calorieBuckets,
+                                @Value("${app.search.protein-buckets:15,30}") double[] proteinBuckets) {
+        this.productRepository = productRepository;
+        this.categoryRepository = categoryRepository;
+        this.facetIndex = new FacetIndex(sorted(priceBuckets), sorted(calorieBuckets), sorted(proteinBuckets));
+        this.readTx = new TransactionTemplate(txManager);
+        this.readTx.setReadOnly(true);
+        this.readTx.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    // Sửa catalog trên instance khác (hoặc sửa thẳng DB) không phát event ở đây -> dựng lại định kỳ.
+    // synchronized với onCatalogChanged: bản dựng đọc trước 1 thay đổi không ghi đè lên thay đổi đó
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(initialDelayString = "${app.search.rebuild-ms:900000}", fixedDelayString = "${app.search.rebuild-ms:900000}")
+    public synchronized void rebuild() {
+        Map<Long, String> categoryNames = new HashMap<>();
+        List<FacetIndex.Row> rows = new ArrayList<>();
+        List<NutritionIndex.Row> nutrition = new ArrayList<>();
+        List<ProductSearchIndex.Doc> docs = readTx.execute(status -> {
+            for (Category c : categoryRepository.findAll()) categoryNames.put(c.getId(), c.getName());
+            List<Product> products = productRepository.findAll();
+            Set<Long> seen = new HashSet<>();
+            products.forEach(p -> {
+                rows.add(toRow(p));
+                nutrition.add(toNutrition(p));
+                prices.put(p.getId(), toPrice(p));
+                seen.add(p.getId());
+            });
+            prices.keySet().retainAll(seen);
+            return products.stream().map(ProductSearchService::toDoc).toList();
+        });
+        index.replaceAll(docs);
+        facetIndex.replaceAll(rows);
+        nutritionIndex.replaceAll(nutrition);
+        suggestIndex.replaceAll(categoryNames, docs);
+        refreshPopularity();
+        log.info("Product search index built with {} products", index.size());
+    }
+
+    @Scheduled(initialDelayString = "${app.search.popularity-refresh-ms:3600000}",
+            fixedDelayString = "${app.search.popularity-refresh-ms:3600000}")
+    public void refreshPopularity() {
+        Map<Long, Long> sold = new HashMap<>();
+        for (Object[] row : productRepository.sumSoldQuantityByProduct()) {
+            sold.put((Long) row[0], ((Number) row[1]).longValue());
+        }
+        index.setPopularity(sold);
+        suggestIndex.setPopularity(sold);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public synchronized void onCatalogChanged(CatalogChangedEvent event) {
+        readTx.executeWithoutResult(status -> {
+            if (event.productId() != null) {
+                productRepository.findById(event.productId()).ifPresentOrElse(this::upsert, () -> {
+                    index.remove(event.productId());
+                    facetIndex.remove(event.productId());
+                    nutritionIndex.remove(event.productId());
+                    prices.remove(event.productId());
+                    suggestIndex.removeProduct(event.productId());
+                });
+            }
+            if (event.categoryId() != null) {
+                categoryRepository.findById(event.categoryId()).ifPresentOrElse(
+                        c -> suggestIndex.upsertCategory(c.getId(), c.getName()),
+                        () -> suggestIndex.removeCategory(event.categoryId()));
+                // Đổi tên danh mục -> các món thuộc danh mục cần index lại (mọi chỉ mục, kể cả giá)
+                productRepository.findByCategoryId(event.categoryId()).forEach(this::upsert);
+            }
+        });
+    }
+
+    /** Gợi ý theo tiền tố, không chạm DB. */
+    public List<SuggestIndex.Suggestion> suggest(String q, int limit) {
+        return suggestIndex.suggest(q, limit);
+    }
+
+    /** k id món đang bán ngẫu nhiên thoả mọi khoảng dinh dưỡng, không chạm DB. */
+    public List<Long> sampleByNutrition(List<NutritionIndex.Range> ranges, int k) {
+        return nutritionIndex.sample(ranges, k, ThreadLocalRandom.current());
+    }
+
+    public boolean matchesNutrition(Long productId, List<NutritionIndex.Range> ranges) {
+        return nutritionIndex.matches(productId, ranges);
+    }
+
+    /** Món đang bán có đủ dữ liệu dinh dưỡng + phiên bản chỉ mục (đổi mỗi khi catalog đổi). */
+    public List<NutritionIndex.Row> nutritionRows() {
+        return nutritionIndex.completeRows();
+    }
+
+    public long nutritionVersion() {
+        return nutritionIndex.version();
+    }
+
+    public int countByNutrition(List<NutritionIndex.Range> ranges) {
+        return nutritionIndex.count(ranges);
+    }
+
+    /** Giá và danh mục hiện tại của món, không chạm DB; rỗng nếu không có món. */
+    public Optional<PriceRef> price(Long productId) {
+        return productId == null ? Optional.empty() : Optional.ofNullable(prices.get(productId));
+    }
+
+    /** Lấy món theo id, giữ nguyên thứ tự truyền vào. */
+    public List<ProductView> findAllInOrder(List<Long> ids) {
+        return load(ids);
+    }
+
+    /** page bắt đầu từ 1 như API cũ. */
+    public Page<ProductView> search(Long categoryId, String q, int page, int limit, boolean includeInactive) {
+        int size = Math.max(1, limit);
+        int pageIndex = Math.max(page - 1, 0);
+        ProductSearchIndex.Result result = index.search(q, categoryId, includeInactive, pageIndex * size, size);
+        return new PageImpl<>(load(result.ids()), PageRequest.of(pageIndex, size), result.total());
+    }
+
+    /**
+     * Danh sách món đang bán + số đếm facet trong 1 lần gọi, không query DB ngoài bước lấy món của trang.
+     * q rỗng -> món mới trước; có q -> theo thứ hạng tìm kiếm.
+     */
+    public BrowseResult browse(String q, FacetIndex.Filter filter, int page, int limit) {
+        int size = Math.max(1, limit);
+        int pageIndex = Math.max(page - 1, 0);
+        List<Long> candidates = q == null || q.isBlank()
+                ? null
+                : index.search(q, null, false, 0, Integer.MAX_VALUE).ids();
+        FacetIndex.Result result = facetIndex.browse(candidates, filter);
+
+        List<Long> hits = result.hits();
+        int from = (int) Math.min((long) pageIndex * size, hits.size());
+        List<Long> pageIds = hits.subList(from, (int) Math.min((long) from + size, hits.size()));
+        return new BrowseResult(new PageImpl<>(load(pageIds), PageRequest.of(pageIndex, size), hits.size()),
+                result.facets());
+    }
+
+    // Lấy món theo id (projection, không dựng entity), giữ nguyên thứ tự của chỉ mục
+    private List<ProductView> load(List<Long> ids) {
+        if (ids.isEmpty()) return List.of();
+        Map<Long, ProductView> byId = new HashMap<>();
+        for (ProductView p : productRepository.findViewsByIdIn(ids)) byId.put(p.id(), p);
+        return ids.stream().map(byId::get).filter(Objects::nonNull).toList();
+    }
+
+    private void upsert(Product p) {
+        ProductSearchIndex.Doc doc = toDoc(p);
+        index.upsert(doc);
+        facetIndex.upsert(toRow(p));
+        nutritionIndex.upsert(toNutrition(p));
+        prices.put(p.getId(), toPrice(p));
+        suggestIndex.upsertProduct(doc.id(), doc.name(), doc.categoryId(), doc.active());
+    }
+
+    private static ProductSearchIndex.Doc toDoc(Product p) {
+        return new ProductSearchIndex.Doc(
+                p.getId(),
+                p.getName(),
+                p.getDescription(),
+                p.getCategory() == null ? null : p.getCategory().getId(),
+                p.getCategory() == null ? null : p.getCategory().getName(),
+                Boolean.TRUE.equals(p.getActive()));
+    }
+
+    private static FacetIndex.Row toRow(Product p) {
+        return new FacetIndex.Row(
+                p.getId(),
+                p.getCategory() == null ? null : p.getCategory().getId(),
+                p.getCategory() == null ? null : p.getCategory().getName(),
+                p.getPrice(),
+                p.getCalories(),
+                p.getProtein(),
+                Boolean.TRUE.equals(p.getActive()));
+    }
+
+    private static NutritionIndex.Row toNutrition(Product p) {
+        return new NutritionIndex.Row(p.getId(), p.getCalories(), p.getProtein(), p.getCarbs(), p.getFat(),
+                p.getPrice() == null ? null : p.getPrice().doubleValue(), Boolean.TRUE.equals(p.getActive()));
+    }
+
+    private static PriceRef toPrice(Product p) {
+        return new PriceRef(p.getId(), p.getCategory() == null ? null : p.getCategory().getId(), p.getPrice(),
+                Boolean.TRUE.equals(p.getActive()));
+    }
+
+    private static double[] sorted(double[] bounds) {
+        double[] copy = bounds.clone();
+        Arrays.sort(copy);
+        return copy;
+    }
+}
@@ -1,48 +1,46 @@
 package org.example.server.service;
 
 import lombok.RequiredArgsConstructor;
+import org.example.server.dto.ProductView;
 import org.example.server.entity.Product;
+import org.example.server.event.CatalogChangedEvent;
 import org.example.server.repository.ProductRepository;
-import org.springframework.cache.annotation.CacheEvict;
-import org.springframework.cache.annotation.Cacheable;
-import org.springframework.data.domain.Page;
+import org.example.server.search.SalesRanking;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.PageRequest;
-import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
 public class ProductService {
     private final ProductRepository productRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    private final SalesRankingService salesRankingService;
 
     // Admin thấy hết
     public List<Product> getAllProducts() {
         return productRepository.findAll();
     }
 
-    // Khách chỉ thấy Active
-    @Cacheable(value = "products", key = "'public_active_list'")
-    public List<Product> getPublicProducts() {
-        return productRepository.findByActiveTrue();
-    }
-
     public Product getProductById(Long id) {
         return productRepository.findById(id)
                 .orElseThrow(() -> new RuntimeException("Product not found"));
     }
 
     @Transactional
-    @CacheEvict(value = "products", key = "'public_list'")
     public Product createProduct(Product product) {
         // Mặc định khi tạo mới là hiện
         if (product.getActive() == null) product.setActive(true);
-        return productRepository.save(product);
+        Product saved = productRepository.save(product);
+        eventPublisher.publishEvent(CatalogChangedEvent.product(saved.getId()));
+        return saved;
     }
     @Transactional
-    @CacheEvict(value = "products", key = "'public_list'")
     public Product updateProduct(Long id, Product updated) {
         Product product = getProductById(id);
         product.setName(updated.getName());
@@ -55,47 +53,55 @@ public class ProductService {
         product.setProtein(updated.getProtein());
         product.setCarbs(updated.getCarbs());
         product.setFat(updated.getFat());
+        product.setPrepTimeMinutes(updated.getPrepTimeMinutes());
 
         // Cho phép cập nhật trạng thái active
         if (updated.getActive() != null) {
             product.setActive(updated.getActive());
         }
-        return productRepository.save(product);
+        Product saved = productRepository.save(product);
+        eventPublisher.publishEvent(CatalogChangedEvent.product(id));
+        return saved;
     }
 
     // --- XÓA MỀM (SOFT DELETE) ---
     @Transactional
-    @CacheEvict(value = "products", key = "'public_list'")
     public void deleteProduct(Long id) {
         Product product = getProductById(id);
         product.setActive(false); // Chỉ ẩn đi, không xóa database
         productRepository.save(product);
+        eventPublisher.publishEvent(CatalogChangedEvent.product(id));
     }
 
     // Toggle nhanh (Dùng cho nút con mắt)
     @Transactional
-    @CacheEvict(value = "products", key = "'public_list'")
     public void toggleActive(Long id) {
         Product product = getProductById(id);
         product.setActive(!product.getActive());
         productRepository.save(product);
+        eventPublisher.publishEvent(CatalogChangedEvent.product(id));
     }
 
-    public Page<Product> search(Long categoryId, String q, int page, int limit, boolean isAdmin) {
-        var pageable = PageRequest.of(Math.max(page-1,0), limit, Sort.by(Sort.Direction.DESC, "id"));
-        if (isAdmin) {
-            return productRepository.searchAdmin(categoryId, q, pageable);
-        } else {
-            return productRepository.searchPublic(categoryId, q, pageable);
-        }
+    // Chi tiết món cho khách: projection, không kéo category/cartItems/orderItems của entity
+    public ProductView getProductView(Long id) {
+        return productRepository.findViewById(id)
+                .orElseThrow(() -> new RuntimeException("Product not found"));
     }
 
-    public List<Product> getTopSellingProducts(int limit) {
-        List<Product> top = productRepository.findTopSelling(PageRequest.of(0, limit));
+    // Xếp hạng lấy từ bộ nhớ (SalesRankingService), DB chỉ nạp đúng các món cần hiển thị
+    public List<ProductView> getTopSellingProducts(int limit, SalesRanking.Window window) {
+        List<Long> ids = salesRankingService.top(window, limit * 2); // dư ra để bù món đã ẩn
+        Map<Long, ProductView> byId = ids.isEmpty() ? Map.of() : productRepository.findViewsByIdIn(ids).stream()
+                .collect(Collectors.toMap(ProductView::id, p -> p));
+        List<ProductView> top = ids.stream()
+                .map(byId::get)
+                .filter(p -> p != null && Boolean.TRUE.equals(p.active()))
+                .limit(limit)
+                .toList();
 
         if (top.isEmpty()) {
-            return productRepository.findByActiveTrue().stream().limit(limit).toList();
+            return productRepository.findNewestActiveViews(PageRequest.of(0, Math.max(1, limit)));
         }
         return top;
     }
-}
\ No newline at end of file
+}
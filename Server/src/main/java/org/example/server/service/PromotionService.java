@@ -1,25 +1,77 @@
 package org.example.server.service;
 
-import lombok.RequiredArgsConstructor;
+import org.example.server.common.PromotionUnavailableException;
 import org.example.server.entity.*;
+import org.example.server.event.PromotionChangedEvent;
 import org.example.server.repository.CategoryRepository;
+import org.example.server.repository.CouponRepository;
 import org.example.server.repository.ProductRepository;
 import org.example.server.repository.PromotionRepository;
+import org.example.server.search.PromotionRules;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
+/**
+ * CRUD khuyến mãi + bộ luật đã biên dịch (PromotionRules) để xem trước / áp mã không chạm DB.
+ * Bộ luật nạp toàn bộ lúc khởi động và định kỳ (đồng bộ thay đổi từ instance khác),
+ * nạp lại từng khuyến mãi sau khi lưu / xoá.
+ * Lượt dùng đi qua PromotionUsageLedger: giữ lượt trong transaction đặt đơn, trả lượt khi huỷ / thanh toán thất bại;
+ * usedCounts trong bộ nhớ chỉ để báo trước "hết lượt" khi xem giá, chặn thật nằm ở ledger.
+ */
 @Service
-@RequiredArgsConstructor
 public class PromotionService {
 
+    private static final Logger log = LoggerFactory.getLogger(PromotionService.class);
+
     private final PromotionRepository promoRepo;
     private final ProductRepository productRepo;
     private final CategoryRepository categoryRepo;
+    private final ApplicationEventPublisher eventPublisher;
+    private final PromotionUsageLedger usageLedger;
+    private final CouponService couponService;
+    private final TransactionTemplate readTx;
+    private final TransactionTemplate writeTx;
+
+    // Luật theo id (chỉ sửa trong synchronized), snapshot dựng từ đây rồi tráo qua volatile
+    private final Map<Long, PromotionRules.Rule> compiled = new HashMap<>();
+    private final Map<Long, Integer> usedCounts = new ConcurrentHashMap<>();
+    private volatile PromotionRules rules = PromotionRules.EMPTY;
+
+    public PromotionService(PromotionRepository promoRepo,
+                            ProductRepository productRepo,
+                            CategoryRepository categoryRepo,
+                            ApplicationEventPublisher eventPublisher,
+                            PromotionUsageLedger usageLedger,
+                            CouponService couponService,
+                            PlatformTransactionManager txManager) {
+        this.promoRepo = promoRepo;
+        this.productRepo = productRepo;
+        this.categoryRepo = categoryRepo;
+        this.eventPublisher = eventPublisher;
+        this.usageLedger = usageLedger;
+        this.couponService = couponService;
+        this.readTx = new TransactionTemplate(txManager);
+        this.readTx.setReadOnly(true);
+        this.readTx.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.writeTx = new TransactionTemplate(txManager);
+        this.writeTx.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
 
     public List<Promotion> getAll() {
         return promoRepo.findAll();
@@ -43,6 +95,14 @@ public class PromotionService {
 
         if (body.containsKey("name")) p.setName((String) body.get("name"));
         if (body.containsKey("active")) p.setActive(Boolean.valueOf(body.get("active").toString()));
+        if (body.containsKey("couponBatch")) {
+            Object v = body.get("couponBatch");
+            p.setCouponBatch(v == null ? null : Boolean.valueOf(v.toString()));
+        }
+        if (body.containsKey("stackable")) {
+            Object v = body.get("stackable");
+            p.setStackable(v == null ? null : Boolean.valueOf(v.toString()));
+        }
 
         if (body.containsKey("type")) p.setType(Promotion.PromoType.valueOf((String) body.get("type")));
         if (body.containsKey("value")) p.setValue(new BigDecimal(body.get("value").toString()));
@@ -83,100 +143,124 @@ public class PromotionService {
             }
         }
 
-        return promoRepo.save(p);
+        Promotion saved = promoRepo.save(p);
+        // Tạo shard cho khuyến mãi mới / chia lại capacity theo maxUses mới, cùng transaction với lần lưu
+        usageLedger.configure(saved.getId(), saved.getMaxUses(), saved.getUsedCount() == null ? 0 : saved.getUsedCount());
+        eventPublisher.publishEvent(new PromotionChangedEvent(saved.getId()));
+        return saved;
     }
 
     @Transactional
     public void delete(Long id) {
         promoRepo.deleteById(id);
+        usageLedger.remove(id);
+        couponService.deleteBatch(id);
+        eventPublisher.publishEvent(new PromotionChangedEvent(id));
     }
 
-    public static record ApplyResult(BigDecimal discount, Promotion promotion, String message) {}
-
-    @Transactional(readOnly = true)
-    public ApplyResult preview(String code, List<OrderItem> items) {
-        if (code == null || code.trim().isEmpty()) return new ApplyResult(BigDecimal.ZERO, null, "Code required");
-
-        Promotion p = promoRepo.findByCodeWithDetails(code.trim()).orElse(null);
-        if (p == null) return new ApplyResult(BigDecimal.ZERO, null, "Invalid code");
-
-        String error = validate(p);
-        if (error != null) return new ApplyResult(BigDecimal.ZERO, null, error);
-
-        Set<Long> pIds = items.stream().map(i -> i.getProduct().getId()).collect(Collectors.toSet());
-        Map<Long, Product> productMap = productRepo.findAllById(pIds).stream().collect(Collectors.toMap(Product::getId, pr -> pr));
-
-        BigDecimal subtotal = BigDecimal.ZERO;
-        BigDecimal eligibleTotal = BigDecimal.ZERO;
-
-        for (OrderItem item : items) {
-            Product realProduct = productMap.get(item.getProduct().getId());
-            if (realProduct == null) continue;
-
-            BigDecimal lineTotal = realProduct.getPrice().multiply(BigDecimal.valueOf(item.getQuantity()));
-            subtotal = subtotal.add(lineTotal);
-
-            if (isEligible(p, realProduct)) {
-                eligibleTotal = eligibleTotal.add(lineTotal);
-            }
-        }
-
-        if (p.getMinOrderTotal() != null && subtotal.compareTo(p.getMinOrderTotal()) < 0) {
-            return new ApplyResult(BigDecimal.ZERO, null, "Min order total not met");
-        }
-
-        if (eligibleTotal.compareTo(BigDecimal.ZERO) == 0) {
-            return new ApplyResult(BigDecimal.ZERO, null, "Code not applicable to these items");
+    /** Xem trước / áp mã cho giỏ hàng, chỉ đọc bộ luật trong bộ nhớ. */
+    public PromotionRules.Result preview(String code, List<PromotionRules.Line> lines) {
+        if (code == null || code.isBlank()) {
+            return rules.apply(code, lines, LocalDateTime.now(), id -> usedCounts.getOrDefault(id, 0));
         }
-
-        BigDecimal discount = calculateDiscount(p, eligibleTotal);
-        if (discount.compareTo(subtotal) > 0) discount = subtotal;
-
-        return new ApplyResult(discount, p, "Applied successfully");
+        return typed(rules, code, lines, LocalDateTime.now());
     }
 
-    private String validate(Promotion p) {
-        if (Boolean.FALSE.equals(p.getActive())) return "Code is inactive";
-
+    /** Tổ hợp giảm giá tốt nhất (mã nhập + khuyến mãi tự động + hạng thành viên), chỉ đọc bộ luật trong bộ nhớ. */
+    public PromotionRules.Offer bestOffer(String code, List<PromotionRules.Line> lines, BigDecimal memberRate) {
+        PromotionRules current = rules;
         LocalDateTime now = LocalDateTime.now();
-        if (p.getStartAt() != null && now.isBefore(p.getStartAt())) return "Code not yet active";
-        if (p.getEndAt() != null && now.isAfter(p.getEndAt())) return "Code expired";
-
-        if (p.getMaxUses() != null && p.getUsedCount() != null && p.getUsedCount() >= p.getMaxUses()) {
-            return "Code usage limit reached";
-        }
-        return null;
+        PromotionRules.Result typed = code == null || code.isBlank() ? null : typed(current, code, lines, now);
+        return current.bestWith(typed, lines, memberRate, now, id -> usedCounts.getOrDefault(id, 0));
     }
 
-    private boolean isEligible(Promotion p, Product product) {
-        if (p.getScope() == Promotion.PromoScope.ALL) return true;
-
-        if (p.getScope() == Promotion.PromoScope.CATEGORY) {
-            return p.getCategory() != null && product.getCategory() != null
-                    && p.getCategory().getId().equals(product.getCategory().getId());
+    // Mã của khuyến mãi tra trong bộ nhớ; không có thì tra bảng coupon_codes (1 lần tìm theo khoá băm)
+    private PromotionRules.Result typed(PromotionRules current, String code, List<PromotionRules.Line> lines,
+                                        LocalDateTime now) {
+        if (current.byCode(code.trim()).isPresent()) {
+            return current.apply(code, lines, now, id -> usedCounts.getOrDefault(id, 0));
         }
+        CouponRepository.Coupon coupon = couponService.find(code).orElse(null);
+        PromotionRules.Rule rule = coupon == null ? null
+                : current.byId(coupon.promotionId()).filter(PromotionRules.Rule::couponBatch).orElse(null);
+        if (rule == null) return new PromotionRules.Result(BigDecimal.ZERO, null, "Invalid code");
+        if (coupon.redeemed()) return new PromotionRules.Result(BigDecimal.ZERO, null, "Code already used");
+        return PromotionRules.apply(rule, lines, now, usedCounts.getOrDefault(rule.id(), 0));
+    }
 
-        if (p.getScope() == Promotion.PromoScope.PRODUCT) {
-            if (p.getProducts() == null || p.getProducts().isEmpty()) return false;
-            return p.getProducts().stream().anyMatch(allowed -> allowed.getId().equals(product.getId()));
+    /**
+     * Giữ 1 lượt cho mỗi khuyến mãi của đơn, trong transaction đặt đơn (theo id tăng dần để các đơn khoá cùng thứ tự),
+     * và đánh dấu mã coupon đã dùng nếu có. Hết lượt / mã đã dùng thì ném lỗi -> đơn rollback cùng các lượt đã giữ.
+     * @param coupon mã coupon đã áp (null nếu không có), couponPromotionId là lô của nó
+     */
+    public void reserveUsage(Long orderId, Collection<Long> promotionIds, String coupon, Long couponPromotionId) {
+        for (Long id : new TreeSet<>(promotionIds)) {
+            if (!usageLedger.reserve(id, orderId)) {
+                usedCounts.put(id, Integer.MAX_VALUE); // báo giá sau đó bỏ qua khuyến mãi này tới lần nạp lại
+                throw new PromotionUnavailableException(id, "Code usage limit reached");
+            }
         }
-        return false;
+        if (coupon != null) couponService.redeem(coupon, couponPromotionId, orderId);
     }
 
-    private BigDecimal calculateDiscount(Promotion p, BigDecimal baseAmount) {
-        if (p.getType() == Promotion.PromoType.FIXED) {
-            return p.getValue();
-        } else {
-            return baseAmount.multiply(p.getValue()).divide(BigDecimal.valueOf(100));
-        }
+    /** Trả lượt và mã coupon của đơn (huỷ đơn / thanh toán thất bại); đơn không giữ gì thì không làm gì. */
+    public void releaseUsage(Long orderId) {
+        usageLedger.release(orderId);
+        couponService.release(orderId);
     }
 
-    @Transactional
-    public void increaseUsage(Promotion p) {
-        if (p == null || p.getId() == null) return;
-        promoRepo.findById(p.getId()).ifPresent(current -> {
-            current.setUsedCount((current.getUsedCount() == null ? 0 : current.getUsedCount()) + 1);
-            promoRepo.save(current);
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(initialDelayString = "${app.promotions.refresh-ms:60000}", fixedDelayString = "${app.promotions.refresh-ms:60000}")
+    public synchronized void reloadAll() {
+        Map<Long, PromotionRules.Rule> next = new HashMap<>();
+        Map<Long, Integer> used = new HashMap<>(usageLedger.usedCounts());
+        List<Promotion> unseeded = new ArrayList<>();
+        List<Promotion> overLimit = new ArrayList<>();
+        readTx.executeWithoutResult(status -> {
+            Map<Long, List<Long>> productIds = new HashMap<>();
+            for (Object[] row : promoRepo.findAllProductIdPairs()) {
+                productIds.computeIfAbsent((Long) row[0], k -> new ArrayList<>()).add((Long) row[1]);
+            }
+            for (Promotion p : promoRepo.findAll()) {
+                next.put(p.getId(), PromotionRules.Rule.compile(p, productIds.getOrDefault(p.getId(), List.of())));
+                Integer n = used.get(p.getId());
+                if (n == null) unseeded.add(p);
+                else if (p.getMaxUses() != null && n > p.getMaxUses()) overLimit.add(p);
+            }
         });
+        used.keySet().retainAll(next.keySet());
+        // Khuyến mãi có từ trước khi có sổ lượt dùng: tạo shard, lấy used_count hiện tại làm số đã dùng
+        writeTx.executeWithoutResult(status -> {
+            for (Promotion p : unseeded) {
+                int already = p.getUsedCount() == null ? 0 : p.getUsedCount();
+                usageLedger.configure(p.getId(), p.getMaxUses(), already);
+                used.put(p.getId(), already);
+            }
+            // maxUses bị hạ xuống dưới số đã dùng: chia lại theo số đã dùng hiện tại để lượt vừa trả không bị giữ lại
+            for (Promotion p : overLimit) usageLedger.configure(p.getId(), p.getMaxUses(), 0);
+            used.forEach((id, n) -> {
+                if (!n.equals(usedCounts.get(id))) promoRepo.updateUsedCount(id, n);
+            });
+        });
+        compiled.clear();
+        compiled.putAll(next);
+        usedCounts.putAll(used);
+        usedCounts.keySet().retainAll(used.keySet());
+        rules = new PromotionRules(compiled.values());
+        log.debug("Promotion rules compiled: {}", rules.size());
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public synchronized void onPromotionChanged(PromotionChangedEvent event) {
+        Long id = event.promotionId();
+        if (id == null) return;
+        readTx.executeWithoutResult(status -> promoRepo.findById(id).ifPresentOrElse(p -> {
+            compiled.put(id, PromotionRules.Rule.compile(p, promoRepo.findProductIds(id)));
+            usedCounts.putIfAbsent(id, p.getUsedCount() == null ? 0 : p.getUsedCount());
+        }, () -> {
+            compiled.remove(id);
+            usedCounts.remove(id);
+        }));
+        rules = new PromotionRules(compiled.values());
     }
-}
\ No newline at end of file
+}
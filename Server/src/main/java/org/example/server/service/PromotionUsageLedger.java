@@ -0,0 +1,52 @@
+package org.example.server.service;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Sổ lượt dùng khuyến mãi: giữ lượt lúc đặt đơn, trả lượt khi huỷ đơn / thanh toán thất bại.
+ * Bộ đếm chia thành nhiều shard, tổng capacity các shard = maxUses nên không bao giờ vượt maxUses.
+ * Mặc định lưu trong DB (app.promotions.usage-store=jdbc); memory chỉ dùng cho 1 instance / test.
+ */
+public interface PromotionUsageLedger {
+
+    int UNLIMITED = Integer.MAX_VALUE;
+
+    /**
+     * Tạo shard cho khuyến mãi mới (alreadyUsed dồn vào shard 0) hoặc chia lại capacity khi đổi maxUses,
+     * giữ nguyên số đã dùng của từng shard.
+     */
+    void configure(Long promotionId, Integer maxUses, int alreadyUsed);
+
+    /** Giữ 1 lượt cho đơn. false = đã hết lượt (hoặc khuyến mãi chưa có shard). */
+    boolean reserve(Long promotionId, Long orderId);
+
+    /** Trả mọi lượt đã giữ của đơn; gọi lại nhiều lần không trả thêm. */
+    void release(Long orderId);
+
+    void remove(Long promotionId);
+
+    /** Số lượt đã dùng theo khuyến mãi (chỉ các khuyến mãi đã có shard). */
+    Map<Long, Integer> usedCounts();
+
+    /**
+     * Chia phần maxUses còn lại đều cho các shard, cộng lên số đã dùng của từng shard.
+     * Đã dùng quá maxUses (admin hạ maxUses) thì capacity = số đã dùng: không giữ thêm lượt nào, lượt trả về
+     * chỉ được giữ lại tới lần chia lại kế tiếp (PromotionService.reloadAll), tổng không bao giờ vượt số đã dùng lúc hạ.
+     */
+    static int[] capacities(Integer maxUses, int[] used) {
+        int n = used.length;
+        int[] caps = new int[n];
+        if (maxUses == null) {
+            Arrays.fill(caps, UNLIMITED);
+            return caps;
+        }
+        long sum = 0;
+        for (int u : used) sum += u;
+        long remaining = Math.max(0, maxUses - sum);
+        for (int i = 0; i < n; i++) {
+            caps[i] = (int) (used[i] + remaining / n + (i < remaining % n ? 1 : 0));
+        }
+        return caps;
+    }
+}
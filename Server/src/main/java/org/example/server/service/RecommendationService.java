@@ -1,18 +1,21 @@
 package org.example.server.service;
 
 import lombok.RequiredArgsConstructor;
-import org.example.server.entity.Product;
+import org.example.server.dto.ProductView;
 import org.example.server.entity.User;
 import org.example.server.entity.UserProfile;
-import org.example.server.repository.ProductRepository;
+import org.example.server.repository.OrderItemRepository;
 import org.example.server.repository.UserProfileRepository;
 import org.example.server.repository.UserRepository;
+import org.example.server.search.NutritionIndex;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.security.core.Authentication;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDate;
 import java.time.Period;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
@@ -22,10 +25,17 @@ public class RecommendationService {
 
     private final UserRepository userRepo;
     private final UserProfileRepository profileRepo;
-    private final ProductRepository productRepo;
+    private final ProductSearchService productSearchService;
+    private final CoPurchaseService coPurchaseService;
+    private final OrderItemRepository orderItemRepo;
+
+    private static final int RESULT_SIZE = 4;
+    // Tối đa bao nhiêu chỗ dành cho món "hay gọi cùng", phần còn lại chọn ngẫu nhiên để khách thấy món mới
+    private static final int CO_PURCHASE_SLOTS = 2;
+    private static final int RECENT_PRODUCTS = 5;
 
     @Transactional(readOnly = true)
-    public List<Product> getRecommendedProducts(Authentication auth) {
+    public List<ProductView> getRecommendedProducts(Authentication auth) {
         String username = auth.getName();
         User user = userRepo.findByUsername(username)
                 .orElseThrow(() -> new RuntimeException("User not found"));
@@ -34,25 +44,40 @@ public class RecommendationService {
         if (profile == null) return Collections.emptyList();
 
         // 1. Tính toán Calo mục tiêu
-        int dailyCalories;
-        if (profile.getTargetCalories() != null && profile.getTargetCalories() > 0) {
-            dailyCalories = profile.getTargetCalories();
-        } else {
-            dailyCalories = calculateTDEE(profile);
-        }
+        int dailyCalories = dailyCalories(profile);
 
         // 2. Tính giới hạn calo cho 1 bữa (Chia 3 + buffer 10%)
         int maxCalPerMeal = (int) ((dailyCalories / 3) * 1.1);
 
-        // 3. Tìm sản phẩm phù hợp
-        List<Product> recommendations = productRepo.findByActiveTrueAndCaloriesLessThanEqual(maxCalPerMeal);
+        List<NutritionIndex.Range> fit = List.of(NutritionIndex.Range.atMost(NutritionIndex.Macro.CALORIES, maxCalPerMeal));
+        List<Long> ids = new ArrayList<>(RESULT_SIZE);
+
+        // 3. Món hay được gọi cùng các món khách đã gọi gần đây, nếu vẫn hợp calo
+        List<Long> recent = orderItemRepo.findRecentlyOrderedProductIds(user.getId(), PageRequest.of(0, RECENT_PRODUCTS));
+        for (Long id : coPurchaseService.alsoOrdered(recent, RESULT_SIZE * 3)) {
+            if (ids.size() >= CO_PURCHASE_SLOTS) break;
+            if (productSearchService.matchesNutrition(id, fit)) ids.add(id);
+        }
+
+        // 4. Còn lại chọn ngẫu nhiên từ chỉ mục dinh dưỡng trong bộ nhớ, chỉ load đúng các món được chọn
+        for (Long id : productSearchService.sampleByNutrition(fit, RESULT_SIZE + ids.size())) {
+            if (ids.size() >= RESULT_SIZE) break;
+            if (!ids.contains(id)) ids.add(id);
+        }
 
-        if (recommendations.isEmpty()) {
-            recommendations = productRepo.findByActiveTrue();
+        if (ids.isEmpty()) {
+            ids = productSearchService.sampleByNutrition(List.of(), RESULT_SIZE);
         }
 
-        Collections.shuffle(recommendations);
-        return recommendations.stream().limit(4).toList();
+        return productSearchService.findAllInOrder(ids);
+    }
+
+    /** Calo mục tiêu cả ngày: ưu tiên số khách tự đặt, không có thì tính theo TDEE. */
+    int dailyCalories(UserProfile profile) {
+        if (profile.getTargetCalories() != null && profile.getTargetCalories() > 0) {
+            return profile.getTargetCalories();
+        }
+        return calculateTDEE(profile);
     }
 
     private int calculateTDEE(UserProfile p) {
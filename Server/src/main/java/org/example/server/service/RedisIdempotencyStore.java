@@ -0,0 +1,57 @@
+package org.example.server.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Trạng thái và kết quả nằm chung 1 key: SET NX giá trị "đang xử lý", complete() ghi đè bằng kết quả.
+ * Key đã có kết quả thì SET NX thất bại -> instance khác không thể chạy lại sau khi request đầu đã xong.
+ */
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "app.idempotency.store", havingValue = "redis")
+public class RedisIdempotencyStore implements IdempotencyStore {
+
+    private static final String PREFIX = "idem:";
+    // Không phải JSON nên không trùng với kết quả đã lưu
+    private static final String IN_PROGRESS = "~in-progress";
+
+    // Chỉ xoá nếu key vẫn đang là "đang xử lý": không xoá kết quả đã lưu
+    private static final DefaultRedisScript<Long> RELEASE = new DefaultRedisScript<>("""
+            if redis.call('GET', KEYS[1]) == ARGV[1] then
+              return redis.call('DEL', KEYS[1])
+            end
+            return 0
+            """, Long.class);
+
+    private final StringRedisTemplate redis;
+
+    @Override
+    public Optional<String> get(String key) {
+        String value = redis.opsForValue().get(PREFIX + key);
+        return value == null || IN_PROGRESS.equals(value) ? Optional.empty() : Optional.of(value);
+    }
+
+    @Override
+    public boolean tryAcquire(String key, Duration lockTtl) {
+        Boolean ok = redis.opsForValue().setIfAbsent(PREFIX + key, IN_PROGRESS, lockTtl);
+        return Boolean.TRUE.equals(ok);
+    }
+
+    @Override
+    public void complete(String key, String responseJson, Duration ttl) {
+        redis.opsForValue().set(PREFIX + key, responseJson, ttl);
+    }
+
+    @Override
+    public void release(String key) {
+        redis.execute(RELEASE, List.of(PREFIX + key), IN_PROGRESS);
+    }
+}
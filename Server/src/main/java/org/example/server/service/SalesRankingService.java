@@ -0,0 +1,183 @@
+package org.example.server.service;
+
+import jakarta.annotation.PreDestroy;
+import org.example.server.event.OrderChangedEvent;
+import org.example.server.repository.SalesRankingRepository;
+import org.example.server.search.SalesRanking;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Bảng xếp hạng món bán chạy giữ sẵn trong bộ nhớ thay cho GROUP BY/ORDER BY SUM trên order_items mỗi lần gọi.
+ * - Tổng đã bán lưu ở product_sales, cộng dần khi đơn DONE (mỗi đơn đúng 1 lần nhờ cờ orders.sales_counted).
+ * - Điểm "đang hot" 1h / 24h / 7 ngày chỉ ở bộ nhớ; khởi động thì dựng lại từ lịch sử gần đây.
+ * - Mỗi đêm đối soát tổng với order_items để sửa lệch (đơn bị sửa tay, lỗi giữa chừng...).
+ */
+@Service
+public class SalesRankingService {
+
+    private static final Logger log = LoggerFactory.getLogger(SalesRankingService.class);
+
+    private final SalesRankingRepository salesRankingRepository;
+    private final TransactionTemplate txTemplate;
+    private final SalesRanking ranking;
+    private final int batchSize;
+    private final int historyDays;
+
+    private final ExecutorService executor =
+            Executors.newSingleThreadExecutor(r -> new Thread(r, "sales-ranking"));
+    private final AtomicBoolean runQueued = new AtomicBoolean(false);
+    private volatile boolean loaded = false;
+
+    public SalesRankingService(SalesRankingRepository salesRankingRepository,
+                               PlatformTransactionManager txManager,
+                               @Value("${app.sales.top-size:100}") int topSize,
+                               @Value("${app.sales.batch-size:500}") int batchSize,
+                               @Value("${app.sales.history-days:30}") int historyDays) {
+        this.salesRankingRepository = salesRankingRepository;
+        this.txTemplate = new TransactionTemplate(txManager);
+        this.ranking = new SalesRanking(topSize);
+        this.batchSize = Math.max(1, batchSize);
+        this.historyDays = Math.max(1, historyDays);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmStart() {
+        executor.execute(() -> {
+            try {
+                Map<Long, Long> totals = new HashMap<>();
+                salesRankingRepository.forEachTotal(rs ->
+                        totals.put(rs.getLong("product_id"), rs.getLong("sold_total")));
+                ranking.setTotals(totals);
+                loadTrending();
+                ranking.rebuild(System.currentTimeMillis());
+                loaded = true;
+                log.info("Sales ranking loaded for {} products", totals.size());
+            } catch (Exception ex) {
+                log.error("Sales ranking warm start failed: {}", ex.getMessage(), ex);
+            }
+        });
+        wakeUp();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onOrderChanged(OrderChangedEvent event) {
+        wakeUp();
+    }
+
+    // Quét bù đơn DONE chưa đếm + dựng lại snapshot để điểm "đang hot" giảm dần theo thời gian
+    @Scheduled(fixedDelayString = "${app.sales.poll-ms:60000}")
+    public void poll() {
+        wakeUp();
+    }
+
+    @Scheduled(cron = "${app.sales.reconcile-cron:0 30 3 * * *}")
+    public void nightlyReconcile() {
+        executor.execute(() -> {
+            try {
+                reconcile();
+            } catch (Exception ex) {
+                log.error("Sales ranking reconcile failed: {}", ex.getMessage(), ex);
+            }
+        });
+    }
+
+    /** Id món bán chạy nhất theo khung thời gian, giảm dần (tối đa app.sales.top-size). */
+    public List<Long> top(SalesRanking.Window window, int limit) {
+        return ranking.top(window).stream()
+                .limit(Math.max(0, limit))
+                .map(SalesRanking.Entry::productId)
+                .toList();
+    }
+
+    private void wakeUp() {
+        if (runQueued.compareAndSet(false, true)) {
+            executor.execute(() -> {
+                runQueued.set(false);
+                try {
+                    catchUp();
+                } catch (Exception ex) {
+                    log.error("Sales ranking update failed: {}", ex.getMessage(), ex);
+                }
+            });
+        }
+    }
+
+    private record Sale(Long productId, long quantity, long at) {}
+
+    private void catchUp() {
+        if (!loaded) return; // chưa nạp xong tổng cũ thì cộng thêm sẽ lệch
+        int counted = 0;
+        while (true) {
+            List<Long> orderIds = salesRankingRepository.findUncountedDoneOrders(batchSize);
+            if (orderIds.isEmpty()) break;
+
+            List<Sale> applied = txTemplate.execute(status -> {
+                List<Sale> out = new ArrayList<>();
+                SortedMap<Long, Long> quantities = new TreeMap<>();
+                for (Long orderId : orderIds) {
+                    if (!salesRankingRepository.markCounted(orderId)) continue; // instance khác đã đếm
+                    salesRankingRepository.forEachItemOfOrder(orderId, rs -> {
+                        Sale s = new Sale(rs.getLong("product_id"), rs.getLong("qty"), rs.getLong("done_at"));
+                        quantities.merge(s.productId(), s.quantity(), Long::sum);
+                        out.add(s);
+                    });
+                }
+                salesRankingRepository.increment(quantities);
+                return out;
+            });
+
+            // Chỉ cộng vào bộ nhớ sau khi DB đã commit
+            applied.forEach(s -> ranking.record(s.productId(), s.quantity(), s.at(), true));
+            counted += applied.size();
+            if (orderIds.size() < batchSize) break;
+        }
+        ranking.rebuild(System.currentTimeMillis());
+        if (counted > 0) log.debug("Sales ranking updated with {} order lines", counted);
+    }
+
+    private void reconcile() {
+        if (!loaded) return;
+        catchUp();
+        txTemplate.executeWithoutResult(status -> salesRankingRepository.recountTotals());
+        // Nạp lại tổng từ DB: gồm cả phần sửa lệch lẫn các đơn do instance khác đếm
+        Map<Long, Long> totals = new HashMap<>();
+        salesRankingRepository.forEachTotal(rs -> totals.put(rs.getLong("product_id"), rs.getLong("sold_total")));
+        Map<Long, Long> before = ranking.totals();
+        long changed = totals.entrySet().stream()
+                .filter(e -> !e.getValue().equals(before.getOrDefault(e.getKey(), 0L)))
+                .count();
+        ranking.setTotals(totals);
+        if (changed > 0) log.info("Sales ranking reconcile changed {} products", changed);
+        // Dựng lại điểm "đang hot" từ lịch sử để xoá sai số cộng dồn của phép nhân suy giảm
+        ranking.clearTrending();
+        loadTrending();
+        ranking.rebuild(System.currentTimeMillis());
+    }
+
+    private void loadTrending() {
+        long now = System.currentTimeMillis();
+        // Lấy giữa giờ làm thời điểm bán; giờ hiện tại thì không vượt quá bây giờ
+        salesRankingRepository.forEachRecentHour(historyDays, rs -> ranking.record(
+                rs.getLong("product_id"), rs.getLong("qty"),
+                Math.min(now, rs.getLong("hour_bucket") * 3_600_000L + 1_800_000L), false));
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,71 @@
+package org.example.server.service;
+
+import lombok.RequiredArgsConstructor;
+import org.example.server.common.OutOfStockException;
+import org.example.server.entity.OrderItem;
+import org.example.server.entity.Product;
+import org.example.server.repository.StockRepository;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+@Service
+@RequiredArgsConstructor
+public class StockReservationService {
+
+    private final StockRepository stockRepository;
+
+    /**
+     * Giữ hàng cho toàn bộ đơn bằng một batch update có điều kiện.
+     * Chỉ cần một dòng thiếu hàng là ném lỗi -> transaction của đơn rollback toàn bộ.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void reserve(Collection<OrderItem> items) {
+        for (OrderItem i : items) {
+            if (i.getQuantity() <= 0) throw new IllegalArgumentException("Quantity must be positive");
+        }
+        Map<Long, Integer> quantities = sumByProduct(items);
+        if (quantities.isEmpty()) return;
+
+        List<Long> failed = stockRepository.decrementAll(quantities);
+        if (failed.isEmpty()) return;
+
+        Map<Long, String> names = new LinkedHashMap<>();
+        for (OrderItem i : items) {
+            Product p = i.getProduct();
+            if (p != null && p.getId() != null) names.putIfAbsent(p.getId(), p.getName());
+        }
+
+        List<String> details = new ArrayList<>();
+        for (Long id : failed) {
+            details.add("Out of stock for product: " + names.getOrDefault(id, "#" + id)
+                    + " (requested " + quantities.get(id) + ")");
+        }
+        throw new OutOfStockException(details);
+    }
+
+    /** Hoàn kho cho các món của đơn (dùng chung cho huỷ đơn và webhook thanh toán thất bại). */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void release(Collection<OrderItem> items) {
+        Map<Long, Integer> quantities = sumByProduct(items);
+        if (quantities.isEmpty()) return;
+        stockRepository.incrementAll(quantities);
+    }
+
+    // Gộp các dòng cùng sản phẩm để mỗi sản phẩm chỉ có 1 câu update
+    private static Map<Long, Integer> sumByProduct(Collection<OrderItem> items) {
+        Map<Long, Integer> quantities = new LinkedHashMap<>();
+        if (items == null) return quantities;
+        for (OrderItem i : items) {
+            if (i.getProduct() == null || i.getProduct().getId() == null || i.getQuantity() <= 0) continue;
+            quantities.merge(i.getProduct().getId(), i.getQuantity(), Integer::sum);
+        }
+        return quantities;
+    }
+}
@@ -0,0 +1,74 @@
+package org.example.server.config;
+
+import org.example.server.entity.IdSequences;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Rolling deploy trên H2 (MODE=MySQL): instance cũ INSERT bằng AUTO_INCREMENT, instance mới cấp id từ id_sequences
+class IdSequenceInitializerTests {
+
+    private static final long RESERVE = 1000;
+
+    private JdbcTemplate jdbc;
+
+    @BeforeEach
+    void setUp() {
+        jdbc = new JdbcTemplate(new DriverManagerDataSource(
+                "jdbc:h2:mem:id_sequences_" + System.nanoTime() + ";DB_CLOSE_DELAY=-1;MODE=MySQL;NON_KEYWORDS=VALUE", "sa", ""));
+        // Bảng có từ trước khi chuyển sang id_sequences còn AUTO_INCREMENT; bảng ddl-auto tạo sau thì không
+        for (String table : IdSequences.TABLES.values()) {
+            String id = table.equals("payments") ? "id BIGINT PRIMARY KEY" : "id BIGINT AUTO_INCREMENT PRIMARY KEY";
+            jdbc.execute("CREATE TABLE " + table + " (" + id + ", note VARCHAR(20))");
+        }
+        for (int i = 0; i < 120; i++) jdbc.update("INSERT INTO orders (note) VALUES ('cũ')");
+    }
+
+    @Test
+    void oldInstancesInsertAboveTheRangeLeftForTheSequence() {
+        start();
+        long next = nextVal(IdSequences.ORDERS);
+        assertTrue(next > 120 + IdSequences.ALLOCATION, "next_val " + next);
+
+        // Instance cũ còn chạy: id AUTO_INCREMENT nằm ngoài [next, next + RESERVE) mà instance mới sẽ cấp
+        assertEquals(next + RESERVE, insertLegacy("orders"));
+        assertEquals(nextVal(IdSequences.ORDER_ITEMS) + RESERVE, insertLegacy("order_items"));
+        assertEquals(IdSequences.ALLOCATION + 1, nextVal(IdSequences.PAYMENTS));
+
+        // Lần khởi động sau nhảy qua các dòng bản cũ đã ghi
+        start();
+        assertTrue(nextVal(IdSequences.ORDERS) > next + RESERVE);
+    }
+
+    @Test
+    void zeroReserveLeavesAutoIncrementAlone() {
+        initializer(0).afterPropertiesSet();
+
+        assertEquals(121L, insertLegacy("orders"));
+        assertEquals(120L + IdSequences.ALLOCATION + 1, nextVal(IdSequences.ORDERS));
+    }
+
+    private void start() {
+        initializer(RESERVE).afterPropertiesSet();
+    }
+
+    private IdSequenceInitializer initializer(long reserve) {
+        IdSequenceInitializer initializer = new IdSequenceInitializer(jdbc);
+        ReflectionTestUtils.setField(initializer, "rolloutReserve", reserve);
+        return initializer;
+    }
+
+    private long insertLegacy(String table) {
+        jdbc.update("INSERT INTO " + table + " (note) VALUES ('bản cũ')");
+        return jdbc.queryForObject("SELECT MAX(id) FROM " + table, Long.class);
+    }
+
+    private long nextVal(String name) {
+        return jdbc.queryForObject("SELECT " + IdSequences.VALUE_COLUMN + " FROM " + IdSequences.TABLE
+                + " WHERE " + IdSequences.NAME_COLUMN + " = ?", Long.class, name);
+    }
+}
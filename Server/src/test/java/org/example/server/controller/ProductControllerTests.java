@@ -0,0 +1,137 @@
+package org.example.server.controller;
+
+import org.example.server.entity.Product;
+import org.example.server.event.CatalogChangedEvent;
+import org.example.server.repository.ProductRepository;
+import org.example.server.service.CatalogSnapshotService;
+import org.example.server.service.CoPurchaseService;
+import org.example.server.service.ProductSearchService;
+import org.example.server.service.ProductService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.context.bean.override.mockito.MockitoSpyBean;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.doAnswer;
+
+// /api/products/public: snapshot + ETag trên H2, gọi qua proxy transaction của controller
+@DataJpaTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:public_catalog;MODE=MySQL;NON_KEYWORDS=VALUE",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({ProductController.class, CatalogSnapshotService.class, JacksonAutoConfiguration.class,
+        ProductControllerTests.Caches.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED) // như 1 request: không có transaction bao ngoài
+class ProductControllerTests {
+
+    @TestConfiguration
+    static class Caches {
+        @Bean
+        CacheManager cacheManager() {
+            return new ConcurrentMapCacheManager(CatalogSnapshotService.CACHE);
+        }
+    }
+
+    @MockitoBean
+    private ProductService productService;
+
+    @MockitoBean
+    private ProductSearchService productSearchService;
+
+    @MockitoBean
+    private CoPurchaseService coPurchaseService;
+
+    @MockitoSpyBean
+    private CatalogSnapshotService catalogSnapshotService;
+
+    @Autowired
+    private ProductController controller;
+
+    @Autowired
+    private ProductRepository productRepo;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    private PlatformTransactionManager txManager;
+
+    @Test
+    void matchingIfNoneMatchGets304AndCatalogChangeGivesANewEtag() {
+        Product pho = productRepo.save(Product.builder().name("Phở bò").price(BigDecimal.valueOf(50000))
+                .stock(10).active(true).build());
+
+        ResponseEntity<byte[]> first = getPublic(null, new MockHttpServletResponse());
+        String etag = first.getHeaders().getETag();
+        assertEquals(200, first.getStatusCode().value());
+        assertNotNull(etag);
+        assertTrue(new String(first.getBody(), StandardCharsets.UTF_8).contains("Phở bò"));
+
+        MockHttpServletResponse notModified = new MockHttpServletResponse();
+        assertNull(getPublic(etag, notModified));
+        assertEquals(304, notModified.getStatus());
+
+        // Sửa món + phát event trong cùng transaction: snapshot dựng lại sau commit
+        new TransactionTemplate(txManager).executeWithoutResult(s -> {
+            Product p = productRepo.findById(pho.getId()).orElseThrow();
+            p.setPrice(BigDecimal.valueOf(55000));
+            eventPublisher.publishEvent(CatalogChangedEvent.product(p.getId()));
+        });
+
+        MockHttpServletResponse stale = new MockHttpServletResponse();
+        ResponseEntity<byte[]> changed = getPublic(etag, stale);
+        assertNotNull(changed);
+        assertEquals(200, changed.getStatusCode().value());
+        assertNotEquals(etag, changed.getHeaders().getETag());
+        assertTrue(new String(changed.getBody(), StandardCharsets.UTF_8).contains("55000"));
+    }
+
+    @Test
+    void publicListDoesNotHoldATransactionWhileReadingTheSnapshot() {
+        productRepo.save(Product.builder().name("Trà đá").price(BigDecimal.valueOf(5000)).stock(10).active(true).build());
+        List<Boolean> inTransaction = new ArrayList<>();
+        doAnswer(inv -> {
+            inTransaction.add(TransactionSynchronizationManager.isActualTransactionActive());
+            return inv.callRealMethod();
+        }).when(catalogSnapshotService).current();
+
+        getPublic(null, new MockHttpServletResponse()); // cache miss: dựng trong transaction riêng
+        getPublic(null, new MockHttpServletResponse()); // cache hit
+
+        assertEquals(List.of(false, false), inTransaction);
+    }
+
+    private ResponseEntity<byte[]> getPublic(String ifNoneMatch, MockHttpServletResponse response) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/products/public");
+        if (ifNoneMatch != null) request.addHeader("If-None-Match", ifNoneMatch);
+        return controller.getPublicProducts(new ServletWebRequest(request, response));
+    }
+}
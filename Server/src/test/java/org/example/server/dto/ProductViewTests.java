@@ -0,0 +1,83 @@
+package org.example.server.dto;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.example.server.entity.Category;
+import org.example.server.entity.Product;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProductViewTests {
+
+    private final ObjectMapper mapper = new ObjectMapper().findAndRegisterModules();
+
+    private static List<Product> catalog(int n) {
+        List<Category> categories = new ArrayList<>();
+        for (long c = 1; c <= 20; c++) {
+            Category category = new Category();
+            category.setId(c);
+            category.setName("Danh mục " + c);
+            category.setDescription("Các món thuộc danh mục số " + c + ", chế biến trong ngày");
+            categories.add(category);
+        }
+        List<Product> out = new ArrayList<>(n);
+        for (long i = 1; i <= n; i++) {
+            Product p = new Product();
+            p.setId(i);
+            p.setName("Cơm gà sốt cay " + i);
+            p.setDescription("Cơm gạo lứt, ức gà áp chảo, rau theo mùa và sốt cay nhà làm");
+            p.setPrice(BigDecimal.valueOf(35_000 + (i % 20) * 2_500));
+            p.setStock(100);
+            p.setActive(true);
+            p.setCategory(i % 10 == 0 ? null : categories.get((int) (i % categories.size())));
+            p.setImageUrl("https://cdn.example.com/products/" + i + ".jpg");
+            p.setCalories(400 + (int) (i % 300));
+            p.setProtein(20.0 + i % 15);
+            p.setCarbs(45.5);
+            p.setFat(12.25);
+            p.setPrepTimeMinutes(8);
+            p.setCreatedAt(LocalDateTime.of(2025, 1, 1, 8, 0));
+            p.setUpdatedAt(LocalDateTime.of(2025, 6, 1, 8, 0));
+            out.add(p);
+        }
+        return out;
+    }
+
+    // Mọi key (và giá trị) client đọc từ entity đều phải có trong view, kể cả key lồng trong category
+    @Test
+    void viewJsonKeepsTheKeysClientsReadFromTheEntity() {
+        for (Product p : catalog(20)) {
+            assertContainsAll(mapper.valueToTree(p), mapper.valueToTree(ProductView.of(p)), "");
+        }
+    }
+
+    private static void assertContainsAll(JsonNode entity, JsonNode view, String path) {
+        for (Map.Entry<String, JsonNode> field : entity.properties()) {
+            String key = path + field.getKey();
+            assertTrue(view.has(field.getKey()), "thiếu key " + key);
+            if (field.getValue().isObject()) {
+                assertContainsAll(field.getValue(), view.get(field.getKey()), key + ".");
+            } else {
+                assertEquals(field.getValue(), view.get(field.getKey()), key);
+            }
+        }
+    }
+
+    @Test
+    void jpqlConstructorBuildsNestedCategory() {
+        ProductView withCategory = new ProductView(1L, "a", null, BigDecimal.ONE, 1, true, 7L, "Cơm", "Cơm phần",
+                null, null, null, null, null, null, null, null);
+        ProductView without = new ProductView(2L, "b", null, BigDecimal.ONE, 1, true, null, null, null,
+                null, null, null, null, null, null, null, null);
+
+        assertEquals(new ProductView.CategoryRef(7L, "Cơm", "Cơm phần"), withCategory.category());
+        assertNull(without.category());
+    }
+}
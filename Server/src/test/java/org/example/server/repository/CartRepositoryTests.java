@@ -0,0 +1,61 @@
+package org.example.server.repository;
+
+import org.example.server.entity.*;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@DataJpaTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:carts;MODE=MySQL;NON_KEYWORDS=VALUE",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+class CartRepositoryTests {
+
+    @Autowired
+    private TestEntityManager em;
+
+    @Autowired
+    private CartRepository cartRepository;
+
+    // Đặt đơn chỉ bỏ các món đã đặt khỏi giỏ; món khác và giỏ của người khác giữ nguyên
+    @Test
+    void checkoutRemovesOnlyOrderedProductsOfThatUser() {
+        Category soup = em.persist(Category.builder().name("Món nước").build());
+        Product pho = em.persist(Product.builder().name("Phở bò").price(BigDecimal.valueOf(50000)).stock(10).category(soup).build());
+        Product bun = em.persist(Product.builder().name("Bún chả").price(BigDecimal.valueOf(45000)).stock(10).category(soup).build());
+        User khach = em.persist(User.builder().username("khach").password("x").build());
+        User other = em.persist(User.builder().username("other").password("x").build());
+        Cart mine = cart(khach, pho, bun);
+        Cart theirs = cart(other, pho);
+        em.flush();
+        em.clear();
+
+        assertEquals(1, cartRepository.deleteItemsByUserAndProductIdIn(em.find(User.class, khach.getId()), List.of(pho.getId())));
+        em.clear();
+
+        assertEquals(List.of(bun.getId()), productIds(mine));
+        assertEquals(List.of(pho.getId()), productIds(theirs));
+    }
+
+    private Cart cart(User user, Product... products) {
+        Cart cart = Cart.builder().user(user).items(new ArrayList<>()).build();
+        for (Product p : products) cart.getItems().add(CartItem.builder().cart(cart).product(p).quantity(1).build());
+        return em.persist(cart);
+    }
+
+    private List<Long> productIds(Cart cart) {
+        return em.find(Cart.class, cart.getId()).getItems().stream().map(i -> i.getProduct().getId()).toList();
+    }
+}
@@ -0,0 +1,79 @@
+package org.example.server.repository;
+
+import jakarta.persistence.EntityManagerFactory;
+import org.example.server.entity.*;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@DataJpaTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:checkout;MODE=MySQL;NON_KEYWORDS=VALUE",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.properties.hibernate.jdbc.batch_size=50",
+        "spring.jpa.properties.hibernate.order_inserts=true",
+        "spring.jpa.properties.hibernate.generate_statistics=true"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+class CheckoutInsertBatchingTests {
+
+    private static final int LINES = 10;
+
+    @Autowired
+    private TestEntityManager em;
+
+    @Autowired
+    private EntityManagerFactory emf;
+
+    // Id lấy trước từ id_sequences -> INSERT của cùng 1 bảng gom thành 1 batch, không phải 1 câu mỗi dòng
+    @Test
+    void checkoutInsertsOneBatchPerTable() {
+        Category soup = em.persist(Category.builder().name("Món nước").build());
+        Product pho = em.persist(Product.builder().name("Phở bò").price(BigDecimal.valueOf(50000)).stock(100).category(soup).build());
+        User khach = em.persist(User.builder().username("khach").password("x").roles(Set.of("USER")).build());
+        checkout(khach, pho); // lần đầu: mỗi generator lấy 1 khối id
+        em.flush();
+        em.clear();
+
+        User user = em.find(User.class, khach.getId());
+        Product product = em.find(Product.class, pho.getId());
+        Statistics stats = emf.unwrap(SessionFactory.class).getStatistics();
+        stats.clear();
+        checkout(user, product);
+        em.flush();
+
+        // orders + shipping_info + order_items + notifications; id còn trong khối nên không đụng id_sequences
+        assertEquals(1 + 1 + LINES + 1, stats.getEntityInsertCount());
+        assertEquals(4, stats.getPrepareStatementCount());
+    }
+
+    private void checkout(User user, Product product) {
+        ShippingInfo ship = ShippingInfo.builder().phone("0900000000").addressLine("1 Lê Lợi").city("HCM").build();
+        Order order = Order.builder()
+                .user(user)
+                .status("PENDING")
+                .paymentMethod("COD")
+                .total(product.getPrice().multiply(BigDecimal.valueOf(LINES)))
+                .shipping(ship)
+                .items(new ArrayList<>())
+                .build();
+        for (int i = 0; i < LINES; i++) {
+            order.getItems().add(OrderItem.builder().order(order).product(product).quantity(1).price(product.getPrice()).build());
+        }
+        em.persist(ship);
+        em.persist(order);
+        em.persist(Notification.builder().type("ORDER").title("Đơn mới").recipient(user).readFlag(false).build());
+    }
+}
@@ -0,0 +1,76 @@
+package org.example.server.repository;
+
+import org.example.server.entity.*;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@DataJpaTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:sales;MODE=MySQL;NON_KEYWORDS=VALUE",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import(SalesRankingRepository.class)
+class SalesRankingRepositoryTests {
+
+    @Autowired
+    private TestEntityManager em;
+
+    @Autowired
+    private SalesRankingRepository salesRankingRepository;
+
+    // Đối soát ghi lại tổng từ các đơn đã đếm: sửa số lệch, thêm món còn thiếu, món không còn đơn nào về 0
+    @Test
+    void recountRewritesTotalsFromCountedOrders() {
+        Category soup = em.persist(Category.builder().name("Món nước").build());
+        Product pho = product("Phở bò", soup);
+        Product bun = product("Bún chả", soup);
+        Product tra = product("Trà đá", soup);
+        User khach = em.persist(User.builder().username("khach").password("x").build());
+        order(khach, true, pho, 2);
+        order(khach, true, pho, 3);
+        order(khach, true, bun, 1);
+        order(khach, false, pho, 4); // chưa đếm -> không tính
+        order(khach, false, tra, 7);
+        em.persist(ProductSales.builder().productId(pho.getId()).soldTotal(1L).updatedAt(LocalDateTime.now()).build());
+        em.persist(ProductSales.builder().productId(tra.getId()).soldTotal(99L).updatedAt(LocalDateTime.now()).build());
+        em.flush();
+
+        salesRankingRepository.recountTotals();
+
+        Map<Long, Long> totals = new HashMap<>();
+        salesRankingRepository.forEachTotal(rs -> totals.put(rs.getLong("product_id"), rs.getLong("sold_total")));
+        assertEquals(Map.of(pho.getId(), 5L, bun.getId(), 1L, tra.getId(), 0L), totals);
+    }
+
+    private Product product(String name, Category category) {
+        return em.persist(Product.builder().name(name).price(BigDecimal.valueOf(50000)).stock(10).category(category).build());
+    }
+
+    private void order(User user, boolean counted, Product product, int quantity) {
+        Order o = Order.builder()
+                .user(user)
+                .status("DONE")
+                .paymentMethod("COD")
+                .total(product.getPrice().multiply(BigDecimal.valueOf(quantity)))
+                .salesCounted(counted)
+                .items(new ArrayList<>())
+                .build();
+        o.getItems().add(OrderItem.builder().order(o).product(product).quantity(quantity).price(product.getPrice()).build());
+        em.persist(o);
+    }
+}
@@ -0,0 +1,136 @@
+package org.example.server.search;
+
+import org.example.server.search.CoPurchaseGraph.Neighbour;
+import org.example.server.search.CoPurchaseGraph.Pair;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CoPurchaseGraphTests {
+
+    @Test
+    void pairsIncludeDiagonalAndIgnoreDuplicates() {
+        assertEquals(List.of(new Pair(1, 1), new Pair(1, 3), new Pair(3, 3)),
+                CoPurchaseGraph.pairs(List.of(3L, 1L, 3L)));
+    }
+
+    @Test
+    void scoresByCosineSoBestSellersDoNotDominate() {
+        CoPurchaseGraph graph = new CoPurchaseGraph(5, 2);
+        // Trà đá (9) có mặt trong mọi đơn; phở (1) luôn đi với quẩy (2)
+        for (int i = 0; i < 10; i++) graph.addOrder(List.of(1L, 2L, 9L));
+        for (int i = 0; i < 90; i++) graph.addOrder(List.of(9L, 10L + i % 30));
+        graph.rebuild();
+
+        List<Neighbour> pho = graph.neighbours(1L);
+        assertEquals(2L, (long) pho.get(0).productId());
+        assertEquals(10, pho.get(0).together());
+        assertTrue(pho.get(0).score() > pho.get(1).score());
+    }
+
+    @Test
+    void minSupportAndTopKAreApplied() {
+        CoPurchaseGraph graph = new CoPurchaseGraph(2, 2);
+        graph.addOrder(List.of(1L, 2L));
+        graph.addOrder(List.of(1L, 2L));
+        graph.addOrder(List.of(1L, 3L));
+        graph.addOrder(List.of(1L, 3L));
+        graph.addOrder(List.of(1L, 3L));
+        graph.addOrder(List.of(1L, 4L));
+        graph.addOrder(List.of(1L, 4L));
+        graph.addOrder(List.of(1L, 5L)); // chỉ 1 đơn chung -> bỏ
+        graph.rebuild();
+
+        List<Long> ids = graph.neighbours(1L).stream().map(Neighbour::productId).toList();
+        assertEquals(2, ids.size());
+        assertTrue(!ids.contains(5L));
+        assertTrue(graph.neighbours(5L).isEmpty());
+    }
+
+    @Test
+    void warmStartFromPersistedCountsMatchesIncrementalBuild() {
+        CoPurchaseGraph incremental = new CoPurchaseGraph(10, 1);
+        Map<Pair, Long> persisted = new TreeMap<>();
+        Random random = new Random(3);
+        for (int i = 0; i < 2000; i++) {
+            List<Long> order = new ArrayList<>();
+            for (int j = 0; j < 1 + random.nextInt(4); j++) order.add(1L + random.nextInt(40));
+            incremental.addOrder(order);
+            CoPurchaseGraph.pairs(order).forEach(p -> persisted.merge(p, 1L, Long::sum));
+        }
+        incremental.rebuild();
+
+        CoPurchaseGraph warm = new CoPurchaseGraph(10, 1);
+        persisted.forEach((p, n) -> warm.addCount(p.a(), p.b(), n));
+        warm.rebuild();
+
+        for (long id = 1; id <= 40; id++) assertEquals(incremental.neighbours(id), warm.neighbours(id));
+    }
+
+    @Test
+    void blendSumsNeighbourScoresAndSkipsSeeds() {
+        CoPurchaseGraph graph = new CoPurchaseGraph(5, 1);
+        graph.addOrder(List.of(1L, 3L));
+        graph.addOrder(List.of(2L, 3L));
+        graph.addOrder(List.of(1L, 4L));
+        graph.addOrder(List.of(1L, 2L));
+        graph.rebuild();
+
+        List<Long> blended = graph.blend(Set.of(1L, 2L), 5);
+        assertEquals(3L, (long) blended.get(0)); // hàng xóm của cả 1 và 2
+        assertTrue(!blended.contains(1L) && !blended.contains(2L));
+    }
+
+    @Test
+    void combosSurfaceAsTopNeighbourOnSkewedOrders() {
+        CoPurchaseGraph graph = new CoPurchaseGraph(20, 5);
+        addSimulatedOrders(graph, 50_000, new Random(11));
+        graph.rebuild();
+
+        for (long combo = 1; combo <= 19; combo += 2) {
+            assertEquals(combo + 1, (long) graph.neighbours(combo).get(0).productId(), "combo " + combo);
+        }
+        assertTrue(graph.neighbours(150L).size() <= 20);
+    }
+
+    // Dựng offline trên 1 triệu đơn giả lập, đo thời gian; chạy riêng bằng -Pbenchmark
+    @Test
+    @Tag("benchmark")
+    void offlineBuildOverOneMillionOrders() {
+        int orders = 1_000_000;
+        CoPurchaseGraph graph = new CoPurchaseGraph(20, 5);
+
+        long start = System.nanoTime();
+        addSimulatedOrders(graph, orders, new Random(11));
+        long counted = System.nanoTime();
+        graph.rebuild();
+        long built = System.nanoTime();
+
+        System.out.printf("co-purchase: %d orders counted in %d ms, top-K rebuilt in %d ms%n",
+                orders, (counted - start) / 1_000_000, (built - counted) / 1_000_000);
+        for (long combo = 1; combo <= 19; combo += 2) {
+            assertEquals(combo + 1, (long) graph.neighbours(combo).get(0).productId(), "combo " + combo);
+        }
+    }
+
+    // 300 món, mỗi đơn 1-5 món, có vài "combo" hay đi cùng nhau; món id nhỏ bán chạy hơn
+    private static void addSimulatedOrders(CoPurchaseGraph graph, int orders, Random random) {
+        int products = 300;
+        List<Long> order = new ArrayList<>(6);
+        for (int i = 0; i < orders; i++) {
+            order.clear();
+            if (random.nextInt(10) == 0) {
+                long combo = 1 + random.nextInt(10) * 2L; // combo (1,2), (3,4), ...
+                order.add(combo);
+                order.add(combo + 1);
+            }
+            int n = 1 + random.nextInt(5);
+            for (int j = 0; j < n; j++) order.add(1L + (long) (products * Math.pow(random.nextDouble(), 2)));
+            graph.addOrder(order);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package org.example.server.search;
+
+import org.example.server.search.FacetIndex.FacetCount;
+import org.example.server.search.FacetIndex.Filter;
+import org.example.server.search.FacetIndex.Row;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FacetIndexTests {
+
+    private static final long NOODLE = 1L, RICE = 2L;
+
+    private FacetIndex index;
+
+    @BeforeEach
+    void setUp() {
+        // Giá: <30k | 30-50k | >=50k ; calo: <500 | >=500 ; protein: <20 | >=20
+        index = new FacetIndex(new double[]{30000, 50000}, new double[]{500}, new double[]{20});
+        index.replaceAll(List.of(
+                row(1L, NOODLE, 45000, 450, 25.0, true),
+                row(2L, NOODLE, 40000, 520, 18.0, true),
+                row(3L, RICE, 35000, 650, 30.0, true),
+                row(4L, RICE, 25000, null, null, true),
+                row(5L, NOODLE, 60000, 700, 35.0, false)));
+    }
+
+    private static Row row(Long id, Long categoryId, int price, Integer calories, Double protein, boolean active) {
+        return new Row(id, categoryId, categoryId == NOODLE ? "Món nước" : "Cơm", BigDecimal.valueOf(price),
+                calories, protein, active);
+    }
+
+    private static Map<String, Integer> counts(FacetIndex.Result r, String facet) {
+        return r.facets().get(facet).stream().collect(Collectors.toMap(FacetCount::key, FacetCount::count));
+    }
+
+    @Test
+    void countsEveryFacetWithoutFilters() {
+        FacetIndex.Result r = index.browse(null, Filter.NONE);
+
+        assertEquals(List.of(4L, 3L, 2L, 1L), r.hits()); // món ẩn bị loại, mới trước
+        assertEquals(Map.of("1", 2, "2", 2), counts(r, FacetIndex.CATEGORY));
+        assertEquals(Map.of("0", 1, "1", 3, "2", 0), counts(r, FacetIndex.PRICE));
+        assertEquals(Map.of("0", 1, "1", 2), counts(r, FacetIndex.CALORIES)); // món 4 chưa có dinh dưỡng
+        assertEquals(List.of("<30000", "30000-50000", ">=50000"),
+                r.facets().get(FacetIndex.PRICE).stream().map(FacetCount::label).toList());
+    }
+
+    @Test
+    void facetCountsIgnoreOwnSelectionButApplyOthers() {
+        Filter f = new Filter(Set.of(NOODLE), Set.of(), Set.of(1), Set.of());
+        FacetIndex.Result r = index.browse(null, f);
+
+        assertEquals(List.of(2L), r.hits());
+        // Danh mục: chỉ áp calo >=500 -> món nước 1 (món 2), cơm 1 (món 3)
+        assertEquals(Map.of("1", 1, "2", 1), counts(r, FacetIndex.CATEGORY));
+        // Calo: chỉ áp danh mục món nước -> <500: 1, >=500: 1
+        assertEquals(Map.of("0", 1, "1", 1), counts(r, FacetIndex.CALORIES));
+        assertEquals(Map.of("0", 1, "1", 0), counts(r, FacetIndex.PROTEIN));
+    }
+
+    @Test
+    void multipleValuesInOneFacetAreOred() {
+        FacetIndex.Result r = index.browse(null, new Filter(Set.of(), Set.of(0, 2), Set.of(), Set.of()));
+        assertEquals(List.of(4L), r.hits());
+        r = index.browse(null, new Filter(Set.of(NOODLE, RICE), Set.of(), Set.of(), Set.of()));
+        assertEquals(4, r.hits().size());
+    }
+
+    @Test
+    void keepsSearchRankingWhenCandidatesGiven() {
+        FacetIndex.Result r = index.browse(List.of(1L, 5L, 3L, 99L), Filter.NONE);
+        assertEquals(List.of(1L, 3L), r.hits());
+        assertEquals(Map.of("1", 1, "2", 1), counts(r, FacetIndex.CATEGORY));
+    }
+
+    @Test
+    void reflectsProductMutations() {
+        index.upsert(row(2L, RICE, 55000, 520, 18.0, true));
+        FacetIndex.Result r = index.browse(null, Filter.NONE);
+        assertEquals(Map.of("1", 1, "2", 3), counts(r, FacetIndex.CATEGORY));
+        assertEquals(1, (int) counts(r, FacetIndex.PRICE).get("2"));
+
+        index.remove(1L);
+        index.remove(2L);
+        index.upsert(row(6L, RICE, 10000, 100, 5.0, true)); // dùng lại slot trống
+        r = index.browse(null, Filter.NONE);
+        assertEquals(List.of(6L, 4L, 3L), r.hits());
+        assertTrue(r.facets().get(FacetIndex.CATEGORY).stream().noneMatch(c -> c.key().equals("1")));
+    }
+
+    @Test
+    void bucketBoundsAreLowerInclusive() {
+        double[] bounds = {30000, 50000};
+        assertEquals(0, FacetIndex.bucketOf(bounds, 29999));
+        assertEquals(1, FacetIndex.bucketOf(bounds, 30000));
+        assertEquals(2, FacetIndex.bucketOf(bounds, 50000));
+    }
+}
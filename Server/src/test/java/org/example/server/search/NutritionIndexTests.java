@@ -0,0 +1,91 @@
+package org.example.server.search;
+
+import org.example.server.search.NutritionIndex.Macro;
+import org.example.server.search.NutritionIndex.Range;
+import org.example.server.search.NutritionIndex.Row;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class NutritionIndexTests {
+
+    private NutritionIndex index;
+
+    @BeforeEach
+    void setUp() {
+        index = new NutritionIndex();
+        index.replaceAll(List.of(
+                new Row(1L, 350, 25.0, 40.0, 8.0, null, true),
+                new Row(2L, 520, 18.0, 70.0, 15.0, null, true),
+                new Row(3L, 650, 30.0, 80.0, 20.0, null, true),
+                new Row(4L, 200, 5.0, 30.0, 4.0, null, true),
+                new Row(5L, 300, 28.0, 10.0, 12.0, null, false),
+                new Row(6L, null, null, null, null, null, true)));
+    }
+
+    @Test
+    void singleRangeIsInclusive() {
+        assertEquals(2, index.count(List.of(Range.atMost(Macro.CALORIES, 350))));
+        assertEquals(Set.of(1L, 4L), new HashSet<>(index.sample(List.of(Range.atMost(Macro.CALORIES, 350)), 10, new Random(1))));
+        assertEquals(0, index.count(List.of(Range.atMost(Macro.CALORIES, 100))));
+        assertTrue(index.sample(List.of(new Range(Macro.FAT, 30, 10)), 4, new Random(1)).isEmpty());
+    }
+
+    @Test
+    void multiMacroRangesIntersect() {
+        List<Range> ranges = List.of(Range.atLeast(Macro.PROTEIN, 20), Range.atMost(Macro.CARBS, 60));
+        assertEquals(1, index.count(ranges));
+        assertEquals(List.of(1L), index.sample(ranges, 4, new Random(1)));
+
+        ranges = List.of(Range.atLeast(Macro.PROTEIN, 15), new Range(Macro.CALORIES, 300, 600));
+        assertEquals(Set.of(1L, 2L), new HashSet<>(index.sample(ranges, 4, new Random(1))));
+    }
+
+    @Test
+    void emptyRangesSampleAllActiveIncludingMissingNutrition() {
+        assertEquals(5, index.count(List.of()));
+        assertEquals(Set.of(1L, 2L, 3L, 4L, 6L), new HashSet<>(index.sample(List.of(), 10, new Random(1))));
+    }
+
+    @Test
+    void sampleIsDistinctAndRoughlyUniform() {
+        List<Row> rows = new ArrayList<>();
+        for (long id = 1; id <= 100; id++) rows.add(new Row(id, (int) id * 10, id * 1.0, 50.0, 10.0, null, true));
+        index.replaceAll(rows);
+
+        Random random = new Random(42);
+        int[] hits = new int[101];
+        int runs = 20_000;
+        for (int i = 0; i < runs; i++) {
+            // calo 100..500 -> món 10..50 (41 món)
+            List<Long> s = index.sample(List.of(new Range(Macro.CALORIES, 100, 500)), 4, random);
+            assertEquals(4, new HashSet<>(s).size());
+            for (Long id : s) {
+                assertTrue(id >= 10 && id <= 50);
+                hits[id.intValue()]++;
+            }
+            // nhánh reservoir (2 điều kiện)
+            for (Long id : index.sample(List.of(new Range(Macro.CALORIES, 100, 500), Range.atLeast(Macro.PROTEIN, 30)), 4, random)) {
+                assertTrue(id >= 30 && id <= 50);
+            }
+        }
+        double expected = runs * 4 / 41.0;
+        for (int id = 10; id <= 50; id++) {
+            assertTrue(Math.abs(hits[id] - expected) < expected * 0.1, "món " + id + ": " + hits[id]);
+        }
+    }
+
+    @Test
+    void followsProductChanges() {
+        index.upsert(new Row(5L, 300, 28.0, 10.0, 12.0, null, true));
+        assertEquals(3, index.count(List.of(Range.atMost(Macro.CALORIES, 350))));
+
+        index.upsert(new Row(1L, 900, 25.0, 40.0, 8.0, null, true));
+        index.remove(4L);
+        assertEquals(List.of(5L), index.sample(List.of(Range.atMost(Macro.CALORIES, 350)), 4, new Random(1)));
+    }
+}
@@ -0,0 +1,93 @@
+package org.example.server.search;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ProductSearchIndexTests {
+
+    private static final long NOODLE = 1L, RICE = 2L, DRINK = 3L;
+
+    private ProductSearchIndex index;
+
+    @BeforeEach
+    void setUp() {
+        index = new ProductSearchIndex();
+        index.upsert(new ProductSearchIndex.Doc(1L, "Phở bò tái", "Nước dùng hầm xương 12 tiếng", NOODLE, "Món nước", true));
+        index.upsert(new ProductSearchIndex.Doc(2L, "Phở gà", "Gà ta luộc", NOODLE, "Món nước", true));
+        index.upsert(new ProductSearchIndex.Doc(3L, "Cơm gà xối mỡ", "Cơm chiên giòn, gà xối mỡ", RICE, "Cơm", true));
+        index.upsert(new ProductSearchIndex.Doc(4L, "Trà đá", null, DRINK, "Đồ uống", true));
+        index.upsert(new ProductSearchIndex.Doc(5L, "Bún đậu mắm tôm", "Đậu hũ chiên", NOODLE, "Món nước", false));
+    }
+
+    private List<Long> ids(String q) {
+        return index.search(q, null, false, 0, 20).ids();
+    }
+
+    @Test
+    void foldsVietnameseDiacritics() {
+        assertEquals("pho bo", VietnameseText.fold("Phở Bò"));
+        assertEquals("dau", VietnameseText.fold("Đậu"));
+        assertEquals(List.of("tra", "da"), VietnameseText.tokenize("Trà-đá!"));
+
+        assertTrue(ids("pho").containsAll(List.of(1L, 2L)));
+        assertEquals(List.of(4L), ids("TRA DA"));
+    }
+
+    @Test
+    void matchesPrefixWhileTyping() {
+        assertTrue(ids("ph").containsAll(List.of(1L, 2L)));
+        assertEquals(List.of(3L), ids("com g"));
+    }
+
+    @Test
+    void toleratesOneTypo() {
+        assertTrue(ids("phoo").contains(1L), "thừa 1 ký tự");
+        assertEquals(List.of(3L), ids("xoii mo"));
+        assertTrue(ids("nuoc").containsAll(List.of(1L, 2L)));
+        assertTrue(ids("nouc").containsAll(List.of(1L, 2L)), "đảo 2 ký tự");
+    }
+
+    @Test
+    void allTermsMustMatchAndNameOutranksDescription() {
+        // "gà" nằm trong tên của cả 2 món, nhưng "phở gà" ngắn hơn -> đứng trước
+        assertEquals(List.of(2L, 3L), ids("ga"));
+        assertEquals(List.of(2L), ids("pho ga"));
+    }
+
+    @Test
+    void popularityBreaksNearTies() {
+        index.setPopularity(Map.of(3L, 500L, 2L, 1L));
+        assertEquals(List.of(3L, 2L), ids("ga"));
+    }
+
+    @Test
+    void filtersInactiveAndCategory() {
+        assertTrue(ids("bun").isEmpty());
+        assertEquals(List.of(5L), index.search("bun", null, true, 0, 10).ids());
+        assertEquals(List.of(3L), index.search("ga", RICE, false, 0, 10).ids());
+    }
+
+    @Test
+    void incrementalUpdateAndRemove() {
+        index.upsert(new ProductSearchIndex.Doc(4L, "Trà chanh", null, DRINK, "Đồ uống", true));
+        assertTrue(ids("da").isEmpty());
+        assertEquals(List.of(4L), ids("chanh"));
+
+        index.remove(4L);
+        assertTrue(ids("tra").isEmpty());
+        assertEquals(4, index.size());
+    }
+
+    @Test
+    void emptyQueryListsNewestFirstWithPaging() {
+        ProductSearchIndex.Result page = index.search("", null, false, 1, 2);
+        assertEquals(4, page.total());
+        assertEquals(List.of(3L, 2L), page.ids());
+    }
+}
@@ -0,0 +1,362 @@
+package org.example.server.search;
+
+import org.example.server.entity.Category;
+import org.example.server.entity.Promotion;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDateTime;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PromotionRulesTests {
+
+    private static final LocalDateTime NOW = LocalDateTime.of(2025, 6, 1, 12, 0);
+
+    private static Promotion promo(long id, String code, Promotion.PromoType type, String value,
+                                   Promotion.PromoScope scope, Long categoryId) {
+        Promotion p = new Promotion();
+        p.setId(id);
+        p.setCode(code);
+        p.setType(type);
+        p.setValue(new BigDecimal(value));
+        p.setScope(scope);
+        p.setActive(true);
+        if (categoryId != null) {
+            Category c = new Category();
+            c.setId(categoryId);
+            p.setCategory(c);
+        }
+        return p;
+    }
+
+    private static PromotionRules.Line line(long productId, Long categoryId, long price, int qty) {
+        return new PromotionRules.Line(productId, categoryId, BigDecimal.valueOf(price), qty);
+    }
+
+    private static PromotionRules rules(PromotionRules.Rule... rules) {
+        return new PromotionRules(List.of(rules));
+    }
+
+    @Test
+    void percentOnCategoryOnlyDiscountsMatchingLines() {
+        PromotionRules rules = rules(PromotionRules.Rule.compile(
+                promo(1, "COM10", Promotion.PromoType.PERCENT, "10", Promotion.PromoScope.CATEGORY, 7L), List.of()));
+        List<PromotionRules.Line> cart = List.of(line(1, 7L, 50_000, 2), line(2, 8L, 30_000, 1));
+
+        PromotionRules.Result r = rules.apply("com10", cart, NOW, id -> 0);
+
+        assertEquals(0, new BigDecimal("10000").compareTo(r.discount()));
+        assertEquals("COM10", r.rule().code());
+        assertEquals("Applied successfully", r.message());
+    }
+
+    @Test
+    void productScopeUsesProductBitset() {
+        PromotionRules rules = rules(PromotionRules.Rule.compile(
+                promo(1, "GA", Promotion.PromoType.FIXED, "15000", Promotion.PromoScope.PRODUCT, null), List.of(3L, 900L)));
+
+        assertEquals("Code not applicable to these items",
+                rules.apply("GA", List.of(line(4, null, 50_000, 1)), NOW, id -> 0).message());
+        assertEquals(0, new BigDecimal("15000").compareTo(
+                rules.apply("GA", List.of(line(900, null, 50_000, 1)), NOW, id -> 0).discount()));
+    }
+
+    @Test
+    void keepsValidationMessagesAndCaps() {
+        Promotion expired = promo(1, "OLD", Promotion.PromoType.FIXED, "5000", Promotion.PromoScope.ALL, null);
+        expired.setEndAt(NOW.minusDays(1));
+        Promotion limited = promo(2, "ONCE", Promotion.PromoType.FIXED, "5000", Promotion.PromoScope.ALL, null);
+        limited.setMaxUses(1);
+        Promotion minTotal = promo(3, "BIG", Promotion.PromoType.FIXED, "5000", Promotion.PromoScope.ALL, null);
+        minTotal.setMinOrderTotal(new BigDecimal("100000"));
+        Promotion huge = promo(4, "HUGE", Promotion.PromoType.FIXED, "999999", Promotion.PromoScope.ALL, null);
+        Promotion off = promo(5, "OFF", Promotion.PromoType.FIXED, "1000", Promotion.PromoScope.ALL, null);
+        off.setActive(false);
+        PromotionRules rules = new PromotionRules(List.of(expired, limited, minTotal, huge, off).stream()
+                .map(p -> PromotionRules.Rule.compile(p, List.of())).toList());
+        List<PromotionRules.Line> cart = List.of(line(1, null, 40_000, 1));
+
+        assertEquals("Code required", rules.apply(" ", cart, NOW, id -> 0).message());
+        assertEquals("Invalid code", rules.apply("NOPE", cart, NOW, id -> 0).message());
+        assertEquals("Code expired", rules.apply("OLD", cart, NOW, id -> 0).message());
+        assertEquals("Code usage limit reached", rules.apply("ONCE", cart, NOW, id -> 1).message());
+        assertEquals("Applied successfully", rules.apply("ONCE", cart, NOW, id -> 0).message());
+        assertEquals("Min order total not met", rules.apply("BIG", cart, NOW, id -> 0).message());
+        assertEquals("Code is inactive", rules.apply("OFF", cart, NOW, id -> 0).message());
+        // Giảm giá không vượt tổng giỏ
+        assertEquals(0, new BigDecimal("40000").compareTo(rules.apply("HUGE", cart, NOW, id -> 0).discount()));
+    }
+
+    @Test
+    void automaticUsesScopeIndexes() {
+        PromotionRules rules = rules(
+                PromotionRules.Rule.compile(promo(1, null, Promotion.PromoType.FIXED, "1", Promotion.PromoScope.ALL, null), List.of()),
+                PromotionRules.Rule.compile(promo(2, null, Promotion.PromoType.FIXED, "1", Promotion.PromoScope.CATEGORY, 7L), List.of()),
+                PromotionRules.Rule.compile(promo(3, null, Promotion.PromoType.FIXED, "1", Promotion.PromoScope.PRODUCT, null), List.of(5L)),
+                PromotionRules.Rule.compile(promo(4, null, Promotion.PromoType.FIXED, "1", Promotion.PromoScope.CATEGORY, 8L), List.of()),
+                // có code thì chỉ áp khi khách nhập, không vào chỉ mục phạm vi
+                PromotionRules.Rule.compile(promo(5, "ALL1", Promotion.PromoType.FIXED, "1", Promotion.PromoScope.ALL, null), List.of()),
+                PromotionRules.Rule.compile(couponBatch(promo(6, null, Promotion.PromoType.FIXED, "1", Promotion.PromoScope.ALL, null)), List.of()));
+
+        List<Long> ids = rules.automatic(List.of(line(5, 7L, 10_000, 1))).stream()
+                .map(PromotionRules.Rule::id).toList();
+
+        assertEquals(List.of(1L, 2L, 3L), ids);
+        // Lô coupon không tự áp, chỉ tới được qua id (mã con tra từ bảng coupon_codes)
+        assertTrue(rules.byId(6L).orElseThrow().couponBatch());
+        assertTrue(rules.byId(7L).isEmpty());
+    }
+
+    private static Promotion couponBatch(Promotion p) {
+        p.setCouponBatch(true);
+        return p;
+    }
+
+    private static PromotionRules.Rule exclusive(Promotion p) {
+        p.setStackable(false);
+        return PromotionRules.Rule.compile(p, List.of());
+    }
+
+    private static BigDecimal amount(PromotionRules.Offer offer) {
+        return offer.discount().setScale(0, RoundingMode.UNNECESSARY);
+    }
+
+    @Test
+    void bestStacksAutomaticPromotionsWithMemberTier() {
+        PromotionRules rules = rules(
+                PromotionRules.Rule.compile(promo(1, null, Promotion.PromoType.FIXED, "5000", Promotion.PromoScope.ALL, null), List.of()),
+                PromotionRules.Rule.compile(promo(2, null, Promotion.PromoType.PERCENT, "10", Promotion.PromoScope.CATEGORY, 7L), List.of()),
+                PromotionRules.Rule.compile(promo(3, null, Promotion.PromoType.FIXED, "9000", Promotion.PromoScope.CATEGORY, 8L), List.of()));
+        List<PromotionRules.Line> cart = List.of(line(1, 7L, 50_000, 2));
+
+        PromotionRules.Offer offer = rules.best(null, cart, new BigDecimal("0.05"), NOW, id -> 0);
+
+        // 5000 + 10% * 100000 + 5% * 100000
+        assertEquals(new BigDecimal("20000"), amount(offer));
+        assertEquals(3, offer.applied().size());
+        assertNull(offer.applied().get(2).rule());
+        assertEquals(0, new BigDecimal("80000").compareTo(offer.total()));
+        assertNull(offer.codeMessage());
+    }
+
+    @Test
+    void bestPicksExclusiveWhenItBeatsTheStack() {
+        PromotionRules rules = rules(
+                PromotionRules.Rule.compile(promo(1, null, Promotion.PromoType.FIXED, "5000", Promotion.PromoScope.ALL, null), List.of()),
+                exclusive(promo(2, null, Promotion.PromoType.PERCENT, "30", Promotion.PromoScope.ALL, null)),
+                exclusive(promo(3, null, Promotion.PromoType.PERCENT, "20", Promotion.PromoScope.ALL, null)));
+        List<PromotionRules.Line> cart = List.of(line(1, null, 100_000, 1));
+
+        PromotionRules.Offer offer = rules.best(null, cart, new BigDecimal("0.08"), NOW, id -> 0);
+        assertEquals(new BigDecimal("30000"), amount(offer));
+        assertEquals(List.of(2L), offer.applied().stream().map(a -> a.rule().id()).toList());
+
+        // Bằng nhau thì giữ nhóm cộng dồn (5000 + 25000)
+        offer = rules.best(null, cart, new BigDecimal("0.25"), NOW, id -> 0);
+        assertEquals(new BigDecimal("30000"), amount(offer));
+        assertEquals(2, offer.applied().size());
+    }
+
+    @Test
+    void typedCodeLosingToBetterOfferIsReported() {
+        PromotionRules rules = rules(
+                exclusive(promo(1, "SMALL", Promotion.PromoType.FIXED, "2000", Promotion.PromoScope.ALL, null)),
+                PromotionRules.Rule.compile(promo(2, "STACK", Promotion.PromoType.FIXED, "2000", Promotion.PromoScope.ALL, null), List.of()),
+                PromotionRules.Rule.compile(promo(3, null, Promotion.PromoType.PERCENT, "10", Promotion.PromoScope.ALL, null), List.of()));
+        List<PromotionRules.Line> cart = List.of(line(1, null, 100_000, 1));
+
+        PromotionRules.Offer lost = rules.best("small", cart, new BigDecimal("0.01"), NOW, id -> 0);
+        assertFalse(lost.codeApplied());
+        assertEquals(PromotionRules.BETTER_OFFER, lost.codeMessage());
+        assertEquals(new BigDecimal("11000"), amount(lost));
+
+        PromotionRules.Offer stacked = rules.best("STACK", cart, new BigDecimal("0.01"), NOW, id -> 0);
+        assertTrue(stacked.codeApplied());
+        assertEquals("Applied successfully", stacked.codeMessage());
+        assertEquals(new BigDecimal("13000"), amount(stacked));
+
+        // Mã con của lô coupon: kết quả tính sẵn bên ngoài rồi đưa vào như mã nhập
+        PromotionRules couponRules = rules(PromotionRules.Rule.compile(
+                couponBatch(promo(9, null, Promotion.PromoType.PERCENT, "20", Promotion.PromoScope.ALL, null)), List.of()));
+        PromotionRules.Rule batch = couponRules.byId(9L).orElseThrow();
+        PromotionRules.Offer coupon = couponRules.bestWith(PromotionRules.apply(batch, cart, NOW, 0), cart,
+                new BigDecimal("0.01"), NOW, id -> 0);
+        assertTrue(coupon.codeApplied());
+        assertEquals(new BigDecimal("21000"), amount(coupon));
+
+        PromotionRules.Offer invalid = rules.best("NOPE", cart, BigDecimal.ZERO, NOW, id -> 0);
+        assertEquals("Invalid code", invalid.codeMessage());
+        assertEquals(new BigDecimal("10000"), amount(invalid));
+    }
+
+    @Test
+    void bestSkipsExhaustedPromotionsAndCapsAtSubtotal() {
+        Promotion limited = promo(1, null, Promotion.PromoType.FIXED, "1000", Promotion.PromoScope.ALL, null);
+        limited.setMaxUses(3);
+        PromotionRules rules = rules(
+                PromotionRules.Rule.compile(limited, List.of()),
+                PromotionRules.Rule.compile(promo(2, null, Promotion.PromoType.FIXED, "40000", Promotion.PromoScope.ALL, null), List.of()));
+        List<PromotionRules.Line> cart = List.of(line(1, null, 30_000, 1));
+
+        PromotionRules.Offer offer = rules.best(null, cart, new BigDecimal("0.05"), NOW, id -> id == 1L ? 3 : 0);
+
+        assertEquals(List.of(2L), offer.applied().stream().filter(a -> a.rule() != null).map(a -> a.rule().id()).toList());
+        assertEquals(new BigDecimal("30000"), amount(offer));
+        assertEquals(0, offer.total().signum());
+    }
+
+    // ---- 10k khuyến mãi đang chạy (đủ 3 loại phạm vi, 1% tự động), 1000 giỏ 5 dòng ----
+
+    private record Catalog(List<Promotion> promotions, Map<Long, List<Long>> productIds,
+                           List<List<PromotionRules.Line>> carts) {
+        List<PromotionRules.Rule> compiled() {
+            return promotions.stream().map(p -> PromotionRules.Rule.compile(p, productIds.get(p.getId()))).toList();
+        }
+    }
+
+    private static Catalog tenThousandPromotions(Random random) {
+        List<Promotion> promotions = new ArrayList<>();
+        Map<Long, List<Long>> productIds = new HashMap<>();
+        for (long id = 1; id <= 10_000; id++) {
+            Promotion.PromoScope scope = Promotion.PromoScope.values()[(int) (id % 3)];
+            Promotion p = promo(id, id % 100 == 1 ? null : "CODE" + id, id % 2 == 0 ? Promotion.PromoType.PERCENT : Promotion.PromoType.FIXED,
+                    id % 2 == 0 ? "10" : "5000", scope, scope == Promotion.PromoScope.CATEGORY ? 1L + random.nextInt(50) : null);
+            p.setMinOrderTotal(new BigDecimal("20000"));
+            if (id % 7 == 0) p.setStackable(false);
+            promotions.add(p);
+            List<Long> ids = new ArrayList<>();
+            if (scope == Promotion.PromoScope.PRODUCT) {
+                for (int k = 0; k < 20; k++) ids.add(1L + random.nextInt(5_000));
+            }
+            productIds.put(id, ids);
+        }
+
+        List<List<PromotionRules.Line>> carts = new ArrayList<>();
+        for (int c = 0; c < 1_000; c++) {
+            List<PromotionRules.Line> cart = new ArrayList<>();
+            for (int l = 0; l < 5; l++) {
+                cart.add(line(1 + random.nextInt(5_000), 1L + random.nextInt(50), 30_000 + random.nextInt(50_000), 1 + random.nextInt(3)));
+            }
+            carts.add(cart);
+        }
+        return new Catalog(promotions, productIds, carts);
+    }
+
+    // Kiểm tra việc phải làm thay vì đo giờ: chỉ mục trả về đúng các luật tự động thuộc phạm vi giỏ
+    // (so với duyệt hết 10k luật), mã nhập tra thẳng ra đúng luật
+    @Test
+    void indexesMatchFullScanOnTenThousandPromotions() {
+        Random random = new Random(42);
+        Catalog catalog = tenThousandPromotions(random);
+        List<PromotionRules.Rule> all = catalog.compiled();
+        PromotionRules rules = new PromotionRules(all);
+        assertEquals(10_000, rules.size());
+
+        int applied = 0;
+        for (List<PromotionRules.Line> cart : catalog.carts()) {
+            List<Long> inScope = all.stream()
+                    .filter(PromotionRules.Rule::automatic)
+                    .filter(r -> cart.stream().anyMatch(r::eligible))
+                    .map(PromotionRules.Rule::id)
+                    .toList();
+            assertEquals(inScope, rules.automatic(cart).stream().map(PromotionRules.Rule::id).toList());
+
+            long id = 2 + random.nextInt(9_999);
+            PromotionRules.Rule byScan = all.stream().filter(r -> ("CODE" + id).equals(r.code())).findFirst().orElse(null);
+            PromotionRules.Result r = rules.apply("code" + id, cart, NOW, x -> 0);
+            assertEquals(byScan == null ? new PromotionRules.Result(BigDecimal.ZERO, null, "Invalid code")
+                    : PromotionRules.apply(byScan, cart, NOW, 0), r);
+            if (r.rule() != null) applied++;
+        }
+        assertTrue(applied > 0);
+    }
+
+    // Đo thời gian biên dịch và áp mã; chạy riêng bằng -Pbenchmark
+    @Test
+    @Tag("benchmark")
+    void benchmarkApplyOnTenThousandPromotions() {
+        Random random = new Random(42);
+        Catalog catalog = tenThousandPromotions(random);
+
+        // Biên dịch vài lần để JIT ấm, đo lần cuối (mỗi lần lưu khuyến mãi là 1 lần dựng lại snapshot)
+        PromotionRules rules = null;
+        long compileNanos = 0;
+        for (int round = 0; round < 20; round++) {
+            long t0 = System.nanoTime();
+            rules = new PromotionRules(catalog.compiled());
+            compileNanos = System.nanoTime() - t0;
+        }
+
+        int rounds = 50_000;
+        long[] nanos = new long[rounds];
+        for (int i = 0; i < rounds; i++) {
+            List<PromotionRules.Line> cart = catalog.carts().get(i % catalog.carts().size());
+            String code = "code" + (2 + random.nextInt(9_999));
+            long s = System.nanoTime();
+            rules.apply(code, cart, NOW, id -> 0);
+            nanos[i] = System.nanoTime() - s;
+        }
+        Arrays.sort(nanos);
+        System.out.printf("10k promotions: compile %.1f ms, apply p50 %d ns / p99 %d ns%n",
+                compileNanos / 1e6, nanos[rounds / 2], nanos[(int) (rounds * 0.99)]);
+    }
+
+    // Tổ hợp tốt nhất qua chỉ mục phải bằng đúng kết quả tính lại bằng cách duyệt hết 10k luật
+    @Test
+    void bestMatchesFullScanOnTenThousandPromotions() {
+        Random random = new Random(42);
+        Catalog catalog = tenThousandPromotions(random);
+        List<PromotionRules.Rule> all = catalog.compiled();
+        PromotionRules rules = new PromotionRules(all);
+        BigDecimal memberRate = new BigDecimal("0.05");
+
+        int automatic = 0;
+        for (int i = 0; i < catalog.carts().size(); i++) {
+            List<PromotionRules.Line> cart = catalog.carts().get(i);
+            String code = i % 2 == 0 ? null : "code" + (2 + random.nextInt(9_999));
+            PromotionRules.Offer offer = rules.best(code, cart, memberRate, NOW, id -> 0);
+
+            BigDecimal subtotal = cart.stream().map(PromotionRules.Line::total).reduce(BigDecimal.ZERO, BigDecimal::add);
+            BigDecimal stack = subtotal.multiply(memberRate);
+            BigDecimal exclusive = BigDecimal.ZERO;
+            for (PromotionRules.Rule r : all) {
+                boolean typed = code != null && code.equalsIgnoreCase(r.code());
+                if (!typed && !(r.automatic() && cart.stream().anyMatch(r::eligible))) continue;
+                PromotionRules.Result res = PromotionRules.apply(r, cart, NOW, 0);
+                if (res.rule() == null) continue;
+                if (r.stackable()) stack = stack.add(res.discount());
+                else exclusive = exclusive.max(res.discount());
+            }
+            assertEquals(0, stack.max(exclusive).min(subtotal).compareTo(offer.discount()), "cart " + i);
+            automatic += (int) offer.applied().stream().filter(a -> a.rule() != null && a.rule().automatic()).count();
+        }
+        assertTrue(automatic > 0);
+    }
+
+    // Đo thời gian chọn tổ hợp tốt nhất; chạy riêng bằng -Pbenchmark
+    @Test
+    @Tag("benchmark")
+    void benchmarkBestOnTenThousandPromotions() {
+        Random random = new Random(42);
+        Catalog catalog = tenThousandPromotions(random);
+        PromotionRules rules = new PromotionRules(catalog.compiled());
+
+        int rounds = 50_000;
+        long[] bestNanos = new long[rounds];
+        BigDecimal memberRate = new BigDecimal("0.05");
+        for (int i = 0; i < rounds; i++) {
+            List<PromotionRules.Line> cart = catalog.carts().get(i % catalog.carts().size());
+            String code = i % 2 == 0 ? null : "code" + (2 + random.nextInt(9_999));
+            long s = System.nanoTime();
+            rules.best(code, cart, memberRate, NOW, id -> 0);
+            bestNanos[i] = System.nanoTime() - s;
+        }
+        Arrays.sort(bestNanos);
+        System.out.printf("10k promotions: best p50 %d ns / p99 %d ns%n",
+                bestNanos[rounds / 2], bestNanos[(int) (rounds * 0.99)]);
+    }
+}
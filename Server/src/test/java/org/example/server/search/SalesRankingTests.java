@@ -0,0 +1,109 @@
+package org.example.server.search;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SalesRankingTests {
+
+    private static final long HOUR = 3_600_000L;
+    private static final long NOW = 1_000 * 24 * HOUR;
+
+    private static List<Long> ids(List<SalesRanking.Entry> entries) {
+        return entries.stream().map(SalesRanking.Entry::productId).toList();
+    }
+
+    @Test
+    void totalKeepsAllSalesWhileTrendingFavoursRecentOnes() {
+        SalesRanking ranking = new SalesRanking(10);
+        ranking.record(1L, 50, NOW - 10 * 24 * HOUR, true); // bán nhiều nhưng đã lâu
+        ranking.record(2L, 5, NOW - HOUR / 2, true);        // bán ít nhưng vừa xong
+        ranking.rebuild(NOW);
+
+        assertEquals(List.of(1L, 2L), ids(ranking.top(SalesRanking.Window.TOTAL)));
+        // 1h: 10 ngày trước đã suy giảm về ~0 nên không còn trong danh sách
+        assertEquals(List.of(2L), ids(ranking.top(SalesRanking.Window.H1)));
+        assertEquals(List.of(2L, 1L), ids(ranking.top(SalesRanking.Window.H24)));
+        // 7 ngày: 50 * e^(-10/7) ~ 12 > 5
+        assertEquals(List.of(1L, 2L), ids(ranking.top(SalesRanking.Window.D7)));
+    }
+
+    @Test
+    void scoresDecayExponentiallyWithTime() {
+        SalesRanking ranking = new SalesRanking(10);
+        ranking.record(1L, 100, NOW, true);
+        ranking.rebuild(NOW + HOUR);
+
+        assertEquals(100 * Math.exp(-1), ranking.top(SalesRanking.Window.H1).get(0).score(), 1e-6);
+        assertEquals(100 * Math.exp(-1.0 / 24), ranking.top(SalesRanking.Window.H24).get(0).score(), 1e-6);
+        assertEquals(100.0, ranking.top(SalesRanking.Window.TOTAL).get(0).score(), 1e-9);
+    }
+
+    @Test
+    void outOfOrderRecordsGiveTheSameScore() {
+        SalesRanking inOrder = new SalesRanking(10);
+        inOrder.record(1L, 3, NOW - 5 * HOUR, true);
+        inOrder.record(1L, 4, NOW - HOUR, true);
+        inOrder.rebuild(NOW);
+
+        SalesRanking reversed = new SalesRanking(10);
+        reversed.record(1L, 4, NOW - HOUR, true);
+        reversed.record(1L, 3, NOW - 5 * HOUR, true);
+        reversed.rebuild(NOW);
+
+        for (SalesRanking.Window w : SalesRanking.Window.values()) {
+            assertEquals(inOrder.top(w).get(0).score(), reversed.top(w).get(0).score(), 1e-9);
+        }
+    }
+
+    @Test
+    void keepsOnlyTopNInDescendingOrder() {
+        SalesRanking ranking = new SalesRanking(3);
+        for (long id = 1; id <= 50; id++) ranking.record(id, id, NOW, true);
+        ranking.rebuild(NOW);
+
+        assertEquals(List.of(50L, 49L, 48L), ids(ranking.top(SalesRanking.Window.TOTAL)));
+        assertEquals(List.of(50L, 49L, 48L), ids(ranking.top(SalesRanking.Window.H1)));
+    }
+
+    @Test
+    void reconciledTotalsReplaceCountersButKeepTrending() {
+        SalesRanking ranking = new SalesRanking(10);
+        ranking.record(1L, 10, NOW, true);
+        ranking.record(2L, 3, NOW, true);
+        ranking.setTotals(Map.of(2L, 20L)); // 1 không còn trong kết quả đối soát -> 0
+        ranking.rebuild(NOW);
+
+        assertEquals(List.of(2L), ids(ranking.top(SalesRanking.Window.TOTAL)));
+        assertEquals(List.of(1L, 2L), ids(ranking.top(SalesRanking.Window.H1)));
+        assertEquals(Map.of(2L, 20L), ranking.totals());
+    }
+
+    @Test
+    void historyReplayDoesNotTouchTotals() {
+        SalesRanking ranking = new SalesRanking(10);
+        ranking.setTotals(Map.of(1L, 7L));
+        ranking.record(1L, 2, NOW - HOUR, false);
+        ranking.rebuild(NOW);
+
+        assertEquals(7.0, ranking.top(SalesRanking.Window.TOTAL).get(0).score(), 1e-9);
+        assertEquals(2 * Math.exp(-1), ranking.top(SalesRanking.Window.H1).get(0).score(), 1e-6);
+
+        ranking.clearTrending();
+        ranking.rebuild(NOW);
+        assertTrue(ranking.top(SalesRanking.Window.H1).isEmpty());
+        assertEquals(1, ranking.top(SalesRanking.Window.TOTAL).size());
+    }
+
+    @Test
+    void parsesWindowNames() {
+        assertEquals(SalesRanking.Window.TOTAL, SalesRanking.Window.parse("all"));
+        assertEquals(SalesRanking.Window.H1, SalesRanking.Window.parse("1h"));
+        assertEquals(SalesRanking.Window.H24, SalesRanking.Window.parse("24H"));
+        assertEquals(SalesRanking.Window.D7, SalesRanking.Window.parse("7d"));
+        assertThrows(IllegalArgumentException.class, () -> SalesRanking.Window.parse("1y"));
+    }
+}
@@ -0,0 +1,118 @@
+package org.example.server.search;
+
+import org.example.server.search.SuggestIndex.Suggestion;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SuggestIndexTests {
+
+    private SuggestIndex index;
+
+    @BeforeEach
+    void setUp() {
+        index = new SuggestIndex();
+        index.replaceAll(Map.of(10L, "Món nước", 20L, "Cơm"), List.of(
+                doc(1L, "Phở bò tái", 10L, true),
+                doc(2L, "Phở gà", 10L, true),
+                doc(3L, "Cơm gà xối mỡ", 20L, true),
+                doc(4L, "Bún bò Huế", 10L, true),
+                doc(5L, "Phở cuốn", 10L, false)));
+        index.setPopularity(Map.of(1L, 50L, 2L, 120L, 3L, 30L, 4L, 10L));
+    }
+
+    private static ProductSearchIndex.Doc doc(Long id, String name, Long categoryId, boolean active) {
+        return new ProductSearchIndex.Doc(id, name, null, categoryId, null, active);
+    }
+
+    private List<String> texts(String q) {
+        return index.suggest(q, 10).stream().map(Suggestion::text).toList();
+    }
+
+    @Test
+    void ranksByPortionsSoldAndSkipsInactive() {
+        assertEquals(List.of("Phở gà", "Phở bò tái"), texts("ph"));
+        assertEquals(List.of("Phở gà", "Phở bò tái"), texts("PHỞ"));
+    }
+
+    @Test
+    void matchesAnyWordInName() {
+        assertEquals(List.of("Phở bò tái", "Bún bò Huế"), texts("bo"));
+        assertEquals(List.of("Phở gà", "Cơm gà xối mỡ"), texts("ga"));
+        assertEquals(List.of("Phở bò tái"), texts("pho  bo"));
+        assertTrue(texts("bo hue x").isEmpty());
+    }
+
+    @Test
+    void suggestsCategoriesBySalesOfTheirProducts() {
+        List<Suggestion> hits = index.suggest("c", 10);
+        // Cơm (30 phần) và món "Cơm gà xối mỡ" (30) - danh mục có tên ngắn hơn đứng trước
+        assertEquals(new Suggestion(SuggestIndex.CATEGORY, 20L, "Cơm"), hits.get(0));
+        assertEquals(List.of("Món nước"), index.suggest("mon", 10).stream().map(Suggestion::text).toList());
+    }
+
+    @Test
+    void emptyQueryReturnsBestSellersAndLimitIsRespected() {
+        assertEquals("Món nước", texts("").get(0)); // 180 phần
+        assertEquals(3, index.suggest("", 3).size());
+        assertEquals(6, index.suggest("", 99).size()); // 4 món đang bán + 2 danh mục
+    }
+
+    @Test
+    void updatesIncrementally() {
+        index.upsertProduct(5L, "Phở cuốn", 10L, true);
+        assertTrue(texts("cuon").contains("Phở cuốn"));
+
+        index.upsertProduct(2L, "Phở gà ta", 10L, false);
+        assertEquals(List.of("Phở bò tái", "Phở cuốn"), texts("pho"));
+
+        index.removeProduct(1L);
+        assertEquals(List.of("Phở cuốn"), texts("pho"));
+
+        index.upsertCategory(20L, "Cơm tấm");
+        assertTrue(texts("tam").contains("Cơm tấm"));
+        index.removeCategory(20L);
+        assertTrue(texts("tam").isEmpty());
+    }
+
+    // Đo thời gian, chạy riêng bằng -Pbenchmark
+    @Test
+    @Tag("benchmark")
+    void lookupStaysWellUnderAMillisecond() {
+        Random random = new Random(7);
+        String[] words = {"phở", "bò", "gà", "cơm", "bún", "chả", "nem", "rán", "tái", "chín", "xào", "canh",
+                "chua", "cá", "kho", "tộ", "đậu", "hũ", "trứng", "ốp", "mì", "quảng", "hủ", "tiếu", "lẩu", "thái"};
+        List<ProductSearchIndex.Doc> docs = new ArrayList<>();
+        Map<Long, Long> sold = new HashMap<>();
+        for (long id = 1; id <= 20_000; id++) {
+            StringBuilder name = new StringBuilder();
+            for (int w = 0; w < 2 + random.nextInt(3); w++) name.append(words[random.nextInt(words.length)]).append(' ');
+            docs.add(doc(id, name.toString() + id, 1 + id % 30, true));
+            sold.put(id, (long) random.nextInt(1000));
+        }
+        SuggestIndex big = new SuggestIndex();
+        big.replaceAll(Map.of(), docs);
+        big.setPopularity(sold);
+
+        String[] queries = {"p", "ph", "pho", "pho b", "bo t", "com g", "lau th", "mi qua", "dau h", "x", "ca kho to"};
+        for (int i = 0; i < 20_000; i++) big.suggest(queries[i % queries.length], 8); // warm-up
+
+        int n = 50_000;
+        long[] nanos = new long[n];
+        for (int i = 0; i < n; i++) {
+            long t = System.nanoTime();
+            big.suggest(queries[i % queries.length], 8);
+            nanos[i] = System.nanoTime() - t;
+        }
+        Arrays.sort(nanos);
+        long p99 = nanos[(int) (n * 0.99)];
+        System.out.printf("suggest over %d products (%d nodes): p50=%dns p99=%dns%n",
+                docs.size(), big.nodeCount(), nanos[n / 2], p99);
+        assertTrue(p99 < 1_000_000, "p99 " + p99 + "ns");
+    }
+}
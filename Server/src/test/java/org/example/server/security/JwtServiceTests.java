@@ -0,0 +1,106 @@
+package org.example.server.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JwtServiceTests {
+
+    private final JwtService jwt = new JwtService();
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(jwt, "secret", "k".repeat(64)); // HS512 cần key >= 512 bit
+        ReflectionTestUtils.setField(jwt, "defaultTtlMillis", 3_600_000L);
+        ReflectionTestUtils.setField(jwt, "cacheSize", 100);
+        ReflectionTestUtils.setField(jwt, "cacheMinutes", 30L);
+        jwt.init();
+    }
+
+    @Test
+    void expiredTokenIsRejectedEvenWhenCached() {
+        String token = jwt.generate("khach", new String[]{"USER"}, Duration.ofMinutes(1).toMillis());
+        VerifiedToken first = jwt.verify(token).orElseThrow();
+        assertEquals(List.of("ROLE_USER"), first.roles());
+        assertTrue(cache().asMap().containsKey(sha256(token)));
+
+        // Cache còn giữ 30 phút nhưng token chỉ sống 1 phút: lần đọc sau hạn phải bị từ chối
+        useClock(first.expiresAt().plusSeconds(1));
+
+        assertTrue(jwt.verify(token).isEmpty());
+        assertFalse(cache().asMap().containsKey(sha256(token)));
+        assertTrue(jwt.verify(token).isEmpty(), "parse lại cũng thấy hết hạn");
+    }
+
+    @Test
+    void tamperedTokenIsRejected() {
+        String token = jwt.generate("khach", Set.of("USER"));
+        assertTrue(jwt.verify(token).isPresent()); // bản gốc đã nằm trong cache
+
+        String[] parts = token.split("\\.");
+        String admin = new String(Base64.getUrlDecoder().decode(parts[1]), StandardCharsets.UTF_8)
+                .replace("ROLE_USER", "ROLE_ADMIN");
+        String forgedClaims = parts[0] + "." + Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(admin.getBytes(StandardCharsets.UTF_8)) + "." + parts[2];
+        char last = parts[2].charAt(0);
+        String badSignature = parts[0] + "." + parts[1] + "." + (last == 'A' ? 'B' : 'A') + parts[2].substring(1);
+        String otherKey = signedWith("x".repeat(64));
+
+        for (String forged : List.of(forgedClaims, badSignature, otherKey, parts[0] + "." + parts[1] + ".")) {
+            assertTrue(jwt.verify(forged).isEmpty(), forged);
+        }
+        assertEquals(1, cache().estimatedSize(), "token bị từ chối không được cache");
+    }
+
+    @Test
+    void cacheIsKeyedByTokenHash() {
+        String token = jwt.generate("khach", Set.of("USER"));
+        jwt.verify(token);
+        jwt.verify(token);
+
+        assertEquals(Set.of(sha256(token)), cache().asMap().keySet());
+        assertFalse(cache().asMap().containsKey(token), "không giữ token gốc trong bộ nhớ");
+        assertEquals(64, sha256(token).length());
+    }
+
+    private String signedWith(String otherSecret) {
+        JwtService other = new JwtService();
+        ReflectionTestUtils.setField(other, "secret", otherSecret);
+        ReflectionTestUtils.setField(other, "defaultTtlMillis", 3_600_000L);
+        ReflectionTestUtils.setField(other, "cacheSize", 100);
+        ReflectionTestUtils.setField(other, "cacheMinutes", 30L);
+        other.init();
+        return other.generate("khach", Set.of("ADMIN"));
+    }
+
+    private void useClock(Instant now) {
+        ReflectionTestUtils.setField(jwt, "clock", Clock.fixed(now, ZoneOffset.UTC));
+    }
+
+    @SuppressWarnings("unchecked")
+    private Cache<String, VerifiedToken> cache() {
+        return (Cache<String, VerifiedToken>) ReflectionTestUtils.getField(jwt, "verified");
+    }
+
+    private static String sha256(String value) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8)));
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
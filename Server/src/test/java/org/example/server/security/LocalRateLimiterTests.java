@@ -0,0 +1,110 @@
+package org.example.server.security;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LocalRateLimiterTests {
+
+    private final AtomicLong now = new AtomicLong(1_000_000_000L);
+
+    private static RateLimitProperties.Policy policy(int capacity, int refillTokens, Duration period) {
+        RateLimitProperties.Policy p = new RateLimitProperties.Policy();
+        p.setName("test");
+        p.setCapacity(capacity);
+        p.setRefillTokens(refillTokens);
+        p.setRefillPeriod(period);
+        return p;
+    }
+
+    @Test
+    void allowsBurstThenRejectsWithRetryAfter() {
+        LocalRateLimiter limiter = new LocalRateLimiter(100, now::get);
+        var p = policy(5, 5, Duration.ofSeconds(10)); // 1 token / 2s
+
+        for (int i = 0; i < 5; i++) {
+            var d = limiter.tryConsume("ip:1", p);
+            assertTrue(d.allowed());
+            assertEquals(4 - i, d.remaining());
+        }
+        var denied = limiter.tryConsume("ip:1", p);
+        assertFalse(denied.allowed());
+        assertEquals(2000, denied.retryAfterMillis());
+
+        // Key khác có bucket riêng
+        assertTrue(limiter.tryConsume("ip:2", p).allowed());
+    }
+
+    @Test
+    void refillsOverTime() {
+        LocalRateLimiter limiter = new LocalRateLimiter(100, now::get);
+        var p = policy(2, 2, Duration.ofSeconds(2)); // 1 token / s
+
+        assertTrue(limiter.tryConsume("k", p).allowed());
+        assertTrue(limiter.tryConsume("k", p).allowed());
+        assertFalse(limiter.tryConsume("k", p).allowed());
+
+        now.addAndGet(Duration.ofSeconds(1).toNanos());
+        assertTrue(limiter.tryConsume("k", p).allowed());
+        assertFalse(limiter.tryConsume("k", p).allowed());
+    }
+
+    @Test
+    void concurrentCallersNeverExceedCapacity() throws Exception {
+        LocalRateLimiter limiter = new LocalRateLimiter(100, now::get);
+        var p = policy(100, 1, Duration.ofHours(1));
+        AtomicInteger allowed = new AtomicInteger();
+
+        ExecutorService pool = Executors.newFixedThreadPool(16);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            futures.add(pool.submit(() -> {
+                start.await();
+                if (limiter.tryConsume("hot", p).allowed()) allowed.incrementAndGet();
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> f : futures) f.get(10, TimeUnit.SECONDS);
+        pool.shutdown();
+
+        assertEquals(100, allowed.get());
+    }
+
+    @Test
+    void keyStoreIsBoundedAndFullBucketsAreSwept() {
+        LocalRateLimiter limiter = new LocalRateLimiter(50, now::get);
+        var p = policy(10, 10, Duration.ofSeconds(10));
+
+        for (int i = 0; i < 500; i++) limiter.tryConsume("ip:" + i, p);
+        assertTrue(limiter.size() <= 50, "size " + limiter.size());
+
+        // Sau 1 chu kỳ nạp mọi bucket đều đầy lại -> dọn sạch
+        now.addAndGet(Duration.ofSeconds(10).toNanos());
+        limiter.sweep();
+        assertEquals(0, limiter.size());
+    }
+
+    @Test
+    void floodingNewKeysDoesNotResetThrottledClient() {
+        LocalRateLimiter limiter = new LocalRateLimiter(50, now::get);
+        var p = policy(5, 5, Duration.ofSeconds(10));
+
+        for (int i = 0; i < 5; i++) limiter.tryConsume("victim", p);
+        assertFalse(limiter.tryConsume("victim", p).allowed());
+
+        // Mỗi key mới chỉ tốn 1 token, gần đầy hơn bucket đang bị chặn -> bị bỏ trước
+        for (int i = 0; i < 5000; i++) limiter.tryConsume("spam:" + i, p);
+
+        assertTrue(limiter.size() <= 50, "size " + limiter.size());
+        assertFalse(limiter.tryConsume("victim", p).allowed());
+    }
+}
@@ -0,0 +1,51 @@
+package org.example.server.security;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+
+class RateLimitFilterTests {
+
+    private final AtomicLong now = new AtomicLong(1_000_000_000L);
+    private final RateLimitFilter filter;
+
+    RateLimitFilterTests() {
+        RateLimitProperties props = new RateLimitProperties();
+        props.getDefaultPolicy().setCapacity(1);
+        props.getDefaultPolicy().setRefillTokens(1);
+        props.getDefaultPolicy().setRefillPeriod(Duration.ofMinutes(1));
+        filter = new RateLimitFilter(new LocalRateLimiter(100, now::get), props, mock(JwtService.class));
+    }
+
+    @Test
+    void forgedForwardedForDoesNotGiveANewBucket() throws Exception {
+        assertEquals(200, call("203.0.113.9", "1.1.1.1"));
+        // Cùng máy, đổi X-Forwarded-For mỗi lần: vẫn chung 1 bucket
+        assertEquals(429, call("203.0.113.9", "2.2.2.2"));
+        assertEquals(429, call("203.0.113.9", null));
+    }
+
+    @Test
+    void forgingAnotherClientsIpDoesNotUseUpTheirBucket() throws Exception {
+        // Giả mạo IP của người khác không làm người đó bị chặn
+        assertEquals(200, call("203.0.113.9", "198.51.100.7"));
+        assertEquals(200, call("198.51.100.7", null));
+        assertEquals(429, call("198.51.100.7", null));
+    }
+
+    private int call(String remoteAddr, String forwardedFor) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/products");
+        request.setRemoteAddr(remoteAddr);
+        if (forwardedFor != null) request.addHeader("X-Forwarded-For", forwardedFor);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response, new MockFilterChain());
+        return response.getStatus();
+    }
+}
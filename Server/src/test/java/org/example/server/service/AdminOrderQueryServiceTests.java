@@ -0,0 +1,148 @@
+package org.example.server.service;
+
+import jakarta.persistence.EntityManagerFactory;
+import org.example.server.entity.*;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.Page;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@DataJpaTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:admin_orders;MODE=MySQL;NON_KEYWORDS=VALUE",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.properties.hibernate.generate_statistics=true"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import(AdminOrderQueryService.class)
+class AdminOrderQueryServiceTests {
+
+    private static final int ORDERS = 30;
+    private static final int PAGE_SIZE = 10;
+    private static final int CHEFS = 3;
+
+    // id page + count + (orders, user, profile, shipping) + (items, product, category, chef, profile)
+    // + roles của khách và của bếp, mỗi nhóm 1 câu IN (@BatchSize)
+    private static final long STATEMENTS_PER_PAGE = 6;
+
+    @Autowired
+    private TestEntityManager em;
+
+    @Autowired
+    private EntityManagerFactory emf;
+
+    @Autowired
+    private AdminOrderQueryService service;
+
+    @BeforeEach
+    void seed() {
+        Category soup = em.persist(Category.builder().name("Món nước").build());
+        Category drink = em.persist(Category.builder().name("Đồ uống").build());
+        Product pho = em.persist(Product.builder().name("Phở bò").price(BigDecimal.valueOf(50000)).stock(100).category(soup).build());
+        Product tra = em.persist(Product.builder().name("Trà đá").price(BigDecimal.valueOf(5000)).stock(100).category(drink).build());
+        User customer = em.persist(User.builder().username("khach").password("x").roles(Set.of("USER")).build());
+        // Mỗi bếp có nhiều role + profile: không được nhân số dòng của query items
+        List<User> chefs = new ArrayList<>();
+        for (int c = 0; c < CHEFS; c++) {
+            User chef = em.persist(User.builder().username("bep" + c).password("x")
+                    .roles(Set.of("USER", "CHEF", "STAFF")).build());
+            UserProfile profile = new UserProfile();
+            profile.setUser(chef);
+            profile.setFullName("Bếp " + c);
+            chef.setProfile(em.persist(profile));
+            chefs.add(chef);
+        }
+
+        for (int i = 0; i < ORDERS; i++) {
+            ShippingInfo ship = em.persist(ShippingInfo.builder().phone("0900000000").addressLine("1 Lê Lợi").city("HCM").build());
+            Order o = Order.builder()
+                    .user(customer)
+                    .status(i % 2 == 0 ? "DONE" : "PENDING")
+                    .paymentMethod(i % 3 == 0 ? "PAYOS" : "COD")
+                    .total(BigDecimal.valueOf(55000))
+                    .shipping(ship)
+                    .items(new ArrayList<>())
+                    .build();
+            o.getItems().add(OrderItem.builder().order(o).product(pho).quantity(1).price(pho.getPrice())
+                    .chef(chefs.get(i % CHEFS)).build());
+            o.getItems().add(OrderItem.builder().order(o).product(tra).quantity(1).price(tra.getPrice()).build());
+            em.persist(o);
+        }
+        em.flush();
+        em.clear();
+    }
+
+    @Test
+    void everyPageUsesAFixedNumberOfStatements() {
+        Statistics stats = emf.unwrap(SessionFactory.class).getStatistics();
+
+        for (int page = 0; page < ORDERS / PAGE_SIZE; page++) {
+            em.clear();
+            stats.clear();
+
+            Page<Order> result = service.findOrders(AdminOrderQueryService.Filter.none(), page, PAGE_SIZE);
+            touch(result);
+
+            assertEquals(PAGE_SIZE, result.getContent().size());
+            assertEquals(ORDERS, result.getTotalElements());
+            assertEquals(STATEMENTS_PER_PAGE, stats.getPrepareStatementCount(), "statements for page " + page);
+        }
+    }
+
+    @Test
+    void pagesAreSortedByNewestFirst() {
+        Page<Order> result = service.findOrders(AdminOrderQueryService.Filter.none(), 0, PAGE_SIZE);
+
+        for (int i = 1; i < result.getContent().size(); i++) {
+            Order prev = result.getContent().get(i - 1);
+            Order cur = result.getContent().get(i);
+            assertTrue(!prev.getCreatedAt().isBefore(cur.getCreatedAt()));
+        }
+    }
+
+    @Test
+    void filtersByStatusAndPaymentMethod() {
+        var filter = new AdminOrderQueryService.Filter("done", null, null, "payos");
+        Page<Order> result = service.findOrders(filter, 0, 50);
+
+        // i chẵn và chia hết cho 3 -> i % 6 == 0
+        assertEquals(5, result.getTotalElements());
+        result.forEach(o -> {
+            assertEquals("DONE", o.getStatus());
+            assertEquals("PAYOS", o.getPaymentMethod());
+        });
+    }
+
+    // Chạm vào mọi quan hệ mà JSON admin trả ra: không được phát sinh thêm query
+    private static void touch(Page<Order> page) {
+        for (Order o : page) {
+            o.getUser().getUsername();
+            o.getShipping().getCity();
+            o.getUser().getRoles().size();
+            for (OrderItem i : o.getItems()) {
+                i.getProduct().getName();
+                i.getProduct().getCategory().getName();
+                if (i.getChef() != null) {
+                    i.getChef().getRoles().size();
+                    i.getChef().getProfile().getFullName();
+                }
+            }
+        }
+    }
+}
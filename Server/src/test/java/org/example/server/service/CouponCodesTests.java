@@ -0,0 +1,74 @@
+package org.example.server.service;
+
+import org.example.server.repository.CouponRepository;
+import org.junit.jupiter.api.Test;
+
+import java.io.StringWriter;
+import java.time.LocalDateTime;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CouponCodesTests {
+
+    @Test
+    void normalizeAndHashIgnoreCaseDashesAndSpaces() {
+        assertEquals("SALE7K3MX9QP", CouponCodes.normalize(" sale-7k3m x9qp "));
+        assertEquals(CouponCodes.hash("SALE7K3MX9QP"), CouponCodes.hash("sale-7k3m-x9qp"));
+        assertNotEquals(CouponCodes.hash("SALE7K3MX9QP"), CouponCodes.hash("SALE7K3MX9QQ"));
+    }
+
+    @Test
+    void prefixMustBeShortAlphanumeric() {
+        assertEquals("", CouponCodes.prefix(null));
+        assertEquals("TET25", CouponCodes.prefix("tet-25"));
+        assertThrows(IllegalArgumentException.class, () -> CouponCodes.prefix("TOO-LONG-PREFIX"));
+        assertThrows(IllegalArgumentException.class, () -> CouponCodes.prefix("SALE%"));
+    }
+
+    // 100k mã của 1 đợt: đúng bảng chữ, không trùng mã / khoá băm
+    @Test
+    void hundredThousandCodesAreDistinct() {
+        Random random = new Random(7);
+        Set<String> codes = new HashSet<>();
+        Set<Long> hashes = new HashSet<>();
+        for (int i = 0; i < 100_000; i++) {
+            String code = CouponCodes.generate("TET", 10, random);
+            codes.add(code);
+            hashes.add(CouponCodes.hash(code));
+        }
+
+        assertEquals(100_000, codes.size());
+        assertEquals(100_000, hashes.size());
+        for (String c : codes) {
+            assertEquals(13, c.length());
+            assertTrue(c.startsWith("TET"));
+            assertTrue(c.substring(3).chars().allMatch(ch -> CouponCodes.ALPHABET.indexOf(ch) >= 0), c);
+        }
+    }
+
+    @Test
+    void csvExportWalksKeysetPages() throws Exception {
+        List<CouponRepository.Coupon> all = new ArrayList<>();
+        for (long h = -5; h < 7; h++) {
+            all.add(new CouponRepository.Coupon(h, 1L, "C" + (h + 5), h == 0 ? 42L : null,
+                    h == 0 ? LocalDateTime.of(2025, 6, 1, 12, 0) : null));
+        }
+        List<Long> afters = new ArrayList<>();
+        StringWriter out = new StringWriter();
+
+        long rows = CouponService.writeCsv(out, after -> {
+            afters.add(after);
+            return all.stream().filter(c -> c.codeHash() > after).limit(5).toList();
+        });
+
+        assertEquals(12, rows);
+        // 3 trang đầy / thiếu + 1 lần gọi trả rỗng, mỗi trang bắt đầu sau khoá cuối của trang trước
+        assertEquals(List.of(Long.MIN_VALUE, -1L, 4L, 6L), afters);
+        String[] lines = out.toString().split("\n");
+        assertEquals("code,redeemed_order_id,redeemed_at", lines[0]);
+        assertEquals("C0,,", lines[1]);
+        assertEquals("C5,42,2025-06-01T12:00", lines[6]);
+        assertEquals(13, lines.length);
+    }
+}
@@ -0,0 +1,175 @@
+package org.example.server.service;
+
+import org.example.server.common.GlobalExceptionHandler;
+import org.example.server.common.PromotionUnavailableException;
+import org.example.server.dto.CouponDtos;
+import org.example.server.entity.Promotion;
+import org.example.server.repository.CouponRepository;
+import org.example.server.repository.PromotionRepository;
+import org.example.server.repository.PromotionUsageRepository;
+import org.example.server.search.PromotionRules;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpStatus;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// SQL của coupon_codes (INSERT IGNORE, UPDATE có điều kiện) trên H2 chế độ MySQL
+@DataJpaTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:coupons;MODE=MySQL;NON_KEYWORDS=VALUE;LOCK_TIMEOUT=10000",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.datasource.hikari.maximum-pool-size=8",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({CouponRepository.class, CouponService.class, PromotionService.class,
+        JdbcPromotionUsageLedger.class, PromotionUsageRepository.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED) // mỗi bước tự mở transaction như 1 request
+class CouponServiceTests {
+
+    private static final List<PromotionRules.Line> CART =
+            List.of(new PromotionRules.Line(1L, 1L, BigDecimal.valueOf(100000), 2));
+
+    @Autowired
+    private CouponRepository couponRepo;
+
+    @Autowired
+    private PromotionRepository promoRepo;
+
+    @Autowired
+    private CouponService couponService;
+
+    @Autowired
+    private PromotionService promotionService;
+
+    @Autowired
+    private PlatformTransactionManager txManager;
+
+    @Test
+    void generationSkipsACodeWhoseHashIsTaken() {
+        Long batch = batch("Hash trùng");
+        // Cùng seed -> biết trước mã đầu tiên; chiếm sẵn khoá băm của nó bằng 1 mã khác
+        String first = CouponCodes.generate("TET", 10, new Random(7));
+        couponRepo.insertIgnore(batch, List.of("CHIEMCHO"), new long[]{CouponCodes.hash(first)});
+        CouponService service = new CouponService(couponRepo, promoRepo, 4, 1000, 10, 100, new Random(7));
+
+        CouponDtos.BatchResult result = service.generate(batch, 10, "tet");
+
+        assertEquals(10, result.generated());
+        assertEquals(11, result.totalCodes());
+        // Khoá băm khớp nhưng mã khác: không được coi là mã hợp lệ
+        assertTrue(service.find(first).isEmpty());
+        assertEquals("CHIEMCHO", couponRepo.find(CouponCodes.hash(first), "CHIEMCHO").orElseThrow().code());
+    }
+
+    @Test
+    void concurrentRedeemsOfOneCodeHaveOneWinner() throws Exception {
+        Long batch = batch("Đổi đồng thời");
+        couponService.generate(batch, 20, "RACE");
+        List<String> codes = couponRepo.page(batch, Long.MIN_VALUE, 20).stream().map(CouponRepository.Coupon::code).toList();
+        assertEquals(20, codes.size());
+        TransactionTemplate tx = new TransactionTemplate(txManager);
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            long orderId = 1000;
+            for (String code : codes) {
+                CyclicBarrier start = new CyclicBarrier(2);
+                List<Future<Boolean>> results = new ArrayList<>();
+                for (long order : new long[]{++orderId, ++orderId}) {
+                    results.add(pool.submit(() -> {
+                        start.await();
+                        return redeem(tx, code, batch, order);
+                    }));
+                }
+                boolean a = results.get(0).get(30, TimeUnit.SECONDS);
+                boolean b = results.get(1).get(30, TimeUnit.SECONDS);
+
+                assertTrue(a ^ b, code);
+                assertEquals(a ? orderId - 1 : orderId, couponService.find(code).orElseThrow().redeemedOrderId());
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    void cancelReleasesTheCodeForAnotherOrder() {
+        Long batch = batch("Huỷ đơn");
+        String code = generateOne(batch, "HUY");
+        TransactionTemplate tx = new TransactionTemplate(txManager);
+
+        tx.executeWithoutResult(s -> promotionService.reserveUsage(2001L, List.of(), code, batch));
+        assertEquals(2001L, couponService.find(code).orElseThrow().redeemedOrderId());
+
+        tx.executeWithoutResult(s -> promotionService.releaseUsage(2001L));
+        CouponRepository.Coupon released = couponService.find(code).orElseThrow();
+        assertNull(released.redeemedOrderId());
+        assertNull(released.redeemedAt());
+
+        assertTrue(redeem(tx, code, batch, 2002L));
+    }
+
+    @Test
+    void typedCodeFallsBackToCouponTableAndSecondRedeemIsAConflict() {
+        Long batch = batch("Tra mã");
+        String code = generateOne(batch, "TRA");
+        promotionService.reloadAll();
+        TransactionTemplate tx = new TransactionTemplate(txManager);
+
+        // Mã con không nằm trong bộ luật: tra coupon_codes, giá theo luật của lô (10% của 200k)
+        String typed = code.toLowerCase().substring(0, 3) + "-" + code.substring(3);
+        PromotionRules.Result quote = promotionService.preview(typed, CART);
+        assertEquals(0, BigDecimal.valueOf(20000).compareTo(quote.discount()), quote.message());
+        assertEquals(batch, quote.rule().id());
+        assertEquals("Invalid code", promotionService.preview("TRAKHONGCO", CART).message());
+
+        tx.executeWithoutResult(s -> promotionService.reserveUsage(3001L, List.of(), typed, batch));
+        assertEquals("Code already used", promotionService.preview(code, CART).message());
+
+        PromotionUnavailableException ex = assertThrows(PromotionUnavailableException.class,
+                () -> tx.executeWithoutResult(s -> promotionService.reserveUsage(3002L, List.of(), code, batch)));
+        assertEquals(batch, ex.getPromotionId());
+        assertEquals(HttpStatus.CONFLICT, new GlobalExceptionHandler().handlePromotionUnavailable(ex).getStatusCode());
+        assertEquals(3001L, couponService.find(code).orElseThrow().redeemedOrderId());
+    }
+
+    private Long batch(String name) {
+        return promoRepo.save(Promotion.builder()
+                .name(name)
+                .type(Promotion.PromoType.PERCENT)
+                .value(BigDecimal.TEN)
+                .scope(Promotion.PromoScope.ALL)
+                .active(true)
+                .couponBatch(true)
+                .build()).getId();
+    }
+
+    private String generateOne(Long batch, String prefix) {
+        couponService.generate(batch, 1, prefix);
+        return couponRepo.page(batch, Long.MIN_VALUE, 1).get(0).code();
+    }
+
+    private boolean redeem(TransactionTemplate tx, String code, Long batch, long orderId) {
+        try {
+            tx.executeWithoutResult(s -> couponService.redeem(code, batch, orderId));
+            return true;
+        } catch (PromotionUnavailableException e) {
+            return false;
+        }
+    }
+}
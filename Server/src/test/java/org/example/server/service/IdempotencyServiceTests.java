@@ -0,0 +1,165 @@
+package org.example.server.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.example.server.common.IdempotencyMismatchException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class IdempotencyServiceTests {
+
+    private IdempotencyService service;
+    private final AtomicInteger runs = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() {
+        service = service(new InMemoryIdempotencyStore());
+    }
+
+    private static IdempotencyService service(IdempotencyStore store) {
+        IdempotencyService service = new IdempotencyService(store, new ObjectMapper());
+        ReflectionTestUtils.setField(service, "ttlMinutes", 60L);
+        ReflectionTestUtils.setField(service, "waitSeconds", 5L);
+        ReflectionTestUtils.setField(service, "lockSeconds", 30L);
+        return service;
+    }
+
+    private IdempotencyService.Result order(String user, String key, Object request) throws Exception {
+        return service.execute("orders", user, key, request, () -> Map.of("orderId", runs.incrementAndGet()));
+    }
+
+    @Test
+    void sameKeyAndBodyReplaysTheFirstResult() throws Exception {
+        var first = order("khach", "k1", Map.of("items", 2));
+        var retry = order("khach", "k1", Map.of("items", 2));
+
+        assertFalse(first.replayed());
+        assertTrue(retry.replayed());
+        assertEquals(first.body(), retry.body());
+        assertEquals(1, runs.get());
+    }
+
+    @Test
+    void reusingTheKeyForAnotherBodyIsRejected() throws Exception {
+        order("khach", "k1", Map.of("items", 2));
+
+        assertThrows(IdempotencyMismatchException.class, () -> order("khach", "k1", Map.of("items", 3)));
+        assertEquals(1, runs.get());
+    }
+
+    @Test
+    void keysAreScopedPerUserAndAnonymousKeysAreRefused() throws Exception {
+        order("khach", "k1", Map.of("items", 2));
+        assertFalse(order("other", "k1", Map.of("items", 2)).replayed());
+
+        assertThrows(IllegalArgumentException.class, () -> order(null, "k1", Map.of("items", 2)));
+        // Không gửi key thì vẫn chạy bình thường
+        order(null, null, Map.of("items", 2));
+        assertEquals(3, runs.get());
+    }
+
+    @Test
+    void callerThatReadTheStoreBeforeAnotherInstanceFinishedReplaysInsteadOfRunningAgain() throws Exception {
+        raceAcrossInstances(new InMemoryIdempotencyStore());
+        raceAcrossInstances(new RedisIdempotencyStore(fakeRedis()));
+    }
+
+    // 2 instance dùng chung store: B đọc store (chưa có gì), rồi A chạy xong và lưu kết quả, rồi B mới giữ key
+    private void raceAcrossInstances(IdempotencyStore store) throws Exception {
+        AtomicInteger placed = new AtomicInteger();
+        CountDownLatch bRead = new CountDownLatch(1);
+        CountDownLatch aDone = new CountDownLatch(1);
+        IdempotencyStore pausedAfterFirstRead = new IdempotencyStore() {
+            private final AtomicInteger reads = new AtomicInteger();
+
+            @Override
+            public Optional<String> get(String key) {
+                Optional<String> stored = store.get(key);
+                if (reads.getAndIncrement() == 0) {
+                    bRead.countDown();
+                    await(aDone);
+                }
+                return stored;
+            }
+
+            @Override
+            public boolean tryAcquire(String key, Duration lockTtl) {
+                return store.tryAcquire(key, lockTtl);
+            }
+
+            @Override
+            public void complete(String key, String responseJson, Duration ttl) {
+                store.complete(key, responseJson, ttl);
+            }
+
+            @Override
+            public void release(String key) {
+                store.release(key);
+            }
+        };
+        IdempotencyService a = service(store);
+        IdempotencyService b = service(pausedAfterFirstRead);
+        IdempotencyService.Action placeOrder = () -> Map.of("orderId", placed.incrementAndGet());
+
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        try {
+            Future<IdempotencyService.Result> second =
+                    pool.submit(() -> b.execute("orders", "khach", "k1", Map.of("items", 2), placeOrder));
+            assertTrue(bRead.await(5, TimeUnit.SECONDS));
+            IdempotencyService.Result first = a.execute("orders", "khach", "k1", Map.of("items", 2), placeOrder);
+            aDone.countDown();
+
+            IdempotencyService.Result replay = second.get(10, TimeUnit.SECONDS);
+            assertEquals(1, placed.get(), store.getClass().getSimpleName());
+            assertFalse(first.replayed());
+            assertTrue(replay.replayed());
+            assertEquals(first.body(), replay.body());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    // StringRedisTemplate giả trên 1 map: GET, SET, SET NX, DEL và script nhả khoá (so giá trị rồi xoá)
+    @SuppressWarnings("unchecked")
+    private static StringRedisTemplate fakeRedis() {
+        Map<String, String> data = new ConcurrentHashMap<>();
+        ValueOperations<String, String> ops = mock(ValueOperations.class);
+        when(ops.get(anyString())).thenAnswer(inv -> data.get(inv.<String>getArgument(0)));
+        when(ops.setIfAbsent(anyString(), anyString(), any(Duration.class)))
+                .thenAnswer(inv -> data.putIfAbsent(inv.getArgument(0), inv.getArgument(1)) == null);
+        doAnswer(inv -> data.put(inv.getArgument(0), inv.getArgument(1)))
+                .when(ops).set(anyString(), anyString(), any(Duration.class));
+        StringRedisTemplate redis = mock(StringRedisTemplate.class);
+        when(redis.opsForValue()).thenReturn(ops);
+        when(redis.delete(anyString())).thenAnswer(inv -> data.remove(inv.<String>getArgument(0)) != null);
+        when(redis.execute(any(RedisScript.class), anyList(), any(Object[].class))).thenAnswer(inv -> {
+            String key = inv.<List<String>>getArgument(1).get(0);
+            return data.remove(key, inv.getArgument(2)) ? 1L : 0L;
+        });
+        return redis;
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package org.example.server.service;
+
+import org.example.server.repository.PromotionUsageRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Sổ mặc định của production (app.promotions.usage-store=jdbc) trên H2 chế độ MySQL (có INSERT IGNORE, FOR UPDATE)
+@DataJpaTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:promotion_usage;MODE=MySQL;NON_KEYWORDS=VALUE;LOCK_TIMEOUT=10000",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.datasource.hikari.maximum-pool-size=16",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({JdbcPromotionUsageLedger.class, PromotionUsageRepository.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED) // mỗi luồng tự mở transaction như 1 request
+class JdbcPromotionUsageLedgerTests {
+
+    @Autowired
+    private JdbcPromotionUsageLedger ledger;
+
+    @Autowired
+    private PlatformTransactionManager txManager;
+
+    @Test
+    void reserveStopsAtMaxUsesAndReleaseGivesBackOnce() {
+        TransactionTemplate tx = new TransactionTemplate(txManager);
+        tx.executeWithoutResult(s -> ledger.configure(2L, 3, 1));
+
+        assertTrue(reserve(tx, 2L, 100L));
+        assertTrue(reserve(tx, 2L, 101L));
+        assertFalse(reserve(tx, 2L, 102L));
+
+        tx.executeWithoutResult(s -> ledger.release(101L));
+        tx.executeWithoutResult(s -> ledger.release(101L)); // trả lần 2 không cộng thêm
+        assertEquals(2, ledger.usedCounts().get(2L));
+        assertTrue(reserve(tx, 2L, 102L));
+        assertFalse(reserve(tx, 2L, 103L));
+
+        tx.executeWithoutResult(s -> ledger.remove(2L));
+    }
+
+    private boolean reserve(TransactionTemplate tx, Long promotionId, Long orderId) {
+        return Boolean.TRUE.equals(tx.execute(s -> ledger.reserve(promotionId, orderId)));
+    }
+
+    @Test
+    void thousandConcurrentCheckoutsNeverExceedMaxUses() throws Exception {
+        TransactionTemplate tx = new TransactionTemplate(txManager);
+        PromotionUsageLedgerTests.thousandCheckouts(ledger, 16, work -> Boolean.TRUE.equals(tx.execute(s -> work.getAsBoolean())));
+    }
+}
@@ -0,0 +1,77 @@
+package org.example.server.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class KeyedLanesTests {
+
+    // 64 đơn, 20k lần submit từ 16 thread: mỗi đơn chỉ 1 drain chạy cùng lúc, luôn trên cùng 1 thread,
+    // và mỗi lần submit đều được 1 drain bắt đầu sau nó nhìn thấy
+    @Test
+    void sameKeyRunsSequentiallyOnOneThreadAndNothingIsLost() throws Exception {
+        int keys = 64;
+        Map<Long, AtomicInteger> inFlight = new ConcurrentHashMap<>();
+        Map<Long, String> threadOf = new ConcurrentHashMap<>();
+        Map<Long, AtomicInteger> submitted = new ConcurrentHashMap<>();
+        Map<Long, Integer> seen = new ConcurrentHashMap<>();
+        AtomicInteger overlaps = new AtomicInteger();
+        AtomicInteger wrongThread = new AtomicInteger();
+        AtomicInteger drains = new AtomicInteger();
+
+        KeyedLanes lanes = new KeyedLanes("test-lane", 4, key -> {
+            drains.incrementAndGet();
+            if (inFlight.computeIfAbsent(key, k -> new AtomicInteger()).incrementAndGet() > 1) overlaps.incrementAndGet();
+            String t = Thread.currentThread().getName();
+            if (!t.equals(threadOf.computeIfAbsent(key, k -> t))) wrongThread.incrementAndGet();
+            // Như drain thật: đọc "mọi event đã lưu" của đơn tại thời điểm bắt đầu
+            seen.put(key, submitted.get(key).get());
+            LockSupport.parkNanos(20_000);
+            inFlight.get(key).decrementAndGet();
+        });
+
+        ExecutorService producers = Executors.newFixedThreadPool(16);
+        CountDownLatch start = new CountDownLatch(1);
+        for (int p = 0; p < 16; p++) {
+            producers.submit(() -> {
+                start.await();
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < 1_250; i++) {
+                    long key = random.nextInt(keys);
+                    submitted.computeIfAbsent(key, k -> new AtomicInteger()).incrementAndGet();
+                    lanes.submit(key);
+                }
+                return null;
+            });
+        }
+        start.countDown();
+        producers.shutdown();
+        assertTrue(producers.awaitTermination(30, TimeUnit.SECONDS));
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (lanes.depth() > 0 && System.nanoTime() < deadline) Thread.sleep(5);
+        lanes.shutdown();
+        assertTrue(lanes.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertEquals(0, lanes.depth());
+        assertEquals(0, overlaps.get());
+        assertEquals(0, wrongThread.get());
+        for (Map.Entry<Long, AtomicInteger> e : submitted.entrySet()) {
+            assertEquals(e.getValue().get(), (int) seen.get(e.getKey()), "key " + e.getKey());
+        }
+        assertTrue(drains.get() < 20_000, "submits for a queued key should coalesce");
+    }
+
+    @Test
+    void keysMapToLanesByModulo() {
+        KeyedLanes lanes = new KeyedLanes("test-lane", 4, key -> {});
+        assertEquals(1, lanes.lane(5));
+        assertEquals(1, lanes.lane(9));
+        assertEquals(3, lanes.lane(-1));
+        lanes.shutdown();
+    }
+}
@@ -0,0 +1,283 @@
+package org.example.server.service;
+
+import jakarta.persistence.EntityManager;
+import org.example.server.dto.KitchenDtos.*;
+import org.example.server.entity.Order;
+import org.example.server.entity.OrderItem;
+import org.example.server.entity.Product;
+import org.example.server.entity.User;
+import org.example.server.event.OrderChangedEvent;
+import org.example.server.repository.OrderRepository;
+import org.example.server.repository.ProductRepository;
+import org.example.server.repository.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.util.*;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+// Bảng bếp trên H2: client áp các delta đã đẩy phải ra đúng bảng đọc lại từ DB,
+// bộ đếm món phải khớp query GROUP BY cũ sau mỗi bước
+@DataJpaTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:kitchen_board;MODE=MySQL;NON_KEYWORDS=VALUE",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import(KitchenBoardService.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED) // mỗi bước commit riêng rồi mới tới listener như thật
+class KitchenBoardServiceTests {
+
+    @MockitoBean
+    private SimpMessagingTemplate messagingTemplate;
+
+    @Autowired
+    private KitchenBoardService board;
+
+    @Autowired
+    private OrderRepository orderRepo;
+
+    @Autowired
+    private ProductRepository productRepo;
+
+    @Autowired
+    private UserRepository userRepo;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    private PlatformTransactionManager txManager;
+
+    @Autowired
+    private EntityManager em;
+
+    @Autowired
+    private JdbcTemplate jdbc;
+
+    private final List<BoardDelta> deltas = new ArrayList<>();
+    private final List<AggregateUpdate> aggregates = new ArrayList<>();
+
+    private User chef;
+    private Product pho, tra, com;
+
+    @BeforeEach
+    void setUp() {
+        jdbc.update("DELETE FROM order_items");
+        jdbc.update("DELETE FROM orders");
+        chef = userRepo.findByUsername("bep")
+                .orElseGet(() -> userRepo.save(User.builder().username("bep").password("x").build()));
+        pho = product("Phở bò");
+        tra = product("Trà đá");
+        com = product("Cơm tấm");
+        doAnswer(inv -> {
+            Object payload = inv.getArgument(1);
+            if (payload instanceof BoardDelta d) deltas.add(d);
+            if (payload instanceof AggregateUpdate u) aggregates.add(u);
+            return null;
+        }).when(messagingTemplate).convertAndSend(anyString(), any(Object.class));
+        board.load();
+    }
+
+    @Test
+    void itemLifecyclePushesOnlyTheChangedParts() {
+        long seq = board.snapshot().seq();
+        Order order = order("PENDING", pho, 2, tra, 1);
+        Long p = order.getItems().get(0).getId();
+
+        change(order.getId(), o -> {});
+        assertEquals(List.of(), deltas, "PENDING orders are not on the board");
+
+        change(order.getId(), o -> o.setStatus("CONFIRMED"));
+        assertEquals(List.of("ORDER_ADDED"), types());
+        assertEquals(seq + 1, deltas.get(0).seq());
+        assertEquals(2, deltas.get(0).order().items().size());
+
+        deltas.clear();
+        change(order.getId(), o -> {
+            item(o, p).setChef(chef);
+            item(o, p).setStatus("COOKING");
+            o.setStatus("PREPARING");
+        });
+        assertEquals(List.of("ORDER_STATUS", "ITEM_UPDATED"), types());
+        assertEquals("PREPARING", deltas.get(0).orderStatus());
+        assertEquals(p, deltas.get(1).itemId());
+        assertEquals("COOKING", deltas.get(1).itemStatus());
+        assertEquals("bep", deltas.get(1).chef().username());
+
+        deltas.clear();
+        change(order.getId(), o -> item(o, p).setStatus("DONE"));
+        assertEquals(List.of("ITEM_UPDATED"), types());
+        assertEquals("DONE", deltas.get(0).itemStatus());
+        assertEquals(Map.of(tra.getId(), 1L), counts(board.aggregated()));
+
+        deltas.clear();
+        change(order.getId(), o -> o.setStatus("CANCELLED"));
+        assertEquals(List.of("ORDER_REMOVED"), types());
+        assertEquals(seq + 5, deltas.get(0).seq());
+        assertEquals(List.of(), board.orders());
+        assertEquals(Map.of(), counts(board.aggregated()));
+    }
+
+    @Test
+    void deltasAndCountersMatchTheDatabaseAfterEveryStep() {
+        Random random = new Random(7);
+        List<Product> menu = List.of(pho, tra, com);
+        List<Long> orderIds = new ArrayList<>();
+        for (int n = 0; n < 5; n++) {
+            Order o = order("PENDING", menu.get(random.nextInt(3)), 1 + random.nextInt(3),
+                    menu.get(random.nextInt(3)), 1 + random.nextInt(3));
+            orderIds.add(o.getId());
+        }
+        Map<Long, OrderView> client = byId(board.snapshot().orders());
+        Map<Long, Long> clientCounts = counts(board.aggregated());
+
+        for (int step = 0; step < 60; step++) {
+            Long orderId = orderIds.get(random.nextInt(orderIds.size()));
+            int action = random.nextInt(10);
+            change(orderId, o -> {
+                if ("PENDING".equals(o.getStatus())) {
+                    o.setStatus("CONFIRMED");
+                } else if (action == 0 && !"CANCELLED".equals(o.getStatus())) {
+                    o.setStatus("CANCELLED");
+                } else {
+                    // Như OrderService.updateItemStatus: đổi 1 món rồi suy ra trạng thái đơn
+                    OrderItem i = o.getItems().get(random.nextInt(o.getItems().size()));
+                    String next = List.of("PENDING", "COOKING", "DONE").get(random.nextInt(3));
+                    i.setStatus(next);
+                    if ("COOKING".equals(next)) i.setChef(chef);
+                    if ("PENDING".equals(next)) i.setChef(null);
+                    if (!BOARD.contains(o.getStatus())) return;
+                    boolean allDone = o.getItems().stream().allMatch(x -> "DONE".equals(x.getStatus()));
+                    boolean started = o.getItems().stream().anyMatch(x -> !"PENDING".equals(x.getStatus()));
+                    o.setStatus(allDone ? "DELIVERING" : started ? "PREPARING" : "CONFIRMED");
+                }
+            });
+
+            replay(client, deltas);
+            deltas.clear();
+            for (AggregateUpdate u : aggregates) {
+                for (AggregateRow r : u.changed()) {
+                    if (r.totalQuantity() == 0) clientCounts.remove(r.productId());
+                    else clientCounts.put(r.productId(), r.totalQuantity());
+                }
+            }
+            aggregates.clear();
+
+            Map<Long, Long> expected = groupByQuery();
+            assertEquals(expected, counts(board.aggregated()), "step " + step);
+            assertEquals(expected, clientCounts, "pushed counters, step " + step);
+            assertEquals(byId(reloaded()), client, "replayed board, step " + step);
+        }
+    }
+
+    private static final List<String> BOARD = List.of("CONFIRMED", "PREPARING");
+
+    // Query GROUP BY cũ của /api/kitchen/aggregated, thêm điều kiện bỏ món đã DONE
+    private Map<Long, Long> groupByQuery() {
+        List<Object[]> rows = em.createQuery("""
+                SELECT oi.product.id, SUM(oi.quantity)
+                FROM OrderItem oi
+                JOIN oi.order o
+                WHERE o.status IN ('CONFIRMED', 'PREPARING') AND oi.status <> 'DONE'
+                GROUP BY oi.product.id, oi.product.name
+                """, Object[].class).getResultList();
+        Map<Long, Long> counts = new HashMap<>();
+        for (Object[] r : rows) counts.put((Long) r[0], ((Number) r[1]).longValue());
+        return counts;
+    }
+
+    // Bảng dựng lại từ DB như lúc khởi động
+    private List<OrderView> reloaded() {
+        KitchenBoardService fresh = new KitchenBoardService(orderRepo, mock(SimpMessagingTemplate.class));
+        new TransactionTemplate(txManager).executeWithoutResult(s -> fresh.load());
+        return fresh.orders();
+    }
+
+    // Client áp delta theo seq
+    private static void replay(Map<Long, OrderView> client, List<BoardDelta> deltas) {
+        for (BoardDelta d : deltas) {
+            switch (d.type()) {
+                case "ORDER_ADDED" -> client.put(d.orderId(), d.order());
+                case "ORDER_REMOVED" -> client.remove(d.orderId());
+                case "ORDER_STATUS" -> client.computeIfPresent(d.orderId(), (id, o) ->
+                        new OrderView(o.id(), d.orderStatus(), o.createdAt(), o.user(), o.items()));
+                case "ITEM_UPDATED" -> client.computeIfPresent(d.orderId(), (id, o) -> {
+                    List<ItemView> items = o.items().stream()
+                            .map(i -> i.id().equals(d.itemId())
+                                    ? new ItemView(i.id(), i.quantity(), d.itemStatus(), d.chef(), i.product())
+                                    : i)
+                            .toList();
+                    return new OrderView(o.id(), d.orderStatus(), o.createdAt(), o.user(), items);
+                });
+                default -> fail("unknown delta " + d.type());
+            }
+        }
+    }
+
+    private void change(Long orderId, Consumer<Order> edit) {
+        new TransactionTemplate(txManager).executeWithoutResult(s -> {
+            Order o = orderRepo.findByIdWithDetails(orderId).orElseThrow();
+            edit.accept(o);
+            orderRepo.save(o);
+            eventPublisher.publishEvent(new OrderChangedEvent(orderId));
+        });
+    }
+
+    private Order order(String status, Product first, int firstQty, Product second, int secondQty) {
+        Order order = Order.builder()
+                .status(status)
+                .paymentMethod("COD")
+                .total(BigDecimal.valueOf(100000))
+                .items(new ArrayList<>())
+                .build();
+        order.getItems().add(OrderItem.builder().order(order).product(first).quantity(firstQty).price(first.getPrice()).build());
+        order.getItems().add(OrderItem.builder().order(order).product(second).quantity(secondQty).price(second.getPrice()).build());
+        return orderRepo.save(order);
+    }
+
+    private Product product(String name) {
+        return productRepo.save(Product.builder().name(name).price(BigDecimal.valueOf(30000)).stock(100).active(true).build());
+    }
+
+    private static OrderItem item(Order order, Long id) {
+        return order.getItems().stream().filter(i -> i.getId().equals(id)).findFirst().orElseThrow();
+    }
+
+    private List<String> types() {
+        return deltas.stream().map(BoardDelta::type).toList();
+    }
+
+    private static Map<Long, OrderView> byId(List<OrderView> orders) {
+        Map<Long, OrderView> map = new HashMap<>();
+        for (OrderView o : orders) map.put(o.id(), o);
+        return map;
+    }
+
+    private static Map<Long, Long> counts(List<AggregateRow> rows) {
+        Map<Long, Long> map = new HashMap<>();
+        for (AggregateRow r : rows) map.put(r.productId(), r.totalQuantity());
+        return map;
+    }
+}
@@ -0,0 +1,286 @@
+package org.example.server.service;
+
+import org.example.server.service.KitchenDispatchPlanner.Assignment;
+import org.example.server.service.KitchenDispatchPlanner.ChefLoad;
+import org.example.server.service.KitchenDispatchPlanner.Task;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class KitchenDispatchPlannerTests {
+
+    private static final int MAX_BATCH = 6;
+    private static final int MAX_QUEUE_MINUTES = 6;
+    private static final LocalDateTime T0 = LocalDateTime.of(2025, 1, 1, 11, 0);
+
+    // Phở 8', cơm 12', trà 2', bún 10', bánh mì 5'
+    private static final Map<Long, Integer> PREP = Map.of(1L, 8, 2L, 12, 3L, 2, 4L, 10, 5L, 5);
+
+    private final KitchenDispatchPlanner planner = new KitchenDispatchPlanner(MAX_BATCH, 0.25, MAX_QUEUE_MINUTES);
+
+    @Test
+    void identicalDishesAcrossOrdersAreCookedTogether() {
+        List<Task> tasks = List.of(
+                new Task(1L, 100L, 1L, 2, T0),
+                new Task(2L, 101L, 1L, 2, T0.plusMinutes(1)),
+                new Task(3L, 102L, 1L, 2, T0.plusMinutes(2)));
+
+        List<Assignment> plan = planner.plan(tasks, List.of(new ChefLoad("a", 0, Map.of())), PREP::get);
+
+        assertEquals(1, plan.size());
+        assertEquals(List.of(1L, 2L, 3L), plan.get(0).itemIds());
+        assertEquals(6, plan.get(0).portions());
+        assertEquals(planner.batchMinutes(8, 6), plan.get(0).minutes());
+    }
+
+    @Test
+    void batchIsSplitAtMaxPortions() {
+        List<Task> tasks = List.of(
+                new Task(1L, 100L, 1L, 4, T0),
+                new Task(2L, 101L, 1L, 4, T0.plusMinutes(1)));
+
+        List<Assignment> plan = planner.plan(tasks, List.of(
+                new ChefLoad("a", 0, Map.of()), new ChefLoad("b", 0, Map.of())), PREP::get);
+
+        assertEquals(2, plan.size());
+        assertTrue(!plan.get(0).username().equals(plan.get(1).username()), "hai mẻ nên chia cho 2 người");
+    }
+
+    @Test
+    void prefersLeastLoadedChef() {
+        List<Task> tasks = List.of(new Task(1L, 100L, 2L, 1, T0));
+
+        List<Assignment> plan = planner.plan(tasks, List.of(
+                new ChefLoad("busy", 30, Map.of()), new ChefLoad("free", 5, Map.of())), PREP::get);
+
+        assertEquals("free", plan.get(0).username());
+    }
+
+    @Test
+    void joinsQueuedBatchOfSameDish() {
+        List<Task> tasks = List.of(new Task(1L, 100L, 1L, 1, T0));
+
+        // "a" bận hơn nhưng đang chờ nấu 2 phần phở -> nấu kèm chỉ tốn thêm 2'
+        List<Assignment> plan = planner.plan(tasks, List.of(
+                new ChefLoad("a", 4, Map.of(1L, 2)), new ChefLoad("b", 0, Map.of())), PREP::get);
+
+        assertEquals("a", plan.get(0).username());
+        assertEquals(2, plan.get(0).minutes());
+    }
+
+    @Test
+    void busyChefsGetNoNewBatchBeyondQueueLimit() {
+        List<Task> tasks = List.of(new Task(1L, 100L, 2L, 1, T0), new Task(2L, 101L, 1L, 1, T0));
+
+        // Cả 2 người còn quá nhiều việc; chỉ món phở nấu kèm được mẻ đang chờ của "a"
+        List<Assignment> plan = planner.plan(tasks, List.of(
+                new ChefLoad("a", 20, Map.of(1L, 2)), new ChefLoad("b", 15, Map.of())), PREP::get);
+
+        assertEquals(1, plan.size());
+        assertEquals("a", plan.get(0).username());
+        assertEquals(List.of(2L), plan.get(0).itemIds());
+    }
+
+    @Test
+    void fullQueuedBatchOfSameDishDoesNotBypassQueueLimit() {
+        List<Task> tasks = List.of(new Task(1L, 100L, 1L, 1, T0));
+
+        // "a" đang chờ đúng 1 mẻ phở đầy: thêm phở là mẻ mới, mà "a" đã quá giới hạn hàng đợi
+        assertEquals(List.of(), planner.plan(tasks, List.of(new ChefLoad("a", 20, Map.of(1L, MAX_BATCH))), PREP::get));
+
+        // 8 phần chờ = 1 mẻ đầy + mẻ 2 phần còn chỗ -> nấu kèm được
+        List<Assignment> plan = planner.plan(tasks, List.of(new ChefLoad("a", 20, Map.of(1L, MAX_BATCH + 2))), PREP::get);
+        assertEquals(1, plan.size());
+        assertEquals(2, plan.get(0).minutes());
+    }
+
+    @Test
+    void queuedPortionsAreTimedAsFullBatches() {
+        assertEquals(0, planner.queuedMinutes(8, 0));
+        assertEquals(planner.batchMinutes(8, 4), planner.queuedMinutes(8, 4));
+        assertEquals(planner.batchMinutes(8, MAX_BATCH) + planner.batchMinutes(8, 2), planner.queuedMinutes(8, MAX_BATCH + 2));
+        assertEquals(2 * planner.batchMinutes(8, MAX_BATCH), planner.queuedMinutes(8, 2 * MAX_BATCH));
+    }
+
+    // ---- Mô phỏng: tự giành món (hiện tại) vs bộ chia món, 10 ca mỗi mức tải ----
+
+    private static final int CHEFS = 3;
+    private static final int ARRIVAL_MINUTES = 180;
+    private static final int END = 2000;
+
+    private record SimItem(long id, long orderId, long productId, int qty, int arrival) {}
+
+    private record SimResult(int completedInWindow, double avgLeadMinutes) {}
+
+    // Cả 2 cách đều nấu mẻ tối đa MAX_BATCH phần và bên tự giành không bị phạt khi nhận trùng, nên bộ chia món
+    // chỉ cần theo kịp: lợi ích thật của nó là bỏ được các lần giành nhau, mô phỏng này không tính chi phí đó
+    @Test
+    void dispatcherKeepsUpWithFreeForAllClaiming() {
+        for (double rate : new double[]{0.3, 0.4}) {
+            double ffaLead = 0, dispatchedLead = 0;
+            int ffaDone = 0, dispatchedDone = 0;
+            for (long seed = 1; seed <= 10; seed++) {
+                List<SimItem> items = generateOrders(seed, rate);
+                SimResult ffa = freeForAll(items, seed);
+                SimResult dispatched = dispatched(items);
+                ffaLead += ffa.avgLeadMinutes();
+                ffaDone += ffa.completedInWindow();
+                dispatchedLead += dispatched.avgLeadMinutes();
+                dispatchedDone += dispatched.completedInWindow();
+            }
+
+            assertTrue(dispatchedLead <= ffaLead * 1.03, "lead time, rate " + rate + ": " + dispatchedLead + " vs " + ffaLead);
+            assertTrue(dispatchedDone >= ffaDone * 0.98, "throughput, rate " + rate + ": " + dispatchedDone + " vs " + ffaDone);
+        }
+    }
+
+    // Khoảng `rate` đơn/phút, mỗi đơn 1-3 món, mỗi món 1-2 phần
+    private static List<SimItem> generateOrders(long seed, double rate) {
+        Random random = new Random(seed);
+        List<SimItem> items = new ArrayList<>();
+        long itemId = 1, orderId = 1;
+        for (int t = 0; t < ARRIVAL_MINUTES; t++) {
+            if (random.nextDouble() >= rate) continue;
+            int lines = 1 + random.nextInt(3);
+            for (int k = 0; k < lines; k++) {
+                items.add(new SimItem(itemId++, orderId, 1 + random.nextInt(5), 1 + random.nextInt(2), t));
+            }
+            orderId++;
+        }
+        return items;
+    }
+
+    // Ai rảnh thì tự nhận trên bảng: chọn món cũ nhất còn trống rồi nấu kèm các món cùng loại đang chờ
+    // (tới MAX_BATCH phần). Nhiều người rảnh cùng phút bấm theo thứ tự ngẫu nhiên; người chậm tay thấy món
+    // đã bị nhận thì chọn lại ngay trong phút đó, không mất thời gian.
+    private SimResult freeForAll(List<SimItem> items, long seed) {
+        Random random = new Random(seed);
+        List<SimItem> pending = new ArrayList<>();
+        int[] busyUntil = new int[CHEFS];
+        List<List<SimItem>> cooking = new ArrayList<>(Collections.nCopies(CHEFS, null));
+        Map<Long, Integer> doneAt = new HashMap<>();
+        int next = 0;
+
+        for (int t = 0; t < END; t++) {
+            while (next < items.size() && items.get(next).arrival() == t) pending.add(items.get(next++));
+
+            List<Integer> free = new ArrayList<>();
+            for (int c = 0; c < CHEFS; c++) {
+                if (busyUntil[c] > t) continue;
+                if (cooking.get(c) != null) {
+                    for (SimItem i : cooking.get(c)) doneAt.put(i.id(), busyUntil[c]);
+                    cooking.set(c, null);
+                }
+                free.add(c);
+            }
+            Collections.shuffle(free, random);
+
+            for (int c : free) {
+                if (pending.isEmpty()) break;
+                long productId = pending.get(0).productId();
+                List<SimItem> batch = new ArrayList<>();
+                int portions = 0;
+                for (Iterator<SimItem> it = pending.iterator(); it.hasNext(); ) {
+                    SimItem i = it.next();
+                    if (i.productId() != productId || (portions > 0 && portions + i.qty() > MAX_BATCH)) continue;
+                    batch.add(i);
+                    portions += i.qty();
+                    it.remove();
+                }
+                cooking.set(c, batch);
+                busyUntil[c] = t + planner.batchMinutes(PREP.get(productId), portions);
+            }
+        }
+        return measure(items, doneAt);
+    }
+
+    // Mỗi phút chia các món chưa ai nhận cho hàng đợi của từng người; ai rảnh thì nấu mẻ kế tiếp
+    private SimResult dispatched(List<SimItem> items) {
+        Map<Long, SimItem> byId = new HashMap<>();
+        for (SimItem i : items) byId.put(i.id(), i);
+
+        List<SimItem> unassigned = new ArrayList<>();
+        int[] busyUntil = new int[CHEFS];
+        List<List<SimItem>> cooking = new ArrayList<>(Collections.nCopies(CHEFS, null));
+        List<List<List<SimItem>>> queues = new ArrayList<>();
+        for (int c = 0; c < CHEFS; c++) queues.add(new ArrayList<>());
+        Map<Long, Integer> doneAt = new HashMap<>();
+        int next = 0;
+
+        for (int t = 0; t < END; t++) {
+            while (next < items.size() && items.get(next).arrival() == t) unassigned.add(items.get(next++));
+
+            for (int c = 0; c < CHEFS; c++) {
+                if (cooking.get(c) != null && busyUntil[c] <= t) {
+                    for (SimItem i : cooking.get(c)) doneAt.put(i.id(), busyUntil[c]);
+                    cooking.set(c, null);
+                }
+            }
+
+            if (!unassigned.isEmpty()) {
+                List<Task> tasks = unassigned.stream()
+                        .map(i -> new Task(i.id(), i.orderId(), i.productId(), i.qty(), T0.plusMinutes(i.arrival())))
+                        .toList();
+                List<ChefLoad> loads = new ArrayList<>();
+                for (int c = 0; c < CHEFS; c++) {
+                    int minutes = Math.max(0, busyUntil[c] - t);
+                    Map<Long, Integer> queued = new HashMap<>();
+                    for (List<SimItem> batch : queues.get(c)) {
+                        int portions = portions(batch);
+                        minutes += planner.batchMinutes(PREP.get(batch.get(0).productId()), portions);
+                        queued.merge(batch.get(0).productId(), portions, Integer::sum);
+                    }
+                    loads.add(new ChefLoad(String.valueOf(c), minutes, queued));
+                }
+
+                Set<Long> assigned = new HashSet<>();
+                for (Assignment a : planner.plan(tasks, loads, PREP::get)) {
+                    assigned.addAll(a.itemIds());
+                    List<List<SimItem>> queue = queues.get(Integer.parseInt(a.username()));
+                    List<SimItem> added = a.itemIds().stream().map(byId::get).toList();
+                    // Gộp vào mẻ cùng món đang chờ nếu còn chỗ, không thì mở mẻ mới: 1 mẻ tối đa MAX_BATCH phần
+                    queue.stream()
+                            .filter(b -> b.get(0).productId() == a.productId()
+                                    && portions(b) + portions(added) <= MAX_BATCH)
+                            .findFirst()
+                            .ifPresentOrElse(b -> b.addAll(added), () -> queue.add(new ArrayList<>(added)));
+                }
+                unassigned.removeIf(i -> assigned.contains(i.id()));
+            }
+
+            for (int c = 0; c < CHEFS; c++) {
+                if (cooking.get(c) != null || queues.get(c).isEmpty()) continue;
+                List<SimItem> batch = queues.get(c).remove(0);
+                assertTrue(batch.size() == 1 || portions(batch) <= MAX_BATCH, "batch of " + portions(batch));
+                cooking.set(c, batch);
+                busyUntil[c] = t + planner.batchMinutes(PREP.get(batch.get(0).productId()), portions(batch));
+            }
+        }
+        return measure(items, doneAt);
+    }
+
+    private static int portions(List<SimItem> batch) {
+        return batch.stream().mapToInt(SimItem::qty).sum();
+    }
+
+    private static SimResult measure(List<SimItem> items, Map<Long, Integer> doneAt) {
+        Map<Long, Integer> arrival = new HashMap<>();
+        Map<Long, Integer> finished = new HashMap<>();
+        for (SimItem i : items) {
+            arrival.put(i.orderId(), i.arrival());
+            finished.merge(i.orderId(), doneAt.getOrDefault(i.id(), END), Math::max);
+        }
+
+        int inWindow = 0;
+        double lead = 0;
+        for (var e : finished.entrySet()) {
+            if (e.getValue() <= ARRIVAL_MINUTES) inWindow++;
+            lead += e.getValue() - arrival.get(e.getKey());
+        }
+        return new SimResult(inWindow, lead / finished.size());
+    }
+}
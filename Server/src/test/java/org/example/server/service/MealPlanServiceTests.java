@@ -0,0 +1,29 @@
+package org.example.server.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class MealPlanServiceTests {
+
+    @Test
+    void budgetIsRoundedDownToStep() {
+        assertEquals(50_000, MealPlanService.budgetBucket(new BigDecimal("57000"), 10_000));
+        assertEquals(10_000, MealPlanService.budgetBucket(new BigDecimal("10000"), 10_000));
+    }
+
+    @Test
+    void budgetBelowOneStepIsKeptNotTreatedAsUnlimited() {
+        assertEquals(8_000, MealPlanService.budgetBucket(new BigDecimal("8000"), 10_000));
+        assertEquals(1, MealPlanService.budgetBucket(new BigDecimal("0.5"), 10_000));
+    }
+
+    @Test
+    void missingOrNonPositiveBudgetMeansUnlimited() {
+        assertEquals(0, MealPlanService.budgetBucket(null, 10_000));
+        assertEquals(0, MealPlanService.budgetBucket(BigDecimal.ZERO, 10_000));
+        assertEquals(0, MealPlanService.budgetBucket(new BigDecimal("-5"), 10_000));
+    }
+}
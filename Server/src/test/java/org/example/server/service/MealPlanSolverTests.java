@@ -0,0 +1,186 @@
+package org.example.server.service;
+
+import org.example.server.service.MealPlanSolver.Item;
+import org.example.server.service.MealPlanSolver.Limits;
+import org.example.server.service.MealPlanSolver.Plan;
+import org.example.server.service.MealPlanSolver.Target;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MealPlanSolverTests {
+
+    private static final long SECOND = 1_000_000_000L;
+
+    private final MealPlanSolver solver = new MealPlanSolver();
+
+    @Test
+    void findsExactCombinationWhenOneExists() {
+        List<Item> items = List.of(
+                new Item(1L, 600, 40, 60, 20, 50000),   // cơm gà
+                new Item(2L, 400, 25, 50, 10, 40000),   // phở
+                new Item(3L, 150, 1, 35, 0, 15000),     // nước ép
+                new Item(4L, 900, 20, 100, 45, 70000)); // combo chiên
+        // = 2 x cơm gà + 1 x phở + 2 x nước ép
+        Target target = new Target(1900, 107, 240, 50);
+
+        Plan plan = solver.solve(items, target, new Limits(6, 2, 0, SECOND));
+
+        assertEquals(Map.of(1L, 2, 2L, 1, 3L, 2), plan.quantities());
+        assertEquals(0.0, plan.deviation(), 1e-9);
+        assertTrue(plan.complete());
+    }
+
+    @Test
+    void respectsBudgetAndPortionLimits() {
+        List<Item> items = List.of(
+                new Item(1L, 600, 40, 60, 20, 50000),
+                new Item(2L, 400, 25, 50, 10, 40000),
+                new Item(3L, 150, 1, 35, 0, 15000));
+        Plan plan = solver.solve(items, new Target(2000, 107, 240, 50), new Limits(6, 2, 100000, SECOND));
+
+        assertTrue(plan.price() <= 100000);
+        assertTrue(plan.quantities().values().stream().mapToInt(Integer::intValue).sum() <= 6);
+        assertTrue(plan.quantities().values().stream().allMatch(q -> q <= 2));
+    }
+
+    @Test
+    void matchesBruteForceOnRandomMenus() {
+        Random random = new Random(5);
+        for (int round = 0; round < 30; round++) {
+            List<Item> items = randomMenu(random, 7);
+            Target target = new Target(1800 + random.nextInt(600), 90 + random.nextInt(40), 200 + random.nextInt(80), 50 + random.nextInt(20));
+            Limits limits = new Limits(5, 2, round % 2 == 0 ? 0 : 150000, 10 * SECOND);
+
+            Plan plan = solver.solve(items, target, limits);
+            double best = bruteForce(items, target, limits, 0, new int[items.size()], 0);
+
+            assertTrue(plan.complete());
+            assertEquals(best, plan.deviation(), 1e-9, "round " + round);
+        }
+    }
+
+    @Test
+    void budgetUsedUpBeforeSearchReturnsTheGreedyPlanAsIncomplete() {
+        List<Item> items = randomMenu(new Random(9), 200);
+        Target target = new Target(2200, 120, 260, 70);
+        Limits limits = new Limits(8, 2, 0, 20_000_000L);
+        // Lần đọc đầu (tính deadline) là 0, mọi lần sau đã quá hạn
+        AtomicInteger reads = new AtomicInteger();
+        MealPlanSolver expired = new MealPlanSolver(() -> reads.getAndIncrement() == 0 ? 0 : SECOND);
+
+        Plan plan = expired.solve(items, target, limits);
+
+        assertFalse(plan.complete());
+        assertEquals(2, reads.get());
+        Plan greedy = greedy(items, target, limits);
+        assertEquals(greedy.quantities(), plan.quantities());
+        assertEquals(greedy.deviation(), plan.deviation(), 1e-9);
+        // lời giải tham lam đã khá sát: lệch calo dưới 10%
+        assertTrue(Math.abs(plan.calories() - 2200) < 220, "calories " + plan.calories());
+    }
+
+    @Test
+    void stopsAtTimeBudgetWithBestSoFar() {
+        List<Item> items = randomMenu(new Random(9), 200);
+        Target target = new Target(2200, 120, 260, 70);
+        Limits limits = new Limits(8, 2, 0, 20_000_000L);
+        // Mỗi lần xem đồng hồ trôi 1ms: hết 20ms sau khoảng 20 lần kiểm tra
+        AtomicInteger reads = new AtomicInteger();
+        MealPlanSolver ticking = new MealPlanSolver(() -> reads.getAndIncrement() * 1_000_000L);
+
+        Plan plan = ticking.solve(items, target, limits);
+
+        assertFalse(plan.complete());
+        assertEquals(22, reads.get());
+        assertTrue(plan.deviation() <= greedy(items, target, limits).deviation());
+    }
+
+    // Cùng bước tham lam như solver: duyệt món nhiều calo trước, thêm phần giảm độ lệch nhiều nhất
+    private static Plan greedy(List<Item> menu, Target t, Limits limits) {
+        List<Item> items = menu.stream()
+                .sorted(Comparator.comparingDouble(Item::calories).reversed().thenComparing(Item::id))
+                .toList();
+        double[] target = {t.calories(), t.protein(), t.carbs(), t.fat()};
+        int[] qty = new int[items.size()];
+        double current = deviation(items, qty, target);
+        for (int portions = 0; portions < limits.maxPortions(); portions++) {
+            int bestItem = -1;
+            double bestDev = current;
+            for (int i = 0; i < items.size(); i++) {
+                if (qty[i] >= limits.maxPerItem()) continue;
+                qty[i]++;
+                double d = deviation(items, qty, target);
+                qty[i]--;
+                if (d < bestDev) {
+                    bestDev = d;
+                    bestItem = i;
+                }
+            }
+            if (bestItem < 0) break;
+            qty[bestItem]++;
+            current = bestDev;
+        }
+        Map<Long, Integer> quantities = new LinkedHashMap<>();
+        for (int i = 0; i < items.size(); i++) if (qty[i] > 0) quantities.put(items.get(i).id(), qty[i]);
+        return new Plan(quantities, 0, 0, 0, 0, 0, current, false);
+    }
+
+    private static double deviation(List<Item> items, int[] qty, double[] target) {
+        double[] sum = new double[4];
+        for (int k = 0; k < items.size(); k++) {
+            Item it = items.get(k);
+            sum[0] += it.calories() * qty[k];
+            sum[1] += it.protein() * qty[k];
+            sum[2] += it.carbs() * qty[k];
+            sum[3] += it.fat() * qty[k];
+        }
+        double d = 0;
+        for (int m = 0; m < 4; m++) d += WEIGHTS[m] * Math.abs(sum[m] - target[m]) / target[m];
+        return d;
+    }
+
+    private static List<Item> randomMenu(Random random, int n) {
+        List<Item> items = new ArrayList<>();
+        for (long id = 1; id <= n; id++) {
+            double protein = 5 + random.nextInt(40), carbs = 10 + random.nextInt(90), fat = random.nextInt(35);
+            double calories = protein * 4 + carbs * 4 + fat * 9;
+            items.add(new Item(id, calories, protein, carbs, fat, 15000 + random.nextInt(8) * 5000));
+        }
+        return items;
+    }
+
+    private static final double[] WEIGHTS = {2.0, 1.5, 1.0, 1.0};
+
+    private static double bruteForce(List<Item> items, Target t, Limits limits, int i, int[] qty, int used) {
+        if (i == items.size()) {
+            double[] sum = new double[4];
+            double price = 0;
+            for (int k = 0; k < items.size(); k++) {
+                Item it = items.get(k);
+                sum[0] += it.calories() * qty[k];
+                sum[1] += it.protein() * qty[k];
+                sum[2] += it.carbs() * qty[k];
+                sum[3] += it.fat() * qty[k];
+                price += it.price() * qty[k];
+            }
+            if (limits.budget() > 0 && price > limits.budget()) return Double.POSITIVE_INFINITY;
+            double[] target = {t.calories(), t.protein(), t.carbs(), t.fat()};
+            double d = 0;
+            for (int m = 0; m < 4; m++) d += WEIGHTS[m] * Math.abs(sum[m] - target[m]) / target[m];
+            return d;
+        }
+        double best = Double.POSITIVE_INFINITY;
+        for (int q = 0; q <= Math.min(limits.maxPerItem(), limits.maxPortions() - used); q++) {
+            qty[i] = q;
+            best = Math.min(best, bruteForce(items, t, limits, i + 1, qty, used + q));
+        }
+        qty[i] = 0;
+        return best;
+    }
+}
@@ -0,0 +1,186 @@
+package org.example.server.service;
+
+import org.example.server.common.ApiError;
+import org.example.server.common.GlobalExceptionHandler;
+import org.example.server.dto.OrderDtos;
+import org.example.server.entity.Order;
+import org.example.server.entity.OrderItem;
+import org.example.server.entity.Product;
+import org.example.server.entity.User;
+import org.example.server.repository.OrderRepository;
+import org.example.server.repository.ProductRepository;
+import org.example.server.repository.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.ResponseEntity;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Lịch sử đơn theo cursor (createdAt, id) trên H2: nhiều đơn trùng createdAt vẫn không lặp, không sót
+@DataJpaTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:order_history;MODE=MySQL;NON_KEYWORDS=VALUE",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import(OrderService.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED) // mỗi trang là 1 request riêng
+class OrderHistoryTests {
+
+    private static final LocalDateTime T0 = LocalDateTime.of(2025, 6, 1, 11, 0);
+    private static final LocalDateTime T1 = LocalDateTime.of(2025, 6, 1, 12, 0);
+    private static final LocalDateTime T2 = LocalDateTime.of(2025, 6, 1, 13, 0);
+
+    @MockitoBean
+    private ShippingInfoService shippingInfoService;
+
+    @MockitoBean
+    private PricingService pricingService;
+
+    @MockitoBean
+    private PromotionService promotionService;
+
+    @MockitoBean
+    private NotificationService notificationService;
+
+    @MockitoBean
+    private OutboxService outboxService;
+
+    @MockitoBean
+    private StockReservationService stockReservationService;
+
+    @Autowired
+    private OrderService orderService;
+
+    @Autowired
+    private OrderRepository orderRepo;
+
+    @Autowired
+    private UserRepository userRepo;
+
+    @Autowired
+    private ProductRepository productRepo;
+
+    @Autowired
+    private JdbcTemplate jdbc;
+
+    private User khach;
+    private Product pho;
+
+    @BeforeEach
+    void setUp() {
+        jdbc.update("DELETE FROM order_items");
+        jdbc.update("DELETE FROM orders");
+        khach = userRepo.findByUsername("khach")
+                .orElseGet(() -> userRepo.save(User.builder().username("khach").password("x").build()));
+        pho = productRepo.save(Product.builder().name("Phở bò").price(BigDecimal.valueOf(50000)).stock(10).active(true).build());
+    }
+
+    @Test
+    void pagesAcrossEqualCreatedAtWithoutDuplicatesOrGaps() {
+        // 3 đơn cùng T1 và 3 đơn cùng T0: ranh giới trang rơi vào giữa nhóm trùng giờ
+        List<Long> t1 = List.of(order(khach, T1), order(khach, T1), order(khach, T1));
+        List<Long> t0 = List.of(order(khach, T0), order(khach, T0), order(khach, T0));
+        Long latest = order(khach, T2);
+        User other = userRepo.save(User.builder().username("other").password("x").build());
+        order(other, T1);
+
+        List<Long> seen = new ArrayList<>();
+        List<Integer> sizes = new ArrayList<>();
+        String cursor = null;
+        do {
+            OrderDtos.OrderPage page = orderService.getUserOrders("khach", cursor, 2);
+            sizes.add(page.items().size());
+            for (Order o : page.items()) {
+                seen.add(o.getId());
+                // Món và sản phẩm đã nạp sẵn trong transaction của trang
+                assertEquals("Phở bò", o.getItems().get(0).getProduct().getName());
+            }
+            cursor = page.nextCursor();
+        } while (cursor != null && sizes.size() < 10); // cursor sai có thể lặp mãi
+
+        List<Long> expected = new ArrayList<>();
+        expected.add(latest);
+        expected.addAll(t1.reversed());
+        expected.addAll(t0.reversed());
+        assertEquals(expected, seen);
+        assertEquals(List.of(2, 2, 2, 1), sizes);
+    }
+
+    @Test
+    void pageAfterTheLastOrderIsEmptyWithoutNextCursor() {
+        order(khach, T0);
+        Long last = order(khach, T1);
+        order(khach, T2);
+
+        OrderDtos.OrderPage first = orderService.getUserOrders("khach", null, 2);
+        assertNotNull(first.nextCursor());
+        // Đơn cuối bị xoá sau khi client đã nhận cursor: trang sau rỗng, không còn cursor
+        jdbc.update("DELETE FROM order_items");
+        jdbc.update("DELETE FROM orders WHERE created_at = ?", T0);
+
+        OrderDtos.OrderPage next = orderService.getUserOrders("khach", first.nextCursor(), 2);
+
+        assertEquals(List.of(), next.items());
+        assertNull(next.nextCursor());
+        assertEquals(last, first.items().get(1).getId());
+        // Khách chưa có đơn nào: trang đầu đã rỗng
+        userRepo.save(User.builder().username("moi").password("x").build());
+        assertEquals(new OrderDtos.OrderPage(List.of(), null), orderService.getUserOrders("moi", null, 2));
+    }
+
+    @Test
+    void tamperedCursorIsABadRequest() {
+        order(khach, T0);
+        order(khach, T1);
+        String cursor = orderService.getUserOrders("khach", null, 1).nextCursor();
+
+        for (String tampered : List.of(
+                cursor.substring(0, cursor.length() / 2),
+                "not a cursor!",
+                encode(T1 + "|abc"),
+                encode("yesterday|1"))) {
+            IllegalArgumentException ex = assertThrows(IllegalArgumentException.class,
+                    () -> orderService.getUserOrders("khach", tampered, 1), tampered);
+            ResponseEntity<ApiError> response = new GlobalExceptionHandler().handleIllegal(ex);
+            assertEquals(400, response.getStatusCode().value());
+            assertEquals("Invalid cursor", response.getBody().message());
+        }
+    }
+
+    private Long order(User user, LocalDateTime createdAt) {
+        Order order = Order.builder()
+                .user(user)
+                .status("DONE")
+                .paymentMethod("COD")
+                .total(pho.getPrice())
+                .items(new ArrayList<>())
+                .build();
+        order.getItems().add(OrderItem.builder().order(order).product(pho).quantity(1).price(pho.getPrice()).build());
+        Long id = orderRepo.save(order).getId();
+        // @PrePersist luôn gán now(): đặt lại giờ tạo để có nhiều đơn trùng createdAt
+        jdbc.update("UPDATE orders SET created_at = ? WHERE id = ?", createdAt, id);
+        return id;
+    }
+
+    private static String encode(String raw) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+}
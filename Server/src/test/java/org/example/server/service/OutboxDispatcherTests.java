@@ -0,0 +1,150 @@
+package org.example.server.service;
+
+import org.example.server.entity.Order;
+import org.example.server.entity.OutboxEvent;
+import org.example.server.repository.OrderRepository;
+import org.example.server.repository.OutboxEventRepository;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+// Outbox trên H2: thứ tự theo đơn, retry có backoff, event chờ retry không chặn event khác, mail xác nhận tối đa 1 lần
+@DataJpaTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:outbox;MODE=MySQL;NON_KEYWORDS=VALUE;LOCK_TIMEOUT=10000",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "app.outbox.batch-size=2"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({OutboxDispatcher.class, JacksonAutoConfiguration.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED) // dispatcher tự mở transaction cho từng event
+class OutboxDispatcherTests {
+
+    @MockitoBean
+    private NotificationService notificationService;
+
+    @MockitoBean
+    private EmailService emailService;
+
+    @Autowired
+    private OutboxDispatcher dispatcher;
+
+    @Autowired
+    private OutboxEventRepository outboxRepo;
+
+    @Autowired
+    private OrderRepository orderRepo;
+
+    @Test
+    void laterEventOfAnOrderWaitsForTheFailedOneAndRunsAfterItsRetry() {
+        Long orderId = order();
+        Long notify = event(OutboxService.NEW_ORDER_NOTIFY, orderId);
+        Long email = event(OutboxService.ORDER_CONFIRMATION_EMAIL, orderId);
+        doThrow(new IllegalStateException("socket closed")).doReturn(null)
+                .when(notificationService).newOrderNotify(any());
+
+        dispatcher.drain();
+
+        OutboxEvent failed = outboxRepo.findById(notify).orElseThrow();
+        assertEquals("PENDING", failed.getStatus());
+        assertEquals(1, failed.getAttempts());
+        assertEquals("socket closed", failed.getLastError());
+        LocalDateTime now = LocalDateTime.now();
+        assertTrue(failed.getNextAttemptAt().isAfter(now.plusSeconds(1)), "first retry waits 2s");
+        assertTrue(failed.getNextAttemptAt().isBefore(now.plusSeconds(3)));
+        // Mail của đơn xếp sau thông báo đang chờ retry
+        assertEquals(0, outboxRepo.findById(email).orElseThrow().getAttempts());
+        verifyNoInteractions(emailService);
+
+        dispatcher.drain(); // chưa tới hạn: không thử lại
+        assertEquals(1, outboxRepo.findById(notify).orElseThrow().getAttempts());
+
+        makeDue(notify);
+        dispatcher.drain();
+
+        assertEquals("DONE", outboxRepo.findById(notify).orElseThrow().getStatus());
+        assertEquals("DONE", outboxRepo.findById(email).orElseThrow().getStatus());
+        InOrder inOrder = inOrder(notificationService, emailService);
+        inOrder.verify(notificationService, times(2)).newOrderNotify(any());
+        inOrder.verify(emailService).sendOrderConfirmation(eq("khach@example.com"), any());
+    }
+
+    @Test
+    void eventsWaitingForBackoffDoNotStallNewerEvents() {
+        // Nhiều hơn 1 trang (batch-size=2) event đang chờ retry của các đơn khác nhau
+        for (int i = 0; i < 5; i++) {
+            Long id = event(OutboxService.NEW_ORDER_NOTIFY, order());
+            OutboxEvent e = outboxRepo.findById(id).orElseThrow();
+            e.setAttempts(3);
+            e.setNextAttemptAt(LocalDateTime.now().plusMinutes(5));
+            outboxRepo.save(e);
+        }
+        Long orderId = order();
+        Long fresh = event(OutboxService.NEW_ORDER_NOTIFY, orderId);
+
+        dispatcher.drain();
+
+        assertEquals("DONE", outboxRepo.findById(fresh).orElseThrow().getStatus());
+        verify(notificationService, times(1)).newOrderNotify(argThat(o -> o.getId().equals(orderId)));
+        assertEquals(5, outboxRepo.findAll().stream().filter(e -> "PENDING".equals(e.getStatus())).count());
+    }
+
+    @Test
+    void confirmationMailIsSentAtMostOnce() {
+        Long orderId = order();
+        Long email = event(OutboxService.ORDER_CONFIRMATION_EMAIL, orderId);
+        // Lỗi sau khi mail có thể đã đi: lượt retry không được gửi lại
+        doThrow(new IllegalStateException("SMTP timeout")).when(emailService).sendOrderConfirmation(any(), any());
+
+        dispatcher.drain();
+        assertEquals(1, outboxRepo.findById(email).orElseThrow().getAttempts());
+        makeDue(email);
+        dispatcher.drain();
+        // Event trùng cho cùng đơn (publish lại) cũng không gửi thêm
+        Long duplicate = event(OutboxService.ORDER_CONFIRMATION_EMAIL, orderId);
+        dispatcher.drain();
+
+        verify(emailService, times(1)).sendOrderConfirmation(any(), any());
+        assertEquals("DONE", outboxRepo.findById(email).orElseThrow().getStatus());
+        assertEquals("DONE", outboxRepo.findById(duplicate).orElseThrow().getStatus());
+        assertNotNull(orderRepo.findById(orderId).orElseThrow().getConfirmationEmailSentAt());
+    }
+
+    private Long order() {
+        return orderRepo.save(Order.builder()
+                .status("PENDING")
+                .paymentMethod("COD")
+                .total(BigDecimal.valueOf(55000))
+                .items(new ArrayList<>())
+                .build()).getId();
+    }
+
+    private Long event(String type, Long orderId) {
+        String payload = "{\"orderId\":" + orderId + ",\"email\":\"khach@example.com\"}";
+        return outboxRepo.save(OutboxEvent.builder().type(type).aggregateId(orderId).payload(payload).build()).getId();
+    }
+
+    private void makeDue(Long id) {
+        OutboxEvent e = outboxRepo.findById(id).orElseThrow();
+        e.setNextAttemptAt(LocalDateTime.now().minusSeconds(1));
+        outboxRepo.save(e);
+    }
+}
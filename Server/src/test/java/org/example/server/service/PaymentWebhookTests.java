@@ -0,0 +1,303 @@
+package org.example.server.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.server.entity.*;
+import org.example.server.repository.*;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.bean.override.mockito.MockitoSpyBean;
+import org.springframework.test.util.AopTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import vn.payos.crypto.CryptoProviderImpl;
+import vn.payos.model.webhooks.Webhook;
+import vn.payos.model.webhooks.WebhookData;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doThrow;
+
+// Webhook PayOS từ lúc nhận (kiểm chữ ký, INSERT IGNORE) tới lúc worker áp / retry, trên H2 chế độ MySQL
+@DataJpaTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:payment_webhooks;MODE=MySQL;NON_KEYWORDS=VALUE;LOCK_TIMEOUT=10000",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "payos.client-id=test-client",
+        "payos.api-key=test-key",
+        "payos.checksum-key=" + PaymentWebhookTests.CHECKSUM_KEY,
+        "payos.return-url=http://localhost/pay/result",
+        "payos.cancel-url=http://localhost/pay/result?canceled=1",
+        "app.payments.webhook-max-attempts=3"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({PaymentService.class, PaymentWebhookWorker.class, StockReservationService.class, StockRepository.class,
+        PromotionService.class, CouponService.class, CouponRepository.class,
+        JdbcPromotionUsageLedger.class, PromotionUsageRepository.class, PaymentWebhookTests.Metrics.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED) // worker tự mở transaction trên thread của lane
+class PaymentWebhookTests {
+
+    static final String CHECKSUM_KEY = "test-checksum-key";
+
+    @TestConfiguration
+    static class Metrics {
+        @Bean
+        MeterRegistry meterRegistry() {
+            return new SimpleMeterRegistry();
+        }
+    }
+
+    @Autowired
+    private PaymentWebhookEventRepository eventRepo;
+
+    @Autowired
+    private OrderRepository orderRepo;
+
+    @Autowired
+    private PaymentRepository paymentRepo;
+
+    @Autowired
+    private ProductRepository productRepo;
+
+    @Autowired
+    private UserRepository userRepo;
+
+    @Autowired
+    private CartRepository cartRepo;
+
+    @Autowired
+    private PaymentWebhookWorker worker;
+
+    @Autowired
+    private MeterRegistry registry;
+
+    @MockitoSpyBean
+    private PaymentService paymentService;
+
+    @Autowired
+    private PlatformTransactionManager txManager;
+
+    @Test
+    void redeliveredWebhookIsStoredOnce() {
+        Long orderCode = pendingOrder().getId();
+
+        assertEquals(orderCode, paymentService.receiveWebhook(signed(orderCode, "00", "success")));
+        assertNull(paymentService.receiveWebhook(signed(orderCode, "00", "success")));
+        // Kết quả khác của cùng đơn là 1 event khác
+        assertEquals(orderCode, paymentService.receiveWebhook(signed(orderCode, "01", "fail")));
+
+        assertEquals(2, eventRepo.findPendingIds(orderCode).size());
+        ObjectNode forged = signed(orderCode, "02", "success");
+        forged.put("signature", "0".repeat(64));
+        assertThrows(IllegalArgumentException.class, () -> paymentService.receiveWebhook(forged));
+    }
+
+    @Test
+    void failedAfterSuccessDoesNotTouchTheConfirmedOrder() {
+        Order order = pendingOrder();
+        Long orderCode = order.getId();
+
+        worker.submit(paymentService.receiveWebhook(signed(orderCode, "00", "success")));
+        worker.submit(paymentService.receiveWebhook(signed(orderCode, "01", "fail")));
+        awaitNoPendingEvents(orderCode);
+        // Áp lại cả 2 event của đơn: không còn gì để làm
+        worker.submit(orderCode);
+        worker.poll();
+        awaitNoPendingEvents(orderCode);
+
+        assertEquals("CONFIRMED", orderRepo.findById(orderCode).orElseThrow().getStatus());
+        assertEquals("SUCCESS", paymentRepo.findByPayosOrderId(String.valueOf(orderCode)).getStatus());
+        // FAILED áp lên đơn PENDING sẽ trả 2 phần về kho; đơn đã CONFIRMED thì kho giữ nguyên
+        assertEquals(8, stockOf(order));
+        for (PaymentWebhookEvent e : eventRepo.findAll()) {
+            if (e.getOrderCode().equals(orderCode)) assertEquals("DONE", e.getStatus());
+        }
+    }
+
+    @Test
+    void successWebhookKeepsItemsAddedToTheCartAfterCheckout() {
+        User khach = userRepo.save(User.builder().username("khach").password("x").build());
+        Order order = pendingOrder();
+        order.setUser(khach);
+        orderRepo.save(order);
+        // Khách thêm món mới vào giỏ trong lúc chờ PayOS gọi lại
+        Product tra = productRepo.save(Product.builder().name("Trà đá").price(BigDecimal.valueOf(5000))
+                .stock(10).active(true).build());
+        Cart cart = Cart.builder().user(khach).items(new ArrayList<>()).build();
+        cart.getItems().add(CartItem.builder().cart(cart).product(tra).quantity(1).build());
+        cartRepo.save(cart);
+
+        worker.submit(paymentService.receiveWebhook(signed(order.getId(), "00", "success")));
+        awaitNoPendingEvents(order.getId());
+
+        assertEquals("CONFIRMED", orderRepo.findById(order.getId()).orElseThrow().getStatus());
+        Cart after = cartRepo.findByUsernameWithItemsAndProduct("khach").orElseThrow();
+        assertEquals(1, after.getItems().size());
+        assertEquals("Trà đá", after.getItems().get(0).getProduct().getName());
+    }
+
+    @Test
+    void failedApplyIsRetriedAfterBackoffAndKeepsLaterEventsWaiting() {
+        Order order = pendingOrder();
+        Long orderCode = order.getId();
+        doThrow(new IllegalStateException("db down")).doCallRealMethod().when(spy()).applyWebhook(any());
+
+        worker.submit(paymentService.receiveWebhook(signed(orderCode, "00", "success")));
+        Long first = eventRepo.findPendingIds(orderCode).get(0);
+        PaymentWebhookEvent failed = awaitEvent(first, e -> e.getAttempts() == 1);
+
+        assertEquals("PENDING", failed.getStatus());
+        assertEquals("db down", failed.getLastError());
+        LocalDateTime now = LocalDateTime.now();
+        assertTrue(failed.getNextAttemptAt().isAfter(now.plusSeconds(1)), "first retry waits 2s");
+        assertTrue(failed.getNextAttemptAt().isBefore(now.plusSeconds(3)));
+
+        // Event sau của đơn xếp sau event đang chờ retry; lượt drain chưa tới hạn không áp gì
+        worker.submit(paymentService.receiveWebhook(signed(orderCode, "01", "fail")));
+        worker.poll();
+        awaitIdle();
+        assertEquals(2, eventRepo.findPendingIds(orderCode).size());
+        assertEquals("PENDING", orderRepo.findById(orderCode).orElseThrow().getStatus());
+        // Gauge theo bảng thấy event chờ retry, gauge theo lane thì không
+        assertTrue(registry.get("payment.webhook.events.pending").gauge().value() >= 2);
+        assertEquals(0, registry.get("payment.webhook.queue.depth").gauge().value());
+
+        makeDue(first);
+        worker.poll();
+        awaitNoPendingEvents(orderCode);
+
+        assertEquals(2, eventRepo.findById(first).orElseThrow().getAttempts());
+        assertEquals("CONFIRMED", orderRepo.findById(orderCode).orElseThrow().getStatus());
+        assertEquals(8, stockOf(order));
+    }
+
+    @Test
+    void eventIsMarkedFailedAfterMaxAttempts() {
+        Order order = pendingOrder();
+        Long orderCode = order.getId();
+        doThrow(new IllegalStateException("db down")).when(spy()).applyWebhook(any());
+
+        worker.submit(paymentService.receiveWebhook(signed(orderCode, "00", "success")));
+        Long id = eventRepo.findPendingIds(orderCode).get(0);
+        for (int attempt = 1; attempt < 3; attempt++) {
+            int expected = attempt;
+            awaitEvent(id, e -> e.getAttempts() == expected);
+            makeDue(id);
+            worker.poll();
+        }
+        PaymentWebhookEvent gaveUp = awaitEvent(id, e -> "FAILED".equals(e.getStatus()));
+
+        assertEquals(3, gaveUp.getAttempts());
+        assertTrue(eventRepo.findPendingIds(orderCode).isEmpty());
+        assertEquals("PENDING", orderRepo.findById(orderCode).orElseThrow().getStatus());
+    }
+
+    // Đơn PENDING có 1 món 2 phần (đã trừ kho, kho còn 8) và payment PayOS
+    private Order pendingOrder() {
+        Product product = productRepo.save(Product.builder().name("Phở bò").price(BigDecimal.valueOf(50000))
+                .stock(8).active(true).build());
+        Order order = Order.builder()
+                .status("PENDING")
+                .paymentMethod("PAYOS")
+                .total(BigDecimal.valueOf(100000))
+                .items(new ArrayList<>())
+                .build();
+        order.getItems().add(OrderItem.builder().order(order).product(product).quantity(2).price(product.getPrice()).build());
+        Order saved = orderRepo.save(order);
+        paymentRepo.save(Payment.builder().order(saved).amount(saved.getTotal())
+                .payosOrderId(String.valueOf(saved.getId())).paymentMethod("PAYOS").status("PENDING").build());
+        return saved;
+    }
+
+    // Stub trên spy nằm sau proxy transaction: applyWebhook qua proxy bắt buộc có transaction
+    private PaymentService spy() {
+        return AopTestUtils.getTargetObject(paymentService);
+    }
+
+    private int stockOf(Order order) {
+        return productRepo.findById(order.getItems().get(0).getProduct().getId()).orElseThrow().getStock();
+    }
+
+    // Body như PayOS gửi: chữ ký HMAC của data bằng checksum key
+    private static ObjectNode signed(Long orderCode, String code, String desc) {
+        WebhookData data = WebhookData.builder()
+                .orderCode(orderCode)
+                .amount(100000L)
+                .description("Thanh toan don " + orderCode)
+                .accountNumber("0123456789")
+                .reference("FT" + orderCode + code)
+                .transactionDateTime("2025-06-01 12:00:00")
+                .currency("VND")
+                .paymentLinkId("link-" + orderCode)
+                .code(code)
+                .desc(desc)
+                .build();
+        Webhook webhook = Webhook.builder()
+                .code(code)
+                .desc(desc)
+                .success("00".equals(code))
+                .data(data)
+                .signature(new CryptoProviderImpl().createSignatureFromObj(data, CHECKSUM_KEY))
+                .build();
+        return new ObjectMapper().valueToTree(webhook);
+    }
+
+    private void makeDue(Long id) {
+        new TransactionTemplate(txManager).executeWithoutResult(s -> {
+            PaymentWebhookEvent e = eventRepo.findById(id).orElseThrow();
+            e.setNextAttemptAt(LocalDateTime.now().minusSeconds(1));
+            eventRepo.save(e);
+        });
+    }
+
+    private PaymentWebhookEvent awaitEvent(Long id, Predicate<PaymentWebhookEvent> done) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (System.nanoTime() < deadline) {
+            PaymentWebhookEvent e = eventRepo.findById(id).orElseThrow();
+            if (done.test(e)) return e;
+            sleep();
+        }
+        return fail("event " + id + " did not reach the expected state");
+    }
+
+    private void awaitNoPendingEvents(Long orderCode) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!eventRepo.findPendingIds(orderCode).isEmpty()) {
+            if (System.nanoTime() > deadline) fail("events of order " + orderCode + " still pending");
+            sleep();
+        }
+        awaitIdle();
+    }
+
+    private void awaitIdle() {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (registry.get("payment.webhook.queue.depth").gauge().value() > 0 && System.nanoTime() < deadline) sleep();
+        // Lượt drain vừa lấy khỏi hàng đợi có thể còn đang chạy
+        sleep();
+    }
+
+    private static void sleep() {
+        try {
+            Thread.sleep(20);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
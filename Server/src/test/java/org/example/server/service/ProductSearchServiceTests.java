@@ -0,0 +1,101 @@
+package org.example.server.service;
+
+import org.example.server.dto.ProductView;
+import org.example.server.entity.Category;
+import org.example.server.entity.Product;
+import org.example.server.event.CatalogChangedEvent;
+import org.example.server.repository.CategoryRepository;
+import org.example.server.repository.ProductRepository;
+import org.example.server.search.NutritionIndex;
+import org.example.server.search.SuggestIndex;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Chỉ mục tìm kiếm + bảng giá trên H2: event danh mục cập nhật mọi chỉ mục của món, dựng lại định kỳ bắt được
+// thay đổi không có event (instance khác, sửa thẳng DB)
+@DataJpaTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:product_search;MODE=MySQL;NON_KEYWORDS=VALUE",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import(ProductSearchService.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED) // service tự mở transaction đọc riêng
+class ProductSearchServiceTests {
+
+    @Autowired
+    private ProductSearchService search;
+
+    @Autowired
+    private ProductRepository productRepo;
+
+    @Autowired
+    private CategoryRepository categoryRepo;
+
+    @Autowired
+    private JdbcTemplate jdbc;
+
+    private Category soup;
+    private Product pho;
+
+    @BeforeEach
+    void setUp() {
+        productRepo.deleteAll();
+        categoryRepo.deleteAll();
+        soup = categoryRepo.save(Category.builder().name("Món nước").build());
+        pho = productRepo.save(Product.builder().name("Phở bò").category(soup).price(BigDecimal.valueOf(50000))
+                .calories(450).protein(30.0).carbs(60.0).fat(12.0).stock(10).active(true).build());
+        search.rebuild();
+    }
+
+    @Test
+    void categoryChangeRefreshesEveryIndexOfItsProducts() {
+        // Giá đổi mà event của món bị lỡ (vd phát trên instance khác)
+        jdbc.update("UPDATE products SET price = ? WHERE id = ?", BigDecimal.valueOf(65000), pho.getId());
+        soup.setName("Đồ nước");
+        categoryRepo.save(soup);
+
+        search.onCatalogChanged(CatalogChangedEvent.category(soup.getId()));
+
+        assertEquals(List.of(pho.getId()), ids(search.search(null, "đồ nước", 1, 10, false).getContent()));
+        assertEquals(0, BigDecimal.valueOf(65000).compareTo(search.price(pho.getId()).orElseThrow().price()));
+        assertTrue(search.suggest("đồ", 5).stream()
+                .anyMatch(s -> SuggestIndex.CATEGORY.equals(s.type()) && soup.getId().equals(s.id())));
+    }
+
+    @Test
+    void rebuildPicksUpChangesThatCameWithoutEvents() {
+        // Lưu thẳng qua repository: không có CatalogChangedEvent nào
+        Product bun = productRepo.save(Product.builder().name("Bún chả").category(soup).price(BigDecimal.valueOf(45000))
+                .calories(600).protein(25.0).carbs(70.0).fat(20.0).stock(10).active(true).build());
+        productRepo.delete(pho);
+        assertTrue(search.price(pho.getId()).isPresent(), "chưa dựng lại thì vẫn là dữ liệu cũ");
+
+        search.rebuild();
+
+        assertEquals(List.of(bun.getId()), ids(search.search(null, "bún", 1, 10, false).getContent()));
+        assertEquals(List.of(), search.search(null, "phở", 1, 10, false).getContent());
+        assertTrue(search.price(pho.getId()).isEmpty());
+        assertEquals(0, BigDecimal.valueOf(45000).compareTo(search.price(bun.getId()).orElseThrow().price()));
+        assertTrue(search.suggest("ph", 5).stream().noneMatch(s -> pho.getId().equals(s.id())));
+        assertEquals(List.of(bun.getId()), search.nutritionRows().stream().map(NutritionIndex.Row::id).toList());
+    }
+
+    private static List<Long> ids(List<ProductView> views) {
+        return views.stream().map(ProductView::id).toList();
+    }
+}
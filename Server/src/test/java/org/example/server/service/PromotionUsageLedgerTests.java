@@ -0,0 +1,140 @@
+package org.example.server.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PromotionUsageLedgerTests {
+
+    private static int used(PromotionUsageLedger ledger) {
+        return ledger.usedCounts().getOrDefault(1L, 0);
+    }
+
+    @Test
+    void capacitiesSplitRemainingUsesOnTopOfUsed() {
+        assertArrayEquals(new int[]{3, 3, 2, 2}, PromotionUsageLedger.capacities(10, new int[4]));
+        // Shard 0 đã dùng 5: còn 5 lượt chia đều cho 4 shard
+        assertArrayEquals(new int[]{7, 1, 1, 1}, PromotionUsageLedger.capacities(10, new int[]{5, 0, 0, 0}));
+        // Hạ maxUses xuống dưới số đã dùng: không shard nào còn chỗ
+        assertArrayEquals(new int[]{4, 2}, PromotionUsageLedger.capacities(3, new int[]{4, 2}));
+        int[] unlimited = PromotionUsageLedger.capacities(null, new int[]{9, 0});
+        assertTrue(Arrays.stream(unlimited).allMatch(c -> c == PromotionUsageLedger.UNLIMITED));
+    }
+
+    @Test
+    void reserveStopsExactlyAtMaxUsesAndReleaseGivesBack() {
+        InMemoryPromotionUsageLedger ledger = new InMemoryPromotionUsageLedger(4);
+        ledger.configure(1L, 5, 2);
+
+        assertTrue(ledger.reserve(1L, 100L));
+        assertTrue(ledger.reserve(1L, 101L));
+        assertTrue(ledger.reserve(1L, 102L));
+        assertFalse(ledger.reserve(1L, 103L));
+        assertEquals(5, used(ledger));
+
+        ledger.release(101L);
+        ledger.release(101L); // trả lần 2 không cộng thêm
+        assertEquals(4, used(ledger));
+        assertTrue(ledger.reserve(1L, 103L));
+        assertFalse(ledger.reserve(1L, 104L));
+
+        assertFalse(ledger.reserve(2L, 100L), "promotion without shards");
+    }
+
+    @Test
+    void changingMaxUsesKeepsUsedAndMovesTheLimit() {
+        InMemoryPromotionUsageLedger ledger = new InMemoryPromotionUsageLedger(8);
+        ledger.configure(1L, 3, 0);
+        for (long order = 1; order <= 3; order++) assertTrue(ledger.reserve(1L, order));
+        assertFalse(ledger.reserve(1L, 4L));
+
+        ledger.configure(1L, 5, 0);
+        assertTrue(ledger.reserve(1L, 4L));
+        assertTrue(ledger.reserve(1L, 5L));
+        assertFalse(ledger.reserve(1L, 6L));
+
+        // Hạ xuống 2 khi đã dùng 5: không giữ thêm được; trả 3 lượt rồi chia lại (lần nạp định kỳ) vẫn đủ 2
+        ledger.configure(1L, 2, 0);
+        assertFalse(ledger.reserve(1L, 6L));
+        for (long order = 1; order <= 3; order++) ledger.release(order);
+        ledger.configure(1L, 2, 0);
+        assertFalse(ledger.reserve(1L, 7L));
+        ledger.release(4L);
+        assertTrue(ledger.reserve(1L, 7L));
+        assertEquals(2, used(ledger));
+
+        ledger.configure(1L, null, 0);
+        for (long order = 10; order < 1_000; order++) assertTrue(ledger.reserve(1L, order));
+    }
+
+    @Test
+    void thousandConcurrentCheckoutsNeverExceedMaxUses() throws Exception {
+        for (int round = 0; round < 20; round++) {
+            thousandCheckouts(new InMemoryPromotionUsageLedger(8), 64, BooleanSupplier::getAsBoolean);
+        }
+    }
+
+    /** Chạy 1 thao tác với sổ; sổ JDBC cần mỗi thao tác nằm trong transaction riêng như 1 request. */
+    interface Tx {
+        boolean run(BooleanSupplier work);
+    }
+
+    // 1000 lượt checkout đồng thời cho mã flash sale 100 lượt, xen kẽ huỷ đơn và admin đổi maxUses
+    static void thousandCheckouts(PromotionUsageLedger ledger, int threads, Tx tx) throws Exception {
+        tx.run(() -> {
+            ledger.configure(1L, 100, 0);
+            return true;
+        });
+        AtomicInteger granted = new AtomicInteger();
+        AtomicInteger cancelled = new AtomicInteger();
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < 1_000; i++) {
+            long orderId = i;
+            futures.add(pool.submit(() -> {
+                start.await();
+                if (tx.run(() -> ledger.reserve(1L, orderId))) {
+                    granted.incrementAndGet();
+                    // 1/10 đơn giữ được lượt bị huỷ ngay -> lượt đó cho đơn khác
+                    if (orderId % 10 == 0) {
+                        tx.run(() -> {
+                            ledger.release(orderId);
+                            return true;
+                        });
+                        cancelled.incrementAndGet();
+                    }
+                }
+                if (orderId == 500) { // admin lưu lại khuyến mãi giữa đợt
+                    tx.run(() -> {
+                        ledger.configure(1L, 100, 0);
+                        return true;
+                    });
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> f : futures) f.get(60, TimeUnit.SECONDS);
+        pool.shutdown();
+
+        int held = used(ledger);
+        assertEquals(granted.get() - cancelled.get(), held);
+        assertTrue(held <= 100, "held " + held);
+        // Lượt huỷ trả về sau khi các đơn khác đã thử xong thì còn trống; lấp nốt phải dừng đúng ở 100
+        long next = 10_000;
+        while (true) {
+            long orderId = next++;
+            if (!tx.run(() -> ledger.reserve(1L, orderId))) break;
+        }
+        assertEquals(100, used(ledger));
+    }
+}
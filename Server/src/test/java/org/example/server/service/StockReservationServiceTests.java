@@ -0,0 +1,121 @@
+package org.example.server.service;
+
+import org.example.server.common.OutOfStockException;
+import org.example.server.entity.OrderItem;
+import org.example.server.entity.Product;
+import org.example.server.repository.ProductRepository;
+import org.example.server.repository.StockRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.math.BigDecimal;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Trừ kho có điều kiện (stock >= ?) trên H2: thiếu 1 dòng thì cả đơn rollback
+@DataJpaTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:stock;MODE=MySQL;NON_KEYWORDS=VALUE",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({StockReservationService.class, StockRepository.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED) // mỗi lần đặt là 1 transaction riêng như đơn thật
+class StockReservationServiceTests {
+
+    @Autowired
+    private StockReservationService reservations;
+
+    @Autowired
+    private ProductRepository productRepo;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private PlatformTransactionManager txManager;
+
+    @Test
+    void shortLineRollsBackTheOtherLinesDecrement() {
+        Product pho = product("Phở bò", 5);
+        Product tra = product("Trà đá", 1);
+
+        OutOfStockException ex = assertThrows(OutOfStockException.class, () -> new TransactionTemplate(txManager)
+                .executeWithoutResult(s -> reservations.reserve(List.of(item(pho, 2), item(tra, 3)))));
+
+        assertEquals(List.of("Out of stock for product: Trà đá (requested 3)"), ex.getDetails());
+        assertEquals(5, stockOf(pho));
+        assertEquals(1, stockOf(tra));
+    }
+
+    @Test
+    void linesOfTheSameProductAreSummedAndExactStockIsEnough() {
+        Product pho = product("Phở gà", 4);
+        Product tra = product("Trà chanh", 1);
+
+        new TransactionTemplate(txManager)
+                .executeWithoutResult(s -> reservations.reserve(List.of(item(pho, 1), item(tra, 1), item(pho, 3))));
+
+        assertEquals(0, stockOf(pho));
+        assertEquals(0, stockOf(tra));
+        assertThrows(OutOfStockException.class, () -> new TransactionTemplate(txManager)
+                .executeWithoutResult(s -> reservations.reserve(List.of(item(pho, 1)))));
+    }
+
+    @Test
+    void batchWithoutRowCountsFallsBackToRowByRowOnce() {
+        StockRepository repo = new StockRepository(noInfoBatches());
+        Product com = product("Cơm tấm", 3);
+        Product nuoc = product("Nước cam", 1);
+        TransactionTemplate tx = new TransactionTemplate(txManager);
+
+        // Batch đã chạy rồi mới biết không có số dòng: phải quay về savepoint, không trừ 2 lần
+        List<Long> failed = tx.execute(s -> repo.decrementAll(Map.of(com.getId(), 2, nuoc.getId(), 2)));
+        assertEquals(List.of(nuoc.getId()), failed);
+        assertEquals(1, stockOf(com));
+        assertEquals(1, stockOf(nuoc));
+
+        assertEquals(List.of(), tx.execute(s -> repo.decrementAll(Map.of(com.getId(), 1, nuoc.getId(), 1))));
+        assertEquals(0, stockOf(com));
+        assertEquals(0, stockOf(nuoc));
+    }
+
+    // Như driver trả Statement.SUCCESS_NO_INFO cho mọi dòng của batch
+    private JdbcTemplate noInfoBatches() {
+        return new JdbcTemplate(dataSource) {
+            @Override
+            public int[] batchUpdate(String sql, List<Object[]> batchArgs) {
+                int[] counts = super.batchUpdate(sql, batchArgs);
+                Arrays.fill(counts, Statement.SUCCESS_NO_INFO);
+                return counts;
+            }
+        };
+    }
+
+    private Product product(String name, int stock) {
+        return productRepo.save(Product.builder().name(name).price(BigDecimal.valueOf(30000)).stock(stock).active(true).build());
+    }
+
+    private static OrderItem item(Product product, int quantity) {
+        return OrderItem.builder().product(product).quantity(quantity).price(product.getPrice()).build();
+    }
+
+    private int stockOf(Product product) {
+        return productRepo.findById(product.getId()).orElseThrow().getStock();
+    }
+}